@@ -0,0 +1,141 @@
+package com.Josh.library.client.component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.Josh.library.client.interfaces.DecisionPolicy;
+
+/**
+ * AbstractDecisionPolicy keeps what the policies of this package know about each way of executing a
+ * method, local or remote. Times are kept as logarithms, so that a method that is 10 times faster in
+ * the server is as far from a tie as a method that is 10 times slower, whatever the magnitude of its
+ * times. For each way there are two estimates that forget old calls:
+ * <ul>
+ * <li>the logarithm of the real time, it is used when there is no prediction</li>
+ * <li>the logarithm of the real time divided by the predicted time, it corrects a prediction</li>
+ * </ul>
+ * The estimated cost of a call is a mean with its uncertainty, subclasses decide from them. Each way
+ * is tried a few times first, so that both have estimates.
+ * <p>
+ * Estimates of both ways forget at every decision, not only when their way is taken, so the estimate
+ * of a way that is not taken any more becomes more and more uncertain while its mean is kept. A policy
+ * that weighs uncertainty will try such a way again after a while, the other way may have changed.
+ * @author Josh
+ *
+ */
+public abstract class AbstractDecisionPolicy implements DecisionPolicy {
+	//weight of a call after each new decision for the same method
+	private static final double FORGETTING = 0.95;
+	//the weight of an estimate is not forgotten below this, so its variance stays finite
+	private static final double MIN_DECAYED_WEIGHT = 0.01;
+	//amount of calls before an estimate is used
+	private static final int MIN_CALLS = 2;
+	//the smallest variance of an estimate, a few calls that take the same time do not prove much
+	private static final double MIN_VARIANCE = 0.01;
+	private static final int LOCAL = 0;
+	private static final int REMOTE = 1;
+	private final ConcurrentHashMap<String,Estimate[]> estimates = new ConcurrentHashMap<String,Estimate[]>();
+
+	/**
+	 * A mean and a variance that forget old values
+	 */
+	private static class Estimate{
+		private double weight = 0;
+		private int count = 0;
+		private double mean = 0;
+		private double variance = 0;
+
+		synchronized void decay(){
+			if(count > 0)
+				weight = Math.max(MIN_DECAYED_WEIGHT, weight * FORGETTING);
+		}
+
+		synchronized void add(double value){
+			if(count < Integer.MAX_VALUE) count++;
+			weight += 1;
+			double delta = value - mean;
+			mean += delta / weight;
+			variance = (1 - 1 / weight) * (variance + delta * delta / weight);
+		}
+	}
+
+	/**
+	 * The estimated cost of a call that is executed in one way
+	 */
+	protected static class Cost{
+		/**the mean of the logarithm of the time*/
+		public final double mean;
+		/**the variance of the mean, it shrinks as calls are recorded*/
+		public final double variance;
+
+		Cost(double mean, double variance){
+			this.mean = mean;
+			this.variance = variance;
+		}
+	}
+
+	/**
+	 * Get the estimates of a method, they are created if the method has none. The estimates of each
+	 * way are the time and the correction of the prediction.
+	 */
+	private Estimate[] getEstimates(String name){
+		Estimate[] result = estimates.get(name);
+		if(result != null) return result;
+		result = new Estimate[]{new Estimate(), new Estimate(), new Estimate(), new Estimate()};
+		Estimate[] old = estimates.putIfAbsent(name, result);
+		return old == null? result : old;
+	}
+
+	@Override
+	public void record(String name, boolean isRemote, long predictedTime, long time){
+		Estimate[] methodEstimates = getEstimates(name);
+		int way = isRemote? REMOTE : LOCAL;
+		methodEstimates[way * 2].add(Math.log(time + 1));
+		if(predictedTime >= 0)
+			methodEstimates[way * 2 + 1].add(Math.log(time + 1) - Math.log(predictedTime + 1));
+	}
+
+	@Override
+	public boolean shouldExecuteRemotely(String name, long localTime, long remoteTime){
+		Estimate[] methodEstimates = getEstimates(name);
+		for(Estimate estimate : methodEstimates)
+			estimate.decay();
+		Cost local = getCost(methodEstimates, LOCAL, localTime);
+		Cost remote = getCost(methodEstimates, REMOTE, remoteTime);
+		//a method is executed locally until it has been measured
+		if(local == null) return false;
+		if(remote == null) return true;
+		return shouldExecuteRemotely(local, remote);
+	}
+
+	/**
+	 * Decide from the costs of both ways, they are known
+	 * @param local
+	 * 		the cost of the local execution
+	 * @param remote
+	 * 		the cost of the remote execution
+	 * @return
+	 * 		if the call should be offloaded or not
+	 */
+	protected abstract boolean shouldExecuteRemotely(Cost local, Cost remote);
+
+	/**
+	 * Get the cost of a call executed in one way, the prediction is used if it has been corrected
+	 * by enough calls
+	 * @return
+	 * 		the cost, or null if the way has not been tried enough
+	 */
+	private Cost getCost(Estimate[] methodEstimates, int way, long predictedTime){
+		Estimate correction = methodEstimates[way * 2 + 1];
+		if(predictedTime >= 0)
+			synchronized(correction){
+				if(correction.count >= MIN_CALLS)
+					return new Cost(Math.log(predictedTime + 1) + correction.mean,
+							Math.max(correction.variance, MIN_VARIANCE) / correction.weight);
+			}
+		Estimate time = methodEstimates[way * 2];
+		synchronized(time){
+			if(time.count < MIN_CALLS) return null;
+			return new Cost(time.mean, Math.max(time.variance, MIN_VARIANCE) / time.weight);
+		}
+	}
+}
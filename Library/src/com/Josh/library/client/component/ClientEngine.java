@@ -9,8 +9,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.aspectj.lang.reflect.MethodSignature;
 
@@ -19,16 +19,24 @@ import android.util.Log;
 
 import com.Josh.library.client.component.RemoteObjectInformationSystem.RemoteObjectInfo;
 import com.Josh.library.client.core.IdPool;
+import com.Josh.library.client.interfaces.DecisionPolicy;
+import com.Josh.library.client.interfaces.Remoteable;
 import com.Josh.library.core.component.BasicType;
 import com.Josh.library.core.component.CodeHandler;
 import com.Josh.library.core.component.Command;
+import com.Josh.library.core.component.FieldAccessor;
+import com.Josh.library.core.component.FieldTable;
 import com.Josh.library.core.component.MethodPackage;
+import com.Josh.library.core.component.ObjectCodecs;
+import com.Josh.library.core.component.ObjectFingerprint;
 import com.Josh.library.core.component.ObjectSynchronizationInfo;
+import com.Josh.library.core.component.ObjectSynchronizationInfo.SyncType;
+import com.Josh.library.core.component.ParallelWorker;
 import com.Josh.library.core.component.RemoteObjectWrapper;
 import com.Josh.library.core.component.StaticFieldVirtualParentObject;
 import com.Josh.library.core.component.Command.COMMAND;
+import com.Josh.library.core.exception.CacheMissException;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
-import com.Josh.library.core.interfaces.TreeScanner;
 
 
 /**
@@ -39,6 +47,12 @@ import com.Josh.library.core.interfaces.TreeScanner;
  */
 public class ClientEngine {	
 	static private final String Tag="ClientEngine";
+	//object graphs that have fewer nodes are handled in the calling thread
+	static private final int PARALLEL_THRESHOLD = 256;
+	//parameters are streamed if their graphs have more nodes, see MethodPackage.getHeader
+	static private final int STREAMING_THRESHOLD = 256;
+	//a remote call asks for the thread id of the server first, and then for the result
+	static final int CALL_ROUND_TRIPS = 2;
 	private static ClientEngine engine=new ClientEngine();
 	private boolean isStarted=false;
 	private RemoteObjectInformationSystem remoteObjInfoSys;
@@ -48,9 +62,18 @@ public class ClientEngine {
 	private IdPool ServerFieldGetIdPool;
 	private ServiceThread thread;
 	private Database database;
+	private final LinkEstimator linkEstimator = new LinkEstimator();
+	private final CostModel costModel = new CostModel(linkEstimator);
+	private boolean isBandwidthProbingOn = true;
+	private volatile DecisionPolicy decisionPolicy = new ThompsonSamplingPolicy();
+	//how close the predicted times of a pure method must be for it to be executed both ways, see setSpeculationMargin
+	private volatile double speculationMargin = 0.25;
 	private Object lock = new Object();
 	private boolean isDebugOn = false;
 	private boolean CanExecuteRemotely = false;
+	private ResidentObjectTable residentTable;
+	private LazySynchronizer lazySynchronizer;
+	private boolean isLazySynchronizationOn = false;
 
 	private ClientEngine(){
 		remoteObjInfoSys=new RemoteObjectInformationSystem();
@@ -58,6 +81,8 @@ public class ClientEngine {
 		ServerFieldSetIdPool = new IdPool(10);
 		ServerFieldGetIdPool = new IdPool(10);
 		socketHandler = new SocketHandler();		
+		residentTable = new ResidentObjectTable();
+		lazySynchronizer = new LazySynchronizer();
 	}
 	
 	/**
@@ -86,7 +111,9 @@ public class ClientEngine {
 		thread = new ServiceThread(context, socketHandler,IP,port);
 		thread.start();
 		isStarted=true;
-		database = new Database(context);
+		//the statistics in memory are kept when the system is restarted
+		if(database == null)
+			database = new Database(context);
 		return this;
 	}
 	
@@ -98,6 +125,8 @@ public class ClientEngine {
 	public ClientEngine Stop(){
 		if(thread!=null)
 			thread.Stop();
+		if(database!=null)
+			database.flush();
 		isStarted=false;
 		return this;
 		
@@ -133,16 +162,25 @@ public class ClientEngine {
 	}
 	
 	/**
-	 * check if a method can be executed remotely, this decision is made by
-	 * considering the network latency and the local and remote execution time
+	 * check if a method can be executed remotely, this decision is made by the
+	 * decision policy from the local and remote execution times that the cost model
+	 * predicts for the input size of the call
 	 * @param name
 	 * 			the full method name
+	 * @param inputSize
+	 * 			the estimated input size of the call, see CostModel.estimateInputSize
 	 * @return
 	 *        can execute remotely or not
 	 */
-	boolean canExecuteRemotely(String name){
+	boolean canExecuteRemotely(String name, long inputSize){
 		boolean result;
-		result = database.shouldExecuteRemotely(name);
+		long localTime = costModel.predictLocal(name, inputSize);
+		long payloadSize = costModel.predictPayloadSize(name, inputSize);
+		//even at the highest bandwidth that can be expected, the transfer takes longer than the local execution
+		if(localTime >= 0 && payloadSize >= 0
+				&& linkEstimator.predictTransferTimeBound(payloadSize, CALL_ROUND_TRIPS, false) > localTime)
+			return false;
+		result = decisionPolicy.shouldExecuteRemotely(name, localTime, costModel.predictRemote(name, inputSize));
 		synchronized(lock){
 			return (CanExecuteRemotely && result);
 		}
@@ -152,6 +190,19 @@ public class ClientEngine {
 		return this.database;
 	}
 	
+	CostModel getCostModel(){
+		return this.costModel;
+	}
+	
+	/**
+	 * get the estimator of the round trip time and of the bandwidth of the connection to the server
+	 * @return
+	 * 		the link estimator
+	 */
+	public LinkEstimator getLinkEstimator(){
+		return this.linkEstimator;
+	}
+	
 	/**
 	 * get the method full name from a method signature
 	 * @param signature
@@ -198,6 +249,205 @@ public class ClientEngine {
 	public boolean isDebugOn(){
 		return isDebugOn;
 	}
+	
+	/**
+	 * turn on or turn off lazy synchronization. If it is on, an offloaded method returns as soon as its
+	 * result is ready, and objects changed by the method are synchronized when they are accessed locally
+	 * or before another method is offloaded. Objects whose fields are not accessed through woven code,
+	 * such as arrays and collections, are always synchronized before the method returns.
+	 * @param lazy
+	 * 		if is true, lazy synchronization is on
+	 * @return
+	 * 		this client engine
+	 */
+	public ClientEngine setLazySynchronization(boolean lazy){
+		isLazySynchronizationOn = lazy;
+		if(!lazy)
+			lazySynchronizer.flush();
+		return this;
+	}
+	
+	/**
+	 * check if lazy synchronization is on or off
+	 * @return
+	 * 		status of lazy synchronization
+	 */
+	public boolean isLazySynchronizationOn(){
+		return isLazySynchronizationOn;
+	}
+	
+	/**
+	 * turn on or turn off bandwidth probing. The bandwidth is measured from the traffic of offloaded
+	 * methods, if it has not been measured for a while, a small probe is sent with a ping so that the
+	 * estimation stays fresh. Probing should be turned off if the traffic is expensive.
+	 * @param probing
+	 * 		if is true, bandwidth probing is on
+	 * @return
+	 * 		this client engine
+	 */
+	public ClientEngine setBandwidthProbing(boolean probing){
+		isBandwidthProbingOn = probing;
+		return this;
+	}
+	
+	/**
+	 * check if bandwidth probing is on or off
+	 * @return
+	 * 		status of bandwidth probing
+	 */
+	public boolean isBandwidthProbingOn(){
+		return isBandwidthProbingOn;
+	}
+	
+	/**
+	 * set the policy that decides if a call of a remote method is offloaded. The default policy is a
+	 * ThompsonSamplingPolicy, which only explores the slower way when the times are uncertain. A
+	 * GreedyPolicy never explores, it is meant for benchmarks. The new policy starts without any
+	 * knowledge of the methods.
+	 * @param policy
+	 * 		the policy
+	 * @return
+	 * 		this client engine
+	 */
+	public ClientEngine setDecisionPolicy(DecisionPolicy policy){
+		if(policy == null)
+			throw(new IllegalArgumentException("Decision policy is null!"));
+		decisionPolicy = policy;
+		return this;
+	}
+	
+	/**
+	 * get the policy that decides if a call of a remote method is offloaded
+	 * @return
+	 * 		the policy
+	 */
+	public DecisionPolicy getDecisionPolicy(){
+		return decisionPolicy;
+	}
+	
+	/**
+	 * set how close the predicted local and remote execution times of a call of a pure method, see Pure,
+	 * must be for the call to be executed both ways at the same time. The call is executed locally and
+	 * offloaded if the larger time is at most (1 + margin) times the smaller one, and the first result is
+	 * taken, so a call whose decision is uncertain does not wait for the slower way. The default margin is
+	 * 0.25, a margin of 0 turns speculative execution off.
+	 * @param margin
+	 * 		the margin, it is not negative
+	 * @return
+	 * 		this client engine
+	 */
+	public ClientEngine setSpeculationMargin(double margin){
+		if(!(margin >= 0))
+			throw(new IllegalArgumentException("Speculation margin is negative!"));
+		speculationMargin = margin;
+		return this;
+	}
+	
+	/**
+	 * get how close the predicted times of a pure method must be for it to be executed both ways
+	 * @return
+	 * 		the margin
+	 */
+	public double getSpeculationMargin(){
+		return speculationMargin;
+	}
+	
+	/**
+	 * check if a call of a pure method should be executed locally and remotely at the same time, see
+	 * setSpeculationMargin
+	 * @param name
+	 * 			the full method name
+	 * @param inputSize
+	 * 			the estimated input size of the call, see CostModel.estimateInputSize
+	 * @return
+	 * 			should execute speculatively or not
+	 */
+	boolean shouldSpeculate(String name, long inputSize){
+		double margin = speculationMargin;
+		if(margin <= 0) return false;
+		synchronized(lock){
+			if(!CanExecuteRemotely) return false;
+		}
+		long localTime = costModel.predictLocal(name, inputSize);
+		long remoteTime = costModel.predictRemote(name, inputSize);
+		if(localTime < 0 || remoteTime < 0) return false;
+		return Math.max(localTime, remoteTime) <= (1 + margin) * Math.min(localTime, remoteTime);
+	}
+	
+	/**
+	 * check if the current thread executes a way of a speculative call. Methods called by the local
+	 * execution are executed locally, and the fields it accesses are local.
+	 * @return
+	 * 		if the thread executes a speculative call
+	 */
+	boolean isSpeculating(){
+		return Speculation.current() != null;
+	}
+	
+	/**
+	 * Execute a call of a pure method locally and remotely at the same time, see Speculation, and return
+	 * the result of the way that finishes first. The other way keeps running until it finishes, its result
+	 * is discarded but its time is recorded, so that both ways are measured. If the remote way fails, the
+	 * result of the local way is returned. The objects that the remote way saves are not remote for other
+	 * threads, see RemoteObjectInformationSystem.setSpeculativeThread, so the calling thread accesses them
+	 * locally when the local way has won, while the server is still executing the call.
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call, see CostModel.estimateInputSize
+	 * @param local
+	 * 		the local execution of the call
+	 * @param remote
+	 * 		the remote execution of the call, it calls executeMethodRemotely
+	 * @return
+	 * 		the result of the call
+	 * @throws InvocationTargetException
+	 * 		if the way that has won has thrown an exception, it is the exception of the method
+	 */
+	Object executeSpeculatively(final String name, final long inputSize, final Callable<Object> local,
+			final Callable<Object> remote) throws InvocationTargetException{
+		return Speculation.execute(new Callable<Object>(){
+			@Override
+			public Object call() throws Exception {
+				long time = System.nanoTime();
+				try {
+					return local.call();
+				} finally {
+					recordLocalExecution(name, inputSize, System.nanoTime() - time);
+				}
+			}
+		}, new Callable<Object>(){
+			@Override
+			public Object call() throws Exception {
+				//the objects of the call stay local for the calling thread, the local way may win
+				remoteObjInfoSys.setSpeculativeThread(true);
+				try {
+					return remote.call();
+				} finally {
+					remoteObjInfoSys.setSpeculativeThread(false);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * apply pending synchronization of an object if it is stale, this method should be called
+	 * before a field of an object is accessed locally
+	 * @param obj
+	 * 		the object
+	 */
+	void synchronizeStaleObject(Object obj){
+		lazySynchronizer.onAccess(obj);
+	}
+	
+	/**
+	 * apply all pending synchronization of offloaded methods, it is called before another method
+	 * is offloaded, and can be called when the application needs all objects to be up to date
+	 */
+	public void synchronizeStaleObjects(){
+		if(lazySynchronizer.hasPending())
+			lazySynchronizer.flush();
+	}
 
 	
 	/**
@@ -206,6 +456,8 @@ public class ClientEngine {
 	 *  occurs in the offloading process, this method will throw a RemoteExecutionFailedException
 	 * @param Package
 	 * 			a package containing information of the method
+	 * @param inputSize
+	 * 			the estimated input size of the call, see CostModel.estimateInputSize
 	 * @return
 	 * 			the return value of the method
 	 * @throws RemoteExecutionFailedException
@@ -214,19 +466,223 @@ public class ClientEngine {
 	 * 			if the offloaded method throws an exception
 	 */
 	@SuppressWarnings("unchecked")
-	Object executeMethodRemotely(final MethodPackage Package) throws RemoteExecutionFailedException, InvocationTargetException{
+	Object executeMethodRemotely(final MethodPackage Package, long inputSize) throws RemoteExecutionFailedException, InvocationTargetException{
 		if(Package == null)
 			throw(new RemoteExecutionFailedException("Method package is null!"));
 		if(!socketHandler.isConnected())
 			throw(new RemoteExecutionFailedException("Can not connect to server!"));
+		long startTime = System.nanoTime();
+		prepareResidentObjects(Package);
+		packLargeObjects(Package);
+		Command retCmd;
+		String methodName = Package.toString(getClass().getClassLoader());
+		Transmission transmission = new Transmission();
+		long payloadSize = inputSize >= 0? costModel.predictPayloadSize(methodName, inputSize) : -1;
+		//the input size is a rough size of the package until the method has been offloaded enough
+		transmission.expectedBytes = payloadSize >= 0? payloadSize : Math.max(0, inputSize);
+		try{
+			retCmd = invokeMethodRemotely(Package, transmission);
+			if((Boolean)retCmd.getExtra("hasException") && CacheMissException.class.isInstance(retCmd.getExtra("exception"))){
+				Log.i(Tag, "Server lost resident objects or blobs, transmit them again...");
+				materializeResidentObjects(Package);
+				packLargeObjects(Package);
+				socketHandler.forgetBlobs();
+				retCmd = invokeMethodRemotely(Package, transmission);
+			}
+		}catch(RemoteExecutionFailedException e){
+			//the server may have changed its copies, they cannot be trusted any more
+			invalidateResidentObjects(Package);
+			throw(e);
+		}
+		
+		if((Boolean)retCmd.getExtra("hasException")){
+			invalidateResidentObjects(Package);
+			if(((String)retCmd.getExtra("exceptionType")).equals("InvocationTargetException"))
+				throw((InvocationTargetException) retCmd.getExtra("exception"));
+			else
+				if(((String)retCmd.getExtra("exceptionType")).equals("RemoteExecutionFailedException"))
+					throw((RemoteExecutionFailedException) retCmd.getExtra("exception"));
+		}
+		
+		final ObjectSynchronizationInfo remoteObjectSync = (ObjectSynchronizationInfo) retCmd.getExtra("remoteObjectSync");
+		ObjectSynchronizationInfo resultSync = (ObjectSynchronizationInfo) retCmd.getExtra("resultSync");
+		final Map<Integer,Long> residentFingerprints = (Map<Integer,Long>) retCmd.getExtra("residentFingerprints");
+		Speculation call = Speculation.current();
+		if(call != null && !call.claimRemote()){
+			//the local execution has given the result, the objects of a pure method are not changed
+			Log.i(Tag, "Method "+methodName+" finished locally first, its remote result is discarded!");
+			commitResidentObjects(Package, residentFingerprints);
+			recordRemoteExecution(methodName, inputSize, System.nanoTime() - startTime, retCmd, transmission);
+			return null;
+		}
+		List<Object> staleObjects = isLazySynchronizationOn? getStaleObjects(remoteObjectSync, resultSync) : null;
+		Object result;
+		if(staleObjects == null){
+			Set<Object> skipObjects = new HashSet<Object>();
+			synchronizeRemoteObjects(remoteObjectSync, skipObjects);
+			result = synchronizeResult(resultSync, skipObjects);
+			commitResidentObjects(Package, residentFingerprints);
+		}else{
+			//the result is ready, changed objects are synchronized when they are accessed
+			result = synchronizeResult(resultSync, new HashSet<Object>());
+			lazySynchronizer.defer(staleObjects, new Runnable(){
+				@Override
+				public void run() {
+					synchronizeRemoteObjects(remoteObjectSync, new HashSet<Object>());
+					commitResidentObjects(Package, residentFingerprints);
+				}
+			});
+		}
+		
+		Log.i(Tag, "Method "+methodName+" execution finished!");
+		recordRemoteExecution(methodName, inputSize, System.nanoTime() - startTime, retCmd, transmission);
+		
+		return result;
+		
+	}
+
+	
+	/**
+	 * Synchronize remote objects of a method call, each of them is a root of the tree
+	 * @param remoteObjectSync
+	 * 		synchronization information of remote objects
+	 * @param skipObjects
+	 * 		a set of objects that should be skipped in the synchronization processing
+	 */
+	private void synchronizeRemoteObjects(ObjectSynchronizationInfo remoteObjectSync, Set<Object> skipObjects){
+		if(remoteObjectSync == null) return;
+		for(int root=0; root<remoteObjectSync.size(); root=remoteObjectSync.getSubtreeEnd(root)){
+			Object localObject = findLocalObject(remoteObjectSync, root);
+			if(remoteObjectSync.isSkipped(root)){
+				//the object is not changed in the server
+				skipObjects.add(localObject);
+				continue;
+			}
+			SynchronizeObject(localObject,remoteObjectSync,root,skipObjects);
+			if(StaticFieldVirtualParentObject.class.isInstance(localObject)){
+				StaticFieldVirtualParentObject vpo = (StaticFieldVirtualParentObject) localObject;
+				vpo.setValue(vpo.getValue(), null);
+			} 
+		}
+	}
+	
+	/**
+	 * Synchronize the result of a method call
+	 * @param resultSync
+	 * 		synchronization information of the result
+	 * @param skipObjects
+	 * 		a set of objects that should be skipped in the synchronization processing
+	 * @return
+	 * 		the result
+	 */
+	private Object synchronizeResult(ObjectSynchronizationInfo resultSync, Set<Object> skipObjects){
+		Object result = resultSync.getObject(0);
+		if(resultSync.getSyncType(0) != SyncType.FULL)
+			//the result is a remote object, it is not carried by its synchronization information
+			result = remoteObjInfoSys.getObjectInfoFromId(resultSync.getObjectId(0)).obj;
+		SynchronizeObject(result,resultSync,0,skipObjects);
+		return result;
+	}
+	
+	/**
+	 * Check if the synchronization of a method call can be deferred, and get objects that will be
+	 * stale. Local objects of the nodes are saved, since their ids are released after the call.
+	 * @param remoteObjectSync
+	 * 		synchronization information of remote objects
+	 * @param resultSync
+	 * 		synchronization information of the result
+	 * @return
+	 * 		the objects that are changed by the synchronization, or null if it cannot be deferred
+	 */
+	private List<Object> getStaleObjects(ObjectSynchronizationInfo remoteObjectSync, ObjectSynchronizationInfo resultSync){
+		if(remoteObjectSync == null || remoteObjectSync.isEmpty()) return null;
+		//the result is synchronized at once, it must not change existing objects before them
+		for(int index=0; index<resultSync.size(); index++)
+			if(isChangedNode(resultSync, index)) return null;
+		List<Object> staleObjects = new ArrayList<Object>();
+		for(int index=0; index<remoteObjectSync.size(); index++){
+			if(remoteObjectSync.isNewObject(index)) continue;
+			Object object = findLocalObject(remoteObjectSync, index);
+			if(object == null) return null;
+			remoteObjectSync.setLocalObject(index, object);
+			if(!isChangedNode(remoteObjectSync, index)) continue;
+			//only field access of Remoteable objects is woven
+			if(!Remoteable.class.isInstance(object)) return null;
+			staleObjects.add(object);
+		}
+		return staleObjects.isEmpty()? null : staleObjects;
+	}
+	
+	/**
+	 * Check if a node changes an existing local object
+	 * @param syncInfo
+	 * 		information of synchronization
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		if the node changes an existing object or not
+	 */
+	private boolean isChangedNode(ObjectSynchronizationInfo syncInfo, int index){
+		switch(syncInfo.getSyncType(index)){
+		case FULL:
+			return !syncInfo.isNewObject(index);
+		case DELTA:
+		case TRANSPLANT:
+		case ARRAY_DELTA:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Find the local object of a node which has an id or a stub key
+	 * @param syncInfo
+	 * 		information of synchronization
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the local object, or null if it is not found
+	 */
+	private Object findLocalObject(ObjectSynchronizationInfo syncInfo, int index){
+		Object object = syncInfo.getLocalObject(index);
+		if(object != null) return object;
+		if(syncInfo.getSyncType(index) == SyncType.STUB)
+			return remoteObjInfoSys.getStubObject(syncInfo.getStubKey(index));
+		RemoteObjectInfo info = remoteObjInfoSys.getObjectInfoFromId(syncInfo.getObjectId(index));
+		return info == null? null : info.obj;
+	}
+	
+	/**
+	 * Send a method package to the server and wait for the result. This method does the thread id
+	 * handshake with the server, and returns the result command without checking it.
+	 * @param Package
+	 * 			a package containing information of the method
+	 * @return
+	 * 			the result command
+	 * @throws RemoteExecutionFailedException
+	 * 			if error occurs in the offloading process
+	 */
+	private Command invokeMethodRemotely(MethodPackage Package, Transmission transmission) throws RemoteExecutionFailedException{
 		final int id = MethodIdPool.getPosition();
 		final long threadId = Thread.currentThread().getId();
+		boolean isStreamed = isStreamed(Package);
+		long startTime = System.nanoTime();
+		//bytes of an earlier call that failed with the same id are not counted
+		socketHandler.takePayloadSizes(id);
 		Command cmd = new Command(COMMAND.EXECUTE_METHOD,id);
-		cmd.putExtra("MethodPackage", Package);
+		cmd.putExtra("MethodPackage", isStreamed? Package.getHeader() : Package);
 		cmd.putExtra("threadId", threadId);
+		//the server cannot measure the bandwidth, it needs it to wait for faulted in objects
+		double bandwidth = linkEstimator.getBandwidthBound(false);
+		if(bandwidth > 0)
+			cmd.putExtra("bandwidth", bandwidth);
 		try {
 			Log.i(Tag, "Asking for server thread id...");
-			socketHandler.transmit(cmd);			
+			socketHandler.transmit(cmd);
+			//the server prepares the method while the parameters are being transmitted
+			if(isStreamed)
+				transmitParameters(Package, id);
 		} catch (IOException e) {
 			MethodIdPool.returnPosition(id);
 			throw(new RemoteExecutionFailedException("error to transmit command when asking for thread id"));
@@ -237,7 +693,8 @@ public class ClientEngine {
 
 		Command reply = null;
 		try {
-			reply = socketHandler.WaitForCommand(COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN,id, 5000);
+			reply = socketHandler.WaitForCommand(COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN,id,
+					linkEstimator.getTimeout(transmission.expectedBytes, 1));
 		} catch (RemoteExecutionFailedException e) {
 			Log.e(Tag, "Unable to get remote method thread id, method :"
 					+ Package.toString(getClass().getClassLoader())+
@@ -272,43 +729,315 @@ public class ClientEngine {
 			throw(e);
 		}
 		
+		long[] payloadSizes = socketHandler.takePayloadSizes(id);
+		transmission.callTime = System.nanoTime() - startTime;
+		transmission.uploadBytes = payloadSizes[0];
+		transmission.downloadBytes = payloadSizes[1];
 		MethodIdPool.returnPosition(id);
 		remoteObjInfoSys.ClearThreadId(threadId);
-		
-		if((Boolean)retCmd.getExtra("hasException")){
-			if(((String)retCmd.getExtra("exceptionType")).equals("InvocationTargetException"))
-				throw((InvocationTargetException) retCmd.getExtra("exception"));
-			else
-				if(((String)retCmd.getExtra("exceptionType")).equals("RemoteExecutionFailedException"))
-					throw((RemoteExecutionFailedException) retCmd.getExtra("exception"));
+		return retCmd;
+	}
+	
+	/**
+	 * Check if the parameters of a method package should be streamed after its header
+	 * @param Package
+	 * 		the method package
+	 * @return
+	 * 		if the parameters are large enough to be streamed
+	 */
+	private boolean isStreamed(MethodPackage Package){
+		int size = 0;
+		for(RemoteObjectWrapper wrapper : Package.getParamWrappers())
+			if(wrapper != null && wrapper.needTransmit())
+				size += getGraphSize(wrapper);
+		return size >= STREAMING_THRESHOLD;
+	}
+	
+	/**
+	 * Transmit each parameter of a streamed method package as an EXECUTE_METHOD_PARAMETER command
+	 * @param Package
+	 * 		the method package
+	 * @param id
+	 * 		the command id of the method
+	 * @throws IOException
+	 * 		if a parameter cannot be transmitted
+	 */
+	private void transmitParameters(MethodPackage Package, int id) throws IOException{
+		RemoteObjectWrapper[] wrappers = Package.getParamWrappers();
+		for(int i=0; i<wrappers.length; i++){
+			Command cmd = new Command(COMMAND.EXECUTE_METHOD_PARAMETER,id);
+			cmd.putExtra("index", i);
+			cmd.putExtra("wrapper", wrappers[i]);
+			socketHandler.transmit(cmd);
 		}
-		
-		Map<Integer,ObjectSynchronizationInfo> remoteObjecSynctMap = (Map<Integer,ObjectSynchronizationInfo>) retCmd.getExtra("remoteObjecSynctMap");
-		Set<Object> skipObjects = new HashSet<Object>();
-		if(remoteObjecSynctMap!=null){
-			Set<Entry<Integer, ObjectSynchronizationInfo>> entrySet = remoteObjecSynctMap.entrySet();
-			for(Entry<Integer,ObjectSynchronizationInfo> entry: entrySet){
-				int ID = entry.getKey();
-				ObjectSynchronizationInfo syncInfo = entry.getValue();
-				Object localObject = remoteObjInfoSys.getObjectInfoFromId(ID).obj;
-				SynchronizeObject(localObject,syncInfo,skipObjects);
-				if(StaticFieldVirtualParentObject.class.isInstance(localObject)){
-					StaticFieldVirtualParentObject vpo = (StaticFieldVirtualParentObject) localObject;
-					vpo.setValue(vpo.getValue(), null);
-				} 
+		Log.i(Tag, wrappers.length+" parameters are streamed");
+	}
+	
+	/**
+	 * Decide which objects in a method package are resident in the server, resident objects that
+	 * are not changed will not be transmitted
+	 * @param Package
+	 * 		the method package
+	 */
+	private void prepareResidentObjects(MethodPackage Package){
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for(final RemoteObjectWrapper wrapper : getWrappers(Package)){
+			if(getGraphSize(wrapper) < PARALLEL_THRESHOLD){
+				residentTable.prepare(wrapper);
+				continue;
 			}
+			tasks.add(new Callable<Object>(){
+				@Override
+				public Object call() {
+					residentTable.prepare(wrapper);
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+	}
+	
+	/**
+	 * Measures of the last transmission of a remote call, see invokeMethodRemotely
+	 */
+	private static class Transmission{
+		//bytes that the call is expected to transmit and receive, they lengthen the timeouts
+		long expectedBytes = 0;
+		//time from the first command transmitted to the result received, in nanoseconds
+		long callTime = 0;
+		long uploadBytes = 0;
+		long downloadBytes = 0;
+	}
+	
+	/**
+	 * Record a local execution of a method
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call, see CostModel.estimateInputSize, or -1 if it is unknown
+	 * @param nanos
+	 * 		the execution time in nanoseconds
+	 */
+	void recordLocalExecution(String name, long inputSize, long nanos){
+		if(database != null)
+			database.recordNormalExecution(name, nanos);
+		if(inputSize < 0) return;
+		decisionPolicy.record(name, false, costModel.predictLocal(name, inputSize), nanos);
+		costModel.recordLocal(name, inputSize, nanos);
+	}
+	
+	/**
+	 * Record a remote execution of a method that has succeeded. The network time is the time of the
+	 * transmission without the execution time in the server.
+	 * @param methodName
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call
+	 * @param totalTime
+	 * 		the whole time of the call in nanoseconds
+	 * @param retCmd
+	 * 		the result of the call
+	 * @param transmission
+	 * 		measures of the transmission of the call
+	 */
+	private void recordRemoteExecution(String methodName, long inputSize, long totalTime, Command retCmd,
+			Transmission transmission){
+		if(database != null)
+			database.recordRemoteExecution(methodName, totalTime);
+		if(inputSize >= 0)
+			decisionPolicy.record(methodName, true, costModel.predictRemote(methodName, inputSize), totalTime);
+		Long executionTime = (Long) retCmd.getExtra("executionTime");
+		if(executionTime == null) return;
+		long networkTime = Math.max(0, transmission.callTime - executionTime);
+		long payloadSize = transmission.uploadBytes + transmission.downloadBytes;
+		//round trips are measured by the socket handler, calls only measure the bandwidth
+		if(payloadSize >= LinkEstimator.SMALL_TRANSFER)
+			linkEstimator.addSample(payloadSize, CALL_ROUND_TRIPS, networkTime);
+		if(database != null){
+			database.recordNetworkTime(methodName, networkTime);
+			database.recordPayloadSize(methodName, payloadSize);
+		}
+		if(inputSize >= 0)
+			costModel.recordRemote(methodName, inputSize, totalTime, executionTime, networkTime,
+					transmission.uploadBytes, transmission.downloadBytes);
+	}
+	
+	/**
+	 * Serialize large objects of a method package in parallel, so that the socket only copies
+	 * their bytes. Nothing is done if there is only one large object.
+	 * @param Package
+	 * 		the method package
+	 */
+	private void packLargeObjects(MethodPackage Package){
+		if(!ParallelWorker.isParallel()) return;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for(final RemoteObjectWrapper wrapper : getWrappers(Package)){
+			if(!wrapper.needTransmit() || getGraphSize(wrapper) < PARALLEL_THRESHOLD) continue;
+			tasks.add(new Callable<Object>(){
+				@Override
+				public Object call() throws IOException {
+					wrapper.pack();
+					return null;
+				}
+			});
+		}
+		if(tasks.size() < 2) return;
+		invokeAll(tasks);
+	}
+	
+	/**
+	 * Get all wrappers of a method package
+	 * @param Package
+	 * 		the method package
+	 * @return
+	 * 		the wrappers that are not null
+	 */
+	private List<RemoteObjectWrapper> getWrappers(MethodPackage Package){
+		List<RemoteObjectWrapper> wrappers = new ArrayList<RemoteObjectWrapper>();
+		if(Package.getObjectWrapper() != null)
+			wrappers.add(Package.getObjectWrapper());
+		for(RemoteObjectWrapper wrapper : Package.getParamWrappers())
+			if(wrapper != null)
+				wrappers.add(wrapper);
+		return wrappers;
+	}
+	
+	/**
+	 * Get the amount of nodes in the graph of a wrapper
+	 * @param wrapper
+	 * 		the wrapper
+	 * @return
+	 * 		the amount of nodes, or 0 if the wrapper has no graph
+	 */
+	private int getGraphSize(RemoteObjectWrapper wrapper){
+		return wrapper.getInfoTree() == null? 0 : wrapper.getInfoTree().size();
+	}
+	
+	/**
+	 * Run tasks in parallel, runtime exceptions of the tasks are thrown again, and other exceptions
+	 * are logged, the wrappers that failed are transmitted as usual
+	 * @param tasks
+	 * 		the tasks
+	 */
+	private void invokeAll(List<Callable<Object>> tasks){
+		try {
+			ParallelWorker.invokeAll(tasks);
+		} catch (RuntimeException e) {
+			throw(e);
+		} catch (Exception e) {
+			e.printStackTrace();
+			Log.e(Tag, "A parallel task failed: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Transmit all resident objects in a method package again, it is used when the server
+	 * does not have them any more
+	 * @param Package
+	 * 		the method package
+	 */
+	private void materializeResidentObjects(MethodPackage Package){
+		materializeResidentObject(Package.getObjectWrapper());
+		for(RemoteObjectWrapper wrapper : Package.getParamWrappers())
+			materializeResidentObject(wrapper);
+	}
+	
+	private void materializeResidentObject(RemoteObjectWrapper wrapper){
+		if(wrapper == null || !wrapper.isResident()) return;
+		residentTable.invalidate(wrapper.getLocalObject());
+		wrapper.materialize();
+		residentTable.prepare(wrapper);
+	}
+	
+	/**
+	 * Remember objects in a method package as resident objects after they are synchronized
+	 * @param Package
+	 * 		the method package
+	 * @param residentFingerprints
+	 * 		fingerprints of server copies, mapped from resident keys
+	 */
+	private void commitResidentObjects(MethodPackage Package, Map<Integer,Long> residentFingerprints){
+		if(residentFingerprints == null){
+			invalidateResidentObjects(Package);
+			return;
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for(final RemoteObjectWrapper wrapper : getWrappers(Package)){
+			final Long fingerprint = residentFingerprints.get(wrapper.getResidentKey());
+			if(getGraphSize(wrapper) < PARALLEL_THRESHOLD){
+				residentTable.commit(wrapper, fingerprint);
+				continue;
+			}
+			tasks.add(new Callable<Object>(){
+				@Override
+				public Object call() {
+					residentTable.commit(wrapper, fingerprint);
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+	}
+	
+	/**
+	 * Forget all resident objects in a method package, it is used when the state of the server
+	 * copies is unknown
+	 * @param Package
+	 * 		the method package
+	 */
+	private void invalidateResidentObjects(MethodPackage Package){
+		RemoteObjectWrapper objectWrapper = Package.getObjectWrapper();
+		if(objectWrapper!=null && objectWrapper.getResidentKey()>=0)
+			residentTable.invalidate(objectWrapper.getLocalObject());
+		for(RemoteObjectWrapper wrapper : Package.getParamWrappers())
+			if(wrapper!=null && wrapper.getResidentKey()>=0)
+				residentTable.invalidate(wrapper.getLocalObject());
+	}
+	
+	/**
+	 * Tell the server that an object is changed in a way that the offloading system cannot
+	 * find, so that the object will be transmitted in the next offloading.
+	 * @param obj
+	 * 		the object
+	 */
+	public void invalidateResidentObject(Object obj){
+		int key = residentTable.invalidate(obj);
+		if(key<0 || !socketHandler.isConnected()) return;
+		Command cmd = new Command(COMMAND.CACHE_INVALIDATE,0);
+		cmd.putExtra("all", false);
+		cmd.putExtra("key", key);
+		try {
+			socketHandler.transmit(cmd);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		
-		ObjectSynchronizationInfo resultSync = (ObjectSynchronizationInfo) retCmd.getExtra("resultSync");
-		SynchronizeObject(resultSync.getObject(),resultSync,skipObjects);
-		
-		Log.i(Tag, "Method "+methodName+" execution finished!");
-		
-		
-		return resultSync.getObject();
-		
 	}
-
+	
+	/**
+	 * Tell the server to forget all resident objects, all objects will be transmitted in the
+	 * next offloading.
+	 */
+	public void invalidateAllResidentObjects(){
+		residentTable.clear();
+		if(!socketHandler.isConnected()) return;
+		Command cmd = new Command(COMMAND.CACHE_INVALIDATE,0);
+		cmd.putExtra("all", true);
+		try {
+			socketHandler.transmit(cmd);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Clear all information that belongs to the current connection with the server, it is
+	 * called when the connection is lost
+	 */
+	void clearSessionState(){
+		residentTable.clear();
+		//the next connection may use another network
+		linkEstimator.reset();
+	}
 	
 	/**
 	 * set a field of an object that is in the server, this method will block the thread until remote field is set or exception is caught.
@@ -379,7 +1108,8 @@ public class ClientEngine {
 		}
 		Command retCmd;
 		try {
-			retCmd = socketHandler.WaitForCommand(COMMAND.FIELD_SET_RETURN,cmdId,5000);
+			retCmd = socketHandler.WaitForCommand(COMMAND.FIELD_SET_RETURN,cmdId,
+					linkEstimator.getTimeout(CostModel.estimateInputSize(value, null), 1));
 				
 		} catch (RemoteExecutionFailedException e) {
 			ServerFieldSetIdPool.returnPosition(cmdId);
@@ -436,7 +1166,9 @@ public class ClientEngine {
 		}
 		Command reply;
 		try {
-			reply = socketHandler.WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,cmdId,5000);
+			//the field is not known before it is received, the object gives a rough size of it
+			reply = socketHandler.WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,cmdId,
+					linkEstimator.getTimeout(CostModel.estimateInputSize(thisObject, null), 1));
 		} catch (RemoteExecutionFailedException e) {
 			ServerFieldGetIdPool.returnPosition(cmdId);
 			throw(e);
@@ -457,7 +1189,7 @@ public class ClientEngine {
 		try {
 			value = CodeHandler.getFieldValue(thisObject.getClass(), fieldName, thisObject);
 			Set<Object> skipObjects = new HashSet<Object>();
-			value = SynchronizeObject(value,objInfo,skipObjects);
+			value = SynchronizeObject(value,objInfo,0,skipObjects);
 			if(StaticFieldVirtualParentObject.class.isInstance(thisObject)){
 				StaticFieldVirtualParentObject vpo = (StaticFieldVirtualParentObject) thisObject;
 				vpo.setValue(value, null);
@@ -525,110 +1257,225 @@ public class ClientEngine {
 	 * 			the object that need synchronizarion
 	 * @param syncInfo
 	 * 			information of synchronization
+	 * @param root
+	 * 			the index of the root node of the object in syncInfo
 	 * @param skipObjects
 	 * 			a set of objects that should be skipped in the synchronization processing
 	 * @return
 	 * 			object that has been synchronized
 	 */
-	private Object SynchronizeObject(Object needSync, ObjectSynchronizationInfo syncInfo, final Set<Object> skipObjects){
-		if(syncInfo == null) return null;
-		if(needSync == null) return syncInfo.getObject();
-		if(syncInfo.getObject() == null) return null;		
-		Class<?> type = syncInfo.getObject().getClass();
-		if(BasicType.isBasicType(type)||type.isEnum()||type.isPrimitive())
-			return syncInfo.getObject();
+	private Object SynchronizeObject(Object needSync, ObjectSynchronizationInfo syncInfo, int root, Set<Object> skipObjects){
+		if(syncInfo == null || root >= syncInfo.size()) return null;
+		if(syncInfo.getSyncType(root) == SyncType.FULL){
+			if(needSync == null) return syncInfo.getObject(root);
+			if(syncInfo.getObject(root) == null) return null;		
+			Class<?> type = syncInfo.getObject(root).getClass();
+			if(BasicType.isBasicType(type)||type.isEnum()||type.isPrimitive())
+				return syncInfo.getObject(root);
+		}else if(needSync == null) return null;
 		synchronized(needSync){
 			if(skipObjects.contains(needSync)){
-				if(syncInfo.isNewObject())
-					return syncInfo.getObject();
+				if(syncInfo.isNewObject(root))
+					return syncInfo.getObject(root);
 				else
 					return needSync;
 			}
-			syncInfo.setNeedSynchronizationObj(needSync);
-			syncInfo.ScanObjectTree(new TreeScanner(){
-				@Override
-				public void onScanning(Object obj) {
-					ObjectSynchronizationInfo info = (ObjectSynchronizationInfo)obj;
-					Object dataObject = info.getObject();
-					if(dataObject == null) return;
-					Class<?> clazz = dataObject.getClass();
-					if(BasicType.isBasicType(clazz) || clazz.isEnum() || clazz.isPrimitive())
-						return;
-					ObjectSynchronizationInfo parent = info.getParent();
-					Object parentNeedSychronizationObj = null;
-					if(parent != null)
-						parentNeedSychronizationObj = parent.getNeedSychronizarionObj();
-					String fieldName = info.getFieldName();
-					if(info.isNewObject()){
-						Object object = dataObject;		
-						info.setNeedSynchronizationObj(object);
-						if(parent!=null && !skipObjects.contains(parentNeedSychronizationObj))
-							try {
-								CodeHandler.setFieldValue(parentNeedSychronizationObj.getClass(), fieldName,
-										parentNeedSychronizationObj, object);
-							} catch (Exception e) {
-								e.printStackTrace();
-							} 
-						if(info.sonNum() == 0)
-							skipObjects.add(object);
-						if(parent!=null && parent.isSynchronized())
-							skipObjects.add(parent.getNeedSychronizarionObj());
-					}else{
-						int id = info.getObjectId();
-						Object object = remoteObjInfoSys.getObjectInfoFromId(id).obj;
-						info.setNeedSynchronizationObj(object);
-						if(parent!=null && !skipObjects.contains(parentNeedSychronizationObj))
-							try {
-								CodeHandler.setFieldValue(parentNeedSychronizationObj.getClass(), fieldName,
-										parentNeedSychronizationObj, object);
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
-						if(skipObjects.contains(object))
-							return;
-						Field[] fields = object.getClass().getDeclaredFields();
-						for(Field field:fields){
-							int modifier=field.getModifiers();
-							if(Modifier.isStatic(modifier)) continue;
-							if(Modifier.isTransient(modifier)) continue;
-							String fieldname = field.getName();
-							if(fieldname.equals("ENVIRONMENT")) continue;
-							if(fieldname.equals("REMOTE_OBJECT_ID")) continue;
-							if(fieldname.equals("REFERENCE_NUM")) continue;
-							Class<?> fieldType = field.getType();
-							try {
-								Object value = CodeHandler.getFieldValue(field, dataObject);
-								if(value == null)
-									CodeHandler.setFieldValue(field, object, value);
-								else{
-									Class<?> valueType = value.getClass();
-									if(BasicType.isBasicType(fieldType) || field.isEnumConstant() || fieldType.isPrimitive() 
-										|| BasicType.isBasicType(valueType) || valueType.isEnum() || valueType.isPrimitive()){							
-										CodeHandler.setFieldValue(field, object, value);
+			syncInfo.setNeedSynchronizationObj(root, needSync);
+			int end = syncInfo.getSubtreeEnd(root);
+			for(int index=root; index<end; index++)
+				synchronizeNode(syncInfo, index, skipObjects);
+			syncInfo.flushElements();
+			if(syncInfo.isNewObject(root))
+				return syncInfo.getObject(root);
+			else
+				return needSync;
+		}
+	}
+	
+	/**
+	 * synchronize the object of a node, the object of its parent node must have been synchronized
+	 * @param syncInfo
+	 * 			information of synchronization
+	 * @param index
+	 * 			the index of the node
+	 * @param skipObjects
+	 * 			a set of objects that should be skipped in the synchronization processing
+	 */
+	private void synchronizeNode(ObjectSynchronizationInfo syncInfo, int index, Set<Object> skipObjects){
+		switch(syncInfo.getSyncType(index)){
+		case SKIPPED:
+		case REFERENCE:
+		case STUB:
+			synchronizeReferredObject(syncInfo, index, skipObjects);
+			return;
+		case DELTA:
+		case TRANSPLANT:
+		case ARRAY_DELTA:
+			synchronizeChangedObject(syncInfo, index, skipObjects);
+			return;
+		default:
+			break;
+		}
+		Object dataObject = syncInfo.getObject(index);
+		if(dataObject == null) return;
+		Class<?> clazz = dataObject.getClass();
+		if(BasicType.isBasicType(clazz) || clazz.isEnum() || clazz.isPrimitive())
+			return;
+		int parent = syncInfo.getParentIndex(index);
+		Object parentNeedSychronizationObj = null;
+		if(parent >= 0)
+			parentNeedSychronizationObj = syncInfo.getNeedSychronizarionObj(parent);
+		String fieldName = syncInfo.getFieldName(index);
+		if(syncInfo.isNewObject(index)){
+			Object object = dataObject;		
+			syncInfo.setNeedSynchronizationObj(index, object);
+			if(parent>=0 && !skipObjects.contains(parentNeedSychronizationObj))
+				try {
+					syncInfo.setChildValue(parentNeedSychronizationObj, fieldName, object);
+				} catch (Exception e) {
+					e.printStackTrace();
+				} 
+			if(!syncInfo.hasSons(index))
+				skipObjects.add(object);
+			if(syncInfo.isLastSon(index))
+				skipObjects.add(syncInfo.getNeedSychronizarionObj(parent));
+		}else{
+			Object object = findLocalObject(syncInfo, index);
+			syncInfo.setNeedSynchronizationObj(index, object);
+			if(parent>=0 && !skipObjects.contains(parentNeedSychronizationObj))
+				try {
+					syncInfo.setChildValue(parentNeedSychronizationObj, fieldName, object);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			if(skipObjects.contains(object))
+				return;
+			if(ObjectCodecs.getCodec(object.getClass()) != null){
+				//the contents of a coded object are copied, its elements are linked by its sub-nodes
+				try {
+					FieldTable.copyState(dataObject, object);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				if(!syncInfo.hasSons(index))
+					skipObjects.add(object);
+				if(syncInfo.isLastSon(index))
+					skipObjects.add(syncInfo.getNeedSychronizarionObj(parent));
+				return;
+			}
+			Field[] fields = FieldAccessor.get(object.getClass()).getInstanceFields();
+			for(Field field:fields){
+				String fieldname = field.getName();
+				if(ObjectFingerprint.isSystemField(fieldname)) continue;
+				Class<?> fieldType = field.getType();
+				try {
+					Object value = CodeHandler.getFieldValue(field, dataObject);
+					if(value == null)
+						CodeHandler.setFieldValue(field, object, value);
+					else{
+						Class<?> valueType = value.getClass();
+						if(BasicType.isBasicType(fieldType) || field.isEnumConstant() || fieldType.isPrimitive() 
+							|| BasicType.isBasicType(valueType) || valueType.isEnum() || valueType.isPrimitive()){							
+							CodeHandler.setFieldValue(field, object, value);
 		
-									}
-								}
-							} catch (Exception e) {
-								e.printStackTrace();
-							}
 						}
-						
-						if(info.sonNum() == 0)
-							skipObjects.add(object);
-						if(parent!=null && parent.isSynchronized())
-							skipObjects.add(parent.getNeedSychronizarionObj());
 					}
-					
+				} catch (Exception e) {
+					e.printStackTrace();
 				}
-				
-			});
-			if(syncInfo.isNewObject())
-				return syncInfo.getObject();
-			else
-				return needSync;
+			}
+			
+			if(!syncInfo.hasSons(index))
+				skipObjects.add(object);
+			if(syncInfo.isLastSon(index))
+				skipObjects.add(syncInfo.getNeedSychronizarionObj(parent));
+		}
+	}
+	
+	/**
+	 * Find the local object of a node that does not carry its object, and set it to the field of
+	 * the parent object, since the parent object may be changed. The object of a STUB node is found
+	 * from the key of its stub.
+	 * @param syncInfo
+	 * 			information of synchronization
+	 * @param index
+	 * 			the index of the node
+	 * @param skipObjects
+	 * 			a set of objects that should be skipped in the synchronization processing
+	 * @return
+	 * 			the local object, or null if the object of a STUB node is not found
+	 */
+	private Object linkLocalObject(ObjectSynchronizationInfo syncInfo, int index, Set<Object> skipObjects){
+		Object object = findLocalObject(syncInfo, index);
+		if(object == null && syncInfo.getSyncType(index) == SyncType.STUB){
+			Log.e(Tag, "Stub "+syncInfo.getStubKey(index)+" is not found, field "+syncInfo.getFieldName(index)+" is not synchronized");
+			return null;
+		}
+		syncInfo.setNeedSynchronizationObj(index, object);
+		int parent = syncInfo.getParentIndex(index);
+		if(parent < 0) return object;
+		Object parentNeedSychronizationObj = syncInfo.getNeedSychronizarionObj(parent);
+		if(!skipObjects.contains(parentNeedSychronizationObj))
+			try {
+				syncInfo.setChildValue(parentNeedSychronizationObj, syncInfo.getFieldName(index), object);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		return object;
+	}
+	
+	/**
+	 * synchronize an object that is not changed in the server, is synchronized by another node, or
+	 * was never faulted in, the object itself is not synchronized here.
+	 * @param syncInfo
+	 * 			information of synchronization
+	 * @param index
+	 * 			the index of the node, it is a SKIPPED, REFERENCE or STUB node
+	 * @param skipObjects
+	 * 			a set of objects that should be skipped in the synchronization processing
+	 */
+	private void synchronizeReferredObject(ObjectSynchronizationInfo syncInfo, int index, Set<Object> skipObjects){
+		Object object = linkLocalObject(syncInfo, index, skipObjects);
+		if(object != null && syncInfo.getSyncType(index) != SyncType.REFERENCE)
+			skipObjects.add(object);
+		if(syncInfo.isLastSon(index))
+			skipObjects.add(syncInfo.getNeedSychronizarionObj(syncInfo.getParentIndex(index)));
+	}
+	
+	/**
+	 * synchronize an object with its changes, changed fields are set directly for a DELTA node, the
+	 * whole state is copied for a TRANSPLANT node, and modified ranges are patched in place for an
+	 * ARRAY_DELTA node.
+	 * @param syncInfo
+	 * 			information of synchronization
+	 * @param index
+	 * 			the index of the node, it is a DELTA, TRANSPLANT or ARRAY_DELTA node
+	 * @param skipObjects
+	 * 			a set of objects that should be skipped in the synchronization processing
+	 */
+	private void synchronizeChangedObject(ObjectSynchronizationInfo syncInfo, int index, Set<Object> skipObjects){
+		Object object = linkLocalObject(syncInfo, index, skipObjects);
+		if(skipObjects.contains(object))
+			return;
+		try {
+			if(syncInfo.getSyncType(index) == SyncType.TRANSPLANT)
+				FieldTable.copyState(syncInfo.getObject(index), object);
+			else if(syncInfo.getSyncType(index) == SyncType.ARRAY_DELTA)
+				syncInfo.getArrayDelta(index).apply(object);
+			else{
+				Field[] fields = FieldTable.getFields(object.getClass());
+				int[] changedFields = syncInfo.getChangedFields(index);
+				Object[] changedValues = syncInfo.getChangedValues(index);
+				for(int i=0; i<changedFields.length; i++)
+					CodeHandler.setFieldValue(fields[changedFields[i]], object, changedValues[i]);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
+		if(!syncInfo.hasSons(index))
+			skipObjects.add(object);
+		if(syncInfo.isLastSon(index))
+			skipObjects.add(syncInfo.getNeedSychronizarionObj(syncInfo.getParentIndex(index)));
 	}
 	
 }
-
-
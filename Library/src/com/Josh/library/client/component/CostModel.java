@@ -0,0 +1,178 @@
+package com.Josh.library.client.component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.Josh.library.core.component.LinearRegression;
+import com.Josh.library.core.component.SizeEstimator;
+
+/**
+ * A CostModel predicts how long a method call takes locally and remotely from the size of its input,
+ * so that a call on a large input can be offloaded while the same method on a small input is not.
+ * The input size is estimated before the call, see estimateInputSize, and each method has linear
+ * fits of the following values against it:
+ * <ul>
+ * <li>the local execution time</li>
+ * <li>the execution time in the server</li>
+ * <li>the time spent in the client to wrap the call and to synchronize its result</li>
+ * <li>the bytes transmitted and the bytes received</li>
+ * </ul>
+ * The time spent in the network is predicted by the LinkEstimator from the predicted bytes, so the
+ * prediction follows the current round trip time and bandwidth. Until the link is measured, the
+ * network time of the method is fitted as well. All fits forget old calls.
+ * @author Josh
+ *
+ */
+public class CostModel {
+	//weight of a call after each new call of the same method
+	private static final double METHOD_FORGETTING = 0.95;
+	//amount of calls before a fit is used
+	private static final double MIN_WEIGHT = 3;
+	private final ConcurrentHashMap<String,MethodModel> models = new ConcurrentHashMap<String,MethodModel>();
+	private final LinkEstimator link;
+
+	/**
+	 * Build a cost model
+	 * @param link
+	 * 		the estimator of the link to the server
+	 */
+	public CostModel(LinkEstimator link){
+		this.link = link;
+	}
+
+	/**
+	 * Fits of a method, the input of all of them is the estimated input size
+	 */
+	private static class MethodModel{
+		final LinearRegression localTime = new LinearRegression(METHOD_FORGETTING);
+		final LinearRegression computeTime = new LinearRegression(METHOD_FORGETTING);
+		final LinearRegression overheadTime = new LinearRegression(METHOD_FORGETTING);
+		final LinearRegression networkTime = new LinearRegression(METHOD_FORGETTING);
+		final LinearRegression uploadBytes = new LinearRegression(METHOD_FORGETTING);
+		final LinearRegression downloadBytes = new LinearRegression(METHOD_FORGETTING);
+	}
+
+	/**
+	 * Get the model of a method, it is created if the method has none
+	 */
+	private MethodModel getModel(String name){
+		MethodModel model = models.get(name);
+		if(model != null) return model;
+		model = new MethodModel();
+		MethodModel old = models.putIfAbsent(name, model);
+		return old == null? model : old;
+	}
+
+	/**
+	 * Estimate the size of the input of a call, it is a rough amount of bytes of the object and of the
+	 * arguments, see SizeEstimator. The estimation is cheap enough to be made before every call.
+	 * @param thisObject
+	 * 		the object of the call, or null for a static method
+	 * @param args
+	 * 		the arguments
+	 * @return
+	 * 		the estimated size in bytes
+	 */
+	public static long estimateInputSize(Object thisObject, Object[] args){
+		return SizeEstimator.estimateSize(thisObject, args);
+	}
+
+	/**
+	 * Record a local execution of a method
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call, see estimateInputSize
+	 * @param nanos
+	 * 		the execution time in nanoseconds
+	 */
+	public void recordLocal(String name, long inputSize, long nanos){
+		getModel(name).localTime.add(inputSize, nanos);
+	}
+
+	/**
+	 * Record a remote execution of a method that has succeeded
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call, see estimateInputSize
+	 * @param totalNanos
+	 * 		the whole time of the call in the client, in nanoseconds
+	 * @param computeNanos
+	 * 		the execution time in the server, in nanoseconds
+	 * @param networkNanos
+	 * 		the time between the first byte transmitted and the last byte received that is not spent in
+	 * 		the server, in nanoseconds
+	 * @param uploadBytes
+	 * 		the bytes transmitted
+	 * @param downloadBytes
+	 * 		the bytes received
+	 */
+	public void recordRemote(String name, long inputSize, long totalNanos, long computeNanos, long networkNanos,
+			long uploadBytes, long downloadBytes){
+		MethodModel model = getModel(name);
+		model.computeTime.add(inputSize, computeNanos);
+		model.networkTime.add(inputSize, networkNanos);
+		model.overheadTime.add(inputSize, Math.max(0, totalNanos - computeNanos - networkNanos));
+		model.uploadBytes.add(inputSize, uploadBytes);
+		model.downloadBytes.add(inputSize, downloadBytes);
+	}
+
+	/**
+	 * Predict the local execution time of a call
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call
+	 * @return
+	 * 		the time in nanoseconds, or -1 if the method has not been executed locally enough
+	 */
+	public long predictLocal(String name, long inputSize){
+		MethodModel model = models.get(name);
+		if(model == null || model.localTime.getWeight() < MIN_WEIGHT) return -1;
+		return toLong(model.localTime.predict(inputSize));
+	}
+
+	/**
+	 * Predict the remote execution time of a call, it is the time spent in the client and in the server
+	 * for the input size, and the time of the predicted bytes on the current link
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call
+	 * @return
+	 * 		the time in nanoseconds, or -1 if the method has not been executed remotely enough
+	 */
+	public long predictRemote(String name, long inputSize){
+		MethodModel model = models.get(name);
+		if(model == null || model.computeTime.getWeight() < MIN_WEIGHT) return -1;
+		double network = link.predictTransferTime(getPayloadSize(model, inputSize), ClientEngine.CALL_ROUND_TRIPS);
+		if(network < 0)
+			network = model.networkTime.predict(inputSize);
+		return toLong(Math.max(0, model.overheadTime.predict(inputSize)) + Math.max(0, model.computeTime.predict(inputSize))
+				+ Math.max(0, network));
+	}
+
+	/**
+	 * Predict the bytes that a remote call transmits and receives
+	 * @param name
+	 * 		the full name of the method
+	 * @param inputSize
+	 * 		the estimated input size of the call
+	 * @return
+	 * 		the amount of bytes, or -1 if the method has not been executed remotely enough
+	 */
+	public long predictPayloadSize(String name, long inputSize){
+		MethodModel model = models.get(name);
+		if(model == null || model.uploadBytes.getWeight() < MIN_WEIGHT) return -1;
+		return getPayloadSize(model, inputSize);
+	}
+
+	private static long getPayloadSize(MethodModel model, long inputSize){
+		return toLong(Math.max(0, model.uploadBytes.predict(inputSize)) + Math.max(0, model.downloadBytes.predict(inputSize)));
+	}
+
+	private static long toLong(double value){
+		if(Double.isNaN(value) || value < 0) return 0;
+		return value >= Long.MAX_VALUE? Long.MAX_VALUE : (long) value;
+	}
+}
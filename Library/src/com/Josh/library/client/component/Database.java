@@ -2,6 +2,12 @@ package com.Josh.library.client.component;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.Josh.library.core.component.LatencyHistogram;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -12,7 +18,13 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 /**
- * this class deals with database
+ * this class deals with database. Execution times are kept in memory, they are recorded and read
+ * without touching the database, and changed methods are written to the database in one transaction
+ * by a background timer, or when flush is called.
+ * <p>
+ * Each method has a LatencyHistogram for each Metric, times are measured in nanoseconds and sizes in
+ * bytes. The histograms forget old values, so that the statistics follow the recent behavior of the
+ * method, and they are saved in the database with the average times in milliseconds.
  * @author Josh
  *
  */
@@ -22,31 +34,122 @@ public class Database {
 	public static final String KEY_METHOD_NAME = "methodName";	
 	public static final String KEY_METHOD_TIME_NORMAL= "timeNormal";
 	public static final String KEY_METHOD_TIME_REMOTE = "timeRemote";
+	public static final String KEY_METHOD_HISTOGRAM_NORMAL = "histogramNormal";
+	public static final String KEY_METHOD_HISTOGRAM_REMOTE = "histogramRemote";
+	public static final String KEY_METHOD_HISTOGRAM_NETWORK = "histogramNetwork";
+	public static final String KEY_METHOD_HISTOGRAM_PAYLOAD = "histogramPayload";
 	public static final int INDEX_ROWID = 0;	
 	public static final int INDEX_METHOD_NAME = 1;
 	public static final int INDEX_METHOD_TIME_NORMAL = 2;
 	public static final int INDEX_METHOD_TIME_REMOTE = 3;
+	public static final int INDEX_METHOD_HISTOGRAM_NORMAL = 4;
+	public static final int INDEX_METHOD_HISTOGRAM_REMOTE = 5;
+	public static final int INDEX_METHOD_HISTOGRAM_NETWORK = 6;
+	public static final int INDEX_METHOD_HISTOGRAM_PAYLOAD = 7;
 	private static final String TAG = "database";
 	private static final String DATABASE_NAME = "methodData.db";
 	private static final String DATABASE_TABLE = "methodData";
-	private static final int DATABASE_VERSION = 1;
+	private static final int DATABASE_VERSION = 2;
+	//interval of writing changed methods to the database, in milliseconds
+	private static final long FLUSH_INTERVAL = 10000;
+	//amount of values after which the counts of a histogram are halved
+	private static final int HISTOGRAM_WINDOW = 256;
+	private static final long NANOS_PER_MILLI = 1000000;
 	private static final String DATABASE_CREATE = 
 		"CREATE TABLE methodData("
 			+" _id INTEGER PRIMARY KEY AUTOINCREMENT,"			
 			+" methodName TEXT,"
 			+" timeNormal INTEGER,"
-			+" timeRemote INTEGER"
+			+" timeRemote INTEGER,"
+			+" histogramNormal BLOB,"
+			+" histogramRemote BLOB,"
+			+" histogramNetwork BLOB,"
+			+" histogramPayload BLOB"
 			+" );";
+	//columns that are added by version 2
+	private static final String[] DATABASE_UPGRADE_2 = {
+		"ALTER TABLE methodData ADD COLUMN histogramNormal BLOB;",
+		"ALTER TABLE methodData ADD COLUMN histogramRemote BLOB;",
+		"ALTER TABLE methodData ADD COLUMN histogramNetwork BLOB;",
+		"ALTER TABLE methodData ADD COLUMN histogramPayload BLOB;"
+	};
+	
+	/**
+	 * Statistics that are recorded for each method
+	 */
+	public enum Metric{
+		/**time of local execution, in nanoseconds*/
+		NORMAL_TIME,
+		/**time of remote execution seen by the client, in nanoseconds*/
+		REMOTE_TIME,
+		/**part of the remote execution time that is not spent by the server, in nanoseconds*/
+		NETWORK_TIME,
+		/**bytes transmitted and received for a remote execution*/
+		PAYLOAD_SIZE
+	}
+	//row ids are only used by the thread that writes the database
 	private final Map<String,Integer> method2RowidMap = new HashMap<String,Integer>();
-	private final Map<String,Integer[]> methodTime = new HashMap<String,Integer[]>();
+	private final ConcurrentHashMap<String,MethodStatistics> methodTime = new ConcurrentHashMap<String,MethodStatistics>();
 	private final Context context;
 	private DatabaseHelper DBHelper;
 	private SQLiteDatabase db;
+	private final Timer flushTimer = new Timer("DatabaseFlush", true);
 	
 	public Database(Context ctx){
 		this.context = ctx;
 		DBHelper=new DatabaseHelper(context);
 		searchDatabase();
+		flushTimer.schedule(new TimerTask(){
+			@Override
+			public void run() {
+				flush();
+			}
+		}, FLUSH_INTERVAL, FLUSH_INTERVAL);
+	}
+	
+	/**
+	 * Statistics of a method. The histograms have locks of their own, and the decisions of
+	 * shouldExecuteRemotely are counted by a single atomic state.
+	 */
+	private static class MethodStatistics{
+		final LatencyHistogram[] histograms = new LatencyHistogram[Metric.values().length];
+		//the last decision in the high bits (1 for remote execution), and how many times it has been made in a row
+		final AtomicInteger decision = new AtomicInteger(0);
+		//changed since it was written to the database
+		volatile boolean isDirty = false;
+		
+		MethodStatistics(){
+			for(int i=0; i<histograms.length; i++)
+				histograms[i] = new LatencyHistogram(HISTOGRAM_WINDOW);
+		}
+		
+		LatencyHistogram get(Metric metric){
+			return histograms[metric.ordinal()];
+		}
+		
+		void record(Metric metric, long value){
+			get(metric).record(value);
+			isDirty = true;
+		}
+		
+		/**
+		 * Get the average of a time in milliseconds, it is the value that is saved in the old columns
+		 */
+		int getMillis(Metric metric){
+			long mean = get(metric).getMean();
+			return mean < 0? -1 : (int) Math.min(Integer.MAX_VALUE, mean / NANOS_PER_MILLI);
+		}
+	}
+	
+	/**
+	 * Get the statistics of a method, they are created if the method has none
+	 */
+	private MethodStatistics getStatistics(String name){
+		MethodStatistics stats = methodTime.get(name);
+		if(stats != null) return stats;
+		stats = new MethodStatistics();
+		MethodStatistics old = methodTime.putIfAbsent(name, stats);
+		return old == null? stats : old;
 	}
 		
 	private class DatabaseHelper extends SQLiteOpenHelper{
@@ -62,9 +165,11 @@ public class Database {
 		
 		@Override
 		public void onUpgrade(SQLiteDatabase db, int oldVersion,int newVersion){
-			Log.w(TAG, "Upgrading database from version " + oldVersion+ " to "+ newVersion + ", which will destroy all old data");
-			db.execSQL("DROP TABLE IF EXISTS titles");
-			onCreate(db);
+			Log.w(TAG, "Upgrading database from version " + oldVersion+ " to "+ newVersion);
+			//the average times are kept, each of them is the first value of its histogram
+			if(oldVersion < 2)
+				for(String sql : DATABASE_UPGRADE_2)
+					db.execSQL(sql);
 			}
 		}
 	
@@ -127,7 +232,9 @@ public class Database {
 	{
 		return db.query(DATABASE_TABLE,
 				new String[] {KEY_ROWID,KEY_METHOD_NAME
-				,KEY_METHOD_TIME_NORMAL,KEY_METHOD_TIME_REMOTE},
+				,KEY_METHOD_TIME_NORMAL,KEY_METHOD_TIME_REMOTE
+				,KEY_METHOD_HISTOGRAM_NORMAL,KEY_METHOD_HISTOGRAM_REMOTE
+				,KEY_METHOD_HISTOGRAM_NETWORK,KEY_METHOD_HISTOGRAM_PAYLOAD},
 				null,null,null,null,null);
 	}
 	
@@ -143,7 +250,9 @@ public class Database {
 	{
 		Cursor mCursor =db.query(true, DATABASE_TABLE,
 				new String[] {KEY_ROWID,KEY_METHOD_NAME
-				,KEY_METHOD_TIME_NORMAL,KEY_METHOD_TIME_REMOTE},
+				,KEY_METHOD_TIME_NORMAL,KEY_METHOD_TIME_REMOTE
+				,KEY_METHOD_HISTOGRAM_NORMAL,KEY_METHOD_HISTOGRAM_REMOTE
+				,KEY_METHOD_HISTOGRAM_NETWORK,KEY_METHOD_HISTOGRAM_PAYLOAD},
 				KEY_ROWID + "=" + rowId,
 				null,null,null,null,null);
 		if (mCursor != null) {
@@ -177,84 +286,161 @@ public class Database {
 	/**
 	 * set the normal execution time of a method, this method will consider all recorded normal 
 	 * execution time to find the average value of normal execution time, and save the average value.
+	 * The value is written to the database later, see flush.
 	 * @param name
 	 * 		the specific name of a method
 	 * @param normalTime
-	 * 		the normal execution time
+	 * 		the normal execution time in milliseconds
+	 * @deprecated use recordNormalExecution, which keeps times that are shorter than a millisecond
 	 */
-	public synchronized void setMethodNormalExecutionTime(String name, int normalTime){	
-		Integer rowId = this.method2RowidMap.get(name);
-		Integer[] times = this.methodTime.get(name);
-		if(times == null){
-			times = new Integer[8];
-			times[0] = -1;
-			times[1] = -1;
-			times[2] = -1;
-			times[3] = 1;
-			times[4] = -1;
-			times[5] = 1;
-			times[6] = 0;
-			times[7] = 0;
-
-			this.methodTime.put(name, times);
-		}
-		if(times[2]<Integer.MAX_VALUE-normalTime && times[3]<Integer.MAX_VALUE-1){
-			times[2] +=normalTime;
-			times[3] ++; 
-			times[0] = times[2]/times[3];
-		}else{
-			times[2] = normalTime;
-			times[3] = 0;
-			times[0] = normalTime;
-		}
-		this.open();
-		if(rowId == null){
-			method2RowidMap.put(name,(int)insertMethoddata(name, times[0], times[1]));
-		}else{
-			this.updateMethoddata(rowId, name, times[0], times[1]);
-		}
-		this.close();
+	@Deprecated
+	public void setMethodNormalExecutionTime(String name, int normalTime){	
+		recordNormalExecution(name, normalTime * NANOS_PER_MILLI);
 	}
 	
 	/**
 	 * set the remote execution time of a method, this method will consider all recorded remote 
 	 * execution time to find the average value of remote execution time, and save the average value.
+	 * The value is written to the database later, see flush.
 	 * @param name
 	 * 		the specific name of a method
 	 * @param normalTime
-	 * 		the remote execution time
+	 * 		the remote execution time in milliseconds
+	 * @deprecated use recordRemoteExecution, which keeps times that are shorter than a millisecond
 	 */
-	public synchronized void setMethodRemoteExecutionTime(String name, int remoteTime){
-		Integer rowId = this.method2RowidMap.get(name);
-		Integer[] times = this.methodTime.get(name);
-		if(times == null){
-			times = new Integer[8];
-			times[0] = -1;
-			times[1] = -1;
-			times[2] = -1;
-			times[3] = 1;
-			times[4] = -1;
-			times[5] = 1;
-			times[6] = 0;
-			times[7] = 0;
-			this.methodTime.put(name, times);
-		}
-		if(times[4]<Integer.MAX_VALUE-remoteTime && times[5]<Integer.MAX_VALUE-1){
-			times[4] += remoteTime;
-			times[5]++;
-			times[1]=times[4]/times[5];
-		}else{
-			times[4] = remoteTime;
-			times[5] = 1;
-			times[1] = remoteTime;
-		}
-		this.open();
-		if(rowId == null){
-			method2RowidMap.put(name,(int)insertMethoddata(name, times[0], times[1]));
-		}else{
-			this.updateMethoddata(rowId, name, times[0], times[1]);
+	@Deprecated
+	public void setMethodRemoteExecutionTime(String name, int remoteTime){
+		recordRemoteExecution(name, remoteTime * NANOS_PER_MILLI);
+	}
+	
+	/**
+	 * record a normal execution of a method, the time should be measured by System.nanoTime
+	 * @param name
+	 * 		the full name of a method
+	 * @param nanos
+	 * 		the normal execution time in nanoseconds
+	 */
+	public void recordNormalExecution(String name, long nanos){
+		getStatistics(name).record(Metric.NORMAL_TIME, nanos);
+	}
+	
+	/**
+	 * record a remote execution of a method, the time should be measured by System.nanoTime
+	 * @param name
+	 * 		the full name of a method
+	 * @param nanos
+	 * 		the remote execution time seen by the client in nanoseconds
+	 */
+	public void recordRemoteExecution(String name, long nanos){
+		getStatistics(name).record(Metric.REMOTE_TIME, nanos);
+	}
+	
+	/**
+	 * record the time that a remote execution of a method spends out of the server, it is the
+	 * time of the request and of the reply in the network
+	 * @param name
+	 * 		the full name of a method
+	 * @param nanos
+	 * 		the network time in nanoseconds
+	 */
+	public void recordNetworkTime(String name, long nanos){
+		getStatistics(name).record(Metric.NETWORK_TIME, nanos);
+	}
+	
+	/**
+	 * record the amount of bytes that a remote execution of a method transmits and receives
+	 * @param name
+	 * 		the full name of a method
+	 * @param bytes
+	 * 		the amount of bytes
+	 */
+	public void recordPayloadSize(String name, long bytes){
+		getStatistics(name).record(Metric.PAYLOAD_SIZE, bytes);
+	}
+	
+	/**
+	 * get a percentile of a statistic of a method, such as 50 for the median or 99 for the tail.
+	 * Recent executions weigh more than old ones.
+	 * @param name
+	 * 		the full name of a method
+	 * @param metric
+	 * 		the statistic
+	 * @param percentile
+	 * 		the percentile, from 0 to 100
+	 * @return
+	 * 		the percentile in nanoseconds or in bytes, or -1 if nothing is recorded
+	 */
+	public long getPercentile(String name, Metric metric, double percentile){
+		MethodStatistics stats = this.methodTime.get(name);
+		if(stats == null) return -1;
+		return stats.get(metric).getPercentile(percentile);
+	}
+	
+	/**
+	 * get the average of a statistic of a method, recent executions weigh more than old ones
+	 * @param name
+	 * 		the full name of a method
+	 * @param metric
+	 * 		the statistic
+	 * @return
+	 * 		the average in nanoseconds or in bytes, or -1 if nothing is recorded
+	 */
+	public long getMean(String name, Metric metric){
+		MethodStatistics stats = this.methodTime.get(name);
+		if(stats == null) return -1;
+		return stats.get(metric).getMean();
+	}
+	
+	/**
+	 * Get the values of a row that saves the statistics of a method
+	 */
+	private ContentValues getValues(String name, MethodStatistics stats){
+		ContentValues values = new ContentValues();
+		values.put(KEY_METHOD_NAME, name);
+		values.put(KEY_METHOD_TIME_NORMAL, stats.getMillis(Metric.NORMAL_TIME));
+		values.put(KEY_METHOD_TIME_REMOTE, stats.getMillis(Metric.REMOTE_TIME));
+		values.put(KEY_METHOD_HISTOGRAM_NORMAL, stats.get(Metric.NORMAL_TIME).toByteArray());
+		values.put(KEY_METHOD_HISTOGRAM_REMOTE, stats.get(Metric.REMOTE_TIME).toByteArray());
+		values.put(KEY_METHOD_HISTOGRAM_NETWORK, stats.get(Metric.NETWORK_TIME).toByteArray());
+		values.put(KEY_METHOD_HISTOGRAM_PAYLOAD, stats.get(Metric.PAYLOAD_SIZE).toByteArray());
+		return values;
+	}
+	
+	/**
+	 * write execution times that are changed since the last flush to the database in one transaction.
+	 * It is called by a background timer, and it should be called before the process may exit.
+	 */
+	public synchronized void flush(){
+		boolean isOpened = false;
+		try{
+			for(Map.Entry<String,MethodStatistics> entry : methodTime.entrySet()){
+				MethodStatistics stats = entry.getValue();
+				if(!stats.isDirty) continue;
+				if(!isOpened){
+					this.open();
+					db.beginTransaction();
+					isOpened = true;
+				}
+				stats.isDirty = false;
+				String name = entry.getKey();
+				ContentValues values = getValues(name, stats);
+				Integer rowId = method2RowidMap.get(name);
+				if(rowId == null)
+					method2RowidMap.put(name,(int)db.insert(DATABASE_TABLE, null, values));
+				else
+					db.update(DATABASE_TABLE, values, KEY_ROWID + "=" + rowId, null);
+			}
+			if(isOpened)
+				db.setTransactionSuccessful();
+		}catch(SQLException e){
+			e.printStackTrace();
+			Log.e(TAG, "Unable to write execution times");
+		}finally{
+			if(isOpened){
+				db.endTransaction();
+				this.close();
+			}
 		}
-		this.close();
 	}
 	
 	
@@ -263,13 +449,13 @@ public class Database {
 	 * @param name
 	 * 		full name of the method
 	 * @return
-	 * 		the remote execution time
+	 * 		the average remote execution time in milliseconds
 	 */
-	public synchronized int getMethodRemoteExecutionTime(String name){
-		Integer[] result = this.methodTime.get(name);
+	public int getMethodRemoteExecutionTime(String name){
+		MethodStatistics result = this.methodTime.get(name);
 		if(result == null) return -1;
 		else
-			return result[1];
+			return result.getMillis(Metric.REMOTE_TIME);
 	}
 	
 	/**
@@ -277,13 +463,13 @@ public class Database {
 	 * @param name
 	 * 		full name of the method
 	 * @return
-	 * 		the normal execution time
+	 * 		the average normal execution time in milliseconds
 	 */
-	public synchronized int getMethodNormalExecutionTime(String name){
-		Integer[] result = this.methodTime.get(name);
+	public int getMethodNormalExecutionTime(String name){
+		MethodStatistics result = this.methodTime.get(name);
 		if(result == null) return -1;
 		else
-			return result[0];
+			return result.getMillis(Metric.NORMAL_TIME);
 	}
 	
 	/**
@@ -300,39 +486,40 @@ public class Database {
 	 * 		the full name of a method
 	 * @return
 	 * 		should or not
+	 * @deprecated the ClientEngine decides by its DecisionPolicy, which does not take the slower
+	 * 		way when the times are certain
 	 */
-	public synchronized boolean shouldExecuteRemotely(String name){
-		Integer[] times = this.methodTime.get(name);
+	@Deprecated
+	public boolean shouldExecuteRemotely(String name){
+		MethodStatistics times = this.methodTime.get(name);
 		if(times==null) return false;
-		else{
-			if(times[0]>times[1]){
-				if(times[6] == 0){
-					times[6] = 1;
-					times[7] = 1;
+		boolean isRemoteFaster = times.get(Metric.NORMAL_TIME).getMean() > times.get(Metric.REMOTE_TIME).getMean();
+		while(true){
+			int state = times.decision.get();
+			boolean wasRemote = (state >>> 16) == 1;
+			int count = state & 0xFFFF;
+			boolean result;
+			if(isRemoteFaster){
+				if(!wasRemote){
+					result = true;
+					count = 1;
 				}else{
-					times[7]++;
-					if(times[7]>5){
-						times[6] = 0;
-						times[7] = 1;
-						return false;
-					}
+					count++;
+					result = count <= 5;
+					if(!result) count = 1;
 				}
-				return true;
-			}
-			else{
-				if(times[6] == 0){
-					times[7]++;
-					if(times[7]>5){
-						times[6] = 1;
-						times[7] = 1;
-						return true;
-					}
+			}else{
+				if(!wasRemote){
+					count++;
+					result = count > 5;
+					if(result) count = 1;
 				}else{
-					times[6] = 0;
-					times[7] = 1;
+					result = false;
+					count = 1;
 				}
-				return false;
 			}
+			if(times.decision.compareAndSet(state, ((result? 1 : 0) << 16) | count))
+				return result;
 		}
 	}
 	
@@ -344,24 +531,44 @@ public class Database {
 		Cursor cursor = this.getAllMethodData();		
 		while(cursor.moveToNext()){
 			String name = cursor.getString(INDEX_METHOD_NAME);
-			int normalTime = cursor.getInt(INDEX_METHOD_TIME_NORMAL);
-			int remoteTime = cursor.getInt(INDEX_METHOD_TIME_REMOTE);
 			int rowid = cursor.getInt(INDEX_ROWID);
+			MethodStatistics stats = new MethodStatistics();
+			loadHistogram(cursor, INDEX_METHOD_HISTOGRAM_NORMAL, INDEX_METHOD_TIME_NORMAL, stats, Metric.NORMAL_TIME);
+			loadHistogram(cursor, INDEX_METHOD_HISTOGRAM_REMOTE, INDEX_METHOD_TIME_REMOTE, stats, Metric.REMOTE_TIME);
+			loadHistogram(cursor, INDEX_METHOD_HISTOGRAM_NETWORK, -1, stats, Metric.NETWORK_TIME);
+			loadHistogram(cursor, INDEX_METHOD_HISTOGRAM_PAYLOAD, -1, stats, Metric.PAYLOAD_SIZE);
 			this.method2RowidMap.put(name, rowid);
-			Integer[] times = new Integer[8];
-			times[0] = normalTime;
-			times[1] = remoteTime;
-			times[2] = normalTime;
-			times[3] = 1;
-			times[4] = remoteTime;
-			times[5] = 1;
-			times[6] = 0;
-			times[7] = 0;
-			this.methodTime.put(name, times);
+			this.methodTime.put(name, stats);
 		}
+		cursor.close();
 		this.close();
 	}
 	
+	/**
+	 * Load a histogram of a method from a row of the database. A row that is written by version 1
+	 * has no histogram, its average time in milliseconds becomes the first value of the histogram.
+	 * @param cursor
+	 * 		the cursor at the row
+	 * @param index
+	 * 		the column of the histogram
+	 * @param millisIndex
+	 * 		the column of the average time, or -1 if the statistic has no such column
+	 * @param stats
+	 * 		the statistics of the method
+	 * @param metric
+	 * 		the statistic of the histogram
+	 */
+	private void loadHistogram(Cursor cursor, int index, int millisIndex, MethodStatistics stats, Metric metric){
+		if(!cursor.isNull(index)){
+			stats.histograms[metric.ordinal()] = LatencyHistogram.fromByteArray(cursor.getBlob(index), HISTOGRAM_WINDOW);
+			return;
+		}
+		if(millisIndex < 0 || cursor.isNull(millisIndex)) return;
+		int millis = cursor.getInt(millisIndex);
+		if(millis >= 0)
+			stats.get(metric).record(millis * NANOS_PER_MILLI);
+	}
+	
 	
 	
 	
@@ -0,0 +1,16 @@
+package com.Josh.library.client.component;
+
+/**
+ * GreedyPolicy always takes the way whose estimated cost is lower, after both ways have been tried a
+ * few times. It never explores, so the same calls are always executed in the same way, it is meant
+ * for benchmarks that compare runs. A way that becomes faster later is not found again.
+ * @author Josh
+ *
+ */
+public class GreedyPolicy extends AbstractDecisionPolicy {
+
+	@Override
+	protected boolean shouldExecuteRemotely(Cost local, Cost remote) {
+		return remote.mean < local.mean;
+	}
+}
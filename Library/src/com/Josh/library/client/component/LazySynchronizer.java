@@ -0,0 +1,80 @@
+package com.Josh.library.client.component;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * The LazySynchronizer keeps synchronization of finished remote calls that is not applied yet.
+ * Objects that are changed by such a call are stale, and all pending synchronization is applied,
+ * in the order of the calls, when a field of a stale object is accessed or before another method
+ * is offloaded. Only objects whose field access is woven by the aspect can be stale.
+ * @author Josh
+ *
+ */
+public class LazySynchronizer {
+	private static final String Tag = "LazySynchronizer";
+	private final LinkedList<Runnable> pendingTasks = new LinkedList<Runnable>();
+	private final Map<Object,Object> staleObjects = new IdentityHashMap<Object,Object>();
+	private volatile boolean hasPending = false;
+
+	/**
+	 * Defer the synchronization of a remote call
+	 * @param objects
+	 * 		objects that are changed by the synchronization, they are stale until it is applied
+	 * @param task
+	 * 		the synchronization
+	 */
+	public synchronized void defer(List<Object> objects, Runnable task){
+		for(Object obj : objects)
+			staleObjects.put(obj, obj);
+		pendingTasks.add(task);
+		hasPending = true;
+		Log.i(Tag, objects.size()+" objects are stale, "+pendingTasks.size()+" synchronizations are pending");
+	}
+
+	/**
+	 * Check if there is any synchronization that is not applied, this method is cheap
+	 * @return
+	 * 		if there is pending synchronization or not
+	 */
+	public boolean hasPending(){
+		return hasPending;
+	}
+
+	/**
+	 * Apply pending synchronization if an object is stale, it should be called before a field
+	 * of the object is accessed
+	 * @param obj
+	 * 		the object
+	 */
+	public void onAccess(Object obj){
+		if(!hasPending || obj == null) return;
+		boolean isStale;
+		synchronized(this){
+			isStale = staleObjects.containsKey(obj);
+		}
+		if(isStale)
+			flush();
+	}
+
+	/**
+	 * Apply all pending synchronization
+	 */
+	public synchronized void flush(){
+		while(!pendingTasks.isEmpty()){
+			Runnable task = pendingTasks.removeFirst();
+			try{
+				task.run();
+			}catch(RuntimeException e){
+				e.printStackTrace();
+				Log.e(Tag, "Unable to apply a pending synchronization");
+			}
+		}
+		staleObjects.clear();
+		hasPending = false;
+	}
+}
@@ -0,0 +1,202 @@
+package com.Josh.library.client.component;
+
+import com.Josh.library.core.component.RoundTripEstimator;
+
+/**
+ * A LinkEstimator estimates the round trip time and the bandwidth of the connection to the server from
+ * the traffic that is exchanged anyway: pings, method calls and the transmission of the apk file. Each
+ * sample is a transfer of an amount of bytes that took some round trips and some time, without the
+ * time spent by the server.
+ * <ul>
+ * <li>A small transfer measures the round trip time, it is smoothed as in TCP, with its mean
+ * deviation.</li>
+ * <li>A large transfer measures the bandwidth, once the round trip time is known. The logarithm of the
+ * bandwidth is smoothed with its variance, so the bounds of the estimate are a factor of it.</li>
+ * </ul>
+ * Old samples are forgotten, so the estimate follows the link when it changes. The estimates also give
+ * the time to wait for the reply of a request, see getTimeout.
+ * @author Josh
+ *
+ */
+public class LinkEstimator {
+	//transfers that are smaller only measure the round trip time, in bytes
+	static final long SMALL_TRANSFER = 4096;
+	//weight of a bandwidth sample after each new one
+	private static final double BANDWIDTH_FORGETTING = 0.8;
+	//variance of the logarithm of the bandwidth when there are too few samples to measure it
+	private static final double DEFAULT_BANDWIDTH_VARIANCE = 1;
+	private static final double NANOS_PER_SECOND = 1e9;
+	private final RoundTripEstimator roundTrip = new RoundTripEstimator();
+	private double bandwidthWeight = 0;
+	private double logBandwidth = 0;
+	private double logBandwidthVariance = 0;
+	private long bandwidthSampleTime = 0;
+
+	/**
+	 * Add a sample
+	 * @param bytes
+	 * 		the bytes transmitted and received
+	 * @param roundTrips
+	 * 		the amount of round trips of the transfer, such as 1 for a ping
+	 * @param nanos
+	 * 		the time of the transfer in nanoseconds, without the time spent by the server
+	 */
+	public synchronized void addSample(long bytes, int roundTrips, long nanos){
+		if(nanos <= 0 || roundTrips < 1) return;
+		if(bytes < SMALL_TRANSFER){
+			roundTrip.addSample(nanos / roundTrips);
+			return;
+		}
+		//the bandwidth cannot be told from the round trips before the round trip time is known
+		long roundTripTime = roundTrip.getRoundTripTime();
+		if(roundTripTime < 0) return;
+		long transferTime = nanos - roundTrips * roundTripTime;
+		if(transferTime <= 0) return;
+		double sample = Math.log(bytes * NANOS_PER_SECOND / transferTime);
+		bandwidthWeight = bandwidthWeight * BANDWIDTH_FORGETTING + 1;
+		double delta = sample - logBandwidth;
+		logBandwidth += delta / bandwidthWeight;
+		logBandwidthVariance = (1 - 1 / bandwidthWeight) * (logBandwidthVariance + delta * delta / bandwidthWeight);
+		bandwidthSampleTime = System.nanoTime();
+	}
+
+	/**
+	 * Get the smoothed round trip time
+	 * @return
+	 * 		the time in nanoseconds, or -1 if it is not measured yet
+	 */
+	public long getRoundTripTime(){
+		return roundTrip.getRoundTripTime();
+	}
+
+	/**
+	 * Get the mean deviation of the round trip time
+	 * @return
+	 * 		the deviation in nanoseconds, or 0 if it is not measured yet
+	 */
+	public long getRoundTripVariation(){
+		return roundTrip.getRoundTripVariation();
+	}
+
+	/**
+	 * Get the time since the round trip time was measured last, the link should be probed if it is
+	 * too old
+	 * @return
+	 * 		the time in nanoseconds, or -1 if it is not measured yet
+	 */
+	public long getRoundTripAge(){
+		return roundTrip.getAge();
+	}
+
+	/**
+	 * Check if the bandwidth has been measured
+	 * @return
+	 * 		if it is measured or not
+	 */
+	public synchronized boolean hasBandwidth(){
+		return bandwidthWeight > 0;
+	}
+
+	/**
+	 * Get the time since the bandwidth was measured last
+	 * @return
+	 * 		the time in nanoseconds, or -1 if it is not measured yet
+	 */
+	public synchronized long getBandwidthAge(){
+		return bandwidthWeight > 0? System.nanoTime() - bandwidthSampleTime : -1;
+	}
+
+	/**
+	 * Get the smoothed bandwidth
+	 * @return
+	 * 		the bandwidth in bytes per second, or -1 if it is not measured yet
+	 */
+	public synchronized double getBandwidth(){
+		return bandwidthWeight > 0? Math.exp(logBandwidth) : -1;
+	}
+
+	/**
+	 * Get a bound of the bandwidth, the real bandwidth is out of the bounds for about one transfer
+	 * out of twenty. The bounds are wide until a few transfers are measured.
+	 * @param isUpper
+	 * 		the upper bound or the lower bound
+	 * @return
+	 * 		the bound in bytes per second, or -1 if the bandwidth is not measured yet
+	 */
+	public synchronized double getBandwidthBound(boolean isUpper){
+		if(bandwidthWeight <= 0) return -1;
+		double variance = bandwidthWeight < 2? DEFAULT_BANDWIDTH_VARIANCE : logBandwidthVariance;
+		//the spread of the transfers and the uncertainty of the mean
+		double deviation = Math.sqrt(variance + variance / bandwidthWeight);
+		return Math.exp(logBandwidth + (isUpper? 2 : -2) * deviation);
+	}
+
+	/**
+	 * Predict the time of a transfer, the bytes are transferred at the smoothed bandwidth
+	 * @param bytes
+	 * 		the bytes transmitted and received
+	 * @param roundTrips
+	 * 		the amount of round trips of the transfer
+	 * @return
+	 * 		the time in nanoseconds, or -1 if the link is not measured enough
+	 */
+	public long predictTransferTime(long bytes, int roundTrips){
+		return predictTransferTime(bytes, roundTrips, getBandwidth());
+	}
+
+	/**
+	 * Predict a bound of the time of a transfer, see getBandwidthBound
+	 * @param bytes
+	 * 		the bytes transmitted and received
+	 * @param roundTrips
+	 * 		the amount of round trips of the transfer
+	 * @param isUpper
+	 * 		the upper bound, at the lower bound of the bandwidth, or the lower bound
+	 * @return
+	 * 		the time in nanoseconds, or -1 if the link is not measured enough
+	 */
+	public long predictTransferTimeBound(long bytes, int roundTrips, boolean isUpper){
+		return predictTransferTime(bytes, roundTrips, getBandwidthBound(!isUpper));
+	}
+
+	private long predictTransferTime(long bytes, int roundTrips, double bandwidth){
+		long roundTripTime = roundTrip.getRoundTripTime();
+		if(roundTripTime < 0) return -1;
+		long time = roundTrips * roundTripTime;
+		if(bytes < SMALL_TRANSFER) return time;
+		if(bandwidth <= 0) return -1;
+		return time + (long) (bytes * NANOS_PER_SECOND / bandwidth);
+	}
+
+	/**
+	 * Get the time to wait for the reply of a request, it is the retransmission timeout of the round
+	 * trips and the time of the bytes at the lower bound of the bandwidth
+	 * @param bytes
+	 * 		the bytes transmitted and received
+	 * @param roundTrips
+	 * 		the amount of round trips of the request
+	 * @return
+	 * 		the timeout in milliseconds
+	 */
+	public long getTimeout(long bytes, int roundTrips){
+		return roundTrip.getTimeout(roundTrips, bytes, getBandwidthBound(false));
+	}
+
+	/**
+	 * Tell that a request has not been answered in time, the following timeouts are longer until a round
+	 * trip is measured again
+	 */
+	public void backOff(){
+		roundTrip.backOff();
+	}
+
+	/**
+	 * Forget all samples, it is called when the connection changes
+	 */
+	public synchronized void reset(){
+		roundTrip.reset();
+		bandwidthWeight = 0;
+		logBandwidth = 0;
+		logBandwidthVariance = 0;
+	}
+}
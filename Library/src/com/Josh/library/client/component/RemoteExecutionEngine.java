@@ -1,8 +1,12 @@
 package com.Josh.library.client.component;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import com.Josh.library.core.component.CodeHandler;
+import com.Josh.library.core.component.StubTable;
+
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -111,4 +115,53 @@ public class RemoteExecutionEngine {
 			return (String) result.get("result");
 		}
 	}
+	
+	/**
+	 * fault in a field whose value was not transmitted with its parent object, see StubTable. All
+	 * stubs of the parent object are faulted in together in one round trip, and the fields are set.
+	 * This method should be called in the server
+	 * @param parent
+	 * 			the object in which the field lies
+	 * @param fieldName
+	 * 			the name of the field
+	 * @return
+	 * 			the value of the field
+	 * @throws Exception
+	 * 			if there is a problem
+	 */
+	static Object getStubObject(Object parent, String fieldName) throws Exception{
+		Handler signalHandler = handler;
+		if(signalHandler == null)
+			throw(new Exception("Unable to get signal handler!"));
+		Message msg = new Message();
+		Bundle signal = new Bundle();
+		LinkedBlockingQueue<HashMap<String,Object>> queue = new LinkedBlockingQueue<HashMap<String,Object>>();
+		signal.putString("SIGNAL", "GET_OBJECT");
+		signal.putSerializable("parent", (Serializable) parent);
+		signal.putLong("threadId", Thread.currentThread().getId());
+		signal.putSerializable("QUEUE", queue);
+		msg.setData(signal);
+		signalHandler.handleMessage(msg);
+		HashMap<String,Object> result = null;
+		try { 
+			result = queue.take();			
+		} catch (InterruptedException e) {
+			Log.e(Tag, "Fatal error: blocking queue is interrupted unnormally!");
+			throw(new Exception("Unable to get field "+fieldName+" from client"));
+		}
+		if((Boolean)result.get("hasException"))
+			throw((Exception) result.get("exception"));
+		
+		//set faulted fields in the method thread, the parent object may be locked by it
+		String[] fieldNames = (String[]) result.get("fieldNames");
+		Object[] values = (Object[]) result.get("result");
+		Object value = null;
+		for(int i=0; i<fieldNames.length; i++){
+			if(!StubTable.remove(parent, fieldNames[i])) continue;
+			CodeHandler.setFieldValue(parent.getClass(), fieldNames[i], parent, values[i]);
+			if(fieldNames[i].equals(fieldName))
+				value = values[i];
+		}
+		return value;
+	}
 }
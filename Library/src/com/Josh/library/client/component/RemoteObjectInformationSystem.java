@@ -4,18 +4,25 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.Josh.library.client.core.IdPool;
 import com.Josh.library.client.interfaces.Remoteable;
 import com.Josh.library.core.component.BasicType;
 import com.Josh.library.core.component.CodeHandler;
+import com.Josh.library.core.component.FieldAccessor;
+import com.Josh.library.core.component.ObjectCodecs;
+import com.Josh.library.core.component.ObjectPatch;
 import com.Josh.library.core.component.ObjectReferenceInfo;
 import com.Josh.library.core.component.RemoteObjectWrapper;
+import com.Josh.library.core.component.SizeEstimator;
 import com.Josh.library.core.component.StaticFieldVirtualParentObject;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
 
@@ -38,7 +45,13 @@ public class RemoteObjectInformationSystem {
 	private Map<Long,Long> ClientThread2ServerThread;
 	private Map<Long,Long> ServerThread2ClientThread;
 	private Map<String,Map<String,StaticFieldVirtualParentObject>> staticFieldVirtualParentObjectMap;
+	private SparseArray<Object> key2StubObject;
+	private Map<Long,List<Integer>> methodStubKeys;
+	private Map<Long,TransmissionBudget> methodBudget;
+	private int nextStubKey = 0;
 	private Object threadIdLock = new Object();
+	//client threads that execute the remote way of a speculative call, see setSpeculativeThread
+	private final Set<Long> speculativeThreads = Collections.newSetFromMap(new ConcurrentHashMap<Long,Boolean>());
 	static private final String Tag = "RemoteClassInfo";	
 	
 	public RemoteObjectInformationSystem(){
@@ -48,6 +61,9 @@ public class RemoteObjectInformationSystem {
 		ServerThread2ClientThread = new HashMap<Long,Long>();
 		ClientThread2ServerThread = new HashMap<Long,Long>();
 		staticFieldVirtualParentObjectMap = new HashMap<String,Map<String,StaticFieldVirtualParentObject>>();
+		key2StubObject = new SparseArray<Object>();
+		methodStubKeys = new HashMap<Long,List<Integer>>();
+		methodBudget = new HashMap<Long,TransmissionBudget>();
 		pool = new IdPool(100);
 	}
 	
@@ -258,7 +274,7 @@ public class RemoteObjectInformationSystem {
 		if(Remoteable.class.isInstance(obj)){
 			Environment envi = RemoteExecute.getEnvironment(obj);
 			if(envi == Environment.SERVER)
-				return true;
+				return !isBoundToSpeculativeThreadsOnly(RemoteExecute.getId(obj));
 			else
 				return false;
 		}
@@ -266,7 +282,7 @@ public class RemoteObjectInformationSystem {
 			if(Serializable.class.isInstance(obj)){
 				Integer[] result = hashCode2idAndreferenceTimes.get(System.identityHashCode(obj));
 				if(result!=null)
-					return true;
+					return !isBoundToSpeculativeThreadsOnly(result[0]);
 				else
 					return false;
 			}
@@ -274,6 +290,43 @@ public class RemoteObjectInformationSystem {
 				return false;
 	}
 	
+	/**
+	 * tell if the current thread executes the remote way of a speculative call, see ClientEngine.setSpeculationMargin.
+	 * Such a call is pure, the server does not change its objects, and the local way may give the result and let the
+	 * calling thread go on before the server replies. Objects that are only saved by speculative threads are therefore
+	 * not remote, their fields are accessed locally.
+	 * @param isSpeculative
+	 * 		if the current thread is speculative or not
+	 */
+	public void setSpeculativeThread(boolean isSpeculative){
+		long threadId = Thread.currentThread().getId();
+		if(isSpeculative)
+			speculativeThreads.add(threadId);
+		else
+			speculativeThreads.remove(threadId);
+	}
+	
+	/**
+	 * check if a saved object is only binded to speculative threads, see setSpeculativeThread
+	 * @param id
+	 * 		the id of the object
+	 * @return
+	 * 		if the object is only binded to speculative threads
+	 */
+	private boolean isBoundToSpeculativeThreadsOnly(int id){
+		if(speculativeThreads.isEmpty()) return false;
+		RemoteObjectInfo rinfo = id2ObjectInfo.get(id);
+		if(rinfo == null) return false;
+		synchronized(rinfo){
+			synchronized(rinfo.ClientThreadId){
+				if(rinfo.ClientThreadId.isEmpty()) return false;
+				for(Long threadId : rinfo.ClientThreadId)
+					if(!speculativeThreads.contains(threadId)) return false;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * save the information of an object and all its sub-objects in another thread, this method will tell the system that this 
 	 * object and its sub-objects will be sent to the server, that is to say, the object and its sub-objects will get id, their 
@@ -289,6 +342,27 @@ public class RemoteObjectInformationSystem {
 	 * 			if the object or any of its sub-objects is inserializable
 	 */
 	public RemoteObjectWrapper SaveObjectInfoInAnotherThread(Object obj, long ThreadId) throws RemoteExecutionFailedException{
+		return SaveObjectInfoInAnotherThread(obj, ThreadId, null);
+	}
+	
+	/**
+	 * save the information of an object and its sub-objects in another thread, sub-objects beyond a
+	 * transmission budget are saved as stubs, see TransmissionBudget. Stub objects do not get id, they are
+	 * binded to the client thread by their stub keys, and they will be cut from the object when the
+	 * wrapper is transmitted.
+	 * 
+	 * @param obj
+	 * 		the object
+	 * @param ThreadId
+	 * 		id of the client thread which this object will be binded to
+	 * @param budget
+	 * 		the transmission budget of the method call, or null if all sub-objects should be saved
+	 * @return
+	 * 		wrapped object with additional information
+	 * @throws RemoteExecutionFailedException
+	 * 			if the object or any of its transmitted sub-objects is inserializable
+	 */
+	public RemoteObjectWrapper SaveObjectInfoInAnotherThread(Object obj, long ThreadId, TransmissionBudget budget) throws RemoteExecutionFailedException{
 		Set<Object> scannedObject = new HashSet<Object>();
 		List<Object> objList = null;
 		synchronized(methodRemoteObject){
@@ -298,14 +372,22 @@ public class RemoteObjectInformationSystem {
 				methodRemoteObject.put(ThreadId, objList);
 			}
 		}
-		ObjectReferenceInfo infoTree = setIdRecursive(obj,null,null,scannedObject,ThreadId,objList);		
-		if(infoTree == null){
+		if(budget != null && !budget.isShell()){
+			synchronized(methodBudget){
+				methodBudget.put(ThreadId, budget);
+			}
+		}
+		ObjectReferenceInfo infoTree = new ObjectReferenceInfo();
+		if(setIdRecursive(obj,infoTree,-1,null,0,scannedObject,ThreadId,objList,budget) < 0){
 			if(obj == null)
 				return new RemoteObjectWrapper(null,-1,null);
 			else
 				return new RemoteObjectWrapper(obj);
 		}
-		return new RemoteObjectWrapper(obj,infoTree.getId(),infoTree);
+		RemoteObjectWrapper wrapper = new RemoteObjectWrapper(obj,infoTree.getId(),infoTree);
+		if(infoTree.stubNum() > 0)
+			wrapper.setStubObjects(budget.getStubObjects());
+		return wrapper;
 	}
 	
 	
@@ -326,6 +408,111 @@ public class RemoteObjectInformationSystem {
 		return SaveObjectInfoInAnotherThread(obj, ThreadId);
 	}
 	
+	/**
+	 * save the information of an object and its sub-objects in the current thread, sub-objects beyond a
+	 * transmission budget are saved as stubs, see SaveObjectInfoInAnotherThread(Object, long, TransmissionBudget)
+	 * 
+	 * @param obj
+	 * 		the object
+	 * @param budget
+	 * 		the transmission budget of the method call, or null if all sub-objects should be saved
+	 * @return
+	 * 		wrapped object with additional information
+	 * @throws RemoteExecutionFailedException
+	 * 			if the object or any of its transmitted sub-objects is inserializable
+	 */
+	public RemoteObjectWrapper SaveObjectInfo(Object obj, TransmissionBudget budget) throws RemoteExecutionFailedException{
+		long ThreadId = Thread.currentThread().getId();
+		return SaveObjectInfoInAnotherThread(obj, ThreadId, budget);
+	}
+	
+	/**
+	 * set the stub objects of a wrapper again after other objects are wrapped with the same budget, an
+	 * object that was a stub when the wrapper was built may have been kept since, see TransmissionBudget.keep
+	 * @param wrapper
+	 * 		the wrapper
+	 * @param budget
+	 * 		the transmission budget with which the wrapper was built
+	 */
+	public void updateStubObjects(RemoteObjectWrapper wrapper, TransmissionBudget budget){
+		if(wrapper == null || budget == null || !wrapper.hasStubs()) return;
+		wrapper.setStubObjects(budget.getStubObjects());
+	}
+	
+	/**
+	 * get the transmission budget of the method call of a client thread
+	 * @param ThreadId
+	 * 		id of the client thread
+	 * @return
+	 * 		the budget, or null if the method call has no budget
+	 */
+	public TransmissionBudget getTransmissionBudget(long ThreadId){
+		synchronized(methodBudget){
+			return methodBudget.get(ThreadId);
+		}
+	}
+	
+	/**
+	 * get a stub object from its key, a stub object is kept until the method call of its
+	 * client thread finishes
+	 * @param key
+	 * 		the key of the stub
+	 * @return
+	 * 		the object, or null if the stub does not exist
+	 */
+	public Object getStubObject(int key){
+		synchronized(key2StubObject){
+			return key2StubObject.get(key);
+		}
+	}
+	
+	/**
+	 * save a stub object and bind it to a client thread
+	 * @param obj
+	 * 		the object
+	 * @param threadId
+	 * 		id of the client thread
+	 * @return
+	 * 		the key of the stub
+	 */
+	private int addStubObject(Object obj, long threadId){
+		int key;
+		synchronized(key2StubObject){
+			key = nextStubKey++;
+			if(nextStubKey < 0) nextStubKey = 0;
+			key2StubObject.put(key, obj);
+		}
+		synchronized(methodStubKeys){
+			List<Integer> keys = methodStubKeys.get(threadId);
+			if(keys == null){
+				keys = new ArrayList<Integer>();
+				methodStubKeys.put(threadId, keys);
+			}
+			keys.add(key);
+		}
+		return key;
+	}
+	
+	/**
+	 * remove stub objects and the transmission budget of a client thread
+	 * @param threadId
+	 * 		id of the client thread
+	 */
+	private void removeStubObjects(long threadId){
+		synchronized(methodBudget){
+			methodBudget.remove(threadId);
+		}
+		List<Integer> keys;
+		synchronized(methodStubKeys){
+			keys = methodStubKeys.remove(threadId);
+		}
+		if(keys == null) return;
+		synchronized(key2StubObject){
+			for(Integer key : keys)
+				key2StubObject.remove(key);
+		}
+	}
+	
 	/**
 	 * save the information of an object, this method will tell the system that this object will be sent
 	 * to the server, that is to say, the object will get id, its reference time will increase, and it
@@ -349,8 +536,8 @@ public class RemoteObjectInformationSystem {
 				methodRemoteObject.put(ThreadId, objList);
 			}
 		}
-		ObjectReferenceInfo infoTree = setId_Sole(obj,null,null,scannedObject,ThreadId,objList);
-		if(infoTree == null){
+		ObjectReferenceInfo infoTree = new ObjectReferenceInfo();
+		if(setId_Sole(obj,infoTree,-1,null,scannedObject,ThreadId,objList) < 0){
 			if(obj == null)
 				return new RemoteObjectWrapper(null,-1,null);
 			else
@@ -361,12 +548,14 @@ public class RemoteObjectInformationSystem {
 	
 	/**
 	 * The core component of saving information methods. This method will set an id to the object, increase its
-	 * reference time, save some information in an ObjectReferenceInfo, and bind this object to a client thread.
+	 * reference time, save some information as a node of an ObjectReferenceInfo, and bind this object to a client thread.
 	 * This method will not save information of sub-objects of the object.
 	 * @param obj
 	 * 		the object
+	 * @param infoTree
+	 * 		the ObjectReferenceInfo to which the node is added
 	 * @param parent
-	 * 		the parent ObjectReferenceInfo, this parameter is useful to save ObjectReferenceInfo as a tree
+	 * 		the index of the parent node, or -1 if the object does not have a parent object
 	 * @param fieldName
 	 * 		the name of the field in which this object lies, this parameter is needed to build an ObjectReferenceInfo
 	 * @param scannedObject
@@ -378,21 +567,21 @@ public class RemoteObjectInformationSystem {
 	 * @param objList
 	 * 		if the object's information is saved successfully, the object will be added to this list.
 	 * @return
-	 * 		an ObjectReferenceInfo that contains saved information
+	 * 		the index of the node that contains saved information, or -1 if the object does not need an id
 	 * @throws RemoteExecutionFailedException
 	 * 		if the object is inserializable
 	 * 			
 	 */
-private ObjectReferenceInfo setId_Sole(Object obj, ObjectReferenceInfo parent, String fieldName, Set<Object> scannedObject, long threadId, List<Object> objList) throws RemoteExecutionFailedException{
-	if(obj==null) return null;
+private int setId_Sole(Object obj, ObjectReferenceInfo infoTree, int parent, String fieldName, Set<Object> scannedObject, long threadId, List<Object> objList) throws RemoteExecutionFailedException{
+	if(obj==null) return -1;
 	Class<?> clazz = obj.getClass();
-	if(clazz.isEnum()) return null;
-	if(clazz.isAnnotation()) return null;
-	if(clazz.isPrimitive()) return null;
-	if(BasicType.isBasicType(clazz)) return null;
-	if(scannedObject.contains(obj)) return null;
+	if(clazz.isEnum()) return -1;
+	if(clazz.isAnnotation()) return -1;
+	if(clazz.isPrimitive()) return -1;
+	if(BasicType.isBasicType(clazz)) return -1;
+	if(scannedObject.contains(obj)) return -1;
 	scannedObject.add(obj);
-	ObjectReferenceInfo info ;
+	int info ;
 	int id = -1;
 	if(Remoteable.class.isInstance(obj)){
 		RemoteExecute.setEnvironment(obj, Environment.SERVER);
@@ -428,9 +617,7 @@ private ObjectReferenceInfo setId_Sole(Object obj, ObjectReferenceInfo parent, S
 		synchronized(objList){
 			objList.add(obj);
 		}
-		info = new ObjectReferenceInfo(id,parent,fieldName,referenceTime);
-		if(parent!=null)
-			parent.put(info);
+		info = infoTree.add(id,parent,fieldName,referenceTime);
 		Log.i(Tag, "Local: id = "+id+" Reference time = "+referenceTime);
 		
 	}else
@@ -479,9 +666,7 @@ private ObjectReferenceInfo setId_Sole(Object obj, ObjectReferenceInfo parent, S
 			synchronized(objList){
 				objList.add(obj);
 			}
-			info = new ObjectReferenceInfo(id,parent,fieldName,referenceTime);
-			if(parent!=null)
-				parent.put(info);
+			info = infoTree.add(id,parent,fieldName,referenceTime);
 		}
 		else
 			throw(new RemoteExecutionFailedException("Inserializable object "+obj));
@@ -491,14 +676,20 @@ private ObjectReferenceInfo setId_Sole(Object obj, ObjectReferenceInfo parent, S
 
 /**
  * This method will set an id to the object and its sub-objects, increase their reference time, save their information
- * as a tree in an ObjectReferenceInfo, and bind these objects to a client thread. This method is the recursively calling 
- * of the method setId_Sole 
+ * as nodes of an ObjectReferenceInfo, and bind these objects to a client thread. This method is the recursively calling 
+ * of the method setId_Sole. Sub-objects beyond the transmission budget are saved as stubs of their parent nodes
+ * instead, and their sub-objects are not scanned. Only fields of woven objects can be stubs, sub-objects of
+ * other objects, such as collections of the platform, are always transmitted.
  * @param obj
  * 		the object
+ * @param infoTree
+ * 		the ObjectReferenceInfo to which the nodes are added
  * @param parent
- * 		the parent ObjectReferenceInfo, this parameter is useful to save ObjectReferenceInfo as a tree
+ * 		the index of the parent node, or -1 if the object does not have a parent object
  * @param fieldName
  * 		the name of the field in which this object lies, this parameter is needed to build an ObjectReferenceInfo
+ * @param depth
+ * 		the depth of the object, the object that is wrapped is at depth 0
  * @param scannedObject
  * 		a set of scanned objects, if an object is in this set, this method will skip this object and will not
  * 		execute. Object will be added to this set after its information being saved by this function. This parameter
@@ -507,26 +698,62 @@ private ObjectReferenceInfo setId_Sole(Object obj, ObjectReferenceInfo parent, S
  * 		id of the client thread which this object and its sub-objects will be binded to
  * @param objList
  * 		if the object's and its sub-objects' information are saved successfully, these objects will be added to this list.
+ * @param budget
+ * 		the transmission budget, or null if all sub-objects should be saved
  * @return
- * 		an ObjectReferenceInfo that contains saved information, this ObjectReferenceInfo is a tree.
+ * 		the index of the node that contains saved information of the object, or -1 if the object does not need an id
+ * 		or it is saved as a stub
  * @throws RemoteExecutionFailedException
- * 		if the object or any of its sub-objects is inserializable
+ * 		if the object or any of its transmitted sub-objects is inserializable
  */
-private ObjectReferenceInfo setIdRecursive(Object obj, ObjectReferenceInfo parent, String fieldName, Set<Object> scannedObject, long threadId, List<Object> objList) throws RemoteExecutionFailedException{
-	if(obj == null) return null;
+private int setIdRecursive(Object obj, ObjectReferenceInfo infoTree, int parent, String fieldName, int depth, Set<Object> scannedObject, long threadId, List<Object> objList, TransmissionBudget budget) throws RemoteExecutionFailedException{
+	if(obj == null) return -1;
+	if(budget != null && parent >= 0 && canBeStub(obj) && budget.canBeStub(obj) && !scannedObject.contains(obj)){
+		int key = budget.getStubKey(obj);
+		if(key < 0 && budget.isExceeded(depth)){
+			key = addStubObject(obj, threadId);
+			budget.addStub(obj, key);
+		}
+		if(key >= 0){
+			infoTree.addStub(parent, fieldName, key, SizeEstimator.estimateSize(obj));
+			return -1;
+		}
+	}
 	synchronized(obj){
-		ObjectReferenceInfo info = setId_Sole(obj,parent,fieldName,scannedObject,threadId,objList);
-		if(info == null) return null;
+		int info = setId_Sole(obj,infoTree,parent,fieldName,scannedObject,threadId,objList);
+		if(info < 0) return -1;
+		if(budget != null)
+			budget.count();
+		Object[] elements = ObjectCodecs.getElements(obj);
+		if(elements != null){
+			//a coded object is a single node, only its elements are its sub-objects
+			for(int i=0; i<elements.length; i++){
+				//an element cannot be cut from the object, so it is never a stub
+				if(budget != null && !ObjectPatch.isValue(elements[i]))
+					budget.keep(elements[i]);
+				setIdRecursive(elements[i],infoTree,info,ObjectCodecs.getElementName(i),depth+1,scannedObject,threadId,objList,budget);
+			}
+			return info;
+		}
 		Class<?> clazz = obj.getClass();
-			Field[] fields = clazz.getDeclaredFields();
+		if(clazz.isArray()){
+			//elements of an array are not saved as nodes, no stub can be found from them
+			if(budget != null && !clazz.getComponentType().isPrimitive()){
+				Map<Object,Object> keptObjects = new IdentityHashMap<Object,Object>();
+				for(Object element : (Object[]) obj)
+					keepGraph(element, budget, keptObjects);
+			}
+			return info;
+		}
+		//a stub is faulted in only when woven code reads it, the code of other classes reads null instead
+		boolean canHaveStubs = Remoteable.class.isInstance(obj);
+			Field[] fields = FieldAccessor.get(clazz).getInstanceFields();
 			for(Field field:fields){
-				if(field.isEnumConstant()) continue;
-				int modifier=field.getModifiers();
-				if(Modifier.isStatic(modifier)) continue;
-				if(Modifier.isTransient(modifier)) continue;
 				try {
 					Object value = CodeHandler.getFieldValue(field, obj);
-					setIdRecursive(value, info,field.getName(),scannedObject,threadId,objList);
+					if(budget != null && !canHaveStubs && !ObjectPatch.isValue(value))
+						budget.keep(value);
+					setIdRecursive(value,infoTree,info,field.getName(),depth+1,scannedObject,threadId,objList,budget);
 				} catch (IllegalAccessException e) {
 					e.printStackTrace();
 				} catch (IllegalArgumentException e) {
@@ -536,10 +763,95 @@ private ObjectReferenceInfo setIdRecursive(Object obj, ObjectReferenceInfo paren
 				}
 			
 		}
+		if(budget != null)
+			keepUnscannedFields(obj, budget);
 			return info;
 	}
 }
 
+/**
+ * keep the fields of an object that are transmitted but are not scanned by setIdRecursive, they are the fields
+ * of super classes and the transient fields that classes of the platform serialize themselves. Their values are
+ * not saved as nodes, so no stub can be found from them.
+ * @param obj
+ * 		the object
+ * @param budget
+ * 		the transmission budget
+ */
+private void keepUnscannedFields(Object obj, TransmissionBudget budget){
+	Class<?> clazz = obj.getClass();
+	Map<Object,Object> keptObjects = null;
+	for(Field field : FieldAccessor.get(clazz).getStateFields()){
+		if(field.getDeclaringClass() == clazz && !Modifier.isTransient(field.getModifiers())) continue;
+		if(keptObjects == null)
+			keptObjects = new IdentityHashMap<Object,Object>();
+		try {
+			keepGraph(CodeHandler.getFieldValue(field, obj), budget, keptObjects);
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+		} catch (NoSuchFieldException e) {
+			e.printStackTrace();
+		}
+	}
+}
+
+/**
+ * keep an object and all its sub-objects within a transmission budget, they are transmitted even if they
+ * have been saved as stubs, see TransmissionBudget.keep. It is used for objects that are not saved as
+ * nodes, such as the elements of arrays.
+ * @param obj
+ * 		the object
+ * @param budget
+ * 		the transmission budget
+ * @param keptObjects
+ * 		objects that are already kept by this walk, they are skipped
+ */
+private void keepGraph(Object obj, TransmissionBudget budget, Map<Object,Object> keptObjects){
+	if(ObjectPatch.isValue(obj) || keptObjects.containsKey(obj)) return;
+	keptObjects.put(obj, obj);
+	budget.keep(obj);
+	Class<?> clazz = obj.getClass();
+	if(clazz.isArray()){
+		if(clazz.getComponentType().isPrimitive()) return;
+		for(Object element : (Object[]) obj)
+			keepGraph(element, budget, keptObjects);
+		return;
+	}
+	Object[] elements = ObjectCodecs.getElements(obj);
+	if(elements != null){
+		for(Object element : elements)
+			keepGraph(element, budget, keptObjects);
+		return;
+	}
+	for(Field field : FieldAccessor.get(clazz).getStateFields()){
+		try {
+			keepGraph(CodeHandler.getFieldValue(field, obj), budget, keptObjects);
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+		} catch (NoSuchFieldException e) {
+			e.printStackTrace();
+		}
+	}
+}
+
+/**
+ * check if an object can be saved as a stub, only objects that need an id can be stubs
+ * @param obj
+ * 		the object
+ * @return
+ * 		if the object can be a stub or not
+ */
+private boolean canBeStub(Object obj){
+	Class<?> clazz = obj.getClass();
+	if(clazz.isEnum() || clazz.isAnnotation() || clazz.isPrimitive()) return false;
+	if(BasicType.isBasicType(clazz)) return false;
+	return Serializable.class.isInstance(obj);
+}
+
 /**
  * this method will remove all saved information of objects that is binded to current thread, that is to say,
  * their reference time will be decreased, they will no longer be binded to current thread, and their id may
@@ -547,6 +859,7 @@ private ObjectReferenceInfo setIdRecursive(Object obj, ObjectReferenceInfo paren
  */
 public void removeAllRemoteObjectInCurrentThread(){
 	long threadId = Thread.currentThread().getId();
+	removeStubObjects(threadId);
 	List<Object> objList = null;
 	objList = methodRemoteObject.get(threadId);
 	if(objList == null) return;
@@ -791,14 +1104,17 @@ private boolean removeSign_Sole(Object obj,Set<Object> scannedObject, long threa
 		synchronized(obj){
 			if(!removeSign_Sole(obj,scannedObject,threadId,objList))
 				return false;
+			Object[] elements = ObjectCodecs.getElements(obj);
+			if(elements != null){
+				for(Object element : elements)
+					if(!removeSignRecursive(element,scannedObject,threadId,objList))
+						return false;
+				return true;
+			}
 			Class<?> clazz = obj.getClass();
-			Field[] fields = clazz.getDeclaredFields();
+			Field[] fields = FieldAccessor.get(clazz).getInstanceFields();
 			for(Field field:fields){
 				try {
-					if(field.isEnumConstant()) continue;
-					int modifier=field.getModifiers();
-					if(Modifier.isStatic(modifier)) continue;
-					if(Modifier.isTransient(modifier)) continue;
 					Object value = CodeHandler.getFieldValue(field, obj);
 					if(!removeSignRecursive(value,scannedObject,threadId,objList))
 						return false;
@@ -0,0 +1,246 @@
+package com.Josh.library.client.component;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.Josh.library.client.interfaces.Immutable;
+import com.Josh.library.core.component.ObjectFingerprint;
+import com.Josh.library.core.component.ObjectPatch;
+import com.Josh.library.core.component.RemoteObjectWrapper;
+import com.Josh.library.core.component.WeakIdentityMap;
+import com.Josh.library.core.interfaces.ObjectVersionTracker;
+
+import android.util.Log;
+
+/**
+ * This class remembers which objects are resident in the server. An object becomes resident
+ * after it is transmitted to the server and synchronized back, if its fingerprint in the client
+ * is the same as the fingerprint of the server copy. A resident object is transmitted by its
+ * resident key only, as long as the shape of its object graph does not change. Remoteable objects
+ * in the graph whose versions changed since then are transmitted as patches. Objects of Immutable
+ * classes are pinned, they are resident whatever their sizes are, and they are never checked again.
+ * <p>
+ * Records are kept by the identities of the objects, and an object is only resident while its
+ * fingerprint, which mixes every value of its graph with all its bits, is the one that is remembered.
+ * A graph is walked once before it is transmitted, and it is only walked again after the call if the
+ * server copy is different from it or if objects of the graph are written during the call.
+ * @author Josh
+ *
+ */
+public class ResidentObjectTable {
+	private static final String Tag = "ResidentObjectTable";
+
+	//objects that are smaller than this size are always transmitted
+	private static final long MIN_RESIDENT_SIZE = 1024;
+	private final WeakIdentityMap<Object,ResidentRecord> object2Record = new WeakIdentityMap<Object,ResidentRecord>();
+	//fingerprints of wrapped objects when they are prepared, until the wrappers are committed
+	private final WeakIdentityMap<RemoteObjectWrapper,ObjectFingerprint> preparedStamps =
+			new WeakIdentityMap<RemoteObjectWrapper,ObjectFingerprint>();
+	private int nextKey = 0;
+	private long nextVersion = 0;
+
+	/**
+	 * Information of a resident object
+	 */
+	private static class ResidentRecord{
+		int key;
+		long version;
+		long stamp;
+		long size;
+		WeakReference<Object>[] nodes;
+		long[] nodeVersions;
+	}
+	
+	//versions of Remoteable objects are maintained by the write barrier of the aspect
+	private static final ObjectVersionTracker tracker = new ObjectVersionTracker(){
+		@Override
+		public long getVersion(Object obj) {
+			return RemoteExecute.getVersion(obj);
+		}
+	};
+
+	/**
+	 * Prepare a wrapper before it is transmitted. If the wrapped object is resident in the server
+	 * and the shape of its graph is not changed, the object will be referred by its resident key,
+	 * together with patches of changed objects. Otherwise the object will be transmitted with a new
+	 * version, and the server will keep it. A wrapper with stubs is never resident, since the server
+	 * copy is not complete.
+	 * @param wrapper
+	 * 		the wrapper
+	 */
+	public void prepare(RemoteObjectWrapper wrapper){
+		if(wrapper == null) return;
+		if(wrapper.isEmpty() || wrapper.isBasicType() || !wrapper.needTransmit()) return;
+		if(wrapper.hasStubs()) return;
+		Object obj = wrapper.getLocalObject();
+		if(obj == null) return;
+		if(obj.getClass().isAnnotationPresent(Immutable.class)){
+			prepareImmutable(wrapper, obj);
+			return;
+		}
+		ObjectFingerprint stamp = new ObjectFingerprint(obj, tracker);
+		if(stamp.getEstimatedSize() < MIN_RESIDENT_SIZE) return;
+		synchronized(this){
+			ResidentRecord record = getRecord(obj);
+			if(record != null && record.stamp == stamp.getValue()){
+				ObjectPatch[] patches = getPatches(record, stamp);
+				if(patches != null){
+					wrapper.setResidentReference(record.key, record.version, ++nextVersion, stamp.getEstimatedSize(),
+							patches.length == 0? null : patches);
+					preparedStamps.put(wrapper, stamp);
+					Log.i(Tag, obj.getClass().getName()+" is resident in server, key = "+record.key+", "+patches.length+" patches");
+					return;
+				}
+			}
+			int key = record == null? nextKey++ : record.key;
+			wrapper.setResident(key, ++nextVersion, stamp.getEstimatedSize());
+			preparedStamps.put(wrapper, stamp);
+		}
+	}
+	
+	/**
+	 * Prepare a wrapper of an immutable object, the object is referred by its resident key as soon
+	 * as it is resident, without checking its graph
+	 * @param wrapper
+	 * 		the wrapper
+	 * @param obj
+	 * 		the immutable object
+	 */
+	private void prepareImmutable(RemoteObjectWrapper wrapper, Object obj){
+		wrapper.setPinned(true);
+		synchronized(this){
+			ResidentRecord record = getRecord(obj);
+			if(record != null){
+				wrapper.setResidentReference(record.key, record.version, record.version, record.size, null);
+				return;
+			}
+		}
+		long size = new ObjectFingerprint(obj).getEstimatedSize();
+		synchronized(this){
+			wrapper.setResident(nextKey++, ++nextVersion, size);
+		}
+	}
+	
+	/**
+	 * Get patches of objects in a resident graph that are written since the graph is remembered
+	 * @param record
+	 * 		the record of the resident graph
+	 * @param stamp
+	 * 		the current fingerprint of the graph
+	 * @return
+	 * 		the patches, or null if the graph cannot be patched and must be transmitted
+	 */
+	private ObjectPatch[] getPatches(ResidentRecord record, ObjectFingerprint stamp){
+		List<Object> nodes = stamp.getTrackedNodes();
+		long[] versions = stamp.getTrackedVersions();
+		if(nodes.size() != record.nodes.length) return null;
+		RemoteObjectInformationSystem info = ClientEngine.getClientEngine().getRemoteObjectInfoSystem();
+		List<ObjectPatch> patches = new ArrayList<ObjectPatch>();
+		for(int i=0; i<versions.length; i++){
+			Object node = nodes.get(i);
+			//a different object at the same position, the graph is reshaped
+			if(record.nodes[i].get() != node) return null;
+			if(record.nodeVersions[i] == versions[i]) continue;
+			int id = info.getIdFromObject(node);
+			if(id<0) return null;
+			patches.add(new ObjectPatch(id, node));
+		}
+		return patches.toArray(new ObjectPatch[patches.size()]);
+	}
+
+	/**
+	 * Remember a wrapped object as a resident object after the method returns and the object is
+	 * synchronized. If the fingerprint of the object is different from the fingerprint of the
+	 * server copy, the object is not remembered. The fingerprint of the object when it is prepared is
+	 * used if it is the same as the fingerprint of the server copy and no tracked object of the graph
+	 * is written since then, otherwise the graph is walked again.
+	 * @param wrapper
+	 * 		the wrapper
+	 * @param serverFingerprint
+	 * 		the fingerprint of the server copy, or null if the server did not keep it
+	 */
+	@SuppressWarnings("unchecked")
+	public void commit(RemoteObjectWrapper wrapper, Long serverFingerprint){
+		if(wrapper == null || wrapper.getResidentKey()<0) return;
+		Object obj = wrapper.getLocalObject();
+		if(obj == null) return;
+		//an immutable object is never checked again
+		if(wrapper.isPinned() && wrapper.isResident()) return;
+		if(serverFingerprint == null){
+			invalidate(obj);
+			return;
+		}
+		ObjectFingerprint stamp;
+		synchronized(this){
+			stamp = preparedStamps.remove(wrapper);
+		}
+		if(stamp == null || stamp.getContentValue() != serverFingerprint || isWritten(stamp))
+			stamp = new ObjectFingerprint(obj, tracker);
+		if(stamp.getContentValue() != serverFingerprint){
+			Log.i(Tag, obj.getClass().getName()+" is different from its server copy, key = "+wrapper.getResidentKey());
+			invalidate(obj);
+			return;
+		}
+		List<Object> nodes = stamp.getTrackedNodes();
+		ResidentRecord record = new ResidentRecord();
+		record.key = wrapper.getResidentKey();
+		record.version = wrapper.getResidentVersion();
+		record.stamp = stamp.getValue();
+		record.size = wrapper.getResidentSize();
+		record.nodes = new WeakReference[nodes.size()];
+		for(int i=0; i<record.nodes.length; i++)
+			record.nodes[i] = new WeakReference<Object>(nodes.get(i));
+		record.nodeVersions = stamp.getTrackedVersions();
+		synchronized(this){
+			object2Record.put(obj, record);
+		}
+	}
+
+	/**
+	 * Check if a tracked object of a graph is written since the fingerprint of the graph is computed
+	 * @param stamp
+	 * 		the fingerprint of the graph
+	 * @return
+	 * 		is written or not
+	 */
+	private static boolean isWritten(ObjectFingerprint stamp){
+		List<Object> nodes = stamp.getTrackedNodes();
+		long[] versions = stamp.getTrackedVersions();
+		for(int i=0; i<versions.length; i++)
+			if(tracker.getVersion(nodes.get(i)) != versions[i]) return true;
+		return false;
+	}
+
+	/**
+	 * Forget a resident object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the resident key of the object, or -1 if the object is not resident
+	 */
+	public synchronized int invalidate(Object obj){
+		ResidentRecord record = object2Record.remove(obj);
+		if(record == null) return -1;
+		return record.key;
+	}
+
+	/**
+	 * Forget all resident objects
+	 */
+	public synchronized void clear(){
+		object2Record.clear();
+		preparedStamps.clear();
+	}
+
+	/**
+	 * Get the record of an object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the record, or null if the object is not resident
+	 */
+	private ResidentRecord getRecord(Object obj){
+		return object2Record.get(obj);
+	}
+}
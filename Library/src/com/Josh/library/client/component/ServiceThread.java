@@ -23,6 +23,18 @@ public class ServiceThread extends Thread {
 	private int port;
 	private Context context;
 	private final static String Tag = "ServiceThread";
+	//size of a bandwidth probe in bytes, it is large enough to be more than a round trip
+	private final static int PROBE_SIZE = 32 * 1024;
+	//the bandwidth is probed if it has not been measured for this time, in nanoseconds
+	private final static long PROBE_INTERVAL = 60L * 1000000000L;
+	//the link is pinged if no round trip has been measured for this time, in nanoseconds, the time
+	//is doubled after each ping that succeeds, up to the maximum
+	private final static long MIN_PING_INTERVAL = 2L * 1000000000L;
+	private final static long MAX_PING_INTERVAL = 64L * 1000000000L;
+	//offloading is allowed if the round trip time is shorter, in nanoseconds
+	private final static long MAX_ROUND_TRIP_TIME = 1000L * 1000000L;
+	//interval of checking the link, in milliseconds
+	private final static long CHECK_INTERVAL = 1000;
 
 	public ServiceThread(Context context, SocketHandler handler, String ip, int port){
 		this.socketHandler = handler;
@@ -77,26 +89,34 @@ public class ServiceThread extends Thread {
 			}
 			if(stop) return;		
 			
-			//ping server
+			//check the link, round trips are measured by the traffic, and the server is only pinged
+			//when the link has been idle for a while, less and less often while it stays idle
+			LinkEstimator link = ClientEngine.getClientEngine().getLinkEstimator();
+			long pingInterval = MIN_PING_INTERVAL;
+			boolean isReachable = true;
 			while(socketHandler.isConnected() && socketHandler.isRecieveServiceOn()){
 				if(stop) return;
-				try {
-					long time = pingTime();
-		//			Log.d(Tag, "Ping time: "+time+"ms");
-					if(stop) return;
-					if(time<1000)
-						//connection is stable, ready for offloading
-						ClientEngine.getClientEngine().setCanExecuteRemotely(true);
-					else
-						// connection is unstable, it is unsuitable for offloading
-						ClientEngine.getClientEngine().setCanExecuteRemotely(false);
-				} catch (RemoteExecutionFailedException e) {
-					if(stop) return;
-					// failed to ping server, it is unsuitable for offloading
-					Log.i(Tag, "Failed to ping server...");
-					ClientEngine.getClientEngine().setCanExecuteRemotely(false);
+				long age = link.getRoundTripAge();
+				if(!isReachable || age < 0 || age >= pingInterval){
+					try {
+						ping();
+						if(stop) return;
+						probeBandwidth();
+						if(stop) return;
+						isReachable = true;
+						pingInterval = Math.min(pingInterval * 2, MAX_PING_INTERVAL);
+					} catch (RemoteExecutionFailedException e) {
+						if(stop) return;
+						// failed to ping server, it is unsuitable for offloading
+						Log.i(Tag, "Failed to ping server...");
+						isReachable = false;
+						pingInterval = MIN_PING_INTERVAL;
+					}
 				}
-				SLEEP(2000);
+				long rtt = link.getRoundTripTime();
+				//connection is stable if its round trip time is short, ready for offloading
+				ClientEngine.getClientEngine().setCanExecuteRemotely(isReachable && rtt >= 0 && rtt < MAX_ROUND_TRIP_TIME);
+				SLEEP(CHECK_INTERVAL);
 			}
 			
 			//connection lost, set unable to execute remotely
@@ -131,6 +151,7 @@ public class ServiceThread extends Thread {
 			e.printStackTrace();
 		}
 		ClientEngine.getClientEngine().setCanExecuteRemotely(false);
+		ClientEngine.getClientEngine().clearSessionState();
 	}
 	
 	/**
@@ -154,28 +175,44 @@ public class ServiceThread extends Thread {
 	}
 	
 	/**
-	 * ping the server, this method will throw a RemoteExecutionFailedException if time out
-	 * @return
-	 * 	ping time
+	 * ping the server once, the round trip is measured by the socket handler when the ping is
+	 * written and when its reply is read. This method will throw a RemoteExecutionFailedException if time out
 	 * @throws RemoteExecutionFailedException
-	 * 		if cannot get the ping reply in 5 seconds
+	 * 		if cannot get the ping reply in the timeout of a round trip
 	 */
-	private long pingTime() throws RemoteExecutionFailedException{
+	private void ping() throws RemoteExecutionFailedException{
 		Command cmd = new Command(COMMAND.PING,0);		
-		long time = 0;
-		for(int i=0;i<4;i++){
-			long temp = System.currentTimeMillis();
-			try {
-				socketHandler.transmit(cmd);
-				socketHandler.WaitForCommand(COMMAND.PING_RETURN, 0, 5000);
-			} catch (Exception e) {
-				throw(new RemoteExecutionFailedException("failed to ping server"));
-			}
-			temp = System.currentTimeMillis() - temp;
-			time+=temp;
+		try {
+			socketHandler.transmit(cmd);
+			socketHandler.WaitForCommand(COMMAND.PING_RETURN, 0,
+					ClientEngine.getClientEngine().getLinkEstimator().getTimeout(0, 1));
+		} catch (Exception e) {
+			throw(new RemoteExecutionFailedException("failed to ping server"));
+		}
+	}
+	
+	/**
+	 * send a probe to the server to measure the bandwidth, if it is allowed and if the bandwidth has not
+	 * been measured by other traffic for a while
+	 * @throws RemoteExecutionFailedException
+	 * 		if cannot get the reply of the probe in its timeout
+	 */
+	private void probeBandwidth() throws RemoteExecutionFailedException{
+		ClientEngine engine = ClientEngine.getClientEngine();
+		LinkEstimator link = engine.getLinkEstimator();
+		if(!engine.isBandwidthProbingOn()) return;
+		long age = link.getBandwidthAge();
+		if(age >= 0 && age < PROBE_INTERVAL) return;
+		Command cmd = new Command(COMMAND.PING,0);
+		cmd.putExtra("probe", new byte[PROBE_SIZE]);
+		long time = System.nanoTime();
+		try {
+			socketHandler.transmit(cmd);
+			socketHandler.WaitForCommand(COMMAND.PING_RETURN, 0, link.getTimeout(PROBE_SIZE, 1));
+		} catch (Exception e) {
+			throw(new RemoteExecutionFailedException("failed to probe the bandwidth"));
 		}
-		time/=4;
-		return time;
+		link.addSample(PROBE_SIZE, 1, System.nanoTime() - time);
 	}
 	
 	/**
@@ -186,13 +223,14 @@ public class ServiceThread extends Thread {
 	 * @throws IOException
 	 */
 	private void SendAPKfile() throws RemoteExecutionFailedException, IOException{
+		LinkEstimator link = ClientEngine.getClientEngine().getLinkEstimator();
 		Command cmd = new Command(COMMAND.CODE_TRANSMIT,0);
 		String apkPath = context.getPackageCodePath();
 		String apkName = new File(apkPath).getName();
 		cmd.putExtra("ask", true);
 		cmd.putExtra("apkName", apkName);
 		socketHandler.transmit(cmd);
-		Command reply = socketHandler.WaitForCommand(COMMAND.CODE_TRANSMIT_RETURN,0,5000);
+		Command reply = socketHandler.WaitForCommand(COMMAND.CODE_TRANSMIT_RETURN,0,link.getTimeout(0, 1));
 		if((Boolean)reply.getExtra("hasException") == true)
 			throw((RemoteExecutionFailedException) reply.getExtra("exception"));
 		if((Boolean)reply.getExtra("needTransmit") == true){			
@@ -206,8 +244,11 @@ public class ServiceThread extends Thread {
 			filecmd.putExtra("ask", false);
 			filecmd.putExtra("apk", apkbytes);
 			filecmd.putExtra("apkName", apkName);
+			long time = System.nanoTime();
 			socketHandler.transmit(filecmd);
-			reply = socketHandler.WaitForCommand(COMMAND.CODE_TRANSMIT_RETURN,0,10000);
+			reply = socketHandler.WaitForCommand(COMMAND.CODE_TRANSMIT_RETURN,0,link.getTimeout(apkbytes.length, 1));
+			//the largest transfer of a session measures the bandwidth well
+			link.addSample(apkbytes.length, 1, System.nanoTime() - time);
 			if((Boolean)reply.getExtra("needTransmit") == false){
 				Log.i(Tag, "Transmit apk file successfully!");
 				return;
@@ -1,11 +1,15 @@
 package com.Josh.library.client.component;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -13,6 +17,8 @@ import com.Josh.library.core.component.Command;
 import com.Josh.library.core.component.RemoteObjectWrapper;
 import com.Josh.library.core.component.Command.COMMAND;
 import com.Josh.library.core.component.StaticFieldVirtualParentObject;
+import com.Josh.library.core.component.WireObjectInputStream;
+import com.Josh.library.core.component.WireObjectOutputStream;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
 
 import android.annotation.SuppressLint;
@@ -34,8 +40,16 @@ public class SocketHandler {
 	private Socket socket;
 	private Set<Thread> waitingThreads;
 	private Set<Command> recievedCommands;
-	private ObjectInputStream is;
-	private ObjectOutputStream os;
+	private WireObjectInputStream is;
+	private WireObjectOutputStream os;
+	private CountingInputStream inputCounter;
+	private CountingOutputStream outputCounter;
+	//bytes transmitted and received by remote calls, by command id
+	private final Map<Integer,long[]> payloadSizes = new HashMap<Integer,long[]>();
+	//times at which small requests were written, by their reply types and command ids
+	private final Map<Long,Long> requestTimes = new HashMap<Long,Long>();
+	//the reply type of each request that is answered at once by the server
+	private static final Map<COMMAND,COMMAND> replyTypes = new HashMap<COMMAND,COMMAND>();
 	private boolean isRecieveThreadOn = false;
 	private TransmitThread transmitThread;
 	private boolean isTransmitServiceOn;
@@ -43,6 +57,12 @@ public class SocketHandler {
 	private Handler waitHandler = new Handler();
 	static private final String Tag = "SocketHandler";
 	
+	static{
+		replyTypes.put(COMMAND.PING, COMMAND.PING_RETURN);
+		replyTypes.put(COMMAND.CODE_TRANSMIT, COMMAND.CODE_TRANSMIT_RETURN);
+		replyTypes.put(COMMAND.EXECUTE_METHOD, COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN);
+	}
+	
 	public SocketHandler(){
 		waitingThreads = new HashSet<Thread>();
 		recievedCommands = new HashSet<Command>();
@@ -63,8 +83,10 @@ public class SocketHandler {
 		this.IPAddress = ip;
 		this.port = port;
 		socket = new Socket(ip,port);
-		os = new ObjectOutputStream(socket.getOutputStream());
-		is = new ObjectInputStream(socket.getInputStream());
+		outputCounter = new CountingOutputStream(socket.getOutputStream());
+		inputCounter = new CountingInputStream(socket.getInputStream());
+		os = new WireObjectOutputStream(outputCounter);
+		is = new WireObjectInputStream(inputCounter, null);
 		isConnected = true;
 		Log.i(Tag, "Connect success! Server address: "+this.IPAddress+":"+this.port);
 	}
@@ -91,6 +113,12 @@ public class SocketHandler {
 		synchronized(this.recievedCommands){
 			recievedCommands.clear();
 		}
+		synchronized(payloadSizes){
+			payloadSizes.clear();
+		}
+		synchronized(requestTimes){
+			requestTimes.clear();
+		}
 		isConnected = false;
 		Log.i(Tag, "Disconnected from server: "+this.IPAddress+":"+this.port);
 	}
@@ -140,6 +168,92 @@ public class SocketHandler {
 		return this.isRecieveThreadOn;
 	}
 	
+	/**
+	 * forget all large values that have been sent to the server, so that they will be sent
+	 * with their content again
+	 */
+	public void forgetBlobs(){
+		if(os != null)
+			os.forgetBlobs();
+	}
+	
+	/**
+	 * Get the amount of bytes that a remote call has transmitted and received so far, and forget it.
+	 * The method package and its parameters are counted when they are written, and the result when
+	 * it is read.
+	 * @param commandId
+	 * 		the command id of the call
+	 * @return
+	 * 		the bytes transmitted and the bytes received
+	 */
+	public long[] takePayloadSizes(int commandId){
+		synchronized(payloadSizes){
+			long[] sizes = payloadSizes.remove(commandId);
+			return sizes == null? new long[2] : sizes;
+		}
+	}
+	
+	/**
+	 * Measure round trips passively. A small request that the server answers at once is timed from
+	 * the moment it has been written, so the time it waits in the transmit queue behind other commands
+	 * is not counted, until its reply is read.
+	 * @param cmd
+	 * 		the command
+	 * @param size
+	 * 		the amount of bytes of the command
+	 * @param isReceived
+	 * 		if the command is received or transmitted
+	 */
+	private void measureRoundTrip(Command cmd, long size, boolean isReceived){
+		long now = System.nanoTime();
+		if(isReceived){
+			Long time;
+			synchronized(requestTimes){
+				time = requestTimes.remove(getRoundTripKey(cmd.getCOMMAND(), cmd.getCommandId()));
+			}
+			if(time != null)
+				ClientEngine.getClientEngine().getLinkEstimator().addSample(0, 1, now - time);
+			return;
+		}
+		COMMAND replyType = replyTypes.get(cmd.getCOMMAND());
+		if(replyType == null) return;
+		long key = getRoundTripKey(replyType, cmd.getCommandId());
+		synchronized(requestTimes){
+			//a large request is also a transfer, its reply does not tell the round trip time
+			if(size < LinkEstimator.SMALL_TRANSFER)
+				requestTimes.put(key, now);
+			else
+				requestTimes.remove(key);
+		}
+	}
+	
+	private static long getRoundTripKey(COMMAND replyType, int commandId){
+		return ((long) replyType.ordinal() << 32) | (commandId & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Count bytes of a command if it belongs to the payload of a remote call
+	 * @param cmd
+	 * 		the command
+	 * @param size
+	 * 		the amount of bytes of the command
+	 * @param isReceived
+	 * 		if the command is received or transmitted
+	 */
+	private void countPayload(Command cmd, long size, boolean isReceived){
+		COMMAND type = cmd.getCOMMAND();
+		if(type != COMMAND.EXECUTE_METHOD && type != COMMAND.EXECUTE_METHOD_PARAMETER
+				&& type != COMMAND.EXECUTE_METHOD_RESULT_RETURN) return;
+		synchronized(payloadSizes){
+			long[] sizes = payloadSizes.get(cmd.getCommandId());
+			if(sizes == null){
+				sizes = new long[2];
+				payloadSizes.put(cmd.getCommandId(), sizes);
+			}
+			sizes[isReceived? 1 : 0] += size;
+		}
+	}
+	
 	/**
 	 * check if network is connected
 	 * @return
@@ -159,9 +273,10 @@ public class SocketHandler {
 	 * @param commandId
 	 * 			The command id which is used to filter commands
 	 * @param MaxWaitingTime
-	 * 			Maximum waiting microseconds, if no command recieved when time out,
+	 * 			Maximum waiting milliseconds, if no command recieved when time out,
 	 * 			this method will stop waiting and throws an RemoteExecutionFailedException.
-	 * 			if this paremeter is 0, the maximum waiting time is ignored.
+	 * 			if this paremeter is 0, the maximum waiting time is ignored. It should be given by
+	 * 			LinkEstimator.getTimeout, which is backed off when it expires.
 	 * @return recieved command
 	 * @throws RemoteExecutionFailedException when time out or connection losing
 	 */
@@ -224,6 +339,7 @@ public class SocketHandler {
 					synchronized(waitingThreads){
 						waitingThreads.remove(thisThread);
 					}
+					ClientEngine.getClientEngine().getLinkEstimator().backOff();
 					throw(new RemoteExecutionFailedException("Waiting for command "+cmd+"("+commandId+") time out!"));
 				}
 				if(!isConnected()){
@@ -247,7 +363,10 @@ public class SocketHandler {
 			 throw(new IOException("Socket is not connected!"));
 		 if(is == null)
 				throw(new IOException("InputStream is null!"));
+		 long count = inputCounter.getCount();
 		 Command cmd = (Command) is.readObject();
+		 countPayload(cmd, inputCounter.getCount() - count, true);
+		 measureRoundTrip(cmd, inputCounter.getCount() - count, true);
 		 return cmd;
 	}
 
@@ -357,8 +476,14 @@ public class SocketHandler {
 								return;
 						}
 					}
+					//large values in method packages are sent as blobs, the server can report missing blobs for them
+					os.setBlobEnabled(cmd.getCOMMAND() == COMMAND.EXECUTE_METHOD
+							|| cmd.getCOMMAND() == COMMAND.EXECUTE_METHOD_PARAMETER);
+					long count = outputCounter.getCount();
 					os.writeObject(cmd);
 					os.reset();
+					countPayload(cmd, outputCounter.getCount() - count, false);
+					measureRoundTrip(cmd, outputCounter.getCount() - count, false);
 				} catch (IOException e) {
 					Log.e(Tag, "An error occured when transmitting data, transmit service quited!");
 					isTransmitServiceOn = false;
@@ -372,6 +497,83 @@ public class SocketHandler {
 		
 	}
 	
+	/**
+	 * this method will be called when the server asks for objects that were not transmitted with
+	 * their parent objects, see TransmissionBudget. The objects are wrapped with the budget of the
+	 * method call, so their own sub-objects may be stubs again.
+	 * @param cmd
+	 * 		recieved command
+	 */
+	private void onStubRequest(Command cmd){
+		RemoteObjectInformationSystem info = ClientEngine.getClientEngine().getRemoteObjectInfoSystem();
+		int[] keys = (int[]) cmd.getExtra("stubKeys");
+		long threadId = (Long) cmd.getExtra("threadId");
+		Command reply = new Command(COMMAND.OBJECT_REQUEST_RETURN,cmd.getCommandId());
+		RemoteObjectWrapper[] wrappers = new RemoteObjectWrapper[keys.length];
+		long ClientThreadId = -1;
+		try {
+			ClientThreadId = info.getClientThreadId(threadId);
+			TransmissionBudget budget = info.getTransmissionBudget(ClientThreadId);
+			Object[] objs = new Object[keys.length];
+			for(int i=0; i<keys.length; i++){
+				objs[i] = info.getStubObject(keys[i]);
+				if(objs[i] == null)
+					throw(new RemoteExecutionFailedException("Stub object "+keys[i]+" does not exist"));
+			}
+			//faulted objects are wrapped themselves, they are no longer stubs
+			if(budget != null){
+				budget.newRound();
+				for(Object obj : objs){
+					budget.removeStub(obj);
+					budget.protect(obj);
+				}
+			}
+			for(int i=0; i<keys.length; i++)
+				wrappers[i] = info.SaveObjectInfoInAnotherThread(objs[i], ClientThreadId, budget);
+			for(RemoteObjectWrapper wrapper : wrappers)
+				info.updateStubObjects(wrapper, budget);
+			Log.i(Tag, keys.length+" stub objects are faulted in by the server");
+			reply.putExtra("wrappers", wrappers);
+			reply.putExtra("hasException", false);
+		} catch (RemoteExecutionFailedException e) {
+			reply.putExtra("hasException", true);
+			reply.putExtra("exception", e);
+			reply.putExtra("exceptionType", "RemoteExecutionFailedException");
+			Log.e(Tag, "An error occur when fault in stub objects, error message: "+ e.getMessage());
+			removeWrappedObjects(wrappers, ClientThreadId);
+		}catch(NullPointerException e) {
+			reply.putExtra("hasException", true);
+			reply.putExtra("exception", e);
+			reply.putExtra("exceptionType", "NullPointerException");
+			Log.e(Tag, "An error occur when fault in stub objects");
+			removeWrappedObjects(wrappers, ClientThreadId);
+		}
+		
+		try {
+			transmit(reply);			
+		} catch (IOException e) {
+			e.printStackTrace();
+			Log.e(Tag, "Unable to transmit reply "+cmd.getCOMMAND()+" to server!");
+			if(!(Boolean)reply.getExtra("hasException"))
+				removeWrappedObjects(wrappers, ClientThreadId);
+		}
+	}
+	
+	/**
+	 * remove saved information of wrapped objects when they cannot be sent to the server
+	 * @param wrappers
+	 * 		the wrappers, some of them may be null
+	 * @param ClientThreadId
+	 * 		id of the client thread which these objects are binded to
+	 */
+	private void removeWrappedObjects(RemoteObjectWrapper[] wrappers, long ClientThreadId){
+		RemoteObjectInformationSystem info = ClientEngine.getClientEngine().getRemoteObjectInfoSystem();
+		for(RemoteObjectWrapper wrapper : wrappers){
+			if(wrapper != null && wrapper.getLocalObject() != null)
+				info.removeObjectInfoInAnotherThread(wrapper.getLocalObject(), ClientThreadId);
+		}
+	}
+	
 	/**
 	 * this method will be called when a command is recieved
 	 * @param cmd
@@ -380,6 +582,12 @@ public class SocketHandler {
 	private void onRecieve(Command cmd){
 		COMMAND CMD = cmd.getCOMMAND();
 		
+		if(CMD == COMMAND.OBJECT_REQUEST && cmd.getExtra("stubKeys") != null){
+			//if the command is a request for stub objects
+			onStubRequest(cmd);
+			return;
+		}
+		
 		if(CMD == COMMAND.OBJECT_REQUEST){
 			//if the command is an object request
 			RemoteObjectInformationSystem info = ClientEngine.getClientEngine().getRemoteObjectInfoSystem();
@@ -429,5 +637,68 @@ public class SocketHandler {
 		}
 	}
 	
+	/**
+	 * An InputStream that counts the bytes read from the socket, it is only read by the recieve thread
+	 */
+	private static class CountingInputStream extends FilterInputStream{
+		private volatile long count = 0;
+		
+		CountingInputStream(InputStream in){
+			super(in);
+		}
+		
+		long getCount(){
+			return count;
+		}
+		
+		@Override
+		public int read() throws IOException{
+			int b = super.read();
+			if(b >= 0) count++;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			int n = super.read(b, off, len);
+			if(n > 0) count += n;
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException{
+			long skipped = super.skip(n);
+			if(skipped > 0) count += skipped;
+			return skipped;
+		}
+	}
+	
+	/**
+	 * An OutputStream that counts the bytes written to the socket, it is only written by the transmit thread
+	 */
+	private static class CountingOutputStream extends FilterOutputStream{
+		private volatile long count = 0;
+		
+		CountingOutputStream(OutputStream out){
+			super(out);
+		}
+		
+		long getCount(){
+			return count;
+		}
+		
+		@Override
+		public void write(int b) throws IOException{
+			out.write(b);
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+	
 	
 }
@@ -0,0 +1,226 @@
+package com.Josh.library.client.component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * A Speculation is a call that is executed locally and remotely at the same time, see
+ * ClientEngine.setSpeculationMargin. Each way runs in a thread of a shared pool. The first way that
+ * finishes claims the call, the result of the other way is discarded. The remote way claims the call
+ * before it synchronizes objects, so that a call that has lost does not change anything.
+ * <p>
+ * At most MAX_SPECULATIONS calls are executed both ways at the same time, so that each of them keeps
+ * two threads of the pool. A call beyond this is executed locally in the calling thread, the times of
+ * both ways are close anyway. Threads of the pool are daemons, and they stop when they are idle.
+ * @author Josh
+ *
+ */
+class Speculation {
+	private static final String Tag = "Speculation";
+	//the amount of calls that can be executed both ways at the same time
+	static final int MAX_SPECULATIONS = 4;
+	private static final long KEEP_ALIVE_SECONDS = 60;
+	private static final Semaphore slots = new Semaphore(MAX_SPECULATIONS);
+	//the speculation of which the current thread executes one way
+	private static final ThreadLocal<Speculation> current = new ThreadLocal<Speculation>();
+	private static ThreadPoolExecutor executor = null;
+	private static final int NONE = 0;
+	private static final int LOCAL = 1;
+	private static final int REMOTE = 2;
+	private int winner = NONE;
+	private boolean isFinished = false;
+	private boolean isLocalDone = false;
+	private int runningWays = 2;
+	private Object result;
+	private InvocationTargetException exception;
+	private Object localResult;
+	private InvocationTargetException localException;
+
+	private Speculation(){
+	}
+
+	/**
+	 * Get the speculation of which the current thread executes one way
+	 * @return
+	 * 		the speculation, or null if the current thread does not execute a speculative call
+	 */
+	static Speculation current(){
+		return current.get();
+	}
+
+	/**
+	 * Execute a call locally and remotely at the same time, and return the result of the way that
+	 * finishes first. The other way keeps running until it finishes, its result is discarded. If the
+	 * remote way fails, the result of the local way is returned. If too many calls are executed both
+	 * ways, the call is executed locally in the calling thread.
+	 * @param local
+	 * 		the local execution of the call
+	 * @param remote
+	 * 		the remote execution of the call, it throws an InvocationTargetException if the method throws
+	 * 		an exception, and any other exception if the call cannot be executed remotely
+	 * @return
+	 * 		the result of the call
+	 * @throws InvocationTargetException
+	 * 		if the way that has won has thrown an exception, it is the exception of the method
+	 */
+	static Object execute(final Callable<Object> local, final Callable<Object> remote) throws InvocationTargetException{
+		if(!slots.tryAcquire()){
+			Log.i(Tag, "Too many speculative calls, the call is executed locally!");
+			try {
+				return local.call();
+			} catch (Throwable e) {
+				throw(new InvocationTargetException(e));
+			}
+		}
+		final Speculation call = new Speculation();
+		ThreadPoolExecutor executor = getExecutor();
+		executor.execute(new Runnable(){
+			@Override
+			public void run() {
+				current.set(call);
+				try {
+					Object result = null;
+					InvocationTargetException exception = null;
+					try {
+						result = local.call();
+					} catch (Throwable e) {
+						exception = new InvocationTargetException(e);
+					}
+					if(!call.finishLocal(result, exception))
+						Log.i(Tag, "Local execution finished later, its result is discarded!");
+				} finally {
+					current.remove();
+					call.finishWay();
+				}
+			}
+		});
+		executor.execute(new Runnable(){
+			@Override
+			public void run() {
+				current.set(call);
+				try {
+					call.finishRemote(remote.call(), null);
+				} catch (InvocationTargetException e) {
+					call.finishRemote(null, e);
+				} catch (Throwable e) {
+					Log.e(Tag, "Remote execution failed, waiting for the local execution!");
+					call.failRemote();
+				} finally {
+					current.remove();
+					call.finishWay();
+				}
+			}
+		});
+		return call.getResult();
+	}
+
+	/**
+	 * claim the call for the remote way
+	 * @return
+	 * 		if the remote way has won, or false if the local way has finished first
+	 */
+	synchronized boolean claimRemote(){
+		if(winner != NONE) return false;
+		winner = REMOTE;
+		return true;
+	}
+
+	/**
+	 * give the result of the remote way, it is discarded if the local way has claimed the call
+	 */
+	private synchronized void finishRemote(Object result, InvocationTargetException exception){
+		if(winner == NONE)
+			winner = REMOTE;
+		if(winner == REMOTE && !isFinished)
+			finish(result, exception);
+	}
+
+	/**
+	 * tell that the remote way has failed, the call is left to the local way even if the remote way
+	 * has claimed it
+	 */
+	private synchronized void failRemote(){
+		if(winner != REMOTE || isFinished) return;
+		winner = NONE;
+		if(isLocalDone){
+			winner = LOCAL;
+			finish(localResult, localException);
+		}
+	}
+
+	/**
+	 * give the result of the local way, it is kept in case the remote way fails after it has claimed
+	 * the call
+	 * @return
+	 * 		if the local way has won
+	 */
+	private synchronized boolean finishLocal(Object result, InvocationTargetException exception){
+		isLocalDone = true;
+		localResult = result;
+		localException = exception;
+		if(winner != NONE) return false;
+		winner = LOCAL;
+		finish(result, exception);
+		return true;
+	}
+
+	private void finish(Object result, InvocationTargetException exception){
+		this.result = result;
+		this.exception = exception;
+		isFinished = true;
+		notifyAll();
+	}
+
+	/**
+	 * tell that a way has returned, the slot of the call is free when both ways have returned
+	 */
+	private synchronized void finishWay(){
+		if(--runningWays == 0)
+			slots.release();
+	}
+
+	/**
+	 * wait for the result of the way that has won
+	 */
+	private synchronized Object getResult() throws InvocationTargetException{
+		boolean isInterrupted = false;
+		while(!isFinished){
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				//the call cannot be given up, the local way always finishes
+				isInterrupted = true;
+			}
+		}
+		if(isInterrupted)
+			Thread.currentThread().interrupt();
+		if(exception != null)
+			throw(exception);
+		return result;
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor(){
+		if(executor == null){
+			//every speculative call keeps two threads, so a way is never queued behind another call
+			executor = new ThreadPoolExecutor(2 * MAX_SPECULATIONS, 2 * MAX_SPECULATIONS, KEEP_ALIVE_SECONDS,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+				private int threadNum = 0;
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Speculation-"+(threadNum++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+}
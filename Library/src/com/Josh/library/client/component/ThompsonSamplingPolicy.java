@@ -0,0 +1,42 @@
+package com.Josh.library.client.component;
+
+import java.util.Random;
+
+/**
+ * ThompsonSamplingPolicy is the default DecisionPolicy. For each call it draws a cost for each way
+ * from what is known about it, and takes the way whose cost is lower. A way whose estimate is still
+ * uncertain is sometimes drawn cheaper than it is and is tried again, and a way that is clearly slower
+ * is almost never tried, so calls only explore when the estimates are close or uncertain. Estimates
+ * forget old calls, so a way that has become faster is found again.
+ * @author Josh
+ *
+ */
+public class ThompsonSamplingPolicy extends AbstractDecisionPolicy {
+	private final Random random;
+
+	public ThompsonSamplingPolicy(){
+		this.random = new Random();
+	}
+
+	/**
+	 * Build a policy whose draws can be repeated
+	 * @param seed
+	 * 		the seed of the draws
+	 */
+	public ThompsonSamplingPolicy(long seed){
+		this.random = new Random(seed);
+	}
+
+	@Override
+	protected boolean shouldExecuteRemotely(Cost local, Cost remote) {
+		return draw(remote) < draw(local);
+	}
+
+	private double draw(Cost cost){
+		double gaussian;
+		synchronized(random){
+			gaussian = random.nextGaussian();
+		}
+		return cost.mean + Math.sqrt(cost.variance) * gaussian;
+	}
+}
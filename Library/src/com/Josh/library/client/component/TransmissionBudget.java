@@ -0,0 +1,212 @@
+package com.Josh.library.client.component;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.Josh.library.client.interfaces.Remote;
+
+/**
+ * A TransmissionBudget limits the part of the argument graph of a remote method that is transmitted
+ * eagerly, see Remote. Sub-objects that are deeper than the depth budget, or that are met after the
+ * object budget is used up, are transmitted as stubs and are faulted in by the server when they are
+ * read. A budget is used by all arguments of a method call, so that an object that is a stub once
+ * is always a stub in the same call. Objects that are wrapped themselves, such as the arguments, are
+ * protected and are never stubs, because a stub object is cut from the whole command.
+ * @author Josh
+ *
+ */
+public class TransmissionBudget {
+	private final int maxDepth;
+	private final int maxObjects;
+	private final boolean isShell;
+	private int objectNum = 0;
+	private final Map<Object,Integer> stubKeys;
+	private final List<Object> stubObjects;
+	private final Map<Object,Object> protectedObjects;
+
+	/**
+	 * Build a budget
+	 * @param maxDepth
+	 * 		the maximum depth of transmitted sub-objects, the object itself is at depth 0, and 0 means unlimited
+	 * @param maxObjects
+	 * 		the maximum amount of transmitted objects, 0 means unlimited
+	 */
+	public TransmissionBudget(int maxDepth, int maxObjects){
+		this(maxDepth, maxObjects, false, new IdentityHashMap<Object,Integer>(), new ArrayList<Object>(),
+				new IdentityHashMap<Object,Object>());
+	}
+
+	private TransmissionBudget(int maxDepth, int maxObjects, boolean isShell, Map<Object,Integer> stubKeys,
+			List<Object> stubObjects, Map<Object,Object> protectedObjects){
+		this.maxDepth = maxDepth;
+		this.maxObjects = maxObjects;
+		this.isShell = isShell;
+		this.stubKeys = stubKeys;
+		this.stubObjects = stubObjects;
+		this.protectedObjects = protectedObjects;
+	}
+
+	/**
+	 * Get the budget of a remote method
+	 * @param remote
+	 * 		the annotation of the method
+	 * @return
+	 * 		the budget, or null if the whole graph should be transmitted
+	 */
+	public static TransmissionBudget fromAnnotation(Remote remote){
+		if(remote == null) return null;
+		if(remote.lazyDepth() <= 0 && remote.lazyObjects() <= 0) return null;
+		return new TransmissionBudget(remote.lazyDepth(), remote.lazyObjects());
+	}
+
+	/**
+	 * Get a budget that only transmits the object itself, all its sub-objects are stubs. It is
+	 * used for arguments that are only written by the method, see Out. The shell budget shares
+	 * stubs with this budget.
+	 * @return
+	 * 		the shell budget
+	 */
+	public TransmissionBudget shell(){
+		return new TransmissionBudget(0, 0, true, stubKeys, stubObjects, protectedObjects);
+	}
+
+	/**
+	 * Check if this budget only transmits the object itself, such a budget is not used to fault in
+	 * sub-objects
+	 * @return
+	 * 		if this budget is a shell budget or not
+	 */
+	public boolean isShell(){
+		return isShell;
+	}
+
+	/**
+	 * Check if an object at a depth should be a stub
+	 * @param depth
+	 * 		the depth of the object
+	 * @return
+	 * 		if the budget is used up or not
+	 */
+	public synchronized boolean isExceeded(int depth){
+		if((maxDepth > 0 || isShell) && depth > maxDepth) return true;
+		return maxObjects > 0 && objectNum >= maxObjects;
+	}
+
+	/**
+	 * Count a transmitted object
+	 */
+	public synchronized void count(){
+		objectNum++;
+	}
+
+	/**
+	 * Start a new round, it is called before stubs are faulted in, so that each fault has the
+	 * whole object budget
+	 */
+	public synchronized void newRound(){
+		objectNum = 0;
+	}
+
+	/**
+	 * Protect an object that is wrapped itself, it will never be a stub
+	 * @param obj
+	 * 		the object
+	 */
+	public void protect(Object obj){
+		if(obj == null) return;
+		synchronized(stubKeys){
+			protectedObjects.put(obj, obj);
+		}
+	}
+
+	/**
+	 * Protect an object that must be transmitted with its parent object, such as a field of an object
+	 * that is not woven. If the object has been saved as a stub before, it is no longer a stub, so the
+	 * stub objects of wrappers should be set again, see RemoteObjectInformationSystem.updateStubObjects.
+	 * @param obj
+	 * 		the object
+	 */
+	public void keep(Object obj){
+		if(obj == null) return;
+		synchronized(stubKeys){
+			protectedObjects.put(obj, obj);
+			removeStub(obj);
+		}
+	}
+
+	/**
+	 * Remember a stub object
+	 * @param obj
+	 * 		the object
+	 * @param key
+	 * 		the key of the stub
+	 * @return
+	 * 		false if the object is protected and cannot be a stub
+	 */
+	public boolean addStub(Object obj, int key){
+		synchronized(stubKeys){
+			if(protectedObjects.containsKey(obj)) return false;
+			stubKeys.put(obj, key);
+			stubObjects.add(obj);
+			return true;
+		}
+	}
+
+	/**
+	 * Forget a stub object after it is faulted in
+	 * @param obj
+	 * 		the object
+	 */
+	public void removeStub(Object obj){
+		synchronized(stubKeys){
+			if(stubKeys.remove(obj) == null) return;
+			for(int i=0; i<stubObjects.size(); i++){
+				if(stubObjects.get(i) == obj){
+					stubObjects.remove(i);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if an object can be a stub
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		false if the object is protected
+	 */
+	public boolean canBeStub(Object obj){
+		synchronized(stubKeys){
+			return !protectedObjects.containsKey(obj);
+		}
+	}
+
+	/**
+	 * Get the key of a stub object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the key, or -1 if the object is not a stub
+	 */
+	public int getStubKey(Object obj){
+		synchronized(stubKeys){
+			Integer key = stubKeys.get(obj);
+			return key == null? -1 : key;
+		}
+	}
+
+	/**
+	 * Get all stub objects, they are cut from the graph when a wrapper is written
+	 * @return
+	 * 		the stub objects, or null if there is no stub
+	 */
+	public Object[] getStubObjects(){
+		synchronized(stubKeys){
+			if(stubObjects.isEmpty()) return null;
+			return stubObjects.toArray();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.Josh.library.client.interfaces;
+
+/**
+ * This interface decides if a call of a remote method should be offloaded, see
+ * ClientEngine.setDecisionPolicy. The policy is given the times that the cost model predicts for the
+ * call, and it is told how long each call really took, so that it can learn how far the predictions
+ * can be trusted. Methods of a policy are called by all threads that call remote methods.
+ * @author Josh
+ *
+ */
+public interface DecisionPolicy {
+
+	/**
+	 * Decide if a call should be offloaded
+	 * @param name
+	 * 		the full name of the method
+	 * @param localTime
+	 * 		the predicted local execution time of the call in nanoseconds, or -1 if it cannot be predicted yet
+	 * @param remoteTime
+	 * 		the predicted remote execution time of the call in nanoseconds, or -1 if it cannot be predicted yet
+	 * @return
+	 * 		if the call should be offloaded or not
+	 */
+	public abstract boolean shouldExecuteRemotely(String name, long localTime, long remoteTime);
+
+	/**
+	 * Record a call that has been executed
+	 * @param name
+	 * 		the full name of the method
+	 * @param isRemote
+	 * 		if the call has been offloaded or not
+	 * @param predictedTime
+	 * 		the time that was predicted for the way the call has been executed, in nanoseconds, or -1
+	 * @param time
+	 * 		the real time of the call in nanoseconds
+	 */
+	public abstract void record(String name, boolean isRemote, long predictedTime, long time);
+}
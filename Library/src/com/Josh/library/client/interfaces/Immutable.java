@@ -0,0 +1,20 @@
+package com.Josh.library.client.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation tells the engine that objects of a class never change after they are built.
+ * Such objects are read-only parameters of every remote method, see ReadOnly, and once they are
+ * transmitted, the server keeps them until the connection is closed, so that they are transmitted
+ * only once.
+ * @author Josh
+ *
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Immutable {
+
+}
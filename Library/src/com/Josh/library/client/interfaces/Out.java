@@ -0,0 +1,20 @@
+package com.Josh.library.client.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation tells the engine that a parameter of a remote method is only written by the
+ * method, such as a buffer that the method fills. The parameter is transmitted as an empty shell,
+ * its sub-objects are transmitted only if the method reads them in the server, and it is
+ * synchronized back as usual.
+ * @author Josh
+ *
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Out {
+
+}
@@ -0,0 +1,21 @@
+package com.Josh.library.client.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation tells the engine that a remote method has no side effect: it changes neither the
+ * object on which it is invoked, nor its parameters, nor static fields, so its result only depends on
+ * them. The object and the parameters of such a method are read-only, see ReadOnly. When the local and
+ * the remote execution times of a call are predicted to be close, the call is executed both ways at the
+ * same time and the first result is taken, see ClientEngine.setSpeculationMargin.
+ * @author Josh
+ *
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Pure {
+
+}
@@ -0,0 +1,20 @@
+package com.Josh.library.client.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation tells the engine that a parameter of a remote method, or the object on which
+ * the method is invoked if the method has this annotation, is never changed by the method. Objects
+ * of such a parameter are not synchronized back to the client after the method returns, unless they
+ * can also be reached from another parameter. If the method changes them anyway, the changes are lost.
+ * @author Josh
+ *
+ */
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadOnly {
+
+}
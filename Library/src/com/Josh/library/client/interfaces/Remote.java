@@ -1,6 +1,8 @@
 package com.Josh.library.client.interfaces;
 
 import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
@@ -11,10 +13,25 @@ import java.lang.annotation.Target;
  *  If inserializable classes relate to your remote methods, please declare it as transient. 
  *  Operation in the remote method should NOT interact with local resources, e.g.
  *   using the GPS, sensors, get thread or ask for process information.
+ *  <p>
+ *  By default the whole object graph of the arguments is transmitted. If the method only reads a
+ *  small part of a large graph, set lazyDepth or lazyObjects, sub-objects beyond the budget are
+ *  transmitted when the method reads them in the server.
  * @author Josh
  *
  */
 @Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
 public @interface Remote {
 
+	/**
+	 * The maximum depth of sub-objects that are transmitted with the arguments, the arguments
+	 * themselves are at depth 0, and 0 means unlimited.
+	 */
+	int lazyDepth() default 0;
+
+	/**
+	 * The maximum amount of objects that are transmitted with the arguments, 0 means unlimited.
+	 */
+	int lazyObjects() default 0;
 }
@@ -0,0 +1,53 @@
+package com.Josh.library.client.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of CostModel.estimateInputSize
+ * @author Josh
+ *
+ */
+public class CostModelTest {
+
+	@SuppressWarnings("unused")
+	private static class Item{
+		double[] values;
+		int count;
+
+		Item(int length){
+			values = new double[length];
+		}
+	}
+
+	@Test
+	public void testPrimitiveArrayIsCountedByLength(){
+		long small = CostModel.estimateInputSize(null, new Object[]{new double[10]});
+		long large = CostModel.estimateInputSize(null, new Object[]{new double[1000010]});
+		assertEquals(8000000, large - small);
+	}
+
+	@Test
+	public void testArrayOfObjectsIsEstimatedFromSamples(){
+		Item[] items = new Item[100000];
+		for(int i=0; i<items.length; i++)
+			items[i] = new Item(100);
+		long size = CostModel.estimateInputSize(null, new Object[]{items});
+		long itemSize = CostModel.estimateInputSize(null, new Object[]{new Item(100)});
+		long expected = items.length * (4 + itemSize);
+		assertTrue("estimated "+size+" instead of "+expected, Math.abs(size - expected) < expected / 100);
+	}
+
+	@Test
+	public void testSharedObjectIsCountedOnce(){
+		Item item = new Item(1000);
+		Item[] items = new Item[1000];
+		for(int i=0; i<items.length; i++)
+			items[i] = item;
+		long size = CostModel.estimateInputSize(null, new Object[]{items});
+		long itemSize = CostModel.estimateInputSize(null, new Object[]{item});
+		assertTrue("estimated "+size, size < 4 * items.length + itemSize * items.length / 2);
+	}
+}
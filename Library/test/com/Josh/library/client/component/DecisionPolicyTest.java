@@ -0,0 +1,71 @@
+package com.Josh.library.client.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.Josh.library.client.interfaces.DecisionPolicy;
+
+/**
+ * Tests of the policies that extend AbstractDecisionPolicy
+ * @author Josh
+ *
+ */
+public class DecisionPolicyTest {
+	private static final String METHOD = "com.example.Foo.bar()";
+	private static final long LOCAL_TIME = 100000000L;
+	private static final long REMOTE_TIME = 200000000L;
+
+	/**
+	 * Measure both ways, the remote way is twice as slow
+	 */
+	private static void train(DecisionPolicy policy){
+		for(int i=0; i<10; i++){
+			policy.record(METHOD, false, -1, LOCAL_TIME);
+			policy.record(METHOD, true, -1, REMOTE_TIME);
+		}
+	}
+
+	/**
+	 * Make decisions and record the calls
+	 * @return
+	 * 		the amount of calls that are offloaded
+	 */
+	private static int decide(DecisionPolicy policy, int calls){
+		int remoteCalls = 0;
+		for(int i=0; i<calls; i++){
+			boolean isRemote = policy.shouldExecuteRemotely(METHOD, -1, -1);
+			if(isRemote) remoteCalls++;
+			policy.record(METHOD, isRemote, -1, isRemote? REMOTE_TIME : LOCAL_TIME);
+		}
+		return remoteCalls;
+	}
+
+	@Test
+	public void testUntriedWayIsTried(){
+		DecisionPolicy policy = new GreedyPolicy();
+		assertFalse(policy.shouldExecuteRemotely(METHOD, -1, -1));
+		policy.record(METHOD, false, -1, LOCAL_TIME);
+		policy.record(METHOD, false, -1, LOCAL_TIME);
+		assertTrue(policy.shouldExecuteRemotely(METHOD, -1, -1));
+	}
+
+	@Test
+	public void testGreedyNeverExplores(){
+		DecisionPolicy policy = new GreedyPolicy();
+		train(policy);
+		assertEquals(0, decide(policy, 1000));
+	}
+
+	@Test
+	public void testIdleWayIsTriedAgain(){
+		DecisionPolicy policy = new ThompsonSamplingPolicy(1);
+		train(policy);
+		//the slower way is certain at first
+		assertEquals(0, decide(policy, 20));
+		//it becomes uncertain while it is not taken
+		assertTrue(decide(policy, 1000) > 0);
+	}
+}
@@ -0,0 +1,101 @@
+package com.Josh.library.client.component;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.Josh.library.client.interfaces.Remote;
+import com.Josh.library.client.interfaces.Remoteable;
+import com.Josh.library.core.component.RemoteObjectWrapper;
+
+/**
+ * Tests of the stubs that RemoteObjectInformationSystem saves within a transmission budget
+ * @author Josh
+ *
+ */
+public class RemoteObjectInformationSystemTest {
+
+	/**
+	 * A class that stands for a woven class
+	 */
+	@SuppressWarnings("serial")
+	private static class Node implements Remoteable{
+		Node next;
+		Set<Node> set;
+		TreeMap<String,Node> map;
+	}
+
+	@Remote(lazyDepth=1)
+	public void lazyMethod(Node node){
+	}
+
+	private static TransmissionBudget newBudget() throws Exception{
+		Remote remote = RemoteObjectInformationSystemTest.class.getMethod("lazyMethod", Node.class).getAnnotation(Remote.class);
+		return TransmissionBudget.fromAnnotation(remote);
+	}
+
+	@Test
+	public void testFieldOfWovenObjectIsStub() throws Exception{
+		TransmissionBudget budget = newBudget();
+		Node node = new Node();
+		node.next = new Node();
+		node.next.next = new Node();
+		RemoteObjectWrapper wrapper = new RemoteObjectInformationSystem().SaveObjectInfo(node, budget);
+		assertTrue(wrapper.hasStubs());
+		assertTrue(budget.getStubKey(node.next.next) >= 0);
+		assertTrue(budget.getStubKey(node.next) < 0);
+	}
+
+	@Test
+	public void testHashSetIsTransmitted() throws Exception{
+		TransmissionBudget budget = newBudget();
+		Node node = new Node();
+		node.next = new Node();
+		//the node is a stub under a woven object before it is found in the set
+		node.next.next = new Node();
+		node.set = new HashSet<Node>();
+		node.set.add(node.next.next);
+		new RemoteObjectInformationSystem().SaveObjectInfo(node, budget);
+		assertTrue(budget.getStubKey(node.next.next) < 0);
+		assertNull(budget.getStubObjects());
+	}
+
+	@Test
+	public void testTreeMapIsTransmitted() throws Exception{
+		TransmissionBudget budget = newBudget();
+		Node node = new Node();
+		node.next = new Node();
+		node.next.next = new Node();
+		node.map = new TreeMap<String,Node>();
+		node.map.put("a", node.next.next);
+		node.map.put("b", new Node());
+		new RemoteObjectInformationSystem().SaveObjectInfo(node, budget);
+		assertTrue(budget.getStubKey(node.next.next) < 0);
+		assertNull(budget.getStubObjects());
+	}
+
+	@Test
+	public void testStubIsKeptWhenFoundInCollection() throws Exception{
+		TransmissionBudget budget = newBudget();
+		RemoteObjectInformationSystem info = new RemoteObjectInformationSystem();
+		Node shared = new Node();
+		Node node = new Node();
+		node.next = new Node();
+		node.next.next = shared;
+		Set<Node> set = new HashSet<Node>();
+		set.add(shared);
+		budget.protect(node);
+		budget.protect(set);
+		RemoteObjectWrapper nodeWrapper = info.SaveObjectInfo(node, budget);
+		assertTrue(budget.getStubKey(shared) >= 0);
+		info.SaveObjectInfo(set, budget);
+		info.updateStubObjects(nodeWrapper, budget);
+		assertTrue(budget.getStubKey(shared) < 0);
+		assertNull(budget.getStubObjects());
+	}
+}
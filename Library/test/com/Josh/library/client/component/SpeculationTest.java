@@ -0,0 +1,193 @@
+package com.Josh.library.client.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.Josh.library.core.exception.RemoteExecutionFailedException;
+
+/**
+ * Tests of Speculation
+ * @author Josh
+ *
+ */
+public class SpeculationTest {
+	private static final long TIMEOUT_SECONDS = 10;
+
+	/**
+	 * A way that returns a value when it is released
+	 */
+	private static class Way implements Callable<Object>{
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		private final Object value;
+
+		Way(Object value){
+			this.value = value;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			try {
+				release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				return value;
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+	private static Callable<Object> returning(final Object value){
+		return new Callable<Object>(){
+			@Override
+			public Object call() throws Exception {
+				return value;
+			}
+		};
+	}
+
+	@Test
+	public void testLocalWinsWithoutWaitingForRemote() throws Exception{
+		Way remote = new Way("remote");
+		assertEquals("local", Speculation.execute(returning("local"), remote));
+		remote.release.countDown();
+		assertTrue(remote.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testRemoteWinsWithoutWaitingForLocal() throws Exception{
+		Way local = new Way("local");
+		assertEquals("remote", Speculation.execute(local, returning("remote")));
+		local.release.countDown();
+		assertTrue(local.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testRemoteFailureFallsBackToLocal() throws Exception{
+		Way local = new Way("local");
+		local.release.countDown();
+		Object result = Speculation.execute(local, new Callable<Object>(){
+			@Override
+			public Object call() throws Exception {
+				throw(new RemoteExecutionFailedException("no server"));
+			}
+		});
+		assertEquals("local", result);
+	}
+
+	@Test
+	public void testLocalExceptionIsThrown(){
+		final IllegalStateException exception = new IllegalStateException();
+		Way remote = new Way("remote");
+		try {
+			Speculation.execute(new Callable<Object>(){
+				@Override
+				public Object call() throws Exception {
+					throw(exception);
+				}
+			}, remote);
+			fail("The exception of the local way is not thrown");
+		} catch (InvocationTargetException e) {
+			assertSame(exception, e.getCause());
+		} finally {
+			remote.release.countDown();
+		}
+	}
+
+	@Test
+	public void testRemoteCannotClaimAfterLocalHasWon() throws Exception{
+		final CountDownLatch localWon = new CountDownLatch(1);
+		final CountDownLatch claimed = new CountDownLatch(1);
+		final AtomicBoolean claim = new AtomicBoolean(true);
+		Object result = Speculation.execute(returning("local"), new Callable<Object>(){
+			@Override
+			public Object call() throws Exception {
+				localWon.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				claim.set(Speculation.current().claimRemote());
+				claimed.countDown();
+				return null;
+			}
+		});
+		assertEquals("local", result);
+		localWon.countDown();
+		assertTrue(claimed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertFalse(claim.get());
+	}
+
+	@Test
+	public void testOnlyWaysAreSpeculating() throws Exception{
+		final AtomicBoolean isSpeculating = new AtomicBoolean(false);
+		Way remote = new Way(null);
+		Speculation.execute(new Callable<Object>(){
+			@Override
+			public Object call() throws Exception {
+				isSpeculating.set(Speculation.current() != null);
+				return null;
+			}
+		}, remote);
+		remote.release.countDown();
+		assertTrue(isSpeculating.get());
+		assertNull(Speculation.current());
+	}
+
+	@Test
+	public void testTooManyCallsAreExecutedLocally() throws Exception{
+		List<Way> blocked = new ArrayList<Way>();
+		List<Thread> callers = new ArrayList<Thread>();
+		final Thread thread = Thread.currentThread();
+		final AtomicBoolean isCallingThread = new AtomicBoolean(false);
+		try {
+			//add calls that keep their slots until the end of the test, until no slot is left
+			for(int i=0; i<=2 * Speculation.MAX_SPECULATIONS; i++){
+				Object result = Speculation.execute(new Callable<Object>(){
+					@Override
+					public Object call() throws Exception {
+						isCallingThread.set(Thread.currentThread() == thread);
+						return "local";
+					}
+				}, returning("remote"));
+				if(isCallingThread.get()){
+					assertEquals("local", result);
+					break;
+				}
+				final Way local = new Way("local");
+				final Way remote = new Way("remote");
+				blocked.add(local);
+				blocked.add(remote);
+				Thread caller = new Thread(){
+					@Override
+					public void run() {
+						try {
+							Speculation.execute(local, remote);
+						} catch (InvocationTargetException e) {
+							e.printStackTrace();
+						}
+					}
+				};
+				caller.setDaemon(true);
+				caller.start();
+				callers.add(caller);
+				Thread.sleep(50);
+			}
+			assertTrue(isCallingThread.get());
+		} finally {
+			for(Way way : blocked)
+				way.release.countDown();
+			for(Thread caller : callers)
+				caller.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+		}
+	}
+}
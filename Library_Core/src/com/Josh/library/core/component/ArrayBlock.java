@@ -0,0 +1,121 @@
+package com.Josh.library.core.component;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+
+/**
+ * An ArrayBlock replaces a large array in the stream, so that the array is written as a raw block
+ * by PrimitiveArrayCodec instead of element by element. A primitive array is written directly. An
+ * array of wrapper types, e.g. Integer[], is written as a bitmap of null elements followed by a block
+ * of primitive values, so its elements are not written as objects.
+ * @author Josh
+ *
+ */
+public class ArrayBlock implements Serializable {
+	//arrays that are smaller than this size are written by the stream itself
+	public static final long MIN_BLOCK_SIZE = 1024;
+	private static final Class<?>[] WRAPPER_TYPES = {Integer.class, Byte.class, Double.class, Long.class,
+		Float.class, Short.class, Character.class, Boolean.class};
+	private static final Class<?>[] PRIMITIVE_TYPES = {int.class, byte.class, double.class, long.class,
+		float.class, short.class, char.class, boolean.class};
+	private transient Object array;
+	private static final long serialVersionUID = 1L;
+
+	public ArrayBlock(Object array){
+		this.array = array;
+	}
+
+	/**
+	 * Get the array
+	 * @return
+	 * 		the array
+	 */
+	public Object getArray(){
+		return this.array;
+	}
+
+	/**
+	 * Check if an array can be replaced by a block, that is to say, it is a primitive array or an
+	 * array of wrapper types, and it is not smaller than MIN_BLOCK_SIZE
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		can be replaced or not
+	 */
+	public static boolean canReplace(Object obj){
+		if(obj == null || !obj.getClass().isArray()) return false;
+		Class<?> type = obj.getClass().getComponentType();
+		if(!type.isPrimitive()){
+			type = getPrimitiveType(type);
+			if(type == null) return false;
+		}
+		return (long) Array.getLength(obj) * ObjectFingerprint.primitiveSize(type) >= MIN_BLOCK_SIZE;
+	}
+
+	/**
+	 * Get the primitive type of a wrapper type
+	 * @param wrapper
+	 * 		the wrapper type
+	 * @return
+	 * 		the primitive type, or null if the type is not a wrapper type
+	 */
+	private static Class<?> getPrimitiveType(Class<?> wrapper){
+		for(int i=0; i<WRAPPER_TYPES.length; i++)
+			if(WRAPPER_TYPES[i] == wrapper) return PRIMITIVE_TYPES[i];
+		return null;
+	}
+
+	/**
+	 * Get the wrapper type of a primitive type
+	 */
+	private static Class<?> getWrapperType(Class<?> primitive){
+		for(int i=0; i<PRIMITIVE_TYPES.length; i++)
+			if(PRIMITIVE_TYPES[i] == primitive) return WRAPPER_TYPES[i];
+		return null;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		out.defaultWriteObject();
+		Class<?> type = array.getClass().getComponentType();
+		if(type.isPrimitive()){
+			out.writeBoolean(false);
+			PrimitiveArrayCodec.writeArray(out, array);
+			return;
+		}
+		//an array of wrapper types
+		Object[] elements = (Object[]) array;
+		Object values = Array.newInstance(getPrimitiveType(type), elements.length);
+		byte[] nulls = new byte[(elements.length + 7) / 8];
+		for(int i=0; i<elements.length; i++){
+			if(elements[i] == null)
+				nulls[i >> 3] |= 1 << (i & 7);
+			else
+				Array.set(values, i, elements[i]);
+		}
+		out.writeBoolean(true);
+		out.writeInt(elements.length);
+		out.write(nulls);
+		PrimitiveArrayCodec.writeArray(out, values);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		if(!in.readBoolean()){
+			array = PrimitiveArrayCodec.readArray(in);
+			return;
+		}
+		//an array of wrapper types
+		int length = in.readInt();
+		byte[] nulls = new byte[(length + 7) / 8];
+		in.readFully(nulls);
+		Object values = PrimitiveArrayCodec.readArray(in);
+		Object[] elements = (Object[]) Array.newInstance(getWrapperType(values.getClass().getComponentType()), length);
+		for(int i=0; i<length; i++)
+			if((nulls[i >> 3] & (1 << (i & 7))) == 0)
+				elements[i] = Array.get(values, i);
+		array = elements;
+	}
+}
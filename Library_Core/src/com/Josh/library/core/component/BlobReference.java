@@ -0,0 +1,192 @@
+package com.Josh.library.core.component;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A BlobReference replaces a large leaf value in the stream, a large leaf value is a primitive array,
+ * a String array or a String whose size is not less than MIN_BLOB_SIZE. The value is addressed by the
+ * SHA-256 digest of its content. The first time a value is transmitted, the reference carries the
+ * value so that the receiver can save it, later the reference only carries the digest.
+ * <p>
+ * The value is written as raw data instead of an object, since the stream that replaces the value by
+ * this reference would write the reference again if the value were written as an object.
+ * @author Josh
+ *
+ */
+public class BlobReference implements Serializable {
+	//values that are smaller than this size are always transmitted
+	public static final long MIN_BLOB_SIZE = 16 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private String digest;
+	private transient Object value;
+	private static final long serialVersionUID = 1L;
+
+	public BlobReference(String digest, Object value){
+		this.digest = digest;
+		this.value = value;
+	}
+
+	/**
+	 * Get the digest of the value
+	 * @return
+	 * 		the digest in hex
+	 */
+	public String getDigest(){
+		return this.digest;
+	}
+
+	/**
+	 * Get the value
+	 * @return
+	 * 		the value, or null if this reference only carries the digest
+	 */
+	public Object getValue(){
+		return this.value;
+	}
+
+	/**
+	 * Get the size of a value if it can be a blob
+	 * @param value
+	 * 		the value
+	 * @return
+	 * 		the size of the value in bytes, or -1 if the value cannot be a blob
+	 */
+	public static long sizeOf(Object value){
+		if(value == null) return -1;
+		if(value instanceof String)
+			return 2L * ((String) value).length();
+		if(value instanceof String[]){
+			long size = 0;
+			for(String str : (String[]) value)
+				size += str == null? 4 : 4 + 2L * str.length();
+			return size;
+		}
+		if(PrimitiveArrayDelta.isPrimitiveArray(value))
+			return (long) Array.getLength(value) * ObjectFingerprint.primitiveSize(value.getClass().getComponentType());
+		return -1;
+	}
+
+	/**
+	 * Get the SHA-256 digest of a value, the digest depends on the type and the content of the value
+	 * @param value
+	 * 		the value, it should be a value whose size is not -1
+	 * @return
+	 * 		the digest in hex
+	 */
+	public static String digest(Object value){
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+			return null;
+		}
+		md.update(value.getClass().getName().getBytes(UTF8));
+		if(value instanceof String)
+			md.update(((String) value).getBytes(UTF8));
+		else if(value instanceof String[]){
+			ByteBuffer length = ByteBuffer.allocate(4);
+			for(String str : (String[]) value){
+				byte[] bytes = str == null? null : str.getBytes(UTF8);
+				length.clear();
+				length.putInt(bytes == null? -1 : bytes.length);
+				md.update(length.array());
+				if(bytes != null)
+					md.update(bytes);
+			}
+		}else
+			digestPrimitiveArray(md, value);
+		byte[] result = md.digest();
+		StringBuilder builder = new StringBuilder();
+		for(byte b : result)
+			builder.append(String.format("%02x", b & 0xff));
+		return builder.toString();
+	}
+
+	/**
+	 * Copy a value, so that modifying the copy does not change the saved value
+	 * @param value
+	 * 		the value
+	 * @return
+	 * 		the copy, or the value itself if it cannot be modified
+	 */
+	public static Object copy(Object value){
+		if(value == null || value instanceof String) return value;
+		int length = Array.getLength(value);
+		Object result = Array.newInstance(value.getClass().getComponentType(), length);
+		System.arraycopy(value, 0, result, 0, length);
+		return result;
+	}
+
+	/**
+	 * Update a digest with the content of a primitive array, the content is converted to bytes in
+	 * little-endian order part by part
+	 */
+	private static void digestPrimitiveArray(MessageDigest md, Object array){
+		if(array instanceof byte[]){
+			md.update((byte[]) array);
+			return;
+		}
+		int length = Array.getLength(array);
+		int elementSize = ObjectFingerprint.primitiveSize(array.getClass().getComponentType());
+		int step = PrimitiveArrayCodec.BUFFER_SIZE / elementSize;
+		ByteBuffer buffer = ByteBuffer.allocate(PrimitiveArrayCodec.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for(int from = 0; from < length; from += step){
+			int count = Math.min(step, length - from);
+			PrimitiveArrayCodec.encode(array, from, count, buffer);
+			md.update(buffer.array(), 0, count * elementSize);
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		out.defaultWriteObject();
+		if(value == null){
+			out.writeByte(0);
+		}else if(value instanceof String){
+			out.writeByte(1);
+			PrimitiveArrayCodec.writeArray(out, ((String) value).toCharArray());
+		}else if(value instanceof String[]){
+			out.writeByte(2);
+			String[] strs = (String[]) value;
+			out.writeInt(strs.length);
+			for(String str : strs){
+				out.writeBoolean(str != null);
+				if(str != null)
+					PrimitiveArrayCodec.writeArray(out, str.toCharArray());
+			}
+		}else{
+			out.writeByte(3);
+			PrimitiveArrayCodec.writeArray(out, value);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		switch(in.readByte()){
+		case 1:
+			value = new String((char[]) PrimitiveArrayCodec.readArray(in));
+			break;
+		case 2:
+			String[] strs = new String[in.readInt()];
+			for(int i=0; i<strs.length; i++)
+				if(in.readBoolean())
+					strs[i] = new String((char[]) PrimitiveArrayCodec.readArray(in));
+			value = strs;
+			break;
+		case 3:
+			value = PrimitiveArrayCodec.readArray(in);
+			break;
+		default:
+			value = null;
+		}
+	}
+}
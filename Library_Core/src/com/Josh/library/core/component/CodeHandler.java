@@ -10,7 +10,9 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -37,6 +39,9 @@ public class CodeHandler {
 	private DexClassLoader cLoader;
 	private boolean hasLoadedCode = false;
 	private String libDir;
+	//methods and classes that are found from the loaded apk file, both caches are guarded by methodCache
+	private final Map<String,Method> methodCache = new HashMap<String,Method>();
+	private final Map<String,Class<?>> classCache = new HashMap<String,Class<?>>();
 	
 	public CodeHandler(Context c){
 		context=c;
@@ -72,7 +77,14 @@ public class CodeHandler {
 		File apk = new File(apkPath);
 		UnpackLibraries(libPath,apk);
 		Log.d(Tag, "Start loading classes...");
-		cLoader = new DexClassLoader(apkPath,optimizedDexPath,libPath,context.getClassLoader());	
+		//methods of the old classes must not be invoked any more
+		synchronized(methodCache){
+			methodCache.clear();
+			classCache.clear();
+			//the accessors keep the classes of the old class loader alive
+			FieldAccessor.clear();
+			cLoader = new DexClassLoader(apkPath,optimizedDexPath,libPath,context.getClassLoader());	
+		}
 		Log.d(Tag, "Loading classes succeed");
 		Log.d(Tag, "Load apk file finnished!");
 		Log.i(Tag, "cLoader="+cLoader);
@@ -228,14 +240,23 @@ public class CodeHandler {
 	 */
 	public Class<?> getClass(String className) {
 
-		if(cLoader==null) return null;
+		ClassLoader loader;
+		synchronized(methodCache){
+			Class<?> c = classCache.get(className);
+			if(c != null) return c;
+			loader = cLoader;
+		}
+		if(loader==null) return null;
 		try {
-			Class<?> c = cLoader.loadClass(className);
-//			Log.d(Tag,"Class found: ");
-//			Log.i(Tag, Modifier.toString(c.getModifiers())+" "+c.getName());
+			//array classes are not found by loadClass
+			Class<?> c = Class.forName(className, false, loader);
+			synchronized(methodCache){
+				if(loader == cLoader)
+					classCache.put(className, c);
+			}
 			return c;
 		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			Log.e(Tag, "Class "+className+" is not found");
 		}
 		return null;
 
@@ -276,17 +297,11 @@ public class CodeHandler {
 	static public Field getField(Class<?> clazz, String fieldName){
 		if(clazz==null) return null;
 		
-		try {
-			Field f= clazz.getDeclaredField(fieldName);
-//			Log.d(Tag,"Field found: ");
-//			Log.i(Tag, Modifier.toString(f.getModifiers())+" "+f.getType()+" "+clazz.getName()+"::"+f.getName());
-			return f;
-		} catch (NoSuchFieldException e) {
-			e.printStackTrace();
-		}
-		
-		
-		return null;
+		//fields are searched through the cached accessor, the class is not searched again
+		Field f = FieldAccessor.get(clazz).getField(fieldName);
+		if(f == null)
+			Log.e(Tag, "Field "+fieldName+" is not found in "+clazz.getName());
+		return f;
 	}
 	
 	/**
@@ -347,7 +362,8 @@ public class CodeHandler {
 		if(field==null)
 			throw(new NoSuchFieldException());
 		
-		field.setAccessible(true);
+		if(!field.isAccessible())
+			field.setAccessible(true);
 		return field.get(obj);
 		
 	}
@@ -412,7 +428,8 @@ public class CodeHandler {
 	 * @throws IllegalAccessException 
 	 */
 	static public void setFieldValue(Field field, Object obj, Object value) throws IllegalAccessException, IllegalArgumentException{
-		field.setAccessible(true);
+		if(!field.isAccessible())
+			field.setAccessible(true);
 		if(obj!=null)
 			synchronized(obj){
 				field.set(obj, value);
@@ -528,7 +545,65 @@ public class CodeHandler {
 	 * @throws IllegalAccessException 
 	 */
 	public Object invokeMethod(String className, Object invokObj, String methodName, String[] paramTypes, Object[] params) throws InvokeMethodFailureException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException, IllegalArgumentException, InvocationTargetException{		
-		return invokeMethod(getClass(className),invokObj,methodName,paramTypes,params);
+		checkParams(methodName, paramTypes, params);
+		return invokeMethod(resolveMethod(className,methodName,paramTypes),invokObj,params);
+	}
+	
+	/**
+	 * Get a method of a loaded class, if a class is a nested class, use "package.outter$inner" as the class name.
+	 * A method is searched only once, it is found from its signature later, until another apk file is loaded.
+	 * @param className
+	 * 			The name of the class which the method belongs to
+	 * @param methodName
+	 * 			The name of the method
+	 * @param paramTypes
+	 * 			Array of the name of parameter types
+	 * @return
+	 * 			The found method, it is accessible
+	 * @throws ClassNotFoundException
+	 * 			if the class is not loaded
+	 * @throws NoSuchMethodException
+	 * 			if cannot find matched method
+	 */
+	public Method resolveMethod(String className, String methodName, String[] paramTypes) throws ClassNotFoundException, NoSuchMethodException{
+		return resolveMethod(MethodPackage.getSignature(className, methodName, paramTypes), className, methodName, paramTypes);
+	}
+	
+	/**
+	 * Get the method of a method package, see resolveMethod(String, String, String[])
+	 * @param Package
+	 * 			The method package
+	 * @return
+	 * 			The found method, it is accessible
+	 * @throws ClassNotFoundException
+	 * 			if the class is not loaded
+	 * @throws NoSuchMethodException
+	 * 			if cannot find matched method
+	 */
+	public Method resolveMethod(MethodPackage Package) throws ClassNotFoundException, NoSuchMethodException{
+		return resolveMethod(Package.getSignature(), Package.getClassname(), Package.getMethodName(), Package.getParamTypeName());
+	}
+	
+	private Method resolveMethod(String signature, String className, String methodName, String[] paramTypes) throws ClassNotFoundException, NoSuchMethodException{
+		ClassLoader loader;
+		synchronized(methodCache){
+			Method method = methodCache.get(signature);
+			if(method != null) return method;
+			loader = cLoader;
+		}
+		if(loader == null)
+			throw(new ClassNotFoundException(className));
+		Class<?> clazz = getClass(className);
+		if(clazz == null)
+			throw(new ClassNotFoundException(className));
+		Method method = getMethod(clazz, methodName, paramTypes);
+		method.setAccessible(true);
+		synchronized(methodCache){
+			//the method is not cached if another apk file is loaded meanwhile
+			if(loader == cLoader)
+				methodCache.put(signature, method);
+		}
+		return method;
 	}
 	
 	/**
@@ -553,6 +628,19 @@ public class CodeHandler {
 	 */
 	static public Object invokeMethod(Class<?> clazz, Object invokObj, String methodName, String[] paramTypes, Object[] params) throws InvokeMethodFailureException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException, IllegalArgumentException, InvocationTargetException{			
 		
+		checkParams(methodName, paramTypes, params);
+			
+		if(clazz==null)
+			throw(new ClassNotFoundException());
+		return invokeMethod(getMethod(clazz,methodName,paramTypes),invokObj,params);
+	}
+	
+	/**
+	 * Check if the parameters match the parameter types of a method
+	 * @throws InvokeMethodFailureException
+	 * 			if they do not match
+	 */
+	static private void checkParams(String methodName, String[] paramTypes, Object[] params) throws InvokeMethodFailureException{
 		if(methodName==null )
 			throw(new InvokeMethodFailureException());	
 		
@@ -564,10 +652,6 @@ public class CodeHandler {
 		
 		if(paramTypes!=null && params==null)
 			throw(new InvokeMethodFailureException());
-			
-		if(clazz==null)
-			throw(new ClassNotFoundException());
-		return invokeMethod(getMethod(clazz,methodName,paramTypes),invokObj,params);
 	}
 	
 	/**
@@ -590,7 +674,8 @@ public class CodeHandler {
 		if(method==null )
 			throw(new InvokeMethodFailureException());	
 		
-		method.setAccessible(true);
+		if(!method.isAccessible())
+			method.setAccessible(true);
 		ret=method.invoke(invokObj, params);			
 
 		return ret;
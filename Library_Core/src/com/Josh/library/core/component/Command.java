@@ -20,10 +20,12 @@ public class Command implements Serializable{
 	 */
 	public enum COMMAND{EXECUTE_METHOD,		EXECUTE_METHOD_RESULT_RETURN,
 						EXECUTE_METHOD_THREAD_ID_RETURN,
+						EXECUTE_METHOD_PARAMETER,
 						OBJECT_REQUEST,		OBJECT_REQUEST_RETURN,
 						FIELD_SET,			FIELD_SET_RETURN,
 						CODE_TRANSMIT,		CODE_TRANSMIT_RETURN,
-						PING,				PING_RETURN};
+						PING,				PING_RETURN,
+						CACHE_INVALIDATE};
 	private COMMAND cmd;
 	private HashMap<String,Object> Extra = new HashMap<String,Object>();
 	private int id;
@@ -34,6 +36,8 @@ public class Command implements Serializable{
 		// add return COMMAND to the return COMMAND set
 		returnSet.add(COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN);
 		returnSet.add(COMMAND.EXECUTE_METHOD_RESULT_RETURN);
+		//parameters of a streamed method package are waited by the thread that executes the method
+		returnSet.add(COMMAND.EXECUTE_METHOD_PARAMETER);
 		returnSet.add(COMMAND.FIELD_SET_RETURN);
 		returnSet.add(COMMAND.OBJECT_REQUEST_RETURN);
 		returnSet.add(COMMAND.CODE_TRANSMIT_RETURN);
@@ -0,0 +1,146 @@
+package com.Josh.library.core.component;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A FieldAccessor is built once for a class, it keeps the fields of the class that are walked when
+ * an object graph is registered, transmitted, synchronized, patched or fingerprinted, and finds a
+ * field of the class by its name without searching the class again. All fields are accessible.
+ * Object graphs are walked for every remote call, so the fields of a class should never be listed
+ * or searched more than once, and this is the only place where they are listed.
+ * <p>
+ * Lists that are compared between the client and the server are sorted by the names of the fields,
+ * so they do not depend on the order returned by reflection.
+ * <p>
+ * Accessors keep their classes alive, so the accessors are cleared whenever classes are loaded again,
+ * see CodeHandler.LoadAPK, otherwise the old class loaders are never unloaded.
+ * @author Josh
+ *
+ */
+public class FieldAccessor {
+	private static final Map<Class<?>,FieldAccessor> accessors = new HashMap<Class<?>,FieldAccessor>();
+	private static final Comparator<Field> NAME_ORDER = new Comparator<Field>(){
+		@Override
+		public int compare(Field f1, Field f2) {
+			return f1.getName().compareTo(f2.getName());
+		}
+	};
+	private final Field[] instanceFields;
+	private final Field[] synchronizedFields;
+	private final Field[] stateFields;
+	private final Map<String,Field> fieldsByName = new HashMap<String,Field>();
+
+	private FieldAccessor(Class<?> clazz){
+		List<Field> instanceList = new ArrayList<Field>();
+		List<Field> synchronizedList = new ArrayList<Field>();
+		List<Field> stateList = new ArrayList<Field>();
+		boolean isPlatformClass = ObjectFingerprint.isPlatformClass(clazz);
+		for(Field field : clazz.getDeclaredFields()){
+			field.setAccessible(true);
+			fieldsByName.put(field.getName(), field);
+			int modifier = field.getModifiers();
+			if(Modifier.isStatic(modifier)) continue;
+			boolean isTransient = Modifier.isTransient(modifier);
+			if(!isTransient)
+				instanceList.add(field);
+			if(ObjectFingerprint.isSystemField(field.getName())) continue;
+			if(!isTransient)
+				synchronizedList.add(field);
+			//classes of the platform usually serialize their transient fields in their own way
+			if(!isTransient || isPlatformClass)
+				stateList.add(field);
+		}
+		instanceFields = instanceList.toArray(new Field[instanceList.size()]);
+		synchronizedFields = synchronizedList.toArray(new Field[synchronizedList.size()]);
+		Arrays.sort(synchronizedFields, NAME_ORDER);
+		Field[] declaredStateFields = stateList.toArray(new Field[stateList.size()]);
+		Arrays.sort(declaredStateFields, NAME_ORDER);
+		Class<?> superclass = clazz.getSuperclass();
+		if(superclass == null || superclass == Object.class){
+			stateFields = declaredStateFields;
+		}else{
+			Field[] inherited = get(superclass).getStateFields();
+			stateFields = Arrays.copyOf(declaredStateFields, declaredStateFields.length + inherited.length);
+			System.arraycopy(inherited, 0, stateFields, declaredStateFields.length, inherited.length);
+		}
+	}
+
+	/**
+	 * Get the accessor of a class
+	 * @param clazz
+	 * 		the class
+	 * @return
+	 * 		the accessor
+	 */
+	public static FieldAccessor get(Class<?> clazz){
+		synchronized(accessors){
+			FieldAccessor accessor = accessors.get(clazz);
+			if(accessor != null) return accessor;
+		}
+		FieldAccessor accessor = new FieldAccessor(clazz);
+		synchronized(accessors){
+			accessors.put(clazz, accessor);
+		}
+		return accessor;
+	}
+
+	/**
+	 * Remove the accessors of all classes, they are built again when they are used
+	 */
+	public static void clear(){
+		synchronized(accessors){
+			accessors.clear();
+		}
+	}
+
+	/**
+	 * Get the fields that are walked in an object graph, they are the declared instance fields of the
+	 * class that are not transient, in the order of their declaration. The array should not be modified.
+	 * @return
+	 * 		the fields
+	 */
+	public Field[] getInstanceFields(){
+		return instanceFields;
+	}
+
+	/**
+	 * Get the fields that are synchronized between the client and the server, they are the declared
+	 * instance fields of the class that are not transient and are not introduced by the offloading
+	 * system, sorted by their names. The array should not be modified.
+	 * @return
+	 * 		the fields
+	 */
+	public Field[] getSynchronizedFields(){
+		return synchronizedFields;
+	}
+
+	/**
+	 * Get the fields that are the state of an object of the class, they are the synchronized fields
+	 * of the class and of its super classes, sorted by their declaring classes from the class itself
+	 * upwards, then by their names. Transient fields of classes of the platform are included. The
+	 * array should not be modified.
+	 * @return
+	 * 		the fields
+	 */
+	public Field[] getStateFields(){
+		return stateFields;
+	}
+
+	/**
+	 * Get a declared field of the class, including static and transient fields
+	 * @param name
+	 * 		the name of the field
+	 * @return
+	 * 		the field, or null if the class does not declare it
+	 */
+	public Field getField(String name){
+		return fieldsByName.get(name);
+	}
+}
@@ -0,0 +1,94 @@
+package com.Josh.library.core.component;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * A FieldTable gives every synchronized field of a class an index, so that a changed field can
+ * be described by its index instead of its name. The synchronized fields of a class are its declared
+ * instance fields that are not transient and are not introduced by the offloading system, sorted by
+ * their names, so the same class has the same table in the client and in the server.
+ * <p>
+ * Arrays and classes of the platform keep their state in ways that the table cannot describe, e.g.
+ * in transient fields or in fields of their super classes. They are opaque, their whole state
+ * should be copied instead.
+ * @author Josh
+ *
+ */
+public class FieldTable {
+	/**
+	 * Get the synchronized fields of a class, all of them are accessible
+	 * @param clazz
+	 * 		the class
+	 * @return
+	 * 		the fields, the index of a field in this array is its index in the table
+	 */
+	public static Field[] getFields(Class<?> clazz){
+		return FieldAccessor.get(clazz).getSynchronizedFields();
+	}
+
+	/**
+	 * Get values of the synchronized fields of an object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the values, in the order of the table
+	 * @throws IllegalAccessException
+	 * @throws IllegalArgumentException
+	 */
+	public static Object[] getValues(Object obj) throws IllegalAccessException, IllegalArgumentException{
+		Field[] fields = getFields(obj.getClass());
+		Object[] values = new Object[fields.length];
+		for(int i=0; i<fields.length; i++)
+			values[i] = fields[i].get(obj);
+		return values;
+	}
+
+	/**
+	 * Check if the state of a class cannot be described by its table
+	 * @param clazz
+	 * 		the class
+	 * @return
+	 * 		is opaque or not
+	 */
+	public static boolean isOpaque(Class<?> clazz){
+		if(clazz.isArray()) return true;
+		for(Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass())
+			if(ObjectFingerprint.isPlatformClass(c)) return true;
+		return false;
+	}
+
+	/**
+	 * Copy the whole state of an object to another object of the same class, including transient
+	 * fields and fields of super classes, fields that are introduced by the offloading system are
+	 * not copied. If the objects are arrays, their elements are copied.
+	 * @param from
+	 * 		the object to copy from
+	 * @param to
+	 * 		the object to copy to
+	 * @throws IllegalAccessException
+	 * @throws IllegalArgumentException
+	 * 		if the objects are not of the same class
+	 */
+	public static void copyState(Object from, Object to) throws IllegalAccessException, IllegalArgumentException{
+		Class<?> clazz = to.getClass();
+		if(from.getClass() != clazz)
+			throw(new IllegalArgumentException("Cannot copy "+from.getClass().getName()+" to "+clazz.getName()));
+		synchronized(to){
+			if(clazz.isArray()){
+				System.arraycopy(from, 0, to, 0, Math.min(Array.getLength(from), Array.getLength(to)));
+				return;
+			}
+			for(Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()){
+				for(Field field : c.getDeclaredFields()){
+					int modifier = field.getModifiers();
+					if(Modifier.isStatic(modifier)) continue;
+					if(ObjectFingerprint.isSystemField(field.getName())) continue;
+					field.setAccessible(true);
+					field.set(to, field.get(from));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.Josh.library.core.component;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.Josh.library.core.interfaces.ObjectCodec;
+
+/**
+ * A FlatObjectTree saves a tree of object information in parallel arrays instead of a node object
+ * for each object. Nodes are added in pre-order, so a node is always after its parent, and a node is
+ * referred by its index. Each node has an object id, the index of its parent node, and the index of
+ * the name of the field in which the object lies. Field names are saved once in a name table of the
+ * tree, so nodes of the same field share the same name. The sub-objects of a coded object, see
+ * ObjectCodec, lie in its elements instead of its fields, and they are named by ObjectCodecs.
+ * <p>
+ * A tree can have more than one root, a root is a node whose parent index is -1.
+ * @author Josh
+ *
+ */
+public abstract class FlatObjectTree implements Serializable {
+	private static final int DEFAULT_CAPACITY = 16;
+	private int size = 0;
+	private int[] ids;
+	private int[] parents;
+	private int[] fieldIndexes;
+	private String[] fieldNames;
+	private int fieldNameNum = 0;
+	private transient Map<String,Integer> fieldName2Index = null;
+	//elements of coded objects whose sub-objects are got or set, they are set back by flushElements
+	private transient Map<Object,Object[]> elementCache = null;
+	private static final long serialVersionUID = 1L;
+
+	protected FlatObjectTree(){
+		ids = new int[DEFAULT_CAPACITY];
+		parents = new int[DEFAULT_CAPACITY];
+		fieldIndexes = new int[DEFAULT_CAPACITY];
+		fieldNames = new String[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Append a node to this tree, subclasses should save other information of the node at the
+	 * returned index.
+	 * @param id
+	 * 		the id of the object, or -1 if the object has no id
+	 * @param parentIndex
+	 * 		the index of the parent node, or -1 if the node is a root
+	 * @param fieldName
+	 * 		the name of the field in which the object lies, or null if the node is a root
+	 * @return
+	 * 		the index of the node
+	 */
+	protected int addNode(int id, int parentIndex, String fieldName){
+		if(parentIndex >= size)
+			throw(new IllegalArgumentException("Parent node "+parentIndex+" does not exist"));
+		if(size == ids.length)
+			grow(Math.max(size*2, DEFAULT_CAPACITY));
+		int index = size++;
+		ids[index] = id;
+		parents[index] = parentIndex;
+		fieldIndexes[index] = getFieldIndex(fieldName);
+		return index;
+	}
+
+	/**
+	 * Get the index of a field name in the name table, the name is added if it is not in the table
+	 * @param fieldName
+	 * 		the field name
+	 * @return
+	 * 		the index of the name, or -1 if the name is null
+	 */
+	protected int getFieldIndex(String fieldName){
+		if(fieldName == null) return -1;
+		if(fieldName2Index == null){
+			fieldName2Index = new HashMap<String,Integer>();
+			for(int i=0; i<fieldNameNum; i++)
+				fieldName2Index.put(fieldNames[i], i);
+		}
+		Integer index = fieldName2Index.get(fieldName);
+		if(index != null) return index;
+		if(fieldNameNum == fieldNames.length)
+			fieldNames = Arrays.copyOf(fieldNames, Math.max(fieldNameNum*2, DEFAULT_CAPACITY));
+		fieldNames[fieldNameNum] = fieldName;
+		fieldName2Index.put(fieldName, fieldNameNum);
+		return fieldNameNum++;
+	}
+
+	/**
+	 * Enlarge the arrays of this tree, subclasses should enlarge their own arrays too
+	 * @param capacity
+	 * 		the new capacity
+	 */
+	protected void grow(int capacity){
+		ids = Arrays.copyOf(ids, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		fieldIndexes = Arrays.copyOf(fieldIndexes, capacity);
+	}
+
+	/**
+	 * Get the capacity of the arrays of this tree
+	 * @return
+	 * 		the capacity
+	 */
+	protected int capacity(){
+		return ids.length;
+	}
+
+	/**
+	 * Get the amount of nodes in this tree
+	 * @return
+	 * 		amount of nodes
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Check if this tree has no node
+	 * @return
+	 * 		if this tree is empty or not
+	 */
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Get the id of the object of a node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the id, or -1 if the object has no id
+	 */
+	public int getId(int index){
+		return ids[index];
+	}
+
+	/**
+	 * Get the index of the parent node of a node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the index of the parent node, or -1 if the node is a root
+	 */
+	public int getParentIndex(int index){
+		return parents[index];
+	}
+
+	/**
+	 * Get the name of the field in which the object of a node lies
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the field name, or null if the node is a root
+	 */
+	public String getFieldName(int index){
+		return getFieldNameAt(fieldIndexes[index]);
+	}
+
+	/**
+	 * Get a field name in the name table
+	 * @param fieldIndex
+	 * 		the index of the name
+	 * @return
+	 * 		the field name, or null if the index is -1
+	 */
+	protected String getFieldNameAt(int fieldIndex){
+		return fieldIndex < 0? null : fieldNames[fieldIndex];
+	}
+
+	/**
+	 * Get the amount of different field names in this tree
+	 * @return
+	 * 		amount of field names
+	 */
+	public int fieldNameNum(){
+		return fieldNameNum;
+	}
+
+	/**
+	 * Get the value of a field, or of an element if the object is coded
+	 * @param obj
+	 * 		the parent object
+	 * @param fieldName
+	 * 		the field name or the element name
+	 * @return
+	 * 		the value
+	 * @throws IllegalAccessException
+	 * @throws IllegalArgumentException
+	 * @throws NoSuchFieldException
+	 * 		if the field does not exist, or the element does not exist in the object
+	 */
+	public Object getChildValue(Object obj, String fieldName) throws IllegalAccessException, IllegalArgumentException, NoSuchFieldException{
+		int elementIndex = ObjectCodecs.getElementIndex(fieldName);
+		if(elementIndex < 0)
+			return CodeHandler.getFieldValue(obj.getClass(), fieldName, obj);
+		return getCachedElements(obj, fieldName)[elementIndex];
+	}
+
+	/**
+	 * Set the value of a field, or of an element if the object is coded. Elements are set to the
+	 * object when flushElements is called.
+	 * @param obj
+	 * 		the parent object
+	 * @param fieldName
+	 * 		the field name or the element name
+	 * @param value
+	 * 		the value
+	 * @throws IllegalAccessException
+	 * @throws IllegalArgumentException
+	 * @throws NoSuchFieldException
+	 * 		if the field does not exist, or the element does not exist in the object
+	 */
+	public void setChildValue(Object obj, String fieldName, Object value) throws IllegalAccessException, IllegalArgumentException, NoSuchFieldException{
+		int elementIndex = ObjectCodecs.getElementIndex(fieldName);
+		if(elementIndex < 0)
+			CodeHandler.setFieldValue(obj.getClass(), fieldName, obj, value);
+		else
+			getCachedElements(obj, fieldName)[elementIndex] = value;
+	}
+
+	/**
+	 * Set elements that are set by setChildValue to their objects, and forget the elements. It
+	 * should be called after all sub-objects of the tree are handled.
+	 */
+	public void flushElements(){
+		if(elementCache == null) return;
+		for(Map.Entry<Object,Object[]> entry : elementCache.entrySet()){
+			Object obj = entry.getKey();
+			ObjectCodec codec = ObjectCodecs.getCodec(obj.getClass());
+			synchronized(obj){
+				codec.setElements(obj, entry.getValue());
+			}
+		}
+		elementCache = null;
+	}
+
+	/**
+	 * Get the elements of a coded object, they are got once until flushElements is called
+	 */
+	private Object[] getCachedElements(Object obj, String fieldName) throws NoSuchFieldException{
+		if(elementCache == null)
+			elementCache = new IdentityHashMap<Object,Object[]>();
+		Object[] elements = elementCache.get(obj);
+		if(elements == null){
+			elements = ObjectCodecs.getElements(obj);
+			if(elements == null)
+				throw(new NoSuchFieldException(fieldName+" of "+obj.getClass().getName()));
+			elementCache.put(obj, elements);
+		}
+		if(ObjectCodecs.getElementIndex(fieldName) >= elements.length)
+			throw(new NoSuchFieldException(fieldName+" of "+obj.getClass().getName()));
+		return elements;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		//do not transmit unused capacity
+		if(ids.length != size)
+			grow(size);
+		if(fieldNames.length != fieldNameNum)
+			fieldNames = Arrays.copyOf(fieldNames, fieldNameNum);
+		out.defaultWriteObject();
+	}
+}
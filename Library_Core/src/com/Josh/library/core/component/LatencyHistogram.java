@@ -0,0 +1,211 @@
+package com.Josh.library.core.component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A LatencyHistogram records non-negative values, such as times in nanoseconds or sizes in bytes, in
+ * logarithmic buckets. Each power of two is split into 8 buckets, so a value is kept with a relative
+ * error of 1/8 at most, whatever its magnitude, and the whole range of long values fits in less than
+ * 500 buckets. Buckets are created when they are used first.
+ * <p>
+ * The histogram forgets old values: every time a window of values has been recorded, all counts are
+ * halved, so a value recorded a window ago counts half as much as a new one. Means and percentiles
+ * follow the recent behavior of a method instead of its whole history. Counts are doubles, so the
+ * histogram never overflows.
+ * @author Josh
+ *
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_NUM = 1 << SUB_BUCKET_BITS;
+	private static final int FORMAT_VERSION = 1;
+	private final int window;
+	private double[] counts = new double[0];
+	private double totalCount = 0;
+	private double sum = 0;
+	private int sinceDecay = 0;
+
+	/**
+	 * Build a histogram
+	 * @param window
+	 * 		the amount of values after which all counts are halved, 0 means that values are never forgotten
+	 */
+	public LatencyHistogram(int window){
+		this.window = window;
+	}
+
+	/**
+	 * Get the bucket of a value
+	 */
+	private static int getIndex(long value){
+		if(value < SUB_BUCKET_NUM) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_NUM - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_NUM + subBucket;
+	}
+
+	/**
+	 * Get the smallest value of a bucket
+	 */
+	private static long getLowerBound(int index){
+		if(index < SUB_BUCKET_NUM) return index;
+		int exponent = index / SUB_BUCKET_NUM + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_NUM;
+		return (SUB_BUCKET_NUM + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Get the value that stands for a bucket, it is the middle of the bucket
+	 */
+	private static long getMidValue(int index){
+		if(index < SUB_BUCKET_NUM) return index;
+		int exponent = index / SUB_BUCKET_NUM + SUB_BUCKET_BITS - 1;
+		return getLowerBound(index) + ((1L << (exponent - SUB_BUCKET_BITS)) >>> 1);
+	}
+
+	/**
+	 * Record a value, a negative value is recorded as 0
+	 * @param value
+	 * 		the value
+	 */
+	public synchronized void record(long value){
+		if(value < 0) value = 0;
+		int index = getIndex(value);
+		if(index >= counts.length){
+			double[] newCounts = new double[index + 1];
+			System.arraycopy(counts, 0, newCounts, 0, counts.length);
+			counts = newCounts;
+		}
+		counts[index]++;
+		totalCount++;
+		sum += value;
+		if(window > 0 && ++sinceDecay >= window)
+			decay();
+	}
+
+	/**
+	 * Halve all counts
+	 */
+	private void decay(){
+		for(int i=0; i<counts.length; i++)
+			counts[i] /= 2;
+		totalCount /= 2;
+		sum /= 2;
+		sinceDecay = 0;
+	}
+
+	/**
+	 * Get the weight of the recorded values, it is the amount of values if none has been forgotten
+	 * @return
+	 * 		the weight
+	 */
+	public synchronized double getCount(){
+		return totalCount;
+	}
+
+	/**
+	 * Check if no value has been recorded
+	 * @return
+	 * 		if the histogram is empty or not
+	 */
+	public synchronized boolean isEmpty(){
+		return totalCount <= 0;
+	}
+
+	/**
+	 * Get the mean of the recorded values, recent values weigh more than old ones
+	 * @return
+	 * 		the mean, or -1 if the histogram is empty
+	 */
+	public synchronized long getMean(){
+		if(totalCount <= 0) return -1;
+		return Math.round(sum / totalCount);
+	}
+
+	/**
+	 * Get a percentile of the recorded values, such as 50 for the median or 99 for the tail
+	 * @param percentile
+	 * 		the percentile, from 0 to 100
+	 * @return
+	 * 		the value of the bucket where the percentile falls, or -1 if the histogram is empty
+	 */
+	public synchronized long getPercentile(double percentile){
+		if(totalCount <= 0) return -1;
+		double target = totalCount * Math.max(0, Math.min(100, percentile)) / 100;
+		double count = 0;
+		int last = -1;
+		for(int i=0; i<counts.length; i++){
+			if(counts[i] <= 0) continue;
+			last = i;
+			count += counts[i];
+			if(count >= target) return getMidValue(i);
+		}
+		//the counts are rounded down a little by the decay
+		return getMidValue(last);
+	}
+
+	/**
+	 * Save the histogram, see fromByteArray
+	 * @return
+	 * 		the saved histogram
+	 */
+	public synchronized byte[] toByteArray(){
+		int length = counts.length;
+		while(length > 0 && counts[length-1] <= 0)
+			length--;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(sinceDecay);
+			out.writeDouble(sum);
+			out.writeInt(length);
+			for(int i=0; i<length; i++)
+				out.writeDouble(counts[i]);
+			out.flush();
+		} catch (IOException e) {
+			//a byte array never fails
+			e.printStackTrace();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Restore a histogram that is saved by toByteArray
+	 * @param data
+	 * 		the saved histogram
+	 * @param window
+	 * 		the amount of values after which all counts are halved
+	 * @return
+	 * 		the histogram, it is empty if the data cannot be read
+	 */
+	public static LatencyHistogram fromByteArray(byte[] data, int window){
+		LatencyHistogram histogram = new LatencyHistogram(window);
+		if(data == null) return histogram;
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			if(in.readInt() != FORMAT_VERSION) return histogram;
+			int sinceDecay = in.readInt();
+			double sum = in.readDouble();
+			double[] counts = new double[in.readInt()];
+			double totalCount = 0;
+			for(int i=0; i<counts.length; i++){
+				counts[i] = in.readDouble();
+				totalCount += counts[i];
+			}
+			histogram.sinceDecay = sinceDecay;
+			histogram.sum = sum;
+			histogram.counts = counts;
+			histogram.totalCount = totalCount;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (NegativeArraySizeException e){
+			e.printStackTrace();
+		}
+		return histogram;
+	}
+}
@@ -0,0 +1,28 @@
+package com.Josh.library.core.component;
+
+import java.io.Serializable;
+
+/**
+ * A LeftOutValue replaces a large leaf value that is left out of a stream, see
+ * WireObjectOutputStream.leaveOutBlobs. It only carries the index of the value among the values
+ * that are left out, and it is resolved by a WireObjectInputStream that is given the values.
+ * @author Josh
+ *
+ */
+class LeftOutValue implements Serializable {
+	private int index;
+	private static final long serialVersionUID = 1L;
+
+	LeftOutValue(int index){
+		this.index = index;
+	}
+
+	/**
+	 * Get the index of the value
+	 * @return
+	 * 		the index
+	 */
+	int getIndex(){
+		return this.index;
+	}
+}
@@ -0,0 +1,85 @@
+package com.Josh.library.core.component;
+
+/**
+ * A LinearRegression fits y = intercept + slope * x to the samples it is given by least squares.
+ * Old samples are forgotten: every time a sample is added, the weight of all earlier samples is
+ * multiplied by the forgetting factor, so the fit follows a behavior that changes over time. If all
+ * samples have the same x, the slope is 0 and the prediction is the weighted mean of y.
+ * @author Josh
+ *
+ */
+public class LinearRegression {
+	private final double forgetting;
+	private double weight = 0;
+	private double sumX = 0;
+	private double sumY = 0;
+	private double sumXX = 0;
+	private double sumXY = 0;
+
+	/**
+	 * Build a regression
+	 * @param forgetting
+	 * 		the factor from 0 to 1 by which old samples are weighed when a sample is added, 1 means
+	 * 		that samples are never forgotten
+	 */
+	public LinearRegression(double forgetting){
+		this.forgetting = forgetting;
+	}
+
+	/**
+	 * Add a sample
+	 * @param x
+	 * 		the input
+	 * @param y
+	 * 		the output
+	 */
+	public synchronized void add(double x, double y){
+		weight = weight * forgetting + 1;
+		sumX = sumX * forgetting + x;
+		sumY = sumY * forgetting + y;
+		sumXX = sumXX * forgetting + x * x;
+		sumXY = sumXY * forgetting + x * y;
+	}
+
+	/**
+	 * Get the weight of the samples, it is the amount of samples if none has been forgotten
+	 * @return
+	 * 		the weight
+	 */
+	public synchronized double getWeight(){
+		return weight;
+	}
+
+	/**
+	 * Get the slope of the fit
+	 * @return
+	 * 		the slope, or 0 if the inputs of the samples do not vary
+	 */
+	public synchronized double getSlope(){
+		double variance = weight * sumXX - sumX * sumX;
+		//the inputs are equal, up to the rounding of the sums
+		if(weight <= 0 || variance <= 1e-9 * weight * sumXX) return 0;
+		return (weight * sumXY - sumX * sumY) / variance;
+	}
+
+	/**
+	 * Get the intercept of the fit
+	 * @return
+	 * 		the intercept, or NaN if there is no sample
+	 */
+	public synchronized double getIntercept(){
+		if(weight <= 0) return Double.NaN;
+		return (sumY - getSlope() * sumX) / weight;
+	}
+
+	/**
+	 * Predict the output of an input
+	 * @param x
+	 * 		the input
+	 * @return
+	 * 		the output, or NaN if there is no sample
+	 */
+	public synchronized double predict(double x){
+		return getIntercept() + getSlope() * x;
+	}
+}
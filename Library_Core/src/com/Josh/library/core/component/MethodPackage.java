@@ -1,5 +1,9 @@
 package com.Josh.library.core.component;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -7,18 +11,24 @@ import java.lang.reflect.Modifier;
 /**
  * A MethodPackage object is an object that contains all the information of a method,
  * including its name, class, parameter types, parameters, and so on.
+ * <p>
+ * The signature of a method, that is to say its class, its name and its parameter types, is written
+ * once to a WireObjectOutputStream, and only its id in the SymbolTable of the stream is written when
+ * the method is called again.
  * @author Josh
  *
  */
 public class MethodPackage implements Serializable{
 
-	private static final long serialVersionUID = 1L;
-	private String MethodName;
-	private String ClassName;
-	private String TypeName[];
+	private static final long serialVersionUID = 2L;
+	private transient String MethodName;
+	private transient String ClassName;
+	private transient String TypeName[];
+	private transient String signature = null;
 	private RemoteObjectWrapper objectWrapper;
 	private RemoteObjectWrapper[] paramWrappers;
 	private boolean packed = false;
+	private boolean streamed = false;
 
 	public MethodPackage(){
 		
@@ -61,22 +71,66 @@ public class MethodPackage implements Serializable{
 		if(!packed) return "";
 		try {
 			Class<?> clazz = loader.loadClass(ClassName);
-			Method method = CodeHandler.getMethod(clazz, MethodName, TypeName);			
-			int modifier = method.getModifiers();
-			String str = Modifier.toString(modifier) + " " + method.getReturnType().getName()+" "+ClassName +"." + MethodName +"(";
-			for(int i=0;i<TypeName.length;i++){
-				str += TypeName[i];
-				if(i != TypeName.length-1)
-					str+=",";
-			}
-			str+=")";
-			return str;
+			return toString(CodeHandler.getMethod(clazz, MethodName, TypeName));
 		} catch (NoSuchMethodException e) {
 		} catch(ClassNotFoundException e){
 		}
 		return this.MethodName;
 	}
 	
+	/**
+	 * Get the full name of the method, includes its class, its modifiers and its parameter types. 
+	 * @param method
+	 * 		the method that is found already, see CodeHandler.resolveMethod
+	 * @return
+	 * 		the full name of the method
+	 */
+	public String toString(Method method){
+		if(!packed) return "";
+		int modifier = method.getModifiers();
+		String str = Modifier.toString(modifier) + " " + method.getReturnType().getName()+" "+ClassName +"." + MethodName +"(";
+		for(int i=0;i<TypeName.length;i++){
+			str += TypeName[i];
+			if(i != TypeName.length-1)
+				str+=",";
+		}
+		str+=")";
+		return str;
+	}
+	
+	/**
+	 * Get the signature of the method, it identifies the method in its class loader
+	 * @return
+	 * 		the signature, or empty string if no method is packed
+	 */
+	public String getSignature(){
+		if(!packed) return "";
+		if(signature == null)
+			signature = getSignature(ClassName, MethodName, TypeName);
+		return signature;
+	}
+	
+	/**
+	 * Get the signature of a method
+	 * @param className
+	 * 		the name of the class in which the method locates
+	 * @param methodName
+	 * 		the name of the method
+	 * @param typeNames
+	 * 		array of parameter type names, can be null
+	 * @return
+	 * 		the signature
+	 */
+	public static String getSignature(String className, String methodName, String[] typeNames){
+		StringBuilder builder = new StringBuilder(className).append('.').append(methodName).append('(');
+		if(typeNames != null)
+			for(int i=0; i<typeNames.length; i++){
+				if(i > 0) builder.append(',');
+				builder.append(typeNames[i]);
+			}
+		return builder.append(')').toString();
+	}
+	
 	/**
 	 * Get the name of the class in which this method is defined
 	 * @return
@@ -127,6 +181,40 @@ public class MethodPackage implements Serializable{
 		return this.paramWrappers;
 	}
 	
+	/**
+	 * Get a package that contains everything of this package except the parameters, so that the
+	 * receiver can prepare the method before the parameters arrive. The parameters are sent after
+	 * the header one by one, and the receiver puts them back to the header with setParamWrapper.
+	 * @return
+	 * 		the header of this package
+	 */
+	public MethodPackage getHeader(){
+		MethodPackage header = new MethodPackage(ClassName, MethodName, TypeName, objectWrapper,
+				new RemoteObjectWrapper[paramWrappers.length]);
+		header.streamed = true;
+		return header;
+	}
+	
+	/**
+	 * Check if this package is a header whose parameters are sent separately, see getHeader
+	 * @return
+	 * 		if the package is streamed or not
+	 */
+	public boolean isStreamed(){
+		return this.streamed;
+	}
+	
+	/**
+	 * Put a parameter that arrives after the header
+	 * @param index
+	 * 		the index of the parameter
+	 * @param wrapper
+	 * 		the wrapped parameter
+	 */
+	public void setParamWrapper(int index, RemoteObjectWrapper wrapper){
+		this.paramWrappers[index] = wrapper;
+	}
+	
 	/**
 	 * Check if any method has been packed to this package
 	 * @return
@@ -135,4 +223,46 @@ public class MethodPackage implements Serializable{
 	public boolean hasPacked(){
 		return this.packed;
 	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		out.defaultWriteObject();
+		SymbolTable table = null;
+		if(packed && WireObjectOutputStream.class.isInstance(out))
+			table = ((WireObjectOutputStream) out).getSymbolTable();
+		//the signature is written with its new id the first time, and only its id later
+		int id = table == null? -1 : table.getId(getSignature());
+		out.writeBoolean(id >= 0);
+		if(id >= 0){
+			out.writeInt(id);
+			return;
+		}
+		out.writeInt(table == null? -1 : table.add(getSignature()));
+		out.writeObject(ClassName);
+		out.writeObject(MethodName);
+		out.writeObject(TypeName);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		SymbolTable table = null;
+		if(WireObjectInputStream.class.isInstance(in))
+			table = ((WireObjectInputStream) in).getSymbolTable();
+		boolean isKnown = in.readBoolean();
+		int id = in.readInt();
+		if(isKnown){
+			Object[] symbol = table == null? null : (Object[]) table.get(id);
+			if(symbol == null)
+				throw(new InvalidObjectException("Method symbol "+id+" is not defined"));
+			ClassName = (String) symbol[0];
+			MethodName = (String) symbol[1];
+			TypeName = (String[]) symbol[2];
+			signature = (String) symbol[3];
+			return;
+		}
+		ClassName = (String) in.readObject();
+		MethodName = (String) in.readObject();
+		TypeName = (String[]) in.readObject();
+		if(id >= 0 && table != null)
+			table.define(id, new Object[]{ClassName, MethodName, TypeName, getSignature()});
+	}
 }
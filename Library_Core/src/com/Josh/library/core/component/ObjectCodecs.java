@@ -0,0 +1,282 @@
+package com.Josh.library.core.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.Josh.library.core.interfaces.CodedBy;
+import com.Josh.library.core.interfaces.ObjectCodec;
+
+import android.util.Log;
+
+/**
+ * ObjectCodecs is the registry of ObjectCodecs. Codecs of the common collections of the platform are
+ * registered here, codecs of application classes are declared by CodedBy. A codec is used for its
+ * class only, not for subclasses, because a subclass may have fields of its own.
+ * <p>
+ * The codecs of the platform keep the whole contents of a collection as a single node:
+ * <ul>
+ * <li>A list, or a deque, has all of its items as elements, in their order.</li>
+ * <li>A map whose keys are values has its values as elements, in the order of their keys. The
+ * keys of a hash map are sorted, since their order in the map depends on their hash codes.</li>
+ * <li>A set whose items are values has no elements, it is described by its contents only.</li>
+ * </ul>
+ * Maps and sets that contain other objects cannot be coded, because their order cannot be
+ * reproduced in another copy, they are walked by their fields as before.
+ * @author Josh
+ *
+ */
+public class ObjectCodecs {
+	private static final String Tag = "ObjectCodecs";
+	private static final String ELEMENT_PREFIX = "#";
+	private static final ObjectCodec NO_CODEC = new ListCodec();
+	private static final Map<Class<?>,ObjectCodec> codecs = new HashMap<Class<?>,ObjectCodec>();
+
+	static{
+		ObjectCodec listCodec = new ListCodec();
+		register(ArrayList.class, listCodec);
+		register(LinkedList.class, listCodec);
+		register(Vector.class, listCodec);
+		register(Stack.class, listCodec);
+		register(CopyOnWriteArrayList.class, listCodec);
+		register(ArrayDeque.class, new DequeCodec());
+		ObjectCodec sortedMapCodec = new MapCodec(true);
+		register(HashMap.class, sortedMapCodec);
+		register(Hashtable.class, sortedMapCodec);
+		register(ConcurrentHashMap.class, sortedMapCodec);
+		ObjectCodec orderedMapCodec = new MapCodec(false);
+		register(LinkedHashMap.class, orderedMapCodec);
+		register(TreeMap.class, orderedMapCodec);
+		ObjectCodec setCodec = new SetCodec();
+		register(HashSet.class, setCodec);
+		register(LinkedHashSet.class, setCodec);
+		register(TreeSet.class, setCodec);
+	}
+
+	/**
+	 * Register a codec for a class. The codec must be registered in both the client and the server,
+	 * so codecs of application classes should be declared by CodedBy instead.
+	 * @param clazz
+	 * 		the class
+	 * @param codec
+	 * 		the codec
+	 */
+	public static void register(Class<?> clazz, ObjectCodec codec){
+		synchronized(codecs){
+			codecs.put(clazz, codec);
+		}
+	}
+
+	/**
+	 * Get the codec of a class
+	 * @param clazz
+	 * 		the class
+	 * @return
+	 * 		the codec, or null if the class has no codec
+	 */
+	public static ObjectCodec getCodec(Class<?> clazz){
+		synchronized(codecs){
+			ObjectCodec codec = codecs.get(clazz);
+			if(codec != null) return codec == NO_CODEC? null : codec;
+		}
+		ObjectCodec codec = NO_CODEC;
+		CodedBy codedBy = clazz.getAnnotation(CodedBy.class);
+		if(codedBy != null)
+			try {
+				codec = codedBy.value().newInstance();
+			} catch (InstantiationException e) {
+				e.printStackTrace();
+				Log.e(Tag, "Unable to build codec of "+clazz.getName());
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+				Log.e(Tag, "Unable to build codec of "+clazz.getName());
+			}
+		register(clazz, codec);
+		return codec == NO_CODEC? null : codec;
+	}
+
+	/**
+	 * Get the elements of an object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the elements, or null if the object is not coded
+	 */
+	public static Object[] getElements(Object obj){
+		if(obj == null) return null;
+		ObjectCodec codec = getCodec(obj.getClass());
+		return codec == null? null : codec.getElements(obj);
+	}
+
+	/**
+	 * Get the name of an element, it is used in place of a field name
+	 * @param index
+	 * 		the index of the element
+	 * @return
+	 * 		the name
+	 */
+	public static String getElementName(int index){
+		return ELEMENT_PREFIX+index;
+	}
+
+	/**
+	 * Get the index of an element from its name
+	 * @param name
+	 * 		the name of a field or an element
+	 * @return
+	 * 		the index, or -1 if the name is a field name
+	 */
+	public static int getElementIndex(String name){
+		if(name == null || !name.startsWith(ELEMENT_PREFIX)) return -1;
+		try{
+			return Integer.parseInt(name.substring(ELEMENT_PREFIX.length()));
+		}catch(NumberFormatException e){
+			return -1;
+		}
+	}
+
+	/**
+	 * Check if all items are values, see ObjectPatch.isValue
+	 */
+	private static boolean areValues(Collection<?> items){
+		for(Object item : items)
+			if(!ObjectPatch.isValue(item)) return false;
+		return true;
+	}
+
+	/**
+	 * The codec of lists
+	 */
+	private static class ListCodec implements ObjectCodec {
+
+		@Override
+		public Object[] getElements(Object obj) {
+			return ((List<?>) obj).toArray();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void setElements(Object obj, Object[] elements) {
+			List<Object> list = (List<Object>) obj;
+			if(list instanceof RandomAccess){
+				for(int i=0; i<elements.length && i<list.size(); i++)
+					if(list.get(i) != elements[i])
+						list.set(i, elements[i]);
+				return;
+			}
+			ListIterator<Object> iterator = list.listIterator();
+			for(int i=0; i<elements.length && iterator.hasNext(); i++)
+				if(iterator.next() != elements[i])
+					iterator.set(elements[i]);
+		}
+	}
+
+	/**
+	 * The codec of deques, a deque cannot replace an item in place, so it is refilled
+	 */
+	private static class DequeCodec implements ObjectCodec {
+
+		@Override
+		public Object[] getElements(Object obj) {
+			return ((Collection<?>) obj).toArray();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void setElements(Object obj, Object[] elements) {
+			Collection<Object> collection = (Collection<Object>) obj;
+			if(Arrays.equals(collection.toArray(), elements)) return;
+			collection.clear();
+			collection.addAll(Arrays.asList(elements));
+		}
+	}
+
+	/**
+	 * The codec of maps whose keys are values
+	 */
+	private static class MapCodec implements ObjectCodec {
+		private final boolean isSorted;
+
+		/**
+		 * @param isSorted
+		 * 		if the keys should be sorted, it is true for maps whose order depends on hash codes
+		 */
+		public MapCodec(boolean isSorted){
+			this.isSorted = isSorted;
+		}
+
+		/**
+		 * Get the keys of a map in the order of its elements
+		 * @return
+		 * 		the keys, or null if the map cannot be coded
+		 */
+		private Object[] getKeys(Map<?,?> map){
+			if(!areValues(map.keySet())) return null;
+			Object[] keys = map.keySet().toArray();
+			if(isSorted)
+				try{
+					Arrays.sort(keys);
+				}catch(RuntimeException e){
+					//the keys are null or are not comparable with each other
+					return null;
+				}
+			return keys;
+		}
+
+		@Override
+		public Object[] getElements(Object obj) {
+			Map<?,?> map = (Map<?,?>) obj;
+			Object[] keys = getKeys(map);
+			if(keys == null) return null;
+			Object[] elements = new Object[keys.length];
+			for(int i=0; i<keys.length; i++)
+				elements[i] = map.get(keys[i]);
+			return elements;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void setElements(Object obj, Object[] elements) {
+			Map<Object,Object> map = (Map<Object,Object>) obj;
+			Object[] keys = getKeys(map);
+			if(keys == null) return;
+			for(int i=0; i<keys.length && i<elements.length; i++)
+				if(map.get(keys[i]) != elements[i])
+					map.put(keys[i], elements[i]);
+		}
+	}
+
+	/**
+	 * The codec of sets whose items are values
+	 */
+	private static class SetCodec implements ObjectCodec {
+		private static final Object[] NO_ELEMENTS = new Object[0];
+
+		@Override
+		public Object[] getElements(Object obj) {
+			return areValues((Set<?>) obj)? NO_ELEMENTS : null;
+		}
+
+		@Override
+		public void setElements(Object obj, Object[] elements) {
+		}
+	}
+}
@@ -0,0 +1,462 @@
+package com.Josh.library.core.component;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.Josh.library.core.interfaces.ObjectIdResolver;
+import com.Josh.library.core.interfaces.ObjectVersionTracker;
+
+/**
+ * An ObjectFingerprint is a 64-bit digest of the whole state reachable from an object,
+ * together with a rough estimation of its size. Two object graphs that have the same
+ * fingerprint are considered to have the same content. The fingerprint does not depend
+ * on identity hash codes or on the order returned by reflection, so the same graph has
+ * the same fingerprint in the client and in the server.
+ * <p>
+ * Every value is mixed with all its bits: longs and doubles as 64-bit values, every char of a
+ * string and every element of a primitive array. Each value goes through a bijective mix of the
+ * whole fingerprint, so two graphs that differ in a single value never have the same fingerprint,
+ * and graphs that differ in more values only have the same fingerprint by chance.
+ * <p>
+ * If an ObjectVersionTracker is given, value fields of objects whose writes are tracked are
+ * not read, they are represented by the versions of the objects instead. Such a fingerprint only
+ * describes the shape of the graph and the content of untracked objects, the tracked objects and
+ * their versions are kept in depth first order so that they can be compared later. The same
+ * walk computes the content fingerprint as well, see getContentValue, so that a graph is walked once
+ * to get both of them.
+ * <p>
+ * If an ObjectIdResolver is given, the fingerprint only covers the region of the root object,
+ * other objects that have ids are represented by their ids and are not scanned.
+ * @author Josh
+ *
+ */
+public class ObjectFingerprint {
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private static final long NULL_TAG = 0x9e3779b97f4a7c15L;
+	private static final long BACK_REFERENCE_TAG = 0xc2b2ae3d27d4eb4fL;
+	private static final long TRACKED_VALUE_TAG = 0x165667b19e3779f9L;
+	private static final long ID_REFERENCE_TAG = 0x27d4eb2f165667c5L;
+	private static final long TRUE_TAG = 0x85ebca6b0b4c1e2fL;
+	private static final long FALSE_TAG = 0x4cf5ad432745937fL;
+	private static final Map<Class<?>,Boolean> trackableCache = new HashMap<Class<?>,Boolean>();
+	private static final Map<Class<?>,Long> classNameHashes = new HashMap<Class<?>,Long>();
+	private long value = OFFSET;
+	//the fingerprint without the tracker, it is only computed if there is a tracker
+	private long contentValue = OFFSET;
+	//if values are only mixed into contentValue
+	private boolean isContentOnly = false;
+	private long estimatedSize = 0;
+	private int nodeCount = 0;
+	private ObjectVersionTracker tracker = null;
+	private List<Object> trackedNodes = null;
+	private List<Long> trackedVersions = null;
+	private ObjectIdResolver idResolver = null;
+	private Object root = null;
+
+	public ObjectFingerprint(Object root){
+		scan(root);
+	}
+
+	public ObjectFingerprint(Object root, ObjectVersionTracker tracker){
+		this.tracker = tracker;
+		this.trackedNodes = new ArrayList<Object>();
+		this.trackedVersions = new ArrayList<Long>();
+		scan(root);
+	}
+
+	public ObjectFingerprint(Object root, ObjectIdResolver idResolver){
+		this.idResolver = idResolver;
+		scan(root);
+	}
+
+	//an empty fingerprint, to hash a name
+	private ObjectFingerprint(){
+	}
+
+	/**
+	 * Get objects whose writes are tracked, in depth first order
+	 * @return
+	 * 		the tracked objects, or null if there is no ObjectVersionTracker
+	 */
+	public List<Object> getTrackedNodes(){
+		return this.trackedNodes;
+	}
+
+	/**
+	 * Get versions of the tracked objects, in the same order as getTrackedNodes()
+	 * @return
+	 * 		the versions, or null if there is no ObjectVersionTracker
+	 */
+	public long[] getTrackedVersions(){
+		if(trackedVersions == null) return null;
+		long[] result = new long[trackedVersions.size()];
+		for(int i=0; i<result.length; i++)
+			result[i] = trackedVersions.get(i);
+		return result;
+	}
+
+	/**
+	 * Get the fingerprint value
+	 * @return
+	 * 		the fingerprint
+	 */
+	public long getValue(){
+		return this.value;
+	}
+
+	/**
+	 * Get the fingerprint of the content of the graph, it is the value of a fingerprint of the same
+	 * graph that is computed without an ObjectVersionTracker
+	 * @return
+	 * 		the content fingerprint
+	 */
+	public long getContentValue(){
+		return tracker == null? this.value : this.contentValue;
+	}
+
+	/**
+	 * Get the estimated size of the object graph in bytes
+	 * @return
+	 * 		the estimated size
+	 */
+	public long getEstimatedSize(){
+		return this.estimatedSize;
+	}
+
+	/**
+	 * Get the amount of objects in the object graph, basic type values are not counted
+	 * @return
+	 * 		the amount of objects
+	 */
+	public int getNodeCount(){
+		return this.nodeCount;
+	}
+
+	/**
+	 * Check if a field is one of the fields that are introduced by the offloading system
+	 * to every Remoteable class. These fields are different in the client and in the server,
+	 * so they are never considered as a part of the object state.
+	 * @param name
+	 * 		the name of the field
+	 * @return
+	 * 		is system field or not
+	 */
+	public static boolean isSystemField(String name){
+		return name.equals("ENVIRONMENT") || name.equals("REMOTE_OBJECT_ID") || name.equals("REFERENCE_NUM")
+				|| name.equals("REMOTE_OBJECT_VERSION")
+				|| name.endsWith("$ENVIRONMENT") || name.endsWith("$REMOTE_OBJECT_ID") || name.endsWith("$REFERENCE_NUM")
+				|| name.endsWith("$REMOTE_OBJECT_VERSION");
+	}
+
+	/**
+	 * mix a value into the fingerprint, the new fingerprint is a bijection of the old one for any
+	 * value, and a bijection of the value for any old fingerprint
+	 * @param v
+	 * 		the value
+	 */
+	private void mix(long v){
+		if(!isContentOnly)
+			value = mix64(value ^ v);
+		if(tracker != null)
+			contentValue = mix64(contentValue ^ v);
+	}
+
+	/**
+	 * Mix all bits of a 64-bit value, it is the finalizer of MurmurHash3. It is a bijection, and a
+	 * change of any bit of the input changes about half of the bits of the output.
+	 * @param v
+	 * 		the value
+	 * @return
+	 * 		the mixed value
+	 */
+	static long mix64(long v){
+		v ^= v >>> 33;
+		v *= 0xff51afd7ed558ccdL;
+		v ^= v >>> 33;
+		v *= 0xc4ceb9fe1a85ec53L;
+		v ^= v >>> 33;
+		return v;
+	}
+
+	/**
+	 * mix every char of a string into the fingerprint, with its length
+	 * @param str
+	 * 		the string
+	 */
+	private void mixString(String str){
+		int length = str.length();
+		mix(length);
+		for(int i=0; i<length; i+=4){
+			long v = 0;
+			for(int j=i; j<i+4 && j<length; j++)
+				v = (v << 16) | str.charAt(j);
+			mix(v);
+		}
+	}
+
+	/**
+	 * mix the name of a class into the fingerprint, the hashes of names are computed once
+	 * @param clazz
+	 * 		the class
+	 */
+	private void mixClass(Class<?> clazz){
+		Long hash;
+		synchronized(classNameHashes){
+			hash = classNameHashes.get(clazz);
+		}
+		if(hash == null){
+			ObjectFingerprint name = new ObjectFingerprint();
+			name.mixString(clazz.getName());
+			hash = name.value;
+			synchronized(classNameHashes){
+				classNameHashes.put(clazz, hash);
+			}
+		}
+		mix(hash);
+	}
+
+	/**
+	 * mix a basic type value with all its bits, see BasicType
+	 * @param obj
+	 * 		the value
+	 */
+	private void mixBasicValue(Object obj){
+		if(obj instanceof String){
+			mixString((String) obj);
+			return;
+		}
+		if(obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte)
+			mix(((Number) obj).longValue());
+		else if(obj instanceof Double)
+			mix(Double.doubleToLongBits((Double) obj));
+		else if(obj instanceof Float)
+			mix(Float.floatToIntBits((Float) obj));
+		else if(obj instanceof Character)
+			mix((Character) obj);
+		else if(obj instanceof Boolean)
+			mix((Boolean) obj? TRUE_TAG : FALSE_TAG);
+		else
+			//BigInteger and BigDecimal, their strings keep all digits and the scale
+			mixString(obj.toString());
+	}
+
+	/**
+	 * Scan the object graph from the root, objects are scanned in depth first order
+	 * @param root
+	 * 		the root object
+	 */
+	private void scan(Object root){
+		this.root = root;
+		IdentityHashMap<Object,Integer> scannedObject = new IdentityHashMap<Object,Integer>();
+		ArrayDeque<Object> stack = new ArrayDeque<Object>();
+		if(!mixValue(root, scannedObject))
+			stack.push(root);
+		while(!stack.isEmpty()){
+			Object obj = stack.pop();
+			Class<?> clazz = obj.getClass();
+			nodeCount++;
+			mixClass(clazz);
+			if(clazz.isArray()){
+				scanArray(obj, clazz, scannedObject, stack);
+				continue;
+			}
+			Field[] fields = FieldAccessor.get(clazz).getStateFields();
+			estimatedSize += 16 + 8 * fields.length;
+			boolean isTracked = false;
+			if(tracker != null && isTrackable(clazz)){
+				long version = tracker.getVersion(obj);
+				if(version >= 0){
+					isTracked = true;
+					trackedNodes.add(obj);
+					trackedVersions.add(version);
+				}
+			}
+			List<Object> sons = new ArrayList<Object>();
+			for(Field field : fields){
+				try {
+					Object fieldValue = field.get(obj);
+					if(isTracked && ObjectPatch.isValue(fieldValue)){
+						//value fields of tracked objects are represented by the version, their values are only in the content
+						value = mix64(value ^ TRACKED_VALUE_TAG);
+						isContentOnly = true;
+						mixValue(fieldValue, scannedObject);
+						isContentOnly = false;
+						continue;
+					}
+					if(!mixValue(fieldValue, scannedObject))
+						sons.add(fieldValue);
+				} catch (IllegalAccessException e) {
+					e.printStackTrace();
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+				}
+			}
+			//push in reverse order so that sons are scanned in field order
+			for(int i = sons.size()-1; i>=0; i--)
+				stack.push(sons.get(i));
+		}
+	}
+
+	/**
+	 * Mix a value that is referenced by a field or an array element. If the value needs to be
+	 * scanned as a new node, it is recorded as scanned and false is returned.
+	 * @param obj
+	 * 		the value
+	 * @param scannedObject
+	 * 		objects that have been met, mapped to the order in which they were met
+	 * @return
+	 * 		true if the value is completely mixed, false if it needs to be scanned
+	 */
+	private boolean mixValue(Object obj, IdentityHashMap<Object,Integer> scannedObject){
+		if(obj == null){
+			mix(NULL_TAG);
+			return true;
+		}
+		Class<?> clazz = obj.getClass();
+		if(BasicType.isBasicType(clazz)){
+			//the class is mixed too, so that 1 and 1L are different
+			mixClass(clazz);
+			mixBasicValue(obj);
+			if(String.class == clazz)
+				estimatedSize += 2 * ((String) obj).length();
+			else
+				estimatedSize += 8;
+			return true;
+		}
+		if(clazz.isEnum()){
+			mixClass(clazz);
+			mixString(((Enum<?>) obj).name());
+			return true;
+		}
+		if(idResolver != null && obj != root){
+			int id = idResolver.getIdFromObject(obj);
+			if(id >= 0){
+				//the object belongs to another region
+				mix(ID_REFERENCE_TAG);
+				mix(id);
+				estimatedSize += 4;
+				return true;
+			}
+		}
+		Integer order = scannedObject.get(obj);
+		if(order != null){
+			mix(BACK_REFERENCE_TAG);
+			mix(order);
+			return true;
+		}
+		scannedObject.put(obj, scannedObject.size());
+		return false;
+	}
+
+	/**
+	 * Scan an array, the content of primitive arrays is mixed directly, and the elements
+	 * of object arrays are pushed to the stack
+	 */
+	private void scanArray(Object array, Class<?> clazz, IdentityHashMap<Object,Integer> scannedObject, ArrayDeque<Object> stack){
+		Class<?> type = clazz.getComponentType();
+		if(type.isPrimitive()){
+			mixPrimitiveArray(array);
+			estimatedSize += 16 + (long) java.lang.reflect.Array.getLength(array) * primitiveSize(type);
+			return;
+		}
+		Object[] elements = (Object[]) array;
+		mix(elements.length);
+		estimatedSize += 16 + 4L * elements.length;
+		List<Object> sons = new ArrayList<Object>();
+		for(Object element : elements){
+			if(!mixValue(element, scannedObject))
+				sons.add(element);
+		}
+		for(int i = sons.size()-1; i>=0; i--)
+			stack.push(sons.get(i));
+	}
+
+	/**
+	 * mix the length and every element of a primitive array into the fingerprint
+	 * @param array
+	 * 		the primitive array
+	 */
+	private void mixPrimitiveArray(Object array){
+		int length = java.lang.reflect.Array.getLength(array);
+		mix(length);
+		if(array instanceof long[]){
+			for(long v : (long[]) array) mix(v);
+		}else if(array instanceof double[]){
+			for(double v : (double[]) array) mix(Double.doubleToLongBits(v));
+		}else if(array instanceof int[]){
+			for(int v : (int[]) array) mix(v);
+		}else if(array instanceof float[]){
+			for(float v : (float[]) array) mix(Float.floatToIntBits(v));
+		}else if(array instanceof byte[]){
+			//8 bytes in a value, the length is mixed above
+			byte[] bytes = (byte[]) array;
+			for(int i=0; i<length; i+=8){
+				long v = 0;
+				for(int j=i; j<i+8 && j<length; j++)
+					v = (v << 8) | (bytes[j] & 0xFF);
+				mix(v);
+			}
+		}else if(array instanceof short[]){
+			for(short v : (short[]) array) mix(v);
+		}else if(array instanceof char[]){
+			for(char v : (char[]) array) mix(v);
+		}else if(array instanceof boolean[]){
+			for(boolean v : (boolean[]) array) mix(v? TRUE_TAG : FALSE_TAG);
+		}
+	}
+
+	/**
+	 * Get the size of a primitive type in bytes
+	 * @param type
+	 * 		the primitive type
+	 * @return
+	 * 		its size
+	 */
+	static int primitiveSize(Class<?> type){
+		if(type == long.class || type == double.class) return 8;
+		if(type == int.class || type == float.class) return 4;
+		if(type == short.class || type == char.class) return 2;
+		return 1;
+	}
+
+	/**
+	 * Check if writes to all fields of a class can be tracked, that is to say, no field
+	 * is declared by a class of the platform
+	 * @param clazz
+	 * 		the class
+	 * @return
+	 * 		can be tracked or not
+	 */
+	private static boolean isTrackable(Class<?> clazz){
+		synchronized(trackableCache){
+			Boolean result = trackableCache.get(clazz);
+			if(result != null) return result;
+		}
+		boolean trackable = true;
+		for(Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()){
+			if(!isPlatformClass(c)) continue;
+			for(Field field : c.getDeclaredFields())
+				if(!Modifier.isStatic(field.getModifiers()))
+					trackable = false;
+		}
+		synchronized(trackableCache){
+			trackableCache.put(clazz, trackable);
+		}
+		return trackable;
+	}
+
+	/**
+	 * Check if a class is a class of the platform
+	 */
+	static boolean isPlatformClass(Class<?> clazz){
+		String name = clazz.getName();
+		return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.")
+				|| name.startsWith("dalvik.") || name.startsWith("libcore.");
+	}
+}
@@ -0,0 +1,99 @@
+package com.Josh.library.core.component;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ObjectPatch contains values of the value fields of an object, a value field is a field whose
+ * value is null, a basic type value or an enum. Applying a patch to another copy of the object
+ * makes the value fields of that copy the same as the original object, references to other objects
+ * are not changed.
+ * @author Josh
+ *
+ */
+public class ObjectPatch implements Serializable {
+	private int id;
+	private String[] classNames;
+	private String[] fieldNames;
+	private Object[] values;
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Build a patch from an object
+	 * @param id
+	 * 		the id of the object
+	 * @param obj
+	 * 		the object
+	 */
+	public ObjectPatch(int id, Object obj){
+		this.id = id;
+		List<String> classNameList = new ArrayList<String>();
+		List<String> fieldNameList = new ArrayList<String>();
+		List<Object> valueList = new ArrayList<Object>();
+		for(Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()){
+			for(Field field : FieldAccessor.get(c).getSynchronizedFields()){
+				try {
+					Object value = field.get(obj);
+					if(!isValue(value)) continue;
+					classNameList.add(c.getName());
+					fieldNameList.add(field.getName());
+					valueList.add(value);
+				} catch (IllegalAccessException e) {
+					e.printStackTrace();
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		classNames = classNameList.toArray(new String[classNameList.size()]);
+		fieldNames = fieldNameList.toArray(new String[fieldNameList.size()]);
+		values = valueList.toArray();
+	}
+
+	/**
+	 * Check if a value is a value that can be patched
+	 * @param value
+	 * 		the value
+	 * @return
+	 * 		can be patched or not
+	 */
+	public static boolean isValue(Object value){
+		if(value == null) return true;
+		Class<?> clazz = value.getClass();
+		return BasicType.isBasicType(clazz) || clazz.isEnum();
+	}
+
+	/**
+	 * Get the id of the patched object
+	 * @return
+	 * 		the id
+	 */
+	public int getObjectId(){
+		return this.id;
+	}
+
+	/**
+	 * Apply this patch to an object
+	 * @param obj
+	 * 		the object
+	 * @throws IllegalAccessException
+	 * @throws IllegalArgumentException
+	 * @throws NoSuchFieldException
+	 * 		if the object does not have a field of this patch
+	 */
+	public void apply(Object obj) throws IllegalAccessException, IllegalArgumentException, NoSuchFieldException{
+		for(int i=0; i<fieldNames.length; i++){
+			Class<?> c = obj.getClass();
+			while(c != null && !c.getName().equals(classNames[i]))
+				c = c.getSuperclass();
+			if(c == null)
+				throw(new NoSuchFieldException(classNames[i]+"."+fieldNames[i]));
+			Field field = FieldAccessor.get(c).getField(fieldNames[i]);
+			if(field == null)
+				throw(new NoSuchFieldException(classNames[i]+"."+fieldNames[i]));
+			CodeHandler.setFieldValue(field, obj, values[i]);
+		}
+	}
+}
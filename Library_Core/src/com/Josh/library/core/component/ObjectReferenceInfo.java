@@ -1,116 +1,212 @@
 package com.Josh.library.core.component;
 
-import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
-
-import com.Josh.library.core.interfaces.TreeScanner;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
 /**
  * An ObjectReferenceInfo object is an object that contains information about an object,
  * its sub-objects, and the reference relationship between parent object and its sub-objects.
- * ObjectReferenceInfo can be a node of a tree, its parent node contains information of its parent object,
- * and its son nodes contain information of its sub-objects.
+ * The information is saved as a flat tree, see FlatObjectTree. The node at index 0 describes
+ * the object itself, other nodes describe its sub-objects, and the parent node of a node
+ * describes the parent object of its object.
+ * <p>
+ * A sub-object that is not transmitted is not a node, it is saved as a stub of its parent node
+ * instead. The field of the parent object is null in the receiver until the sub-object is faulted
+ * in by the key of the stub. The estimated size of the sub-object is saved with the stub, so that
+ * the receiver knows how long a fault may take.
  * @author Josh
  *
  */
-public class ObjectReferenceInfo implements Serializable {
-	private int id;
-	private int referenceNum;
-	private Object thisObject = null;
-	private ObjectReferenceInfo parent = null;
-	private Set<ObjectReferenceInfo> sonSet = new HashSet<ObjectReferenceInfo>();
-	private String parentField;
-	private static final long serialVersionUID =1L;
-	
-	public ObjectReferenceInfo(int id,ObjectReferenceInfo parent, String parentFieldName, int referenceNum){
-		this.id = id;
-		this.referenceNum = referenceNum;
-		this.parent = parent;
-		this.parentField = parentFieldName;
+public class ObjectReferenceInfo extends FlatObjectTree {
+	private int[] referenceNums;
+	private transient Object[] objects;
+	private int[] stubParents = null;
+	private int[] stubFieldIndexes = null;
+	private int[] stubKeys = null;
+	private long[] stubSizes = null;
+	private int stubNum = 0;
+	private static final long serialVersionUID =3L;
+
+	public ObjectReferenceInfo(){
+		super();
+		referenceNums = new int[capacity()];
 	}
-	
+
 	/**
-	 * Get the name of the filed in which this object belongs to
+	 * Add a node to this ObjectReferenceInfo
+	 * @param id
+	 * 		the id of the object
+	 * @param parentIndex
+	 * 		the index of the parent node, or -1 if the object does not has a parent object
+	 * @param parentFieldName
+	 * 		the name of the filed in which this object belongs to, or null if the object does
+	 * 		not has a parent object
+	 * @param referenceNum
+	 * 		the reference time of the object
 	 * @return
-	 * 		the field name, or null if this object does not has a parent object
+	 * 		the index of the node
 	 */
-	public String getParentFieldName(){
-		return this.parentField;
+	public int add(int id, int parentIndex, String parentFieldName, int referenceNum){
+		int index = addNode(id, parentIndex, parentFieldName);
+		referenceNums[index] = referenceNum;
+		return index;
 	}
-	
+
 	/**
-	 * Get the id of this object
+	 * Add a stub, that is to say, a sub-object which is not transmitted with its parent object
+	 * @param parentIndex
+	 * 		the index of the parent node
+	 * @param fieldName
+	 * 		the name of the field in which the sub-object lies
+	 * @param key
+	 * 		the key by which the sub-object can be found in the client
+	 * @param size
+	 * 		the estimated size of the sub-object in bytes, see SizeEstimator
+	 */
+	public void addStub(int parentIndex, String fieldName, int key, long size){
+		if(parentIndex < 0 || parentIndex >= size())
+			throw(new IllegalArgumentException("Parent node "+parentIndex+" does not exist"));
+		if(stubParents == null){
+			stubParents = new int[4];
+			stubFieldIndexes = new int[4];
+			stubKeys = new int[4];
+			stubSizes = new long[4];
+		}else if(stubNum == stubParents.length){
+			stubParents = Arrays.copyOf(stubParents, stubNum*2);
+			stubFieldIndexes = Arrays.copyOf(stubFieldIndexes, stubNum*2);
+			stubKeys = Arrays.copyOf(stubKeys, stubNum*2);
+			stubSizes = Arrays.copyOf(stubSizes, stubNum*2);
+		}
+		stubParents[stubNum] = parentIndex;
+		stubFieldIndexes[stubNum] = getFieldIndex(fieldName);
+		stubKeys[stubNum] = key;
+		stubSizes[stubNum] = size;
+		stubNum++;
+	}
+
+	/**
+	 * Get the amount of stubs
 	 * @return
-	 * 		the id
+	 * 		amount of stubs
 	 */
-	public int getId(){
-		return this.id;
+	public int stubNum(){
+		return stubNum;
 	}
-	
+
 	/**
-	 * get the reference time of this object
+	 * Get the index of the parent node of a stub
+	 * @param stub
+	 * 		the index of the stub
 	 * @return
-	 * 		reference time
+	 * 		the index of the parent node
 	 */
-	public int getReferenceNum(){
-		return this.referenceNum;
+	public int getStubParentIndex(int stub){
+		return stubParents[stub];
 	}
-	
+
 	/**
-	 * Get the parent node of this ObjectReferenceInfo
+	 * Get the name of the field of a stub
+	 * @param stub
+	 * 		the index of the stub
 	 * @return
-	 * 		the parent node, or null if this ObjectReferenceInfo does not has a parent
+	 * 		the field name
 	 */
-	public ObjectReferenceInfo getParent(){
-		return this.parent;
+	public String getStubFieldName(int stub){
+		return getFieldNameAt(stubFieldIndexes[stub]);
 	}
-	
+
 	/**
-	 * Put son ObjectReferenceInfo to this ObjectReferenceInfo, a son ObjectReferenceInfo
-	 * contains information of a sub-object of this object.
-	 * @param son
-	 * 		the son ObjectReferenceInfo of this  ObjectReferenceInfo
+	 * Get the key of a stub
+	 * @param stub
+	 * 		the index of the stub
 	 * @return
-	 * 		true if succeed, false otherwise
+	 * 		the key by which the sub-object can be found in the client
 	 */
-	public boolean put(ObjectReferenceInfo son){
-		synchronized(sonSet){
-			return this.sonSet.add(son);
-		}
+	public int getStubKey(int stub){
+		return stubKeys[stub];
 	}
-	
+
 	/**
-	 * Set the object which this ObjectReferenceInfo describes
-	 * @param obj
-	 * 		the object
+	 * Get the estimated size of the sub-object of a stub
+	 * @param stub
+	 * 		the index of the stub
+	 * @return
+	 * 		the estimated size in bytes
 	 */
-	public void setObject(Object obj){
-		this.thisObject = obj;
+	public long getStubSize(int stub){
+		return stubSizes[stub];
+	}
+
+	@Override
+	protected void grow(int capacity){
+		super.grow(capacity);
+		referenceNums = Arrays.copyOf(referenceNums, capacity);
+		if(objects != null)
+			objects = Arrays.copyOf(objects, capacity);
 	}
-	
+
 	/**
-	 * Get the object which this ObjectReferenceInfo describes
+	 * Get the id of the object itself
 	 * @return
+	 * 		the id
+	 */
+	public int getId(){
+		return getId(0);
+	}
+
+	/**
+	 * get the reference time of the object itself
+	 * @return
+	 * 		reference time
+	 */
+	public int getReferenceNum(){
+		return getReferenceNum(0);
+	}
+
+	/**
+	 * get the reference time of the object of a node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		reference time
+	 */
+	public int getReferenceNum(int index){
+		return referenceNums[index];
+	}
+
+	/**
+	 * Set the object of a node, objects are not transmitted
+	 * @param index
+	 * 		the index of the node
+	 * @param obj
 	 * 		the object
 	 */
-	public Object getObject(){
-		return this.thisObject;
+	public void setObject(int index, Object obj){
+		if(objects == null)
+			objects = new Object[capacity()];
+		objects[index] = obj;
 	}
-	
+
 	/**
-	 * Scan all sub-ObjectReferenceInfo-nodes from this node
-	 * @param tree
-	 * 		a tree scanner that provides onScanning method
+	 * Get the object of a node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the object, or null if it is not set
 	 */
-	public void ScanObjectTree(final TreeScanner tree){
-		tree.onScanning(this);
-		if(sonSet==null) return;
-		synchronized(sonSet){
-			for(ObjectReferenceInfo son:sonSet){
-				son.ScanObjectTree(tree);
-			}
-		}
+	public Object getObject(int index){
+		return objects == null? null : objects[index];
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		//do not transmit unused capacity
+		if(stubParents != null && stubParents.length != stubNum){
+			stubParents = Arrays.copyOf(stubParents, stubNum);
+			stubFieldIndexes = Arrays.copyOf(stubFieldIndexes, stubNum);
+			stubKeys = Arrays.copyOf(stubKeys, stubNum);
+			stubSizes = Arrays.copyOf(stubSizes, stubNum);
+		}
+		out.defaultWriteObject();
+	}
 }
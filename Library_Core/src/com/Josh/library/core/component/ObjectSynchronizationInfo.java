@@ -1,165 +1,438 @@
 package com.Josh.library.core.component;
 
-import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-
-import com.Josh.library.core.interfaces.TreeScanner;
+import java.util.Arrays;
 
 /**
  * An ObjectSynchronizationInfo object is an object that contains the synchronizarion information
- * of an object, the information includes the object itself, its parent object, sub-objects, if they are
+ * of objects, the information includes the object itself, its parent object, sub-objects, if they are
  * new objects or not, their id, and some other information that is needed in object synchronization
- * process. An ObjectSynchronizationInfo can be a node of a tree, its parent node presents the 
- * synchronization information of the object's parent object, and its son nodes presents synchronization
- * information of the object's sub-objects.
+ * process. The information is saved as a flat tree, see FlatObjectTree, the parent node of a node
+ * presents the synchronization information of the object's parent object, and its son nodes present
+ * synchronization information of the object's sub-objects. A tree can contain synchronization information
+ * of several objects, each of them is a root.
+ * <p>
+ * Nodes are added in pre-order, so the sub-tree of a node is a continuous range of nodes which starts
+ * from the node itself and ends at getSubtreeEnd(index). Nodes should be synchronized in the order of
+ * their indexes.
+ * <p>
+ * An object that already exists in the client does not have to be carried by its node, see SyncType.
  * @author Josh
  *
  */
-public class ObjectSynchronizationInfo implements Serializable {
-	private String fieldName;
-	private boolean isNewObject = false;
-	private Object obj;
-	private Object needSychronizarionObj;
-	private int objId = -1;
-	private ObjectSynchronizationInfo parent;
-	private Map<String,ObjectSynchronizationInfo> sonSychronizationInfo;
-	private boolean isSynced = false;
-	private static final long serialVersionUID =1L;
-	
-	public ObjectSynchronizationInfo(String fieldName, Object obj,ObjectSynchronizationInfo parent){
-		sonSychronizationInfo = new HashMap<String,ObjectSynchronizationInfo>();
-		this.fieldName = fieldName;
-		this.obj = obj;
-		this.isNewObject = true;
-		this.parent = parent;
-	}
-	
-	
-	public ObjectSynchronizationInfo(String fieldName, Object obj, int id, ObjectSynchronizationInfo parent){
-		sonSychronizationInfo = new HashMap<String,ObjectSynchronizationInfo>();
-		this.fieldName = fieldName;
-		this.objId = id;
-		this.isNewObject = false;
-		this.parent = parent;
-		this.obj = obj;
-	}
-	/**
-	 * Check if the object that need to be synchronized has been synchronized
-	 * @return
-	 * 		if the object has been synchronized or not
-	 */
-	public boolean isSynchronized(){
-		return this.isSynced;
-	}
-	
-	/**
-	 * Get the amount of son nodes of this ObjectSynchronizationInfo
-	 * @return
-	 * 		amount of son nodes
-	 */
-	public int sonNum(){
-		return sonSychronizationInfo.size();
-	}
-	
-	/**
-	 * Check if this object is a new object, that is to say, check if this object has been
+public class ObjectSynchronizationInfo extends FlatObjectTree {
+
+	/**
+	 * The way in which an object is synchronized
+	 */
+	public static enum SyncType{
+		//the node carries the object, an existing object copies basic type fields from it
+		FULL,
+		//the object exists in the client and is not changed, it should not be synchronized
+		SKIPPED,
+		//the object exists in the client and is synchronized by another node, it is only referred here
+		REFERENCE,
+		//the node carries indexes and new values of changed fields of an existing object, see FieldTable
+		DELTA,
+		//the node carries an opaque object, its whole state is copied to the existing object
+		TRANSPLANT,
+		//the node carries modified ranges of an existing primitive array, see PrimitiveArrayDelta
+		ARRAY_DELTA,
+		//the object was never transmitted to the server, it is found from the key of its stub, see StubTable
+		STUB
+	}
+
+	private static final SyncType[] syncTypes = SyncType.values();
+	private byte[] types;
+	//the object for FULL and TRANSPLANT nodes, changed values for DELTA nodes, modified ranges for ARRAY_DELTA nodes
+	private Object[] objects;
+	private int[][] changedFields;
+	private transient int[] subtreeEnds = null;
+	private transient Object[] needSychronizarionObjs = null;
+	private transient Object[] localObjects = null;
+	private static final long serialVersionUID =2L;
+
+	public ObjectSynchronizationInfo(){
+		super();
+		types = new byte[capacity()];
+		objects = new Object[capacity()];
+		changedFields = new int[capacity()][];
+	}
+
+	@Override
+	protected void grow(int capacity){
+		super.grow(capacity);
+		types = Arrays.copyOf(types, capacity);
+		objects = Arrays.copyOf(objects, capacity);
+		changedFields = Arrays.copyOf(changedFields, capacity);
+		if(needSychronizarionObjs != null)
+			needSychronizarionObjs = Arrays.copyOf(needSychronizarionObjs, capacity);
+		if(localObjects != null)
+			localObjects = Arrays.copyOf(localObjects, capacity);
+	}
+
+	/**
+	 * Add a node to this tree
+	 * @param type
+	 * 		the synchronization type
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param id
+	 * 		the id of the object, or -1 if the object is new
+	 * @param obj
+	 * 		the data of the node
+	 * @return
+	 * 		the index of the node
+	 */
+	private int add(SyncType type, int parent, String fieldName, int id, Object obj){
+		int index = addNode(id, parent, fieldName);
+		types[index] = (byte) type.ordinal();
+		objects[index] = obj;
+		subtreeEnds = null;
+		return index;
+	}
+
+	/**
+	 * Add a node for a new object, that is to say, an object that does not have an id. The node
+	 * carries the object.
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addNewObject(int parent, String fieldName, Object obj){
+		return add(SyncType.FULL, parent, fieldName, -1, obj);
+	}
+
+	/**
+	 * Add a node for an object that has an id, the node carries the object.
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param obj
+	 * 		the object
+	 * @param id
+	 * 		the id of the object
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addObject(int parent, String fieldName, Object obj, int id){
+		return add(SyncType.FULL, parent, fieldName, id, obj);
+	}
+
+	/**
+	 * Add a node for an object that is not changed in the server, such a node does not contain
+	 * the object or its sub-objects, the object should be found from its id and should not be
+	 * synchronized.
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param id
+	 * 		the id of the object
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addSkipped(int parent, String fieldName, int id){
+		return add(SyncType.SKIPPED, parent, fieldName, id, null);
+	}
+
+	/**
+	 * Add a node for an object that is synchronized by another node, such a node does not contain
+	 * the object or its sub-objects, the object should be found from its id.
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param id
+	 * 		the id of the object
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addReference(int parent, String fieldName, int id){
+		return add(SyncType.REFERENCE, parent, fieldName, id, null);
+	}
+
+	/**
+	 * Add a node that only contains changed basic type fields of an object, changed reference
+	 * fields should be added as son nodes.
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param id
+	 * 		the id of the object
+	 * @param changedFields
+	 * 		indexes of changed fields in the FieldTable of the object's class
+	 * @param changedValues
+	 * 		new values of the changed fields
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addDelta(int parent, String fieldName, int id, int[] changedFields, Object[] changedValues){
+		int index = add(SyncType.DELTA, parent, fieldName, id, changedValues);
+		this.changedFields[index] = changedFields;
+		return index;
+	}
+
+	/**
+	 * Add a node whose object's whole state should be copied to the existing object, it is used
+	 * for opaque objects, see FieldTable.
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param obj
+	 * 		the object
+	 * @param id
+	 * 		the id of the object
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addTransplant(int parent, String fieldName, Object obj, int id){
+		return add(SyncType.TRANSPLANT, parent, fieldName, id, obj);
+	}
+
+	/**
+	 * Add a node that only contains modified ranges of a primitive array
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the array has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the array belongs to
+	 * @param id
+	 * 		the id of the array
+	 * @param arrayDelta
+	 * 		the modified ranges
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addArrayDelta(int parent, String fieldName, int id, PrimitiveArrayDelta arrayDelta){
+		return add(SyncType.ARRAY_DELTA, parent, fieldName, id, arrayDelta);
+	}
+
+	/**
+	 * Add a node for a sub-object which is not faulted in from the client, such a node does not
+	 * contain the object, the object should be found from the key of its stub and should not be
+	 * synchronized.
+	 * @param parent
+	 * 		the index of the parent node
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param key
+	 * 		the key of the stub
+	 * @return
+	 * 		the index of the node
+	 */
+	public int addStub(int parent, String fieldName, int key){
+		return add(SyncType.STUB, parent, fieldName, key, null);
+	}
+
+	/**
+	 * Get the key of the stub of a STUB node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the key, or -1 if this is not a STUB node
+	 */
+	public int getStubKey(int index){
+		if(getSyncType(index) != SyncType.STUB) return -1;
+		return getId(index);
+	}
+
+	/**
+	 * Get the way in which the object of a node is synchronized
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the synchronization type
+	 */
+	public SyncType getSyncType(int index){
+		return syncTypes[types[index]];
+	}
+
+	/**
+	 * Check if the object of a node is not changed in the server, so that it is skipped
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		if the object is skipped or not
+	 */
+	public boolean isSkipped(int index){
+		return getSyncType(index) == SyncType.SKIPPED;
+	}
+
+	/**
+	 * Get indexes of changed fields of a DELTA node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		indexes in the FieldTable of the object's class, or null if this is not a DELTA node
+	 */
+	public int[] getChangedFields(int index){
+		return changedFields[index];
+	}
+
+	/**
+	 * Get new values of changed fields of a DELTA node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the values, in the same order as getChangedFields(index), or null if this is not a DELTA node
+	 */
+	public Object[] getChangedValues(int index){
+		if(getSyncType(index) != SyncType.DELTA) return null;
+		return (Object[]) objects[index];
+	}
+
+	/**
+	 * Get modified ranges of an ARRAY_DELTA node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the modified ranges, or null if this is not an ARRAY_DELTA node
+	 */
+	public PrimitiveArrayDelta getArrayDelta(int index){
+		if(getSyncType(index) != SyncType.ARRAY_DELTA) return null;
+		return (PrimitiveArrayDelta) objects[index];
+	}
+
+	/**
+	 * Get the object which a node describes
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the object, or null if the node does not carry its object
+	 */
+	public Object getObject(int index){
+		SyncType type = getSyncType(index);
+		if(type != SyncType.FULL && type != SyncType.TRANSPLANT) return null;
+		return objects[index];
+	}
+
+	/**
+	 * Get the id of the object of a node, and if the objct is new, this method will return -1.
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the id of the object, or -1 if the objcet is new
+	 */
+	public int getObjectId(int index){
+		return getId(index);
+	}
+
+	/**
+	 * Check if the object of a node is a new object, that is to say, check if this object has been
 	 * saved as remote object in client remote object information system, if the object is
 	 * instantiate in the server, it probably is a new object.
+	 * @param index
+	 * 		the index of the node
 	 * @return
 	 * 		if this object is a new object or not
 	 */
-	public boolean isNewObject(){
-		return this.isNewObject;
+	public boolean isNewObject(int index){
+		return getId(index) == -1;
 	}
-	
+
 	/**
-	 * Get the name of the filed in which this object belongs to
+	 * Get the end of the sub-tree of a node
+	 * @param index
+	 * 		the index of the node
 	 * @return
-	 * 		the field name
+	 * 		the index after the last node of the sub-tree, the next root starts from it
 	 */
-	public String getFieldName(){
-		return this.fieldName;
+	public int getSubtreeEnd(int index){
+		if(subtreeEnds == null){
+			int size = size();
+			int[] ends = new int[size];
+			for(int i=size-1; i>=0; i--){
+				if(ends[i] < i+1)
+					ends[i] = i+1;
+				int parent = getParentIndex(i);
+				if(parent >= 0 && ends[parent] < ends[i])
+					ends[parent] = ends[i];
+			}
+			subtreeEnds = ends;
+		}
+		return subtreeEnds[index];
 	}
-	
+
 	/**
-	 * Get the object which this ObjectSynchronizationInfo describes
+	 * Check if a node has son nodes
+	 * @param index
+	 * 		the index of the node
 	 * @return
-	 * 		the object
+	 * 		if the node has son nodes or not
 	 */
-	public Object getObject(){
-		return this.obj;
+	public boolean hasSons(int index){
+		return getSubtreeEnd(index) > index+1;
 	}
-	
+
 	/**
-	 * Get the id of this object, and if the objct is new, this method will return -1.
+	 * Check if a node is the last son node of its parent, the parent object is completely synchronized
+	 * after the sub-tree of this node is synchronized.
+	 * @param index
+	 * 		the index of the node
 	 * @return
-	 * 		the id of this object, or -1 if the objcet is new
+	 * 		if the node is the last son or not, false if the node is a root
 	 */
-	public int getObjectId(){
-		return this.objId;
+	public boolean isLastSon(int index){
+		int parent = getParentIndex(index);
+		if(parent < 0) return false;
+		return getSubtreeEnd(index) == getSubtreeEnd(parent);
 	}
-	
+
 	/**
-	 * Save the object which needs to be synchronized 
+	 * Save the object of a node which needs to be synchronized
+	 * @param index
+	 * 		the index of the node
 	 * @param obj
 	 * 		the object that needs to be synchronized
 	 */
-	public void setNeedSynchronizationObj(Object obj){
-		this.needSychronizarionObj = obj;
+	public void setNeedSynchronizationObj(int index, Object obj){
+		if(needSychronizarionObjs == null)
+			needSychronizarionObjs = new Object[capacity()];
+		needSychronizarionObjs[index] = obj;
 	}
-	
+
 	/**
-	 * Get the object which needs to be synchronized
+	 * Get the object of a node which needs to be synchronized
+	 * @param index
+	 * 		the index of the node
 	 * @return
 	 * 		the object that needs to be synchronized
 	 */
-	public Object getNeedSychronizarionObj(){
-		return this.needSychronizarionObj;
+	public Object getNeedSychronizarionObj(int index){
+		return needSychronizarionObjs == null? null : needSychronizarionObjs[index];
 	}
-	
+
 	/**
-	 * Get the parent node of this ObjectSynchronizationInfo
-	 * @return
-	 * 		the parent ObjectSynchronizationInfo
+	 * Save the local object of a node that is found from its id, so that the node can be
+	 * synchronized after the id is released
+	 * @param index
+	 * 		the index of the node
+	 * @param obj
+	 * 		the local object
 	 */
-	public ObjectSynchronizationInfo getParent(){
-		return parent;
+	public void setLocalObject(int index, Object obj){
+		if(localObjects == null)
+			localObjects = new Object[capacity()];
+		localObjects[index] = obj;
 	}
-	
+
 	/**
-	 * Add son ObjectSynchronizationInfo to this ObjectSynchronizationInfo, a son ObjectSynchronizationInfo
-	 * contains synchronization information of a sub-object of this object.
-	 * @param sync
-	 * 		the son ObjectSynchronizationInfo of this  ObjectSynchronizationInfo
+	 * Get the saved local object of a node
+	 * @param index
+	 * 		the index of the node
+	 * @return
+	 * 		the local object, or null if it is not saved
 	 */
-	public void addSonSynchronizationInfo(ObjectSynchronizationInfo sync){
-		synchronized(sonSychronizationInfo){
-			sonSychronizationInfo.put(sync.getFieldName(), sync);
-		}
-	}
-	
-	
-	/**
-	 * Scan all sub-ObjectSynchronizationInfo-nodes from this node
-	 * @param tree
-	 * 		a tree scanner that provides onScanning method
-	 */
-	public void ScanObjectTree(final TreeScanner tree){
-		tree.onScanning(this);
-		if(sonSychronizationInfo==null) return;
-		synchronized(sonSychronizationInfo){
-			Set<Entry<String,ObjectSynchronizationInfo>> entrySet = sonSychronizationInfo.entrySet();
-			int i =0;
-			int sonNum = sonSychronizationInfo.size();
-			for(Entry<String,ObjectSynchronizationInfo> son:entrySet){
-				if(i==sonNum-1)
-					this.isSynced = true;
-				son.getValue().ScanObjectTree(tree);
-				i++;
-			}		
-		}
+	public Object getLocalObject(int index){
+		return localObjects == null? null : localObjects[index];
 	}
 }
@@ -0,0 +1,145 @@
+package com.Josh.library.core.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.util.Log;
+
+/**
+ * ParallelWorker runs independent tasks, such as walking or serializing different object graphs,
+ * on all cores of the device. The calling thread runs one of the tasks itself, and the others run
+ * in a shared pool whose size is the amount of cores. Tasks run one by one in the calling thread if
+ * the device has only one core, or if the calling thread belongs to the pool, so that a task can
+ * never wait for a task that is queued behind it. Callers should only use it for tasks that are
+ * large enough, small tasks are faster in the calling thread.
+ * @author Josh
+ *
+ */
+public class ParallelWorker {
+	private static final String Tag = "ParallelWorker";
+	private static final int THREAD_NUM = Runtime.getRuntime().availableProcessors();
+	private static final ThreadLocal<Boolean> isWorkerThread = new ThreadLocal<Boolean>();
+	private static ExecutorService executor = null;
+
+	/**
+	 * Check if tasks can run in parallel in the current thread
+	 * @return
+	 * 		if tasks can run in parallel or not
+	 */
+	public static boolean isParallel(){
+		return THREAD_NUM > 1 && isWorkerThread.get() == null;
+	}
+
+	/**
+	 * Get the amount of tasks that can run at the same time
+	 * @return
+	 * 		the amount of cores, or 1 if tasks cannot run in parallel in the current thread
+	 */
+	public static int getParallelism(){
+		return isParallel()? THREAD_NUM : 1;
+	}
+
+	/**
+	 * Run tasks and wait for all of them, even if some of them fail
+	 * @param tasks
+	 * 		the tasks
+	 * @return
+	 * 		the results of the tasks, in the same order as the tasks
+	 * @throws Exception
+	 * 		the exception of the first task that fails
+	 */
+	public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws Exception{
+		List<T> results = new ArrayList<T>(tasks.size());
+		if(tasks.size() < 2 || !isParallel()){
+			for(Callable<T> task : tasks)
+				results.add(task.call());
+			return results;
+		}
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size()-1);
+		ExecutorService executor = getExecutor();
+		for(int i=1; i<tasks.size(); i++)
+			futures.add(executor.submit(tasks.get(i)));
+		Exception exception = null;
+		try{
+			results.add(tasks.get(0).call());
+		}catch(Exception e){
+			exception = e;
+			results.add(null);
+		}
+		boolean isInterrupted = false;
+		for(Future<T> future : futures){
+			while(true){
+				try{
+					results.add(future.get());
+				}catch(InterruptedException e){
+					//the tasks use the objects of the calling thread, they must finish before it returns
+					isInterrupted = true;
+					continue;
+				}catch(ExecutionException e){
+					Throwable cause = e.getCause();
+					if(cause instanceof Error)
+						throw((Error) cause);
+					if(exception == null)
+						exception = (Exception) cause;
+					results.add(null);
+				}
+				break;
+			}
+		}
+		if(isInterrupted)
+			Thread.currentThread().interrupt();
+		if(exception != null)
+			throw(exception);
+		return results;
+	}
+
+	/**
+	 * Split a list into parts, each part can be handled by a task
+	 * @param list
+	 * 		the list
+	 * @param minPartSize
+	 * 		the minimum size of a part, a list that is smaller than twice of it is not split
+	 * @return
+	 * 		the parts, they are views of the list
+	 */
+	public static <T> List<List<T>> split(List<T> list, int minPartSize){
+		int partNum = Math.min(getParallelism(), list.size() / Math.max(1, minPartSize));
+		List<List<T>> parts = new ArrayList<List<T>>();
+		if(partNum < 2){
+			parts.add(list);
+			return parts;
+		}
+		int partSize = (list.size() + partNum - 1) / partNum;
+		for(int start=0; start<list.size(); start+=partSize)
+			parts.add(list.subList(start, Math.min(start+partSize, list.size())));
+		return parts;
+	}
+
+	private static synchronized ExecutorService getExecutor(){
+		if(executor == null){
+			executor = Executors.newFixedThreadPool(THREAD_NUM, new ThreadFactory(){
+				private int threadNum = 0;
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(new Runnable(){
+						@Override
+						public void run() {
+							isWorkerThread.set(true);
+							r.run();
+						}
+					}, "ParallelWorker-"+(threadNum++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			Log.i(Tag, "Parallel worker started with "+THREAD_NUM+" threads");
+		}
+		return executor;
+	}
+}
@@ -0,0 +1,162 @@
+package com.Josh.library.core.component;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PrimitiveArrayCodec writes primitive arrays as raw blocks of bytes in little-endian order, the
+ * elements are converted part by part through views of a ByteBuffer, so no element is boxed.
+ * @author Josh
+ *
+ */
+public class PrimitiveArrayCodec {
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Write a primitive array, the type and the length of the array are written before its content
+	 * @param out
+	 * 		the output
+	 * @param array
+	 * 		the primitive array
+	 * @throws IOException
+	 */
+	public static void writeArray(ObjectOutput out, Object array) throws IOException{
+		Class<?> type = array.getClass().getComponentType();
+		int length = Array.getLength(array);
+		out.writeByte(getTypeCode(type));
+		out.writeInt(length);
+		if(array instanceof byte[]){
+			out.write((byte[]) array);
+			return;
+		}
+		int elementSize = ObjectFingerprint.primitiveSize(type);
+		int step = BUFFER_SIZE / elementSize;
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for(int from = 0; from < length; from += step){
+			int count = Math.min(step, length - from);
+			encode(array, from, count, buffer);
+			out.write(buffer.array(), 0, count * elementSize);
+		}
+	}
+
+	/**
+	 * Read a primitive array that is written by writeArray
+	 * @param in
+	 * 		the input
+	 * @return
+	 * 		the primitive array
+	 * @throws IOException
+	 */
+	public static Object readArray(ObjectInput in) throws IOException{
+		Class<?> type = getType(in.readByte());
+		int length = in.readInt();
+		if(length < 0)
+			throw(new StreamCorruptedException("Invalid array length "+length));
+		Object array = Array.newInstance(type, length);
+		if(array instanceof byte[]){
+			in.readFully((byte[]) array);
+			return array;
+		}
+		int elementSize = ObjectFingerprint.primitiveSize(type);
+		int step = BUFFER_SIZE / elementSize;
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for(int from = 0; from < length; from += step){
+			int count = Math.min(step, length - from);
+			in.readFully(buffer.array(), 0, count * elementSize);
+			decode(buffer, array, from, count);
+		}
+		return array;
+	}
+
+	/**
+	 * Convert a part of a primitive array to bytes, the bytes start from the beginning of the buffer
+	 * @param array
+	 * 		the primitive array
+	 * @param from
+	 * 		the first index of the part
+	 * @param count
+	 * 		amount of elements in the part, the buffer must be large enough
+	 * @param buffer
+	 * 		the little-endian buffer
+	 */
+	public static void encode(Object array, int from, int count, ByteBuffer buffer){
+		buffer.clear();
+		if(array instanceof int[]) buffer.asIntBuffer().put((int[]) array, from, count);
+		else if(array instanceof double[]) buffer.asDoubleBuffer().put((double[]) array, from, count);
+		else if(array instanceof long[]) buffer.asLongBuffer().put((long[]) array, from, count);
+		else if(array instanceof float[]) buffer.asFloatBuffer().put((float[]) array, from, count);
+		else if(array instanceof short[]) buffer.asShortBuffer().put((short[]) array, from, count);
+		else if(array instanceof char[]) buffer.asCharBuffer().put((char[]) array, from, count);
+		else if(array instanceof byte[]) buffer.put((byte[]) array, from, count);
+		else if(array instanceof boolean[]){
+			boolean[] a = (boolean[]) array;
+			for(int i=0; i<count; i++)
+				buffer.put(a[from+i]? (byte)1 : (byte)0);
+		}
+	}
+
+	/**
+	 * Convert bytes from the beginning of the buffer to a part of a primitive array
+	 * @param buffer
+	 * 		the little-endian buffer
+	 * @param array
+	 * 		the primitive array
+	 * @param from
+	 * 		the first index of the part
+	 * @param count
+	 * 		amount of elements in the part
+	 */
+	public static void decode(ByteBuffer buffer, Object array, int from, int count){
+		buffer.clear();
+		if(array instanceof int[]) buffer.asIntBuffer().get((int[]) array, from, count);
+		else if(array instanceof double[]) buffer.asDoubleBuffer().get((double[]) array, from, count);
+		else if(array instanceof long[]) buffer.asLongBuffer().get((long[]) array, from, count);
+		else if(array instanceof float[]) buffer.asFloatBuffer().get((float[]) array, from, count);
+		else if(array instanceof short[]) buffer.asShortBuffer().get((short[]) array, from, count);
+		else if(array instanceof char[]) buffer.asCharBuffer().get((char[]) array, from, count);
+		else if(array instanceof byte[]) buffer.get((byte[]) array, from, count);
+		else if(array instanceof boolean[]){
+			boolean[] a = (boolean[]) array;
+			for(int i=0; i<count; i++)
+				a[from+i] = buffer.get() != 0;
+		}
+	}
+
+	/**
+	 * Get the code of a primitive type, it is the same as the descriptor of the type in class files
+	 */
+	private static char getTypeCode(Class<?> type){
+		if(type == int.class) return 'I';
+		if(type == byte.class) return 'B';
+		if(type == double.class) return 'D';
+		if(type == long.class) return 'J';
+		if(type == float.class) return 'F';
+		if(type == short.class) return 'S';
+		if(type == char.class) return 'C';
+		if(type == boolean.class) return 'Z';
+		throw(new IllegalArgumentException(type.getName()+" is not a primitive type"));
+	}
+
+	/**
+	 * Get a primitive type from its code
+	 */
+	private static Class<?> getType(byte code) throws StreamCorruptedException{
+		switch(code){
+		case 'I': return int.class;
+		case 'B': return byte.class;
+		case 'D': return double.class;
+		case 'J': return long.class;
+		case 'F': return float.class;
+		case 'S': return short.class;
+		case 'C': return char.class;
+		case 'Z': return boolean.class;
+		default:
+			throw(new StreamCorruptedException("Unknown primitive type "+code));
+		}
+	}
+}
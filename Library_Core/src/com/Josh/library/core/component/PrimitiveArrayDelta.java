@@ -0,0 +1,176 @@
+package com.Josh.library.core.component;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PrimitiveArrayDelta contains the modified ranges of a primitive array. The array is divided
+ * into chunks, and a 64-bit hash of every chunk is saved before the array is modified. Chunks whose
+ * hashes are changed are merged into ranges, and the content of these ranges is copied into the
+ * delta, so that another copy of the array can be patched in place.
+ * <p>
+ * Every element is mixed into the hash of its chunk with all its bits, by the bijective mix of
+ * ObjectFingerprint, so a chunk with one changed element always has a different hash.
+ * @author Josh
+ *
+ */
+public class PrimitiveArrayDelta implements Serializable {
+	//amount of elements in a chunk
+	public static final int CHUNK_SIZE = 512;
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private int length;
+	private int[] offsets;
+	private Object[] ranges;
+	private static final long serialVersionUID = 1L;
+
+	private PrimitiveArrayDelta(int length, int[] offsets, Object[] ranges){
+		this.length = length;
+		this.offsets = offsets;
+		this.ranges = ranges;
+	}
+
+	/**
+	 * Check if an object is a primitive array
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		is primitive array or not
+	 */
+	public static boolean isPrimitiveArray(Object obj){
+		if(obj == null) return false;
+		Class<?> clazz = obj.getClass();
+		return clazz.isArray() && clazz.getComponentType().isPrimitive();
+	}
+
+	/**
+	 * Get hashes of all chunks of a primitive array
+	 * @param array
+	 * 		the primitive array
+	 * @return
+	 * 		hashes of chunks
+	 */
+	public static long[] hashChunks(Object array){
+		int length = Array.getLength(array);
+		long[] hashes = new long[(length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+		for(int i=0; i<hashes.length; i++){
+			int from = i * CHUNK_SIZE;
+			hashes[i] = hashRange(array, from, Math.min(length, from + CHUNK_SIZE));
+		}
+		return hashes;
+	}
+
+	/**
+	 * Get the delta of a primitive array
+	 * @param oldHashes
+	 * 		hashes of chunks of the array before it is modified
+	 * @param array
+	 * 		the primitive array
+	 * @return
+	 * 		the delta, or null if no chunk is modified
+	 */
+	public static PrimitiveArrayDelta diff(long[] oldHashes, Object array){
+		int length = Array.getLength(array);
+		long[] hashes = hashChunks(array);
+		List<Integer> offsetList = new ArrayList<Integer>();
+		List<Object> rangeList = new ArrayList<Object>();
+		int i = 0;
+		while(i < hashes.length){
+			if(i < oldHashes.length && hashes[i] == oldHashes[i]){
+				i++;
+				continue;
+			}
+			//merge adjacent modified chunks into one range
+			int first = i;
+			while(i < hashes.length && (i >= oldHashes.length || hashes[i] != oldHashes[i]))
+				i++;
+			int from = first * CHUNK_SIZE;
+			int to = Math.min(length, i * CHUNK_SIZE);
+			Object range = Array.newInstance(array.getClass().getComponentType(), to - from);
+			System.arraycopy(array, from, range, 0, to - from);
+			offsetList.add(from);
+			rangeList.add(range);
+		}
+		if(offsetList.isEmpty()) return null;
+		int[] offsets = new int[offsetList.size()];
+		for(int j=0; j<offsets.length; j++)
+			offsets[j] = offsetList.get(j);
+		return new PrimitiveArrayDelta(length, offsets, rangeList.toArray());
+	}
+
+	/**
+	 * Get the amount of elements that are contained in this delta
+	 * @return
+	 * 		the amount of elements
+	 */
+	public int getModifiedLength(){
+		int result = 0;
+		for(Object range : ranges)
+			result += Array.getLength(range);
+		return result;
+	}
+
+	/**
+	 * Patch a copy of the array in place
+	 * @param array
+	 * 		the copy of the array
+	 * @throws IllegalArgumentException
+	 * 		if the array does not have the same type and length as the original array
+	 */
+	public void apply(Object array) throws IllegalArgumentException{
+		if(!isPrimitiveArray(array) || Array.getLength(array) != length)
+			throw(new IllegalArgumentException("Unable to patch "+array));
+		synchronized(array){
+			for(int i=0; i<offsets.length; i++)
+				System.arraycopy(ranges[i], 0, array, offsets[i], Array.getLength(ranges[i]));
+		}
+	}
+
+	/**
+	 * Get the 64-bit hash of a range of a primitive array
+	 * @param array
+	 * 		the primitive array
+	 * @param from
+	 * 		the first index of the range, inclusive
+	 * @param to
+	 * 		the last index of the range, exclusive
+	 * @return
+	 * 		the hash
+	 */
+	private static long hashRange(Object array, int from, int to){
+		long h = OFFSET;
+		if(array instanceof int[]){
+			int[] a = (int[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ a[i]);
+		}else if(array instanceof byte[]){
+			//8 bytes in a value, chunks of the same array have the same length except the last one
+			byte[] a = (byte[]) array;
+			for(int i=from; i<to; i+=8){
+				long v = 0;
+				for(int j=i; j<i+8 && j<to; j++)
+					v = (v << 8) | (a[j] & 0xFF);
+				h = ObjectFingerprint.mix64(h ^ v);
+			}
+		}else if(array instanceof double[]){
+			double[] a = (double[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ Double.doubleToRawLongBits(a[i]));
+		}else if(array instanceof long[]){
+			long[] a = (long[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ a[i]);
+		}else if(array instanceof float[]){
+			float[] a = (float[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ Float.floatToRawIntBits(a[i]));
+		}else if(array instanceof short[]){
+			short[] a = (short[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ a[i]);
+		}else if(array instanceof char[]){
+			char[] a = (char[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ a[i]);
+		}else if(array instanceof boolean[]){
+			boolean[] a = (boolean[]) array;
+			for(int i=from; i<to; i++) h = ObjectFingerprint.mix64(h ^ (a[i]? 1 : 0));
+		}
+		return h;
+	}
+}
@@ -1,6 +1,11 @@
 package com.Josh.library.core.component;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A RemoteObjectWrapper is a wrapped object that contains a object and its information.
@@ -15,6 +20,19 @@ public class RemoteObjectWrapper implements Serializable  {
 	private int mainId;
 	private Object obj;
 	private boolean isBasicType;
+	private int residentKey = -1;
+	private long residentVersion = 0;
+	private long residentBaseVersion = 0;
+	private ObjectPatch[] patches = null;
+	private long residentSize = 0;
+	private boolean isResident = false;
+	private boolean isReadOnly = false;
+	private boolean isPinned = false;
+	private byte[] packedObject = null;
+	//large values that are left out of the packed object, they are written with the wrapper
+	private Object[] packedValues = null;
+	private transient Object localObject = null;
+	private transient Object[] stubObjects = null;
 	private static final long serialVersionUID = 1L;
 	
 	
@@ -28,6 +46,7 @@ public class RemoteObjectWrapper implements Serializable  {
 			return;
 		}
 				
+		this.localObject = obj;
 		int referenceTime = infoTree.getReferenceNum();
 		if(referenceTime>1){
 			needTransmit = false;
@@ -55,6 +74,7 @@ public class RemoteObjectWrapper implements Serializable  {
 			return;
 		}
 		this.obj = obj;
+		this.localObject = obj;
 		needTransmit = true;
 		InfoTree = null;
 		mainId = -1;
@@ -147,6 +167,253 @@ public class RemoteObjectWrapper implements Serializable  {
 	public ObjectReferenceInfo getInfoTree(){
 		return this.InfoTree;
 	}
+	
+	/**
+	 * Make the wrapped object resident in the server. A resident object is kept by the server
+	 * after the method returns, so that later invocations can refer to it with its key instead
+	 * of transmitting it again.
+	 * @param key
+	 * 		the resident key of the object
+	 * @param version
+	 * 		the version of the object
+	 * @param size
+	 * 		the estimated size of the object in bytes
+	 */
+	public void setResident(int key, long version, long size){
+		this.residentKey = key;
+		this.residentVersion = version;
+		this.residentSize = size;
+	}
+	
+	/**
+	 * Refer to an object that is already resident in the server, the object itself is not
+	 * transmitted. The server copy is updated by the patches before the method is invoked,
+	 * and it is kept as a new version after the method returns.
+	 * @param key
+	 * 		the resident key of the object
+	 * @param baseVersion
+	 * 		the version of the object that the server should have
+	 * @param version
+	 * 		the new version of the object
+	 * @param size
+	 * 		the estimated size of the object in bytes
+	 * @param patches
+	 * 		patches of the objects that are changed since the server got the base version, 
+	 * 		can be null
+	 */
+	public void setResidentReference(int key, long baseVersion, long version, long size, ObjectPatch[] patches){
+		setResident(key, version, size);
+		this.residentBaseVersion = baseVersion;
+		this.patches = patches;
+		this.isResident = true;
+		this.needTransmit = false;
+		this.obj = null;
+		this.packedObject = null;
+		this.packedValues = null;
+	}
+	
+	/**
+	 * Put the object back to a wrapper that refers to a resident object, so that the object
+	 * is transmitted again. This can only be done in the side that creates the wrapper.
+	 */
+	public void materialize(){
+		if(!isResident) return;
+		this.isResident = false;
+		this.needTransmit = true;
+		this.patches = null;
+		this.packedObject = null;
+		this.packedValues = null;
+		this.obj = localObject;
+	}
+	
+	/**
+	 * Check if the wrapped object is referred by its resident key only
+	 * @return
+	 * 		if the object is referred by its resident key only
+	 */
+	public boolean isResident(){
+		return this.isResident;
+	}
+	
+	/**
+	 * Get the resident key of the object
+	 * @return
+	 * 		the resident key, or -1 if the object should not be resident in the server
+	 */
+	public int getResidentKey(){
+		return this.residentKey;
+	}
+	
+	/**
+	 * Get the version of the resident object
+	 * @return
+	 * 		the version
+	 */
+	public long getResidentVersion(){
+		return this.residentVersion;
+	}
+	
+	/**
+	 * Get the version of the resident object that the server should already have
+	 * @return
+	 * 		the base version
+	 */
+	public long getResidentBaseVersion(){
+		return this.residentBaseVersion;
+	}
+	
+	/**
+	 * Get patches of objects that are changed since the server got the base version
+	 * @return
+	 * 		the patches, or null if nothing is changed
+	 */
+	public ObjectPatch[] getPatches(){
+		return this.patches;
+	}
+	
+	/**
+	 * Get the estimated size of the resident object
+	 * @return
+	 * 		the estimated size in bytes
+	 */
+	public long getResidentSize(){
+		return this.residentSize;
+	}
+	
+	/**
+	 * Set if the object is never changed by the method, a read-only object is not synchronized back
+	 * @param isReadOnly
+	 * 		if the object is read-only or not
+	 */
+	public void setReadOnly(boolean isReadOnly){
+		this.isReadOnly = isReadOnly;
+	}
+	
+	/**
+	 * Check if the object is never changed by the method
+	 * @return
+	 * 		if the object is read-only or not
+	 */
+	public boolean isReadOnly(){
+		return this.isReadOnly;
+	}
+	
+	/**
+	 * Set if the resident object is immutable, the server never evicts such an object
+	 * @param isPinned
+	 * 		if the resident object is pinned or not
+	 */
+	public void setPinned(boolean isPinned){
+		this.isPinned = isPinned;
+	}
+	
+	/**
+	 * Check if the resident object is immutable and should never be evicted
+	 * @return
+	 * 		if the resident object is pinned or not
+	 */
+	public boolean isPinned(){
+		return this.isPinned;
+	}
+	
+	/**
+	 * Get the local object that was wrapped, the local object is never transmitted, so it is
+	 * only available in the side that creates the wrapper
+	 * @return
+	 * 		the local object
+	 */
+	public Object getLocalObject(){
+		return this.localObject;
+	}
+	
+	/**
+	 * Set sub-objects which are not transmitted with the object, they should have been saved as
+	 * stubs in the ObjectReferenceInfo of this wrapper
+	 * @param stubObjects
+	 * 		the sub-objects, or null if every sub-object is transmitted
+	 */
+	public void setStubObjects(Object[] stubObjects){
+		this.stubObjects = stubObjects;
+	}
 
+	/**
+	 * Check if some sub-objects of the object are not transmitted, see ObjectReferenceInfo
+	 * @return
+	 * 		if the wrapper has stubs or not
+	 */
+	public boolean hasStubs(){
+		return InfoTree != null && InfoTree.stubNum() > 0;
+	}
 
+	/**
+	 * Serialize the object in advance, so that large objects of a method can be serialized in
+	 * parallel before the method package is written. Stub objects are cut from the packed object.
+	 * Values that could be blobs are left out of the packed object and are written with the wrapper,
+	 * so that a value the server already has is still transmitted as its digest only. The object is
+	 * serialized again if the wrapper is materialized.
+	 * @throws IOException
+	 * 		if the object cannot be serialized
+	 */
+	public void pack() throws IOException{
+		if(!needTransmit || isBasicType || obj == null || packedObject != null) return;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		WireObjectOutputStream out = new WireObjectOutputStream(buffer);
+		if(stubObjects != null)
+			out.cut(stubObjects);
+		List<Object> values = new ArrayList<Object>();
+		out.leaveOutBlobs(values);
+		out.writeObject(obj);
+		out.close();
+		this.packedObject = buffer.toByteArray();
+		this.packedValues = values.isEmpty()? null : values.toArray();
+		this.obj = null;
+	}
+	
+	/**
+	 * Check if the object is serialized in advance and must be unpacked before it is unwrapped
+	 * @return
+	 * 		if the object is packed or not
+	 */
+	public boolean isPacked(){
+		return packedObject != null;
+	}
+	
+	/**
+	 * Get the serialized object
+	 * @return
+	 * 		the serialized object, or null if the object is not packed
+	 */
+	public byte[] getPackedObject(){
+		return packedObject;
+	}
+	
+	/**
+	 * Read the packed object back
+	 * @param in
+	 * 		a stream that reads from the packed object, see getPackedObject
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 * 		if the class of the object cannot be found
+	 */
+	public void unpack(WireObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.setLeftOutValues(packedValues);
+		this.obj = in.readObject();
+		this.packedObject = null;
+		this.packedValues = null;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		if(stubObjects == null || !(out instanceof WireObjectOutputStream)){
+			out.defaultWriteObject();
+			return;
+		}
+		//stub objects are written as null
+		WireObjectOutputStream wireOut = (WireObjectOutputStream) out;
+		wireOut.cut(stubObjects);
+		try{
+			out.defaultWriteObject();
+		}finally{
+			wireOut.restore(stubObjects);
+		}
+	}
 }
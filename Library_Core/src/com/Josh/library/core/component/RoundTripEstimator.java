@@ -0,0 +1,165 @@
+package com.Josh.library.core.component;
+
+/**
+ * A RoundTripEstimator smoothes the round trip time of a connection and its mean deviation as TCP does,
+ * and gives the time to wait for a reply before it is considered lost. The timeout of a request is the
+ * retransmission timeout of TCP, that is the smoothed round trip time and four times its deviation, for
+ * each round trip of the request, and the time to transfer its bytes. A timeout that expires doubles the
+ * following timeouts until a round trip is measured again, so a slow link is not flooded by requests
+ * that are given up too early.
+ * <p>
+ * A side that cannot measure the bandwidth, such as the server, is given the bandwidth measured by the
+ * other side, see setBandwidth.
+ * @author Josh
+ *
+ */
+public class RoundTripEstimator {
+	private static final double RTT_GAIN = 1.0 / 8;
+	private static final double RTT_VARIATION_GAIN = 1.0 / 4;
+	private static final int RTT_VARIATION_FACTOR = 4;
+	//the timeout of a round trip before any round trip is measured, in milliseconds
+	public static final long DEFAULT_TIMEOUT = 5000;
+	//the bounds of the timeout of a round trip, in milliseconds
+	public static final long MIN_TIMEOUT = 1000;
+	public static final long MAX_TIMEOUT = 60000;
+	//the bandwidth of a transfer when it is not known, in bytes per second
+	public static final double DEFAULT_BANDWIDTH = 64 * 1024;
+	private static final int MAX_BACKOFF = 64;
+	private static final long NANOS_PER_MILLI = 1000000;
+	private long roundTripTime = -1;
+	private long roundTripVariation = 0;
+	private long sampleTime = 0;
+	private int backoff = 1;
+	private double bandwidth = -1;
+
+	/**
+	 * Add a sample
+	 * @param nanos
+	 * 		the time of a round trip in nanoseconds
+	 */
+	public synchronized void addSample(long nanos){
+		if(nanos <= 0) return;
+		sampleTime = System.nanoTime();
+		backoff = 1;
+		if(roundTripTime < 0){
+			roundTripTime = nanos;
+			roundTripVariation = nanos / 2;
+			return;
+		}
+		roundTripVariation += (long) (RTT_VARIATION_GAIN * (Math.abs(roundTripTime - nanos) - roundTripVariation));
+		roundTripTime += (long) (RTT_GAIN * (nanos - roundTripTime));
+	}
+
+	/**
+	 * Get the smoothed round trip time
+	 * @return
+	 * 		the time in nanoseconds, or -1 if it is not measured yet
+	 */
+	public synchronized long getRoundTripTime(){
+		return roundTripTime;
+	}
+
+	/**
+	 * Get the mean deviation of the round trip time
+	 * @return
+	 * 		the deviation in nanoseconds, or 0 if it is not measured yet
+	 */
+	public synchronized long getRoundTripVariation(){
+		return roundTripVariation;
+	}
+
+	/**
+	 * Get the time since the round trip time was measured last
+	 * @return
+	 * 		the time in nanoseconds, or -1 if it is not measured yet
+	 */
+	public synchronized long getAge(){
+		return roundTripTime >= 0? System.nanoTime() - sampleTime : -1;
+	}
+
+	/**
+	 * Get the time to wait for the reply of a request
+	 * @param roundTrips
+	 * 		the amount of round trips of the request
+	 * @param bytes
+	 * 		the bytes transmitted and received by the request, or a negative value if they are not known
+	 * 		before the reply arrives, then the timeout is not shorter than DEFAULT_TIMEOUT
+	 * @param bandwidth
+	 * 		the bandwidth in bytes per second, the transfer time is a bound of the real one if it is a lower
+	 * 		bound of the bandwidth. If it is not positive, DEFAULT_BANDWIDTH is used.
+	 * @return
+	 * 		the timeout in milliseconds
+	 */
+	public synchronized long getTimeout(int roundTrips, long bytes, double bandwidth){
+		long timeout = DEFAULT_TIMEOUT;
+		if(roundTripTime >= 0)
+			timeout = (Math.max(1, roundTrips) * roundTripTime + RTT_VARIATION_FACTOR * roundTripVariation) / NANOS_PER_MILLI;
+		timeout = Math.min(MAX_TIMEOUT, Math.max(MIN_TIMEOUT, timeout) * backoff);
+		if(bytes < 0)
+			timeout = Math.max(DEFAULT_TIMEOUT, timeout);
+		else if(bytes > 0)
+			timeout += (long) (bytes * 1000 / (bandwidth > 0? bandwidth : DEFAULT_BANDWIDTH));
+		return timeout;
+	}
+
+	/**
+	 * Get the time to wait for the reply of a small request
+	 * @param roundTrips
+	 * 		the amount of round trips of the request
+	 * @return
+	 * 		the timeout in milliseconds
+	 */
+	public long getTimeout(int roundTrips){
+		return getTimeout(roundTrips, 0, -1);
+	}
+
+	/**
+	 * Get the time to wait for the reply of a request, the bytes are transferred at the bandwidth that
+	 * is given by setBandwidth
+	 * @param roundTrips
+	 * 		the amount of round trips of the request
+	 * @param bytes
+	 * 		the bytes transmitted and received by the request, or a negative value if they are not known
+	 * @return
+	 * 		the timeout in milliseconds
+	 */
+	public long getTimeout(int roundTrips, long bytes){
+		return getTimeout(roundTrips, bytes, getBandwidth());
+	}
+
+	/**
+	 * Set the bandwidth of the connection that is measured by the other side
+	 * @param bandwidth
+	 * 		a lower bound of the bandwidth in bytes per second, or a value that is not positive if it is
+	 * 		not measured
+	 */
+	public synchronized void setBandwidth(double bandwidth){
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * Get the bandwidth that is given by setBandwidth
+	 * @return
+	 * 		the bandwidth in bytes per second, or -1 if it is not given
+	 */
+	public synchronized double getBandwidth(){
+		return bandwidth > 0? bandwidth : -1;
+	}
+
+	/**
+	 * Tell that a timeout has expired, the following timeouts are doubled until a round trip is measured
+	 */
+	public synchronized void backOff(){
+		backoff = Math.min(MAX_BACKOFF, backoff * 2);
+	}
+
+	/**
+	 * Forget all samples, it is called when the connection changes
+	 */
+	public synchronized void reset(){
+		roundTripTime = -1;
+		roundTripVariation = 0;
+		backoff = 1;
+		bandwidth = -1;
+	}
+}
@@ -0,0 +1,91 @@
+package com.Josh.library.core.component;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The SizeEstimator gives a rough amount of bytes of objects without walking their whole graphs, it
+ * is cheap enough to be used before every call and for every timeout. Objects are looked at up to a
+ * small depth. Arrays, strings and collections are counted by their lengths, and an array of objects
+ * by a few of its elements. An object that is met twice is counted once.
+ * @author Josh
+ *
+ */
+public class SizeEstimator {
+	//depth of the objects that are looked at, the given objects are at depth 0
+	private static final int ESTIMATE_DEPTH = 2;
+	//amount of elements of an array of objects that are looked at
+	private static final int ESTIMATE_SAMPLES = 8;
+
+	/**
+	 * Estimate the size of an object
+	 * @param obj
+	 * 		the object, can be null
+	 * @return
+	 * 		the estimated size in bytes
+	 */
+	public static long estimateSize(Object obj){
+		return estimateSize(obj, 0, new IdentityHashMap<Object,Object>());
+	}
+
+	/**
+	 * Estimate the size of an object and other objects together
+	 * @param obj
+	 * 		the object, can be null
+	 * @param objs
+	 * 		the other objects, can be null
+	 * @return
+	 * 		the estimated size in bytes
+	 */
+	public static long estimateSize(Object obj, Object[] objs){
+		Map<Object,Object> visited = new IdentityHashMap<Object,Object>();
+		long size = estimateSize(obj, 0, visited);
+		if(objs != null)
+			for(Object o : objs)
+				size += estimateSize(o, 0, visited);
+		return size;
+	}
+
+	private static long estimateSize(Object obj, int depth, Map<Object,Object> visited){
+		if(obj == null || visited.put(obj, obj) != null) return 0;
+		if(obj instanceof Object[])
+			return estimateArraySize((Object[]) obj, depth, visited);
+		long size = BlobReference.sizeOf(obj);
+		if(size >= 0) return 16 + size;
+		if(obj instanceof Collection)
+			return 16 + 4L * ((Collection<?>) obj).size();
+		if(obj instanceof Map)
+			return 16 + 8L * ((Map<?,?>) obj).size();
+		Class<?> clazz = obj.getClass();
+		size = 16;
+		for(; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()){
+			for(Field field : FieldAccessor.get(clazz).getInstanceFields()){
+				size += 8;
+				if(field.getType().isPrimitive()) continue;
+				if(depth >= ESTIMATE_DEPTH) continue;
+				try {
+					size += estimateSize(field.get(obj), depth+1, visited);
+				} catch (IllegalAccessException e) {
+					//fields of a FieldAccessor are accessible
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * estimate the size of an array of objects from at most ESTIMATE_SAMPLES elements spread over the
+	 * array, the other elements are assumed to be as large as them on average
+	 */
+	private static long estimateArraySize(Object[] array, int depth, Map<Object,Object> visited){
+		long size = 16 + 4L * array.length;
+		if(depth >= ESTIMATE_DEPTH || array.length == 0) return size;
+		int samples = Math.min(array.length, ESTIMATE_SAMPLES);
+		long sampledSize = 0;
+		for(int i=0; i<samples; i++)
+			sampledSize += estimateSize(array[(int) ((long) i * array.length / samples)], depth+1, visited);
+		return size + sampledSize * array.length / samples;
+	}
+}
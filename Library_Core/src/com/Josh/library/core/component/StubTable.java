@@ -0,0 +1,177 @@
+package com.Josh.library.core.component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.SparseArray;
+
+/**
+ * The StubTable remembers fields of received objects whose values are not transmitted with them.
+ * Such a field is null until its value is faulted in from the client, and a stub is identified by
+ * the parent object and the name of the field. The key of a stub is given by the client, which uses
+ * it to find the value. The table is shared by the server and offloaded methods, because they are
+ * loaded by the same class loader.
+ * @author Josh
+ *
+ */
+public class StubTable {
+	private static final SparseArray<List<Stub>> hashCode2Stubs = new SparseArray<List<Stub>>();
+	private static volatile int stubNum = 0;
+
+	/**
+	 * A field whose value is not transmitted
+	 */
+	public static class Stub{
+		public final Object parent;
+		public final String fieldName;
+		public final int key;
+		//the estimated size of the value in bytes
+		public final long size;
+		public final long threadId;
+
+		private Stub(Object parent, String fieldName, int key, long size, long threadId){
+			this.parent = parent;
+			this.fieldName = fieldName;
+			this.key = key;
+			this.size = size;
+			this.threadId = threadId;
+		}
+	}
+
+	/**
+	 * Check if there is any stub, this method is cheap and should be checked before other methods
+	 * @return
+	 * 		if there is any stub or not
+	 */
+	public static boolean hasStubs(){
+		return stubNum > 0;
+	}
+
+	/**
+	 * Add a stub, an existing stub of the same field is replaced
+	 * @param parent
+	 * 		the object in which the field lies
+	 * @param fieldName
+	 * 		the name of the field
+	 * @param key
+	 * 		the key of the value in the client
+	 * @param size
+	 * 		the estimated size of the value in bytes
+	 * @param threadId
+	 * 		id of the server thread which the stub is binded to
+	 */
+	public static void add(Object parent, String fieldName, int key, long size, long threadId){
+		int hashCode = System.identityHashCode(parent);
+		synchronized(hashCode2Stubs){
+			List<Stub> stubs = hashCode2Stubs.get(hashCode);
+			if(stubs == null){
+				stubs = new ArrayList<Stub>();
+				hashCode2Stubs.put(hashCode, stubs);
+			}
+			for(int i=0; i<stubs.size(); i++){
+				Stub stub = stubs.get(i);
+				if(stub.parent == parent && stub.fieldName.equals(fieldName)){
+					stubs.set(i, new Stub(parent, fieldName, key, size, threadId));
+					return;
+				}
+			}
+			stubs.add(new Stub(parent, fieldName, key, size, threadId));
+			stubNum++;
+		}
+	}
+
+	/**
+	 * Get the stub of a field
+	 * @param parent
+	 * 		the object in which the field lies
+	 * @param fieldName
+	 * 		the name of the field
+	 * @return
+	 * 		the stub, or null if the value of the field is not a stub
+	 */
+	public static Stub get(Object parent, String fieldName){
+		if(stubNum == 0) return null;
+		synchronized(hashCode2Stubs){
+			List<Stub> stubs = hashCode2Stubs.get(System.identityHashCode(parent));
+			if(stubs == null) return null;
+			for(Stub stub : stubs){
+				if(stub.parent == parent && stub.fieldName.equals(fieldName))
+					return stub;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Get all stubs of an object, so that they can be faulted in together
+	 * @param parent
+	 * 		the object
+	 * @return
+	 * 		the stubs, the array is empty if the object has no stub
+	 */
+	public static Stub[] getStubs(Object parent){
+		List<Stub> result = new ArrayList<Stub>();
+		synchronized(hashCode2Stubs){
+			List<Stub> stubs = hashCode2Stubs.get(System.identityHashCode(parent));
+			if(stubs != null){
+				for(Stub stub : stubs){
+					if(stub.parent == parent)
+						result.add(stub);
+				}
+			}
+		}
+		return result.toArray(new Stub[result.size()]);
+	}
+
+	/**
+	 * Remove the stub of a field, it should be called after the value is faulted in or the field
+	 * is written
+	 * @param parent
+	 * 		the object in which the field lies
+	 * @param fieldName
+	 * 		the name of the field
+	 * @return
+	 * 		if the stub existed or not
+	 */
+	public static boolean remove(Object parent, String fieldName){
+		if(stubNum == 0) return false;
+		int hashCode = System.identityHashCode(parent);
+		synchronized(hashCode2Stubs){
+			List<Stub> stubs = hashCode2Stubs.get(hashCode);
+			if(stubs == null) return false;
+			for(int i=0; i<stubs.size(); i++){
+				Stub stub = stubs.get(i);
+				if(stub.parent == parent && stub.fieldName.equals(fieldName)){
+					stubs.remove(i);
+					stubNum--;
+					if(stubs.isEmpty())
+						hashCode2Stubs.remove(hashCode);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Remove all stubs that are binded to a server thread
+	 * @param threadId
+	 * 		id of the server thread
+	 */
+	public static void removeAll(long threadId){
+		if(stubNum == 0) return;
+		synchronized(hashCode2Stubs){
+			for(int i=hashCode2Stubs.size()-1; i>=0; i--){
+				List<Stub> stubs = hashCode2Stubs.valueAt(i);
+				for(int j=stubs.size()-1; j>=0; j--){
+					if(stubs.get(j).threadId == threadId){
+						stubs.remove(j);
+						stubNum--;
+					}
+				}
+				if(stubs.isEmpty())
+					hashCode2Stubs.removeAt(i);
+			}
+		}
+	}
+}
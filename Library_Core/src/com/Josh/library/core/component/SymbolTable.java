@@ -0,0 +1,69 @@
+package com.Josh.library.core.component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A SymbolTable gives a compact id to a symbol, such as the signature of a method, the first time it
+ * is written to a stream, so that the symbol is written as its id later. The sender assigns ids in the
+ * order in which symbols are written, and the receiver defines them in the same order when it reads
+ * them, so each stream, that is to say each connection, has its own table on both sides.
+ * @author Josh
+ *
+ */
+public class SymbolTable {
+	private final Map<String,Integer> ids = new HashMap<String,Integer>();
+	private final List<Object> symbols = new ArrayList<Object>();
+
+	/**
+	 * Get the id of a symbol that has been written, it is used by the sender
+	 * @param key
+	 * 		the key of the symbol
+	 * @return
+	 * 		the id, or -1 if the symbol has not been written
+	 */
+	public synchronized int getId(String key){
+		Integer id = ids.get(key);
+		return id == null? -1 : id;
+	}
+
+	/**
+	 * Assign an id to a symbol that is written for the first time, it is used by the sender
+	 * @param key
+	 * 		the key of the symbol
+	 * @return
+	 * 		the id
+	 */
+	public synchronized int add(String key){
+		int id = ids.size();
+		ids.put(key, id);
+		return id;
+	}
+
+	/**
+	 * Define a symbol that is read for the first time, it is used by the receiver
+	 * @param id
+	 * 		the id of the symbol
+	 * @param symbol
+	 * 		the symbol
+	 */
+	public synchronized void define(int id, Object symbol){
+		while(symbols.size() <= id)
+			symbols.add(null);
+		symbols.set(id, symbol);
+	}
+
+	/**
+	 * Get a symbol that has been defined, it is used by the receiver
+	 * @param id
+	 * 		the id of the symbol
+	 * @return
+	 * 		the symbol, or null if it is not defined
+	 */
+	public synchronized Object get(int id){
+		if(id < 0 || id >= symbols.size()) return null;
+		return symbols.get(id);
+	}
+}
@@ -0,0 +1,119 @@
+package com.Josh.library.core.component;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A WeakIdentityMap maps objects to values by their identities, and does not keep its keys alive.
+ * Identity hash codes are not unique, so keys are compared by identity, never by hash codes only.
+ * An entry is removed after its key is garbage collected. This class is not synchronized.
+ * @author Josh
+ *
+ * @param <K>
+ * 		type of keys
+ * @param <V>
+ * 		type of values
+ */
+public class WeakIdentityMap<K,V> {
+	private final Map<IdentityReference,V> map = new HashMap<IdentityReference,V>();
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	/**
+	 * A weak reference that is equal to another reference of the same object
+	 */
+	private static class IdentityReference extends WeakReference<Object>{
+		private final int hashCode;
+
+		IdentityReference(Object obj, ReferenceQueue<Object> queue){
+			super(obj, queue);
+			hashCode = System.identityHashCode(obj);
+		}
+
+		@Override
+		public int hashCode(){
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(o == this) return true;
+			if(!(o instanceof IdentityReference)) return false;
+			Object obj = get();
+			return obj != null && obj == ((IdentityReference) o).get();
+		}
+	}
+
+	/**
+	 * Get the value of an object
+	 * @param key
+	 * 		the object
+	 * @return
+	 * 		the value, or null if the object is not in the map
+	 */
+	public V get(K key){
+		if(key == null) return null;
+		expunge();
+		return map.get(new IdentityReference(key, null));
+	}
+
+	/**
+	 * Map an object to a value
+	 * @param key
+	 * 		the object, it cannot be null
+	 * @param value
+	 * 		the value
+	 * @return
+	 * 		the previous value of the object, or null if there is not
+	 */
+	public V put(K key, V value){
+		if(key == null)
+			throw(new NullPointerException("Key cannot be null!"));
+		expunge();
+		IdentityReference ref = new IdentityReference(key, queue);
+		V old = map.remove(ref);
+		map.put(ref, value);
+		return old;
+	}
+
+	/**
+	 * Remove an object from the map
+	 * @param key
+	 * 		the object
+	 * @return
+	 * 		the value of the object, or null if the object is not in the map
+	 */
+	public V remove(K key){
+		if(key == null) return null;
+		expunge();
+		return map.remove(new IdentityReference(key, null));
+	}
+
+	/**
+	 * Get the amount of objects in the map, objects that are garbage collected are not counted
+	 * @return
+	 * 		the size
+	 */
+	public int size(){
+		expunge();
+		return map.size();
+	}
+
+	/**
+	 * Remove all objects
+	 */
+	public void clear(){
+		map.clear();
+		while(queue.poll() != null);
+	}
+
+	/**
+	 * Remove entries whose keys are garbage collected
+	 */
+	private void expunge(){
+		Object ref;
+		while((ref = queue.poll()) != null)
+			map.remove(ref);
+	}
+}
@@ -0,0 +1,92 @@
+package com.Josh.library.core.component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+
+import com.Josh.library.core.interfaces.BlobStore;
+
+import android.util.Log;
+
+/**
+ * WireObjectInputStream extends ObjectInputStream, it resolves ArrayBlocks and BlobReferences that are
+ * written by a WireObjectOutputStream. A value that is transmitted with its content is saved to the BlobStore, and a
+ * value that is transmitted with its digest only is got from the BlobStore. If the BlobStore does not
+ * have a value, the value is resolved as null and the blob is counted as missing. Symbols that are
+ * written through the SymbolTable of the sender are read through the SymbolTable of this stream. Values
+ * that are left out by the sender are resolved from the values that are given to this stream.
+ * @author Josh
+ *
+ */
+public class WireObjectInputStream extends ObjectInputStream {
+	private static final String Tag = "WireObjectInputStream";
+	private BlobStore blobStore;
+	private int missingBlobNum = 0;
+	private final SymbolTable symbolTable = new SymbolTable();
+	private Object[] leftOutValues = null;
+
+	public WireObjectInputStream(InputStream input, BlobStore blobStore) throws StreamCorruptedException, IOException {
+		super(input);
+		this.blobStore = blobStore;
+		enableResolveObject(true);
+	}
+
+	/**
+	 * Get the symbol table of this stream
+	 * @return
+	 * 		the symbol table
+	 */
+	public SymbolTable getSymbolTable(){
+		return symbolTable;
+	}
+
+	/**
+	 * Set the values that are left out of the following objects by the sender, see
+	 * WireObjectOutputStream.leaveOutBlobs
+	 * @param values
+	 * 		the values, in the order in which they are left out, can be null
+	 */
+	public void setLeftOutValues(Object[] values){
+		this.leftOutValues = values;
+	}
+
+	/**
+	 * Get the amount of missing blobs since the last call of this method, and reset it
+	 * @return
+	 * 		the amount of missing blobs
+	 */
+	public int takeMissingBlobNum(){
+		int result = missingBlobNum;
+		missingBlobNum = 0;
+		return result;
+	}
+
+	@Override
+	protected Object resolveObject(Object obj) throws IOException{
+		if(ArrayBlock.class.isInstance(obj))
+			return ((ArrayBlock) obj).getArray();
+		if(LeftOutValue.class.isInstance(obj)){
+			int index = ((LeftOutValue) obj).getIndex();
+			if(leftOutValues == null || index >= leftOutValues.length)
+				throw(new StreamCorruptedException("Value "+index+" is left out but not given"));
+			return leftOutValues[index];
+		}
+		if(!BlobReference.class.isInstance(obj)) return obj;
+		BlobReference reference = (BlobReference) obj;
+		Object value = reference.getValue();
+		if(value != null){
+			//the receiver may modify the value, save a copy
+			if(blobStore != null)
+				blobStore.put(reference.getDigest(), BlobReference.copy(value), BlobReference.sizeOf(value));
+			return value;
+		}
+		Object saved = blobStore == null? null : blobStore.get(reference.getDigest());
+		if(saved == null){
+			Log.e(Tag, "Blob "+reference.getDigest()+" is missing");
+			missingBlobNum++;
+			return null;
+		}
+		return BlobReference.copy(saved);
+	}
+}
@@ -0,0 +1,152 @@
+package com.Josh.library.core.component;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * WireObjectOutputStream extends ObjectOutputStream, it replaces large leaf values by BlobReferences
+ * when blobs are enabled. A value is transmitted with its content the first time, and only its digest
+ * is transmitted later, as long as the digest is remembered by this stream. Other large arrays of
+ * primitive or wrapper types are replaced by ArrayBlocks, so they are written as raw blocks. Objects
+ * that are cut from the graph, see RemoteObjectWrapper, are written as null. Large leaf values can be
+ * left out of the stream, so that they are written by another stream that remembers blobs. Objects can write symbols
+ * through the SymbolTable of the stream. The receiver should use a WireObjectInputStream.
+ * @author Josh
+ *
+ */
+public class WireObjectOutputStream extends ObjectOutputStream {
+	private static final String Tag = "WireObjectOutputStream";
+	private static final int MAX_KNOWN_BLOBS = 1024;
+	//digests of values that have been transmitted, in access order
+	private final LinkedHashMap<String,Long> knownBlobs = new LinkedHashMap<String,Long>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Long> eldest){
+			return size() > MAX_KNOWN_BLOBS;
+		}
+	};
+	private boolean isBlobEnabled = false;
+	//objects that are not transmitted, with the amount of times they are cut
+	private final Map<Object,Integer> cutObjects = new IdentityHashMap<Object,Integer>();
+	private final SymbolTable symbolTable = new SymbolTable();
+	//large values that are left out of the stream, or null if they are written
+	private List<Object> leftOutValues = null;
+
+	public WireObjectOutputStream(OutputStream output) throws IOException {
+		super(output);
+		enableReplaceObject(true);
+	}
+
+	/**
+	 * Enable or disable blobs for the following objects, the receiver must be able to handle a missing
+	 * blob for the objects that are written when blobs are enabled.
+	 * @param enabled
+	 * 		enabled or not
+	 */
+	public void setBlobEnabled(boolean enabled){
+		this.isBlobEnabled = enabled;
+	}
+
+	/**
+	 * Leave values that could be blobs out of the following objects, that is to say, values whose sizes
+	 * are not less than BlobReference.MIN_BLOB_SIZE. Each value is added to a list and is written as
+	 * its index in the list, the receiver must be given the values, see WireObjectInputStream.setLeftOutValues.
+	 * It is used when objects are serialized in advance, so that large values are still written by the
+	 * stream of the connection, which remembers the blobs that the receiver has.
+	 * @param values
+	 * 		the list to which the values are added, or null to write values again
+	 */
+	public void leaveOutBlobs(List<Object> values){
+		this.leftOutValues = values;
+	}
+
+	/**
+	 * Get the symbol table of this stream, symbols that are written by this stream are read by the
+	 * symbol table of the receiver
+	 * @return
+	 * 		the symbol table
+	 */
+	public SymbolTable getSymbolTable(){
+		return symbolTable;
+	}
+
+	/**
+	 * Forget all transmitted values, so that they will be transmitted with their content again
+	 */
+	public void forgetBlobs(){
+		synchronized(knownBlobs){
+			knownBlobs.clear();
+		}
+	}
+
+	/**
+	 * Cut objects from the graph, they will be written as null until they are restored. Note that an
+	 * object which has been written before it is cut is still written as a reference to it.
+	 * @param objs
+	 * 		the objects
+	 */
+	public void cut(Object[] objs){
+		for(Object obj : objs){
+			Integer times = cutObjects.get(obj);
+			cutObjects.put(obj, times == null? 1 : times+1);
+		}
+	}
+
+	/**
+	 * Restore objects that are cut by cut(Object[])
+	 * @param objs
+	 * 		the objects
+	 */
+	public void restore(Object[] objs){
+		for(Object obj : objs){
+			Integer times = cutObjects.get(obj);
+			if(times == null) continue;
+			if(times > 1)
+				cutObjects.put(obj, times-1);
+			else
+				cutObjects.remove(obj);
+		}
+	}
+
+	@Override
+	protected Object replaceObject(Object obj) throws IOException{
+		if(!cutObjects.isEmpty() && cutObjects.containsKey(obj)) return null;
+		if(leftOutValues != null && BlobReference.sizeOf(obj) >= BlobReference.MIN_BLOB_SIZE){
+			leftOutValues.add(obj);
+			return new LeftOutValue(leftOutValues.size()-1);
+		}
+		if(!isBlobEnabled) return replaceArray(obj);
+		long size = BlobReference.sizeOf(obj);
+		if(size < BlobReference.MIN_BLOB_SIZE) return replaceArray(obj);
+		String digest = BlobReference.digest(obj);
+		if(digest == null) return replaceArray(obj);
+		synchronized(knownBlobs){
+			if(knownBlobs.get(digest) != null){
+				Log.i(Tag, "Blob "+digest+" is known by the receiver, "+size+" bytes saved");
+				return new BlobReference(digest, null);
+			}
+			knownBlobs.put(digest, size);
+		}
+		return new BlobReference(digest, obj);
+	}
+
+	/**
+	 * Replace an array by an ArrayBlock if it can be written as a raw block
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the ArrayBlock, or the object itself if it cannot be replaced
+	 */
+	private Object replaceArray(Object obj){
+		if(ArrayBlock.canReplace(obj))
+			return new ArrayBlock(obj);
+		return obj;
+	}
+}
@@ -0,0 +1,18 @@
+package com.Josh.library.core.exception;
+
+/**
+ * This exception is thrown by the server when a command refers to a state that the server
+ * should have kept from an earlier command, e.g. a resident object, but the server does not
+ * have it any more. The client can recover by transmitting the full state again.
+ * @author Josh
+ *
+ */
+public class CacheMissException extends RemoteExecutionFailedException {
+	private static final long serialVersionUID = 1L;
+	public CacheMissException(String str){
+			super(str);
+	}
+	public CacheMissException(){
+		super();
+	}
+}
@@ -0,0 +1,30 @@
+package com.Josh.library.core.interfaces;
+
+/**
+ * This interface provides a content-addressed store of large values, a value is addressed by the
+ * digest of its content.
+ * @author Josh
+ *
+ */
+public interface BlobStore {
+
+	/**
+	 * Get a value from its digest
+	 * @param digest
+	 * 		the digest of the value
+	 * @return
+	 * 		the value, or null if the store does not have it
+	 */
+	public abstract Object get(String digest);
+
+	/**
+	 * Put a value to the store
+	 * @param digest
+	 * 		the digest of the value
+	 * @param value
+	 * 		the value
+	 * @param size
+	 * 		the size of the value in bytes
+	 */
+	public abstract void put(String digest, Object value, long size);
+}
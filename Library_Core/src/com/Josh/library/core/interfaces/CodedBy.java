@@ -0,0 +1,23 @@
+package com.Josh.library.core.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation declares the codec of a container class of the application, see ObjectCodec. The
+ * codec is found from the class itself, so the client and the server always use the same codec. The
+ * codec class must have a public constructor without parameters.
+ * @author Josh
+ *
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CodedBy {
+
+	/**
+	 * The codec class
+	 */
+	Class<? extends ObjectCodec> value();
+}
@@ -0,0 +1,35 @@
+package com.Josh.library.core.interfaces;
+
+/**
+ * An ObjectCodec describes a container object, such as a collection, by its elements instead of by
+ * its fields. A coded object is a single node of the object graph, its internal objects, e.g. the
+ * entries of a map, are never walked, and only its elements are its sub-objects. An element is
+ * named by its index in the array that is returned by getElements, see ObjectCodecs.
+ * <p>
+ * The client and the server get the elements of their own copies of an object, so the order of the
+ * elements must only depend on the contents of the object, it must be the same for a copy that is
+ * serialized and read back.
+ * @author Josh
+ *
+ */
+public interface ObjectCodec {
+
+	/**
+	 * Get the elements of an object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the elements, or null if this object cannot be coded and should be walked by its fields
+	 */
+	public abstract Object[] getElements(Object obj);
+
+	/**
+	 * Set the elements of an object, the contents of the object are kept, only elements that are
+	 * different from the current ones are replaced
+	 * @param obj
+	 * 		the object
+	 * @param elements
+	 * 		the elements, an array that is got from getElements, some of them may be replaced
+	 */
+	public abstract void setElements(Object obj, Object[] elements);
+}
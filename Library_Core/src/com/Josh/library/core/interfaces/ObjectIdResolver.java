@@ -0,0 +1,20 @@
+package com.Josh.library.core.interfaces;
+
+/**
+ * This interface provides the id of a remote object. It is used to cut an object graph into
+ * regions, each region starts from an object that has an id and contains the objects that are
+ * reachable from it without passing through another object that has an id.
+ * @author Josh
+ *
+ */
+public interface ObjectIdResolver {
+
+	/**
+	 * Get the id of a remote object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the id of the object, or -1 if the object has no id
+	 */
+	public abstract int getIdFromObject(Object obj);
+}
@@ -0,0 +1,20 @@
+package com.Josh.library.core.interfaces;
+
+/**
+ * This interface provides the version of an object. The version of an object changes whenever
+ * one of its fields is written, so an object whose version is not changed can be considered as
+ * unchanged without reading its fields.
+ * @author Josh
+ *
+ */
+public interface ObjectVersionTracker {
+
+	/**
+	 * Get the version of an object
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		the version of the object, or -1 if writes to this object are not tracked
+	 */
+	public abstract long getVersion(Object obj);
+}
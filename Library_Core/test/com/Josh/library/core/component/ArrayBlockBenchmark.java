@@ -0,0 +1,121 @@
+package com.Josh.library.core.component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Throughput of arrays of 1 to 100 MB written by WireObjectOutputStream, which writes them as
+ * ArrayBlocks, compared with plain object streams. It is not a unit test, run it with a heap of
+ * at least 1 GB, e.g. java -Xmx1g ArrayBlockBenchmark [sizes in MB...]
+ * @author Josh
+ *
+ */
+public class ArrayBlockBenchmark {
+	private static final int MB = 1024 * 1024;
+	private static final int[] DEFAULT_SIZES = {1, 10, 100};
+	private static final int WARMUP_ROUNDS = 2;
+	private static final int ROUNDS = 3;
+
+	/**
+	 * A stream whose buffer is read without being copied
+	 */
+	private static class Buffer extends ByteArrayOutputStream{
+		Buffer(int size){
+			super(size);
+		}
+
+		ByteArrayInputStream toInputStream(){
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+
+	public static void main(String[] args) throws Exception{
+		int[] sizes = DEFAULT_SIZES;
+		if(args.length > 0){
+			sizes = new int[args.length];
+			for(int i=0; i<args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		System.out.println(String.format("%-10s %6s %-6s %12s %12s %12s", "type", "MB", "stream", "bytes", "write MB/s", "read MB/s"));
+		for(int size : sizes){
+			run(newArray(double.class, size), size);
+			run(newArray(int.class, size), size);
+			run(newArray(byte.class, size), size);
+			//wrapper arrays are limited by the boxed elements, not by the stream
+			if(size <= 10)
+				run(newArray(Integer.class, size), size);
+		}
+	}
+
+	private static Object newArray(Class<?> type, int size){
+		Random random = new Random(size);
+		if(type == double.class){
+			double[] array = new double[size * MB / 8];
+			for(int i=0; i<array.length; i++) array[i] = random.nextDouble();
+			return array;
+		}
+		if(type == int.class){
+			int[] array = new int[size * MB / 4];
+			for(int i=0; i<array.length; i++) array[i] = random.nextInt();
+			return array;
+		}
+		if(type == byte.class){
+			byte[] array = new byte[size * MB];
+			random.nextBytes(array);
+			return array;
+		}
+		Integer[] array = new Integer[size * MB / 4];
+		for(int i=0; i<array.length; i++) array[i] = i % 100 == 0? null : random.nextInt();
+		return array;
+	}
+
+	private static void run(Object array, int size) throws Exception{
+		measure(array, size, false);
+		measure(array, size, true);
+	}
+
+	private static void measure(Object array, int size, boolean isWire) throws Exception{
+		long writeNanos = Long.MAX_VALUE;
+		long readNanos = Long.MAX_VALUE;
+		int bytes = 0;
+		for(int round=0; round<WARMUP_ROUNDS+ROUNDS; round++){
+			Buffer buffer = new Buffer(size * MB + MB);
+			long start = System.nanoTime();
+			ObjectOutputStream out = isWire? new WireObjectOutputStream(buffer) : new ObjectOutputStream(buffer);
+			out.writeObject(array);
+			out.flush();
+			long written = System.nanoTime();
+			ObjectInputStream in = isWire? new WireObjectInputStream(buffer.toInputStream(), null)
+					: new ObjectInputStream(buffer.toInputStream());
+			Object copy = in.readObject();
+			long read = System.nanoTime();
+			check(array, copy);
+			if(round < WARMUP_ROUNDS) continue;
+			writeNanos = Math.min(writeNanos, written - start);
+			readNanos = Math.min(readNanos, read - written);
+			bytes = buffer.size();
+		}
+		System.out.println(String.format("%-10s %6d %-6s %12d %12.1f %12.1f", array.getClass().getSimpleName(), size,
+				isWire? "wire" : "plain", bytes, throughput(size, writeNanos), throughput(size, readNanos)));
+	}
+
+	private static double throughput(int size, long nanos){
+		return size * 1e9 / nanos;
+	}
+
+	private static void check(Object array, Object copy) throws IOException{
+		boolean equal;
+		if(array instanceof double[]) equal = Arrays.equals((double[]) array, (double[]) copy);
+		else if(array instanceof int[]) equal = Arrays.equals((int[]) array, (int[]) copy);
+		else if(array instanceof byte[]) equal = Arrays.equals((byte[]) array, (byte[]) copy);
+		else equal = Arrays.equals((Object[]) array, (Object[]) copy);
+		if(!equal)
+			throw(new IOException("The copy of "+array.getClass().getSimpleName()+"["+Array.getLength(array)+"] is different"));
+	}
+}
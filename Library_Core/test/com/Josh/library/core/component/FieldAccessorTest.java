@@ -0,0 +1,85 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+/**
+ * Tests of FieldAccessor
+ * @author Josh
+ *
+ */
+public class FieldAccessorTest {
+
+	@SuppressWarnings("unused")
+	private static class Base{
+		static int counter;
+		int zeta;
+		int alpha;
+	}
+
+	@SuppressWarnings("unused")
+	private static class Derived extends Base{
+		String name;
+		transient int cache;
+		int REMOTE_OBJECT_ID;
+		Object beta;
+	}
+
+	private static String names(Field[] fields){
+		StringBuilder sb = new StringBuilder();
+		for(Field field : fields){
+			if(sb.length() > 0) sb.append(',');
+			sb.append(field.getName());
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testSynchronizedFieldsAreSortedAndFiltered(){
+		assertEquals("beta,name", names(FieldAccessor.get(Derived.class).getSynchronizedFields()));
+		assertEquals("alpha,zeta", names(FieldAccessor.get(Base.class).getSynchronizedFields()));
+	}
+
+	@Test
+	public void testStateFieldsIncludeSuperClasses(){
+		assertEquals("beta,name,alpha,zeta", names(FieldAccessor.get(Derived.class).getStateFields()));
+	}
+
+	@Test
+	public void testGetField(){
+		FieldAccessor accessor = FieldAccessor.get(Derived.class);
+		assertNotNull(accessor.getField("cache"));
+		assertNull(accessor.getField("alpha"));
+		assertNotNull(FieldAccessor.get(Base.class).getField("counter"));
+	}
+
+	@Test
+	public void testClearDropsAccessors(){
+		FieldAccessor accessor = FieldAccessor.get(Derived.class);
+		assertSame(accessor, FieldAccessor.get(Derived.class));
+		FieldAccessor.clear();
+		assertNotSame(accessor, FieldAccessor.get(Derived.class));
+	}
+
+	@Test
+	public void testPatchRestoresValueFields() throws Exception{
+		Derived from = new Derived();
+		from.name = "name";
+		from.alpha = 1;
+		from.zeta = 2;
+		from.beta = new Object();
+		Derived to = new Derived();
+		new ObjectPatch(0, from).apply(to);
+		assertEquals("name", to.name);
+		assertEquals(1, to.alpha);
+		assertEquals(2, to.zeta);
+		assertNull(to.beta);
+	}
+}
@@ -0,0 +1,90 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of LatencyHistogram
+ * @author Josh
+ *
+ */
+public class LatencyHistogramTest {
+
+	private static void assertWithinBucket(long expected, long actual){
+		assertTrue("expected "+expected+" but was "+actual, Math.abs(actual - expected) <= expected / 8);
+	}
+
+	@Test
+	public void testEmpty(){
+		LatencyHistogram histogram = new LatencyHistogram(0);
+		assertTrue(histogram.isEmpty());
+		assertEquals(-1, histogram.getMean());
+		assertEquals(-1, histogram.getPercentile(50));
+	}
+
+	@Test
+	public void testSmallValuesAreExact(){
+		LatencyHistogram histogram = new LatencyHistogram(0);
+		for(int i=0; i<8; i++)
+			histogram.record(i);
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(3, histogram.getPercentile(50));
+		assertEquals(7, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testPercentilesOfLargeValues(){
+		LatencyHistogram histogram = new LatencyHistogram(0);
+		for(int i=1; i<=1000; i++)
+			histogram.record(i * 1000000L);
+		assertEquals(1000, histogram.getCount(), 0);
+		assertEquals(500500000L, histogram.getMean());
+		assertWithinBucket(500000000L, histogram.getPercentile(50));
+		assertWithinBucket(990000000L, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void testLargestValue(){
+		LatencyHistogram histogram = new LatencyHistogram(0);
+		histogram.record(Long.MAX_VALUE);
+		assertWithinBucket(Long.MAX_VALUE, histogram.getPercentile(50));
+	}
+
+	@Test
+	public void testNegativeValueIsZero(){
+		LatencyHistogram histogram = new LatencyHistogram(0);
+		histogram.record(-5);
+		assertEquals(0, histogram.getMean());
+	}
+
+	@Test
+	public void testOldValuesAreForgotten(){
+		LatencyHistogram histogram = new LatencyHistogram(10);
+		for(int i=0; i<100; i++)
+			histogram.record(1000);
+		for(int i=0; i<30; i++)
+			histogram.record(100000);
+		assertTrue(histogram.getCount() < 20);
+		assertWithinBucket(100000, histogram.getPercentile(50));
+		assertTrue(histogram.getMean() > 80000);
+	}
+
+	@Test
+	public void testSaveAndRestore(){
+		LatencyHistogram histogram = new LatencyHistogram(100);
+		for(int i=1; i<=150; i++)
+			histogram.record(i * 37);
+		LatencyHistogram restored = LatencyHistogram.fromByteArray(histogram.toByteArray(), 100);
+		assertEquals(histogram.getCount(), restored.getCount(), 1e-9);
+		assertEquals(histogram.getMean(), restored.getMean());
+		assertEquals(histogram.getPercentile(90), restored.getPercentile(90));
+	}
+
+	@Test
+	public void testRestoreBadData(){
+		assertTrue(LatencyHistogram.fromByteArray(null, 10).isEmpty());
+		assertTrue(LatencyHistogram.fromByteArray(new byte[]{1, 2, 3}, 10).isEmpty());
+	}
+}
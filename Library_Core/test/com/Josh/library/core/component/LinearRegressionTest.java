@@ -0,0 +1,61 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of LinearRegression
+ * @author Josh
+ *
+ */
+public class LinearRegressionTest {
+
+	@Test
+	public void testNoSample(){
+		LinearRegression regression = new LinearRegression(1);
+		assertEquals(0, regression.getWeight(), 0);
+		assertTrue(Double.isNaN(regression.predict(1)));
+	}
+
+	@Test
+	public void testExactLine(){
+		LinearRegression regression = new LinearRegression(1);
+		for(int x=0; x<10; x++)
+			regression.add(x, 3 + 2 * x);
+		assertEquals(2, regression.getSlope(), 1e-9);
+		assertEquals(3, regression.getIntercept(), 1e-9);
+		assertEquals(203, regression.predict(100), 1e-6);
+	}
+
+	@Test
+	public void testSameInputGivesMean(){
+		LinearRegression regression = new LinearRegression(1);
+		regression.add(5, 10);
+		regression.add(5, 20);
+		assertEquals(0, regression.getSlope(), 0);
+		assertEquals(15, regression.predict(1000), 1e-9);
+	}
+
+	@Test
+	public void testLargeInputsWithSameValue(){
+		LinearRegression regression = new LinearRegression(0.9);
+		for(int i=0; i<100; i++)
+			regression.add(1e7, 42);
+		assertEquals(0, regression.getSlope(), 0);
+		assertEquals(42, regression.predict(1e7), 1e-6);
+	}
+
+	@Test
+	public void testOldSamplesAreForgotten(){
+		LinearRegression regression = new LinearRegression(0.5);
+		for(int x=0; x<10; x++)
+			regression.add(x, x);
+		for(int x=0; x<50; x++)
+			regression.add(x % 10, 100 + 3 * (x % 10));
+		assertTrue(regression.getWeight() < 2.01);
+		assertEquals(3, regression.getSlope(), 1e-3);
+		assertEquals(100, regression.getIntercept(), 1e-2);
+	}
+}
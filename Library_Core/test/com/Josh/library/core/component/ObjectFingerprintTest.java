@@ -0,0 +1,135 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import com.Josh.library.core.interfaces.ObjectVersionTracker;
+
+/**
+ * Tests of ObjectFingerprint, a fingerprint must change whenever a value in the graph changes
+ * @author Josh
+ *
+ */
+public class ObjectFingerprintTest {
+
+	private static class Node{
+		long number;
+		double real;
+		String text;
+		int[] ints;
+		double[] reals;
+		byte[] bytes;
+		Node next;
+	}
+
+	private static Node newNode(){
+		Node node = new Node();
+		node.text = "Aa";
+		node.ints = new int[]{0, 31};
+		node.reals = new double[1024];
+		for(int i=0; i<node.reals.length; i++)
+			node.reals[i] = i + 0.5;
+		node.bytes = new byte[100];
+		node.next = new Node();
+		return node;
+	}
+
+	private static long fingerprint(Object obj){
+		return new ObjectFingerprint(obj).getValue();
+	}
+
+	@Test
+	public void testSameGraphSameFingerprint(){
+		assertEquals(fingerprint(newNode()), fingerprint(newNode()));
+	}
+
+	@Test
+	public void testLongChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.number = -1;
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testDoubleChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.real = -0.0;
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testStringWithSameHashCodeChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.text = "BB";
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testArrayWithSameHashCodeChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.ints[0] = 1;
+		node.ints[1] = 0;
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testNegatedArrayChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		for(int i=0; i<node.reals.length; i++)
+			node.reals[i] = -node.reals[i];
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testByteChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.bytes[node.bytes.length-1] = 1;
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testSubObjectChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.next.number = 1;
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testCycleChanged(){
+		Node node = newNode();
+		long before = fingerprint(node);
+		node.next = new Node();
+		assertEquals(before, fingerprint(node));
+		node.next = node;
+		assertNotEquals(before, fingerprint(node));
+	}
+
+	@Test
+	public void testContentValueIsFingerprintWithoutTracker(){
+		ObjectVersionTracker tracker = new ObjectVersionTracker(){
+			@Override
+			public long getVersion(Object obj) {
+				return obj instanceof Node? 0 : -1;
+			}
+		};
+		Node node = newNode();
+		ObjectFingerprint stamp = new ObjectFingerprint(node, tracker);
+		assertEquals(fingerprint(node), stamp.getContentValue());
+		assertEquals(2, stamp.getTrackedNodes().size());
+		//value fields of tracked objects are only in the content
+		node.number = 1;
+		ObjectFingerprint changed = new ObjectFingerprint(node, tracker);
+		assertEquals(stamp.getValue(), changed.getValue());
+		assertNotEquals(stamp.getContentValue(), changed.getContentValue());
+		assertEquals(fingerprint(node), changed.getContentValue());
+	}
+}
@@ -0,0 +1,84 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests of PrimitiveArrayDelta, every modified element must be in the delta
+ * @author Josh
+ *
+ */
+public class PrimitiveArrayDeltaTest {
+
+	private static double[] newDoubles(int length){
+		double[] array = new double[length];
+		for(int i=0; i<length; i++)
+			array[i] = i * 0.25 + 1;
+		return array;
+	}
+
+	@Test
+	public void testUnmodifiedArray(){
+		double[] array = newDoubles(1024);
+		assertNull(PrimitiveArrayDelta.diff(PrimitiveArrayDelta.hashChunks(array), array));
+	}
+
+	@Test
+	public void testNegatedArray(){
+		double[] array = newDoubles(1024);
+		long[] hashes = PrimitiveArrayDelta.hashChunks(array);
+		for(int i=0; i<array.length; i++)
+			array[i] = -array[i];
+		PrimitiveArrayDelta delta = PrimitiveArrayDelta.diff(hashes, array);
+		assertNotNull(delta);
+		assertEquals(array.length, delta.getModifiedLength());
+		double[] copy = newDoubles(1024);
+		delta.apply(copy);
+		assertArrayEquals(array, copy, 0);
+	}
+
+	@Test
+	public void testSwappedInts(){
+		int[] array = new int[1000];
+		array[1] = 31;
+		long[] hashes = PrimitiveArrayDelta.hashChunks(array);
+		array[0] = 1;
+		array[1] = 0;
+		assertNotNull(PrimitiveArrayDelta.diff(hashes, array));
+	}
+
+	@Test
+	public void testOneChunkModified(){
+		long[] array = new long[PrimitiveArrayDelta.CHUNK_SIZE * 4];
+		long[] hashes = PrimitiveArrayDelta.hashChunks(array);
+		array[PrimitiveArrayDelta.CHUNK_SIZE * 2 + 7] = Long.MIN_VALUE;
+		PrimitiveArrayDelta delta = PrimitiveArrayDelta.diff(hashes, array);
+		assertNotNull(delta);
+		assertEquals(PrimitiveArrayDelta.CHUNK_SIZE, delta.getModifiedLength());
+		long[] copy = new long[array.length];
+		delta.apply(copy);
+		assertArrayEquals(array, copy);
+	}
+
+	@Test
+	public void testLastByteModified(){
+		byte[] array = new byte[PrimitiveArrayDelta.CHUNK_SIZE + 3];
+		long[] hashes = PrimitiveArrayDelta.hashChunks(array);
+		array[array.length-1] = (byte) 0x80;
+		PrimitiveArrayDelta delta = PrimitiveArrayDelta.diff(hashes, array);
+		assertNotNull(delta);
+		assertEquals(3, delta.getModifiedLength());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testApplyToDifferentLength(){
+		int[] array = new int[10];
+		long[] hashes = PrimitiveArrayDelta.hashChunks(array);
+		array[0] = 1;
+		PrimitiveArrayDelta.diff(hashes, array).apply(new int[11]);
+	}
+}
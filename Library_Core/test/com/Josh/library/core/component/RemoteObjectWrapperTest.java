@@ -0,0 +1,92 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.Josh.library.core.interfaces.BlobStore;
+
+/**
+ * Tests of packed wrappers, large values of a packed object are still transmitted as blobs
+ * @author Josh
+ *
+ */
+public class RemoteObjectWrapperTest {
+
+	private static class Model implements Serializable{
+		private static final long serialVersionUID = 1L;
+		double[] weights;
+		int step;
+	}
+
+	private static class MemoryBlobStore implements BlobStore{
+		final Map<String,Object> values = new HashMap<String,Object>();
+
+		@Override
+		public Object get(String digest) {
+			return values.get(digest);
+		}
+
+		@Override
+		public void put(String digest, Object value, long size) {
+			values.put(digest, value);
+		}
+	}
+
+	private static RemoteObjectWrapper wrap(Model model){
+		ObjectReferenceInfo info = new ObjectReferenceInfo();
+		info.add(1, -1, null, 1);
+		return new RemoteObjectWrapper(model, 1, info);
+	}
+
+	private static Model unpack(WireObjectInputStream in, BlobStore store) throws Exception{
+		RemoteObjectWrapper wrapper = (RemoteObjectWrapper) in.readObject();
+		assertEquals(0, in.takeMissingBlobNum());
+		assertTrue(wrapper.isPacked());
+		WireObjectInputStream packedIn = new WireObjectInputStream(new ByteArrayInputStream(wrapper.getPackedObject()), store);
+		wrapper.unpack(packedIn);
+		return (Model) wrapper.getObject();
+	}
+
+	@Test
+	public void testPackedValueIsSentAsKnownBlob() throws Exception{
+		Model model = new Model();
+		model.weights = new double[64 * 1024];
+		for(int i=0; i<model.weights.length; i++)
+			model.weights[i] = i * 0.25;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		WireObjectOutputStream out = new WireObjectOutputStream(buffer);
+		out.setBlobEnabled(true);
+		RemoteObjectWrapper first = wrap(model);
+		first.pack();
+		out.writeObject(first);
+		out.reset();
+		out.flush();
+		int firstSize = buffer.size();
+
+		//only a value field is changed, the array is not transmitted again
+		model.step = 1;
+		RemoteObjectWrapper second = wrap(model);
+		second.pack();
+		out.writeObject(second);
+		out.reset();
+		out.flush();
+		int secondSize = buffer.size() - firstSize;
+		assertTrue(firstSize+" bytes, then "+secondSize+" bytes", firstSize > 8 * model.weights.length && secondSize < 8 * 1024);
+
+		MemoryBlobStore store = new MemoryBlobStore();
+		WireObjectInputStream in = new WireObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()), store);
+		assertArrayEquals(model.weights, unpack(in, store).weights, 0);
+		Model copy = unpack(in, store);
+		assertEquals(1, copy.step);
+		assertArrayEquals(model.weights, copy.weights, 0);
+	}
+}
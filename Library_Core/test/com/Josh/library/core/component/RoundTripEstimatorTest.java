@@ -0,0 +1,120 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of RoundTripEstimator
+ * @author Josh
+ *
+ */
+public class RoundTripEstimatorTest {
+	private static final long MILLI = 1000000;
+
+	@Test
+	public void testDefaultTimeout(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		assertEquals(-1, estimator.getRoundTripTime());
+		assertEquals(-1, estimator.getAge());
+		assertEquals(RoundTripEstimator.DEFAULT_TIMEOUT, estimator.getTimeout(1));
+	}
+
+	@Test
+	public void testFirstSample(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(400 * MILLI);
+		assertEquals(400 * MILLI, estimator.getRoundTripTime());
+		assertEquals(200 * MILLI, estimator.getRoundTripVariation());
+		//400 + 4 * 200 ms
+		assertEquals(1200, estimator.getTimeout(1));
+		//2 * 400 + 4 * 200 ms
+		assertEquals(1600, estimator.getTimeout(2));
+	}
+
+	@Test
+	public void testSmoothing(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(100 * MILLI);
+		estimator.addSample(900 * MILLI);
+		//variation 50 + (800 - 50) / 4, time 100 + 800 / 8
+		assertEquals(237500000L, estimator.getRoundTripVariation());
+		assertEquals(200 * MILLI, estimator.getRoundTripTime());
+		for(int i=0; i<200; i++)
+			estimator.addSample(300 * MILLI);
+		assertEquals(300 * MILLI, estimator.getRoundTripTime(), MILLI);
+		assertTrue(estimator.getRoundTripVariation() < MILLI);
+	}
+
+	@Test
+	public void testTimeoutBounds(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(MILLI);
+		assertEquals(RoundTripEstimator.MIN_TIMEOUT, estimator.getTimeout(1));
+		estimator.reset();
+		estimator.addSample(100000 * MILLI);
+		assertEquals(RoundTripEstimator.MAX_TIMEOUT, estimator.getTimeout(1));
+	}
+
+	@Test
+	public void testTransferTime(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(MILLI);
+		assertEquals(RoundTripEstimator.MIN_TIMEOUT + 2000, estimator.getTimeout(1, 2000000, 1000000));
+		long bytes = (long) RoundTripEstimator.DEFAULT_BANDWIDTH;
+		assertEquals(RoundTripEstimator.MIN_TIMEOUT + 1000, estimator.getTimeout(1, bytes, -1));
+	}
+
+	@Test
+	public void testGivenBandwidth(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(MILLI);
+		long bytes = (long) RoundTripEstimator.DEFAULT_BANDWIDTH;
+		assertEquals(RoundTripEstimator.MIN_TIMEOUT + 1000, estimator.getTimeout(1, bytes));
+		estimator.setBandwidth(RoundTripEstimator.DEFAULT_BANDWIDTH / 10);
+		assertEquals(RoundTripEstimator.MIN_TIMEOUT + 10000, estimator.getTimeout(1, bytes));
+		estimator.reset();
+		assertEquals(-1, estimator.getBandwidth(), 0);
+	}
+
+	@Test
+	public void testUnknownSize(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(MILLI);
+		assertEquals(RoundTripEstimator.DEFAULT_TIMEOUT, estimator.getTimeout(1, -1));
+	}
+
+	@Test
+	public void testBackOff(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(MILLI);
+		estimator.backOff();
+		estimator.backOff();
+		assertEquals(4 * RoundTripEstimator.MIN_TIMEOUT, estimator.getTimeout(1));
+		for(int i=0; i<10; i++)
+			estimator.backOff();
+		assertEquals(RoundTripEstimator.MAX_TIMEOUT, estimator.getTimeout(1));
+		//a measured round trip ends the back off
+		estimator.addSample(MILLI);
+		assertEquals(RoundTripEstimator.MIN_TIMEOUT, estimator.getTimeout(1));
+	}
+
+	@Test
+	public void testReset(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(500 * MILLI);
+		estimator.backOff();
+		estimator.reset();
+		assertEquals(-1, estimator.getRoundTripTime());
+		assertEquals(RoundTripEstimator.DEFAULT_TIMEOUT, estimator.getTimeout(1));
+	}
+
+	@Test
+	public void testInvalidSampleIsIgnored(){
+		RoundTripEstimator estimator = new RoundTripEstimator();
+		estimator.addSample(0);
+		estimator.addSample(-5);
+		assertEquals(-1, estimator.getRoundTripTime());
+	}
+}
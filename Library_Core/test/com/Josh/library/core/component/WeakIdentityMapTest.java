@@ -0,0 +1,63 @@
+package com.Josh.library.core.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests of WeakIdentityMap
+ * @author Josh
+ *
+ */
+public class WeakIdentityMapTest {
+
+	@Test
+	public void testEqualObjectsAreDifferentKeys(){
+		WeakIdentityMap<Object,Integer> map = new WeakIdentityMap<Object,Integer>();
+		String a = new String("key");
+		String b = new String("key");
+		map.put(a, 1);
+		assertNull(map.get(b));
+		map.put(b, 2);
+		assertEquals(Integer.valueOf(1), map.get(a));
+		assertEquals(Integer.valueOf(2), map.get(b));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void testPutAndRemove(){
+		WeakIdentityMap<Object,Integer> map = new WeakIdentityMap<Object,Integer>();
+		Object key = new Object();
+		assertNull(map.put(key, 1));
+		assertEquals(Integer.valueOf(1), map.put(key, 2));
+		assertEquals(1, map.size());
+		assertEquals(Integer.valueOf(2), map.remove(key));
+		assertNull(map.get(key));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void testManyKeys(){
+		WeakIdentityMap<Object,Integer> map = new WeakIdentityMap<Object,Integer>();
+		Object[] keys = new Object[100000];
+		for(int i=0; i<keys.length; i++){
+			keys[i] = new Object();
+			map.put(keys[i], i);
+		}
+		assertEquals(keys.length, map.size());
+		for(int i=0; i<keys.length; i++)
+			assertEquals(Integer.valueOf(i), map.get(keys[i]));
+	}
+
+	@Test
+	public void testCollectedKeyIsRemoved() throws InterruptedException{
+		WeakIdentityMap<Object,Integer> map = new WeakIdentityMap<Object,Integer>();
+		map.put(new Object(), 1);
+		for(int i=0; i<50 && map.size() > 0; i++){
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(0, map.size());
+	}
+}
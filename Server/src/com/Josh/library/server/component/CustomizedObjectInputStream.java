@@ -2,33 +2,36 @@ package com.Josh.library.server.component;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
 import java.io.StreamCorruptedException;
 
 import com.Josh.library.core.component.CodeHandler;
+import com.Josh.library.core.component.WireObjectInputStream;
+import com.Josh.library.core.interfaces.BlobStore;
 
 
 /**
- * CustomizedObjectInputStream extends ObjectInputStream, it enables the stream to
+ * CustomizedObjectInputStream extends WireObjectInputStream, it enables the stream to
  * load classes from other apk files.
  * @author Josh
  *
  */
-public class CustomizedObjectInputStream extends ObjectInputStream {
+public class CustomizedObjectInputStream extends WireObjectInputStream {
 	private CodeHandler codeHandler;
 	
-	public CustomizedObjectInputStream(InputStream input, CodeHandler handler)
+	public CustomizedObjectInputStream(InputStream input, CodeHandler handler, BlobStore blobStore)
 			throws StreamCorruptedException, IOException {
-		super(input);
+		super(input, blobStore);
 		this.codeHandler = handler;
 	}
 	
 	@Override
 	protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException, IOException{
-		if(codeHandler.hasLoadedCode())
-			return codeHandler.getClass(desc.getName());
-		else
-			return super.resolveClass(desc);
+		if(codeHandler.hasLoadedCode()){
+			//classes are cached by the handler, so each class name is resolved once
+			Class<?> clazz = codeHandler.getClass(desc.getName());
+			if(clazz != null) return clazz;
+		}
+		return super.resolveClass(desc);
     }	
 }
@@ -1,23 +1,34 @@
 package com.Josh.library.server.component;
 
 import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.Josh.library.core.component.BasicType;
 import com.Josh.library.core.component.CodeHandler;
+import com.Josh.library.core.component.FieldAccessor;
+import com.Josh.library.core.component.FieldTable;
+import com.Josh.library.core.component.ObjectCodecs;
+import com.Josh.library.core.component.ObjectFingerprint;
+import com.Josh.library.core.component.ObjectPatch;
 import com.Josh.library.core.component.ObjectReferenceInfo;
 import com.Josh.library.core.component.ObjectSynchronizationInfo;
+import com.Josh.library.core.component.ParallelWorker;
+import com.Josh.library.core.component.PrimitiveArrayDelta;
 import com.Josh.library.core.component.RemoteObjectWrapper;
 import com.Josh.library.core.component.StaticFieldVirtualParentObject;
+import com.Josh.library.core.component.StubTable;
+import com.Josh.library.core.exception.CacheMissException;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
-import com.Josh.library.core.interfaces.TreeScanner;
+import com.Josh.library.core.interfaces.ObjectIdResolver;
 
 import android.annotation.SuppressLint;
 import android.util.Log;
@@ -29,16 +40,37 @@ import android.util.SparseArray;
  *
  */
 @SuppressLint("UseSparseArrays")
-public class ObjectInfo {
+public class ObjectInfo implements ObjectIdResolver {
 	private SparseArray<Object[]> id2objAndrN;
 	private Map<Object,Integer> obj2id;
 	private Map<Long,Long> ClientThread2ServerThread;
 	private Map<Long,Long> ServerThread2ClientThread;
 	private Map<String,Map<String,StaticFieldVirtualParentObject>> staticFieldVirtualParentObjectMap;
 	private Map<Long,List<Integer>> methodRemoteObject;
+	private Map<Long,Map<Integer,ObjectState>> methodRemoteObjectState;
 	private Object threadIdLock = new Object();
 	private SparseArray<Set<Thread>> id2SleepingThread;
+	private ResidentObjectCache residentCache;
 	private final static String Tag = "ObjectInfo";
+	//states of fewer objects are saved or checked in the calling thread
+	private final static int MIN_PARALLEL_OBJECTS = 64;
+	//times an object that is transmitted by another call is looked for, in the timeout of a round trip
+	private final static int RETRY_TIMES = 5;
+	
+	/**
+	 * State of a remote object when it arrives
+	 */
+	private static class ObjectState{
+		//fingerprint of the region of the object
+		long fingerprint;
+		//values of fields in the FieldTable, or null if the object is opaque
+		Object[] values;
+		//hashes of chunks if the object is a primitive array
+		long[] chunkHashes;
+		//modified ranges of a primitive array
+		PrimitiveArrayDelta arrayDelta;
+		boolean isChanged = true;
+	}
 
 	
 	public ObjectInfo(){
@@ -48,40 +80,245 @@ public class ObjectInfo {
 		ClientThread2ServerThread = new HashMap<Long,Long>();
 		staticFieldVirtualParentObjectMap = new HashMap<String,Map<String,StaticFieldVirtualParentObject>>();
 		methodRemoteObject = new HashMap<Long,List<Integer>>();
+		methodRemoteObjectState = new HashMap<Long,Map<Integer,ObjectState>>();
 		id2SleepingThread = new SparseArray<Set<Thread>>();
+		residentCache = new ResidentObjectCache();
+	}
+	
+	/**
+	 * Get the cache of objects that stay in the server between method invocations
+	 * @return
+	 * 		the resident object cache
+	 */
+	public ResidentObjectCache getResidentObjectCache(){
+		return this.residentCache;
+	}
+	
+	/**
+	 * Save the state of all remote objects in current server thread, it should be called after all
+	 * objects of a method are unwrapped. The state of an object is the fingerprint of its region, that
+	 * is to say, the object and its sub-objects that have no id, together with the values of its fields.
+	 * The state of a primitive array is the hashes of its chunks.
+	 * When synchronization information is got, objects whose states are not changed will be skipped,
+	 * and only changed fields of other objects will be synchronized. Read-only objects are never
+	 * changed by the method, so their states are not computed and they are always skipped. States of
+	 * many objects are computed in parallel.
+	 * @param readOnlyIds
+	 * 		ids of read-only objects, can be null
+	 */
+	public void saveRemoteObjectsStateInCurrentThread(final Set<Integer> readOnlyIds){
+		long threadId = Thread.currentThread().getId();
+		List<Integer> objIdList = this.methodRemoteObject.get(threadId);
+		if(objIdList == null) return;
+		Map<Integer,ObjectState> states = new HashMap<Integer,ObjectState>();
+		List<Callable<Map<Integer,ObjectState>>> tasks = new ArrayList<Callable<Map<Integer,ObjectState>>>();
+		synchronized(objIdList){
+			for(final List<Integer> part : ParallelWorker.split(getDistinctIds(objIdList), MIN_PARALLEL_OBJECTS)){
+				tasks.add(new Callable<Map<Integer,ObjectState>>(){
+					@Override
+					public Map<Integer,ObjectState> call() {
+						return saveObjectsState(part, readOnlyIds);
+					}
+				});
+			}
+			for(Map<Integer,ObjectState> partStates : invokeAll(tasks))
+				states.putAll(partStates);
+		}
+		synchronized(methodRemoteObjectState){
+			methodRemoteObjectState.put(threadId, states);
+		}
+	}
+	
+	/**
+	 * Save states of some remote objects
+	 * @param ids
+	 * 		ids of the objects
+	 * @param readOnlyIds
+	 * 		ids of read-only objects, can be null
+	 * @return
+	 * 		the states, mapped from ids
+	 */
+	private Map<Integer,ObjectState> saveObjectsState(List<Integer> ids, Set<Integer> readOnlyIds){
+		Map<Integer,ObjectState> states = new HashMap<Integer,ObjectState>();
+		for(Integer id : ids){
+			Object obj = getObject(id);
+			if(obj == null) continue;
+			ObjectState state = new ObjectState();
+			if(readOnlyIds != null && readOnlyIds.contains(id)){
+				state.isChanged = false;
+				states.put(id, state);
+				continue;
+			}
+			if(PrimitiveArrayDelta.isPrimitiveArray(obj)){
+				state.chunkHashes = PrimitiveArrayDelta.hashChunks(obj);
+				states.put(id, state);
+				continue;
+			}
+			state.fingerprint = new ObjectFingerprint(obj, this).getValue();
+			//a coded object is transplanted as a whole, see setChangedObjectInfo
+			if(!FieldTable.isOpaque(obj.getClass()) && ObjectCodecs.getCodec(obj.getClass()) == null)
+				try {
+					state.values = FieldTable.getValues(obj);
+				} catch (IllegalAccessException e) {
+					e.printStackTrace();
+					continue;
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+					continue;
+				}
+			states.put(id, state);
+		}
+		return states;
+	}
+	
+	/**
+	 * Check which remote objects are changed since their states were saved
+	 * @param ids
+	 * 		ids of the objects
+	 * @param states
+	 * 		the saved states, mapped from ids, can be null
+	 * @param loader
+	 * 		the class loader that loads client classes
+	 * @return
+	 * 		the amount of objects that are not changed
+	 */
+	private int checkObjectsState(List<Integer> ids, Map<Integer,ObjectState> states, ClassLoader loader){
+		int unchangedNum = 0;
+		for(Integer id : ids){
+			Object obj = getObject(id);
+			if(obj == null) continue;
+			if(StaticFieldVirtualParentObject.class.isInstance(obj))
+				((StaticFieldVirtualParentObject)obj).updateValue(loader);
+			ObjectState state = states == null? null : states.get(id);
+			if(state != null && state.isChanged){
+				if(state.chunkHashes != null){
+					state.arrayDelta = PrimitiveArrayDelta.diff(state.chunkHashes, obj);
+					state.isChanged = state.arrayDelta != null;
+				}else
+					//the fields of the object are compared one by one, its sub-objects by the fingerprint
+					state.isChanged = isFieldChanged(obj, state.values)
+							|| state.fingerprint != new ObjectFingerprint(obj, this).getValue();
+				if(!state.isChanged) unchangedNum++;
+			}
+		}
+		return unchangedNum;
+	}
+	
+	/**
+	 * Check if a field of an object is changed since its values were saved, values are compared by
+	 * equals and references by identity
+	 * @param obj
+	 * 		the object
+	 * @param values
+	 * 		the saved values of its fields in the FieldTable, or null if the object is opaque
+	 * @return
+	 * 		if a field is changed, or false if the values are not saved
+	 */
+	private static boolean isFieldChanged(Object obj, Object[] values){
+		if(values == null) return false;
+		Field[] fields = FieldTable.getFields(obj.getClass());
+		for(int i=0; i<fields.length; i++){
+			Object value;
+			try {
+				value = fields[i].get(obj);
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+				return true;
+			}
+			Object oldValue = values[i];
+			if(value == oldValue) continue;
+			if(value == null || oldValue == null) return true;
+			if(!ObjectPatch.isValue(value) || !value.equals(oldValue)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Get ids in a list without duplicates, so that the ids can be handled in parallel
+	 * @param ids
+	 * 		the ids
+	 * @return
+	 * 		distinct ids in their first order
+	 */
+	private List<Integer> getDistinctIds(List<Integer> ids){
+		return new ArrayList<Integer>(new LinkedHashSet<Integer>(ids));
+	}
+	
+	/**
+	 * Get the time between two looks for an object that is transmitted by another call, all the looks
+	 * last as long as a round trip to the client may take
+	 * @return
+	 * 		the interval in milliseconds
+	 */
+	private static long getRetryInterval(){
+		return ServerEngine.getServerEngine().getRoundTripEstimator().getTimeout(1) / RETRY_TIMES;
+	}
+	
+	/**
+	 * Run tasks in parallel, see ParallelWorker
+	 * @param tasks
+	 * 		the tasks, they do not throw checked exceptions
+	 * @return
+	 * 		the results of the tasks
+	 */
+	private static <T> List<T> invokeAll(List<Callable<T>> tasks){
+		try {
+			return ParallelWorker.invokeAll(tasks);
+		} catch (RuntimeException e) {
+			throw(e);
+		} catch (Exception e) {
+			throw(new IllegalStateException(e));
+		}
 	}
 	
 	/**
 	 * Get synchronization information of all remote objects in current server thread. Note that these
-	 * objects are objects that has an id.
-	 * @param objSyncMap
-	 * 		a map to save synchronization information of objects 
+	 * objects are objects that has an id. If the state of an object has been saved, its synchronization
+	 * information is a skipped node if it is not changed, or a node that only contains its changes.
+	 * @param syncInfo
+	 * 		a tree to save synchronization information of objects, each object is added as a root
 	 * @param loader
 	 * 		the class loader that loads client classes
 	 * @return
-	 * 		a map that saves synchronization information of objects, the return value is the same as 
-	 * 		the parameter objSyncMap 
+	 * 		the tree that saves synchronization information of objects, the return value is the same as 
+	 * 		the parameter syncInfo 
 	 * @throws RemoteExecutionFailedException
 	 * 		if any of the objects or their sub-objects is inserializable
 	 */
-	public Map<Integer,ObjectSynchronizationInfo> getRemoteObjectsSychronizationInfoInCurrentThread(Map<Integer,ObjectSynchronizationInfo> objSyncMap, ClassLoader loader) throws RemoteExecutionFailedException{
-		if(objSyncMap == null) return null;
+	public ObjectSynchronizationInfo getRemoteObjectsSychronizationInfoInCurrentThread(ObjectSynchronizationInfo syncInfo, ClassLoader loader) throws RemoteExecutionFailedException{
+		if(syncInfo == null) return null;
 		long threadId = Thread.currentThread().getId();
 		List<Integer> objIdList = this.methodRemoteObject.get(threadId);
-		if(objIdList == null) return objSyncMap;
+		if(objIdList == null) return syncInfo;
+		Map<Integer,ObjectState> states;
+		synchronized(methodRemoteObjectState){
+			states = methodRemoteObjectState.get(threadId);
+		}
+		int unchangedNum = 0;
+		int objNum = 0;
+		final Map<Integer,ObjectState> savedStates = states;
+		final ClassLoader classLoader = loader;
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
 		synchronized(objIdList){
+			for(final List<Integer> part : ParallelWorker.split(getDistinctIds(objIdList), MIN_PARALLEL_OBJECTS)){
+				tasks.add(new Callable<Integer>(){
+					@Override
+					public Integer call() {
+						return checkObjectsState(part, savedStates, classLoader);
+					}
+				});
+			}
+			for(Integer num : invokeAll(tasks))
+				unchangedNum += num;
 			for(Integer id : objIdList){
 				Object obj = getObject(id);
 				if(obj == null) continue;
-				if(StaticFieldVirtualParentObject.class.isInstance(obj))
-					((StaticFieldVirtualParentObject)obj).updateValue(loader);
-				ObjectSynchronizationInfo syncInfo = getObjectSynchronizationInfo(obj);
-				synchronized(objSyncMap){
-					objSyncMap.put(id, syncInfo);
-				}
+				setObjectInfoRecursive(syncInfo, obj, -1, null, new HashSet<Object>(), states);
+				objNum++;
 			}
 		}
-		return objSyncMap;
+		Log.i(Tag, unchangedNum+" of "+objNum+" remote objects are not changed, "+syncInfo.size()+" synchronization nodes");
+		return syncInfo;
 	}
 	
 	/**
@@ -359,6 +596,10 @@ public class ObjectInfo {
 	 */
 	public void removeAllRemoteObjectInCurrentThread(){
 		long threadId = Thread.currentThread().getId();
+		StubTable.removeAll(threadId);
+		synchronized(methodRemoteObjectState){
+			methodRemoteObjectState.remove(threadId);
+		}
 		List<Integer> objList = methodRemoteObject.get(threadId);
 		if(objList == null) return;
 		synchronized(objList){
@@ -429,34 +670,27 @@ public class ObjectInfo {
 			if(wrapper.isEmpty()) return;
 			if(wrapper.isBasicType()) return;
 			ObjectReferenceInfo infoTree = wrapper.getInfoTree();
-			infoTree.ScanObjectTree(new TreeScanner(){
-
-				@Override
-				public void onScanning(Object obj) {
-					ObjectReferenceInfo info = (ObjectReferenceInfo) obj;
-					int id = info.getId();
-					Object[] objs = getObjectAndReferenceNum(id);
-					if(objs == null) return;
-					synchronized(objs){
-						int referenceNum = (Integer) objs[1];
-						if(referenceNum>1){
-							objs[1] = referenceNum-1;
-							synchronized(objList){
-								objList.remove(id);
-							}
-							Log.i(Tag, "Server: id = "+id+" Referebce time = "+(referenceNum-1));
-						}else{
-							synchronized(objList){
-								objList.remove(id);
-							}
-							removeObject(id);
-							Log.i(Tag, "Server: id = "+id+" Referebce time = 0");
+			for(int index=0; index<infoTree.size(); index++){
+				int id = infoTree.getId(index);
+				Object[] objs = getObjectAndReferenceNum(id);
+				if(objs == null) continue;
+				synchronized(objs){
+					int referenceNum = (Integer) objs[1];
+					if(referenceNum>1){
+						objs[1] = referenceNum-1;
+						synchronized(objList){
+							objList.remove(id);
 						}
+						Log.i(Tag, "Server: id = "+id+" Referebce time = "+(referenceNum-1));
+					}else{
+						synchronized(objList){
+							objList.remove(id);
+						}
+						removeObject(id);
+						Log.i(Tag, "Server: id = "+id+" Referebce time = 0");
 					}
-					
 				}
-				
-			});
+			}
 		}
 	}
 	
@@ -499,7 +733,7 @@ public class ObjectInfo {
 				methodRemoteObject.put(threadId, objList);
 			}
 		}
-		return unWrapObject_core(wrapper,objList);
+		return unWrapObject_core(wrapper,objList,threadId);
 	}
 	
 	/**
@@ -527,12 +761,14 @@ public class ObjectInfo {
 	 * @param objList
 	 * 		if the object or its sub-object's information is saved successfully, the object or its sub-object
 	 * 		 will be added to this list.
+	 * @param threadId
+	 * 		id of the server thread that this object is binded to, stubs of the object are binded to it too
 	 * @return
 	 * 		the unwrapped object
 	 * @throws RemoteExecutionFailedException
 	 * 		if there is a problem
 	 */
-	private Object unWrapObject_core(RemoteObjectWrapper wrapper, final List<Integer> objList) throws RemoteExecutionFailedException {
+	private Object unWrapObject_core(RemoteObjectWrapper wrapper, final List<Integer> objList, long threadId) throws RemoteExecutionFailedException {
 		synchronized(wrapper){
 			if(wrapper.isEmpty())
 				return null;
@@ -541,7 +777,19 @@ public class ObjectInfo {
 			Object obj = null;
 			final int id = wrapper.getMainId();
 			ObjectReferenceInfo infoTree = wrapper.getInfoTree();
-			if(!wrapper.needTransmit()){
+			if(wrapper.isResident()){
+				obj = residentCache.get(wrapper.getResidentKey(), wrapper.getResidentBaseVersion());
+				if(obj == null){
+					Log.e(Tag, "Resident object "+wrapper.getResidentKey()+" is not in the cache");
+					throw(new CacheMissException("Resident object "+wrapper.getResidentKey()+" is not in the cache"));
+				}
+				addObject(id,obj);
+				synchronized(objList){
+					objList.add(id);
+				}
+				Log.i(Tag, "Server: id = "+id+" Referebce time = 1, resident key = "+wrapper.getResidentKey());
+			}
+			else if(!wrapper.needTransmit()){
 				Object[] objs =null;
 				while(true){
 					objs = getObjectAndReferenceNum(id);
@@ -557,13 +805,14 @@ public class ObjectInfo {
 							}
 						}					
 						try {
+							long interval = getRetryInterval();
 							int i=0;
-							for(;i<5;i++){
-								Thread.sleep(1000);
+							for(;i<RETRY_TIMES;i++){
+								Thread.sleep(interval);
 								objs = getObjectAndReferenceNum(id);
 								if(objs!=null) break;
 							}
-							if(i<5) break;
+							if(i<RETRY_TIMES) break;
 							throw(new RemoteExecutionFailedException("Server Error: Object is not transmiteed,"
 									+ " but unable to find it locally!"));
 						} catch (InterruptedException e) {
@@ -595,99 +844,144 @@ public class ObjectInfo {
 				}
 				Log.i(Tag, "Server: id = "+id+" Referebce time = 1");
 			}
-			final Object topObj = obj;
-			infoTree.ScanObjectTree(new TreeScanner(){
-				@Override
-				public void onScanning(Object object) {
-					ObjectReferenceInfo info = (ObjectReferenceInfo) object;
-					int ID = info.getId();
-					int ReferenceNum = info.getReferenceNum();
-					ObjectReferenceInfo parent = info.getParent();
-					if(parent == null){
-						info.setObject(topObj);
-						return; 
-					}
-					Object parentObj = parent.getObject();
-					String fieldName = info.getParentFieldName();
-					if(parentObj == null) return;
-					if(fieldName == null) return;
-					if(ReferenceNum>1){
-						Object[] objs = null;
-						while(true){
-							objs = getObjectAndReferenceNum(ID);
-							if(objs == null){						
-								synchronized(id2SleepingThread){
-									Set<Thread> sleepingThreads = id2SleepingThread.get(ID);
-									if(sleepingThreads == null){
-										sleepingThreads = new HashSet<Thread>();
-										id2SleepingThread.put(ID, sleepingThreads);
-									}
-									synchronized(sleepingThreads){
-										sleepingThreads.add(Thread.currentThread());
-									}
-								}					
-								try {
-									int i=0;
-									for(;i<5;i++){
-										Thread.sleep(1000);
-										objs = getObjectAndReferenceNum(ID);
-										if(objs!=null) break;
-									}
-									if(i<5) break;
-									Log.e(Tag,"Cannot find Object with id :"+ID+
-											"that may be caused by unmatched reference number!");
-										return;
-								} catch (InterruptedException e) {
-									synchronized(id2SleepingThread){
-										id2SleepingThread.remove(ID);
-									}
-									continue;
-								}
-							}
-							break;
+			for(int index=0; index<infoTree.size(); index++)
+				unWrapNode(infoTree, index, obj, objList);
+			infoTree.flushElements();
+			
+			//sub-objects that are not transmitted will be faulted in when they are read
+			for(int stub=0; stub<infoTree.stubNum(); stub++){
+				Object parentObj = infoTree.getObject(infoTree.getStubParentIndex(stub));
+				if(parentObj != null)
+					StubTable.add(parentObj, infoTree.getStubFieldName(stub), infoTree.getStubKey(stub),
+							infoTree.getStubSize(stub), threadId);
+			}
+			
+			if(wrapper.isResident() && wrapper.getPatches() != null)
+				applyPatches(wrapper.getPatches());
+			return obj;
+		}
+	}
+	
+	/**
+	 * Unwrap a node of an ObjectReferenceInfo, the object of the node is found from its parent object
+	 * or from the saved objects, and it is saved in the node. The parent node must have been unwrapped.
+	 * @param infoTree
+	 * 		the ObjectReferenceInfo
+	 * @param index
+	 * 		the index of the node
+	 * @param topObj
+	 * 		the unwrapped object of the root node
+	 * @param objList
+	 * 		if the object is saved successfully, its id will be added to this list
+	 */
+	private void unWrapNode(ObjectReferenceInfo infoTree, int index, Object topObj, List<Integer> objList){
+		int ID = infoTree.getId(index);
+		int ReferenceNum = infoTree.getReferenceNum(index);
+		int parent = infoTree.getParentIndex(index);
+		if(parent < 0){
+			infoTree.setObject(index, topObj);
+			return; 
+		}
+		Object parentObj = infoTree.getObject(parent);
+		String fieldName = infoTree.getFieldName(index);
+		if(parentObj == null) return;
+		if(fieldName == null) return;
+		if(ReferenceNum>1){
+			Object[] objs = null;
+			while(true){
+				objs = getObjectAndReferenceNum(ID);
+				if(objs == null){						
+					synchronized(id2SleepingThread){
+						Set<Thread> sleepingThreads = id2SleepingThread.get(ID);
+						if(sleepingThreads == null){
+							sleepingThreads = new HashSet<Thread>();
+							id2SleepingThread.put(ID, sleepingThreads);
 						}
-						
-						synchronized(objs){
-							int r = (Integer)objs[1]+1;
-							objs[1]=r;
-							Log.i(Tag, "Server: id = "+ID+" Referebce time = "+r);
+						synchronized(sleepingThreads){
+							sleepingThreads.add(Thread.currentThread());
 						}
-						synchronized(objList){
-							objList.add(ID);
+					}					
+					try {
+						long interval = getRetryInterval();
+						int i=0;
+						for(;i<RETRY_TIMES;i++){
+							Thread.sleep(interval);
+							objs = getObjectAndReferenceNum(ID);
+							if(objs!=null) break;
 						}
-						
-						info.setObject(objs[0]);
-					
-						if(parent.getReferenceNum() == 1)
-							try {
-								CodeHandler.setFieldValue(parentObj.getClass(), fieldName, parentObj, objs[0]);
-							} catch (IllegalAccessException e) {
-								e.printStackTrace();
-							} catch (IllegalArgumentException e) {
-								e.printStackTrace();
-							}
-	
-					}else{
-						try {
-							Object temp = CodeHandler.getFieldValue(parentObj.getClass(), fieldName, parentObj);
-							addObject(ID, temp);
-							objList.add(ID);
-							info.setObject(temp);
-							Log.i(Tag, "Server: id = "+ID+" Referebce time = 1");
-						} catch (IllegalAccessException e) {
-							e.printStackTrace();
-						} catch (IllegalArgumentException e) {
-							e.printStackTrace();
-						} catch (NoSuchFieldException e) {
-							e.printStackTrace();
+						if(i<RETRY_TIMES) break;
+						Log.e(Tag,"Cannot find Object with id :"+ID+
+								"that may be caused by unmatched reference number!");
+							return;
+					} catch (InterruptedException e) {
+						synchronized(id2SleepingThread){
+							id2SleepingThread.remove(ID);
 						}
-	
+						continue;
 					}
 				}
-				
-			});
+				break;
+			}
 			
-			return topObj;
+			synchronized(objs){
+				int r = (Integer)objs[1]+1;
+				objs[1]=r;
+				Log.i(Tag, "Server: id = "+ID+" Referebce time = "+r);
+			}
+			synchronized(objList){
+				objList.add(ID);
+			}
+			
+			infoTree.setObject(index, objs[0]);
+		
+			if(infoTree.getReferenceNum(parent) == 1)
+				try {
+					infoTree.setChildValue(parentObj, fieldName, objs[0]);
+				} catch (IllegalAccessException e) {
+					e.printStackTrace();
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+				} catch (NoSuchFieldException e) {
+					e.printStackTrace();
+				}
+	
+		}else{
+			try {
+				Object temp = infoTree.getChildValue(parentObj, fieldName);
+				addObject(ID, temp);
+				objList.add(ID);
+				infoTree.setObject(index, temp);
+				Log.i(Tag, "Server: id = "+ID+" Referebce time = 1");
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+			} catch (IllegalArgumentException e) {
+				e.printStackTrace();
+			} catch (NoSuchFieldException e) {
+				e.printStackTrace();
+			}
+	
+		}
+	}
+	
+	/**
+	 * Apply patches to objects that have been unwrapped, a patch contains values of an object
+	 * that is changed in the client since the server got it.
+	 * @param patches
+	 * 		the patches
+	 * @throws RemoteExecutionFailedException
+	 * 		if a patch cannot be applied
+	 */
+	private void applyPatches(ObjectPatch[] patches) throws RemoteExecutionFailedException{
+		for(ObjectPatch patch : patches){
+			Object obj = getObject(patch.getObjectId());
+			if(obj == null)
+				throw(new CacheMissException("Patched object "+patch.getObjectId()+" is not found"));
+			try {
+				patch.apply(obj);
+			} catch (Exception e) {
+				e.printStackTrace();
+				throw(new CacheMissException("Unable to patch object "+patch.getObjectId()));
+			}
 		}
 	}
 	
@@ -702,17 +996,52 @@ public class ObjectInfo {
 	 */
 	public ObjectSynchronizationInfo getObjectSynchronizationInfo(Object obj) throws RemoteExecutionFailedException{
 		Set<Object> scannedObject = new HashSet<Object>();
-		return setObjectInfoRecursive(obj,null,null,scannedObject);
+		ObjectSynchronizationInfo syncInfo = new ObjectSynchronizationInfo();
+		setObjectInfoRecursive(syncInfo,obj,-1,null,scannedObject,null);
+		return syncInfo;
 	}
 	
+	/**
+	 * Get synchronization information of an object in current server thread, it should be called
+	 * after getRemoteObjectsSychronizationInfoInCurrentThread. Sub-objects whose states are saved
+	 * are only referred by their ids, since they are synchronized as remote objects.
+	 * @param obj
+	 * 		the object
+	 * @return
+	 * 		its synchronization information
+	 * @throws RemoteExecutionFailedException
+	 * 		if the object or any of its sub-objects is inserializable
+	 */
+	public ObjectSynchronizationInfo getObjectSynchronizationInfoInCurrentThread(Object obj) throws RemoteExecutionFailedException{
+		Map<Integer,ObjectState> states;
+		synchronized(methodRemoteObjectState){
+			states = methodRemoteObjectState.get(Thread.currentThread().getId());
+		}
+		ObjectSynchronizationInfo syncInfo = new ObjectSynchronizationInfo();
+		if(obj != null && states != null){
+			int id = getIdFromObject(obj);
+			ObjectState state = states.get(id);
+			if(state != null){
+				if(state.isChanged)
+					syncInfo.addReference(-1, null, id);
+				else
+					syncInfo.addSkipped(-1, null, id);
+				return syncInfo;
+			}
+		}
+		Set<Object> scannedObject = new HashSet<Object>();
+		setObjectInfoRecursive(syncInfo,obj,-1,null,scannedObject,states);
+		return syncInfo;
+	}
 	
 	/**
 	 * The core component of getting synchronization of an object
+	 * @param syncInfo
+	 * 		the tree to which the nodes are added
 	 * @param obj
 	 * 		the object
 	 * @param parent
-	 * 		the parent node of the ObjectSynchronizationInfo, this parameter can be null if the object
-	 * 		has no parent object.
+	 * 		the index of the parent node, this parameter can be -1 if the object has no parent object.
 	 * @param fieldName
 	 * 		the name of the field which the object belongs to, this parameter can be null if the object
 	 * 		has no parent object.
@@ -720,67 +1049,64 @@ public class ObjectInfo {
 	 * 		a set of scanned object, if the object is in this set, this method will not execute and just
 	 * 		skip it. If an object has been analyzed by this method successfully, it will be added to this
 	 * 		set. It is useful to prevent repeatly analyzing.
+	 * @param states
+	 * 		saved states of remote objects, mapped from their ids. A sub-object that has a saved state
+	 * 		is skipped or referred, and only changes of the object are contained if it has a saved state.
+	 * 		This parameter can be null if every object should be contained completely.
 	 * @return
-	 * 		an ObjectSynchronizationInfo that contains synchronization information of this object, the
-	 * 		ObjectSynchronizationInfo can be a node of a tree.
+	 * 		the index of the node that contains synchronization information of this object, or -1 if
+	 * 		the object has been analyzed
 	 * @throws RemoteExecutionFailedException
 	 * 		if the object or any of its sub-objects is inserializable
 	 */
-	private ObjectSynchronizationInfo setObjectInfoRecursive(Object obj, ObjectSynchronizationInfo parent, String fieldName, Set<Object> scannedObject) throws RemoteExecutionFailedException{
-		ObjectSynchronizationInfo info ;
-		if(obj==null){
-			info = new ObjectSynchronizationInfo(fieldName,obj,parent);
-			if(parent!=null)
-				parent.addSonSynchronizationInfo(info);
-			return info;
-		}
+	private int setObjectInfoRecursive(ObjectSynchronizationInfo syncInfo, Object obj, int parent, String fieldName, Set<Object> scannedObject, Map<Integer,ObjectState> states) throws RemoteExecutionFailedException{
+		int info ;
+		if(obj==null)
+			return syncInfo.addNewObject(parent,fieldName,obj);
 			
 			Class<?> clazz = obj.getClass();
-			if(clazz.isEnum()){
-				info = new ObjectSynchronizationInfo(fieldName,obj,parent);
-				if(parent!=null)
-					parent.addSonSynchronizationInfo(info);
-				return info;
-			}
-			if(clazz.isAnnotation()){
-				info = new ObjectSynchronizationInfo(fieldName,obj,parent);
-				if(parent!=null)
-					parent.addSonSynchronizationInfo(info);
-				return info;
-			}
-			if(clazz.isPrimitive()){
-				info = new ObjectSynchronizationInfo(fieldName,obj,parent);
-				if(parent!=null)
-					parent.addSonSynchronizationInfo(info);
-				return info;
-			}
-			if(BasicType.isBasicType(clazz)){
-				info = new ObjectSynchronizationInfo(fieldName,obj,parent);
-				if(parent!=null)
-					parent.addSonSynchronizationInfo(info);
-				return info;
-			}
+			if(clazz.isEnum())
+				return syncInfo.addNewObject(parent,fieldName,obj);
+			if(clazz.isAnnotation())
+				return syncInfo.addNewObject(parent,fieldName,obj);
+			if(clazz.isPrimitive())
+				return syncInfo.addNewObject(parent,fieldName,obj);
+			if(BasicType.isBasicType(clazz))
+				return syncInfo.addNewObject(parent,fieldName,obj);
 			if(!Serializable.class.isInstance(obj)){
 				throw(new RemoteExecutionFailedException("Inserializable object "+obj));
 			}
-			if(scannedObject.contains(obj)) return null;
+			int id = getIdFromObject(obj);
+			ObjectState state = (id != -1 && states != null)? states.get(id) : null;
+			if(state != null && (parent >= 0 || !state.isChanged)){
+				if(state.isChanged)
+					return syncInfo.addReference(parent, fieldName, id);
+				else
+					return syncInfo.addSkipped(parent, fieldName, id);
+			}
+			if(scannedObject.contains(obj)) return -1;
 			scannedObject.add(obj);
-			int id = getIdFromObject(obj);		
+			if(state != null)
+				return setChangedObjectInfo(syncInfo, obj, id, state, parent, fieldName, scannedObject, states);
 			if(id != -1)
-				info = new ObjectSynchronizationInfo(fieldName,obj,id,parent);
+				info = syncInfo.addObject(parent,fieldName,obj,id);
 			else
-				info = new ObjectSynchronizationInfo(fieldName,obj,parent);
-			if(parent!=null)
-				parent.addSonSynchronizationInfo(info);
-			Field[] fields = clazz.getDeclaredFields();
+				info = syncInfo.addNewObject(parent,fieldName,obj);
+			if(setElementsInfo(syncInfo, obj, info, scannedObject, states))
+				return info;
+			Field[] fields = FieldAccessor.get(clazz).getInstanceFields();
 			for(Field field:fields){
-				if(field.isEnumConstant()) continue;
-				int modifier=field.getModifiers();
-				if(Modifier.isStatic(modifier)) continue;
-				if(Modifier.isTransient(modifier)) continue;
 				try {
 					Object value = CodeHandler.getFieldValue(field, obj);
-					setObjectInfoRecursive(value, info,field.getName(),scannedObject);
+					//the value was never faulted in, the client keeps its own value
+					if(value == null && StubTable.hasStubs()){
+						StubTable.Stub stub = StubTable.get(obj, field.getName());
+						if(stub != null){
+							syncInfo.addStub(info, field.getName(), stub.key);
+							continue;
+						}
+					}
+					setObjectInfoRecursive(syncInfo,value,info,field.getName(),scannedObject,states);
 				} catch (IllegalAccessException e) {
 					e.printStackTrace();
 				} catch (IllegalArgumentException e) {
@@ -793,4 +1119,111 @@ public class ObjectInfo {
 				return info;
 		}
 
+	
+	/**
+	 * Add synchronization information of the elements of a coded object, see ObjectCodec. Elements that
+	 * are values are synchronized with the contents of the object, so they have no node.
+	 * @param syncInfo
+	 * 		the tree to which the nodes are added
+	 * @param obj
+	 * 		the object
+	 * @param info
+	 * 		the index of the node of the object
+	 * @param scannedObject
+	 * 		a set of scanned object, see setObjectInfoRecursive
+	 * @param states
+	 * 		saved states of remote objects, see setObjectInfoRecursive
+	 * @return
+	 * 		false if the object is not coded, its fields should be analyzed instead
+	 * @throws RemoteExecutionFailedException
+	 * 		if any of the elements is inserializable
+	 */
+	private boolean setElementsInfo(ObjectSynchronizationInfo syncInfo, Object obj, int info, Set<Object> scannedObject, Map<Integer,ObjectState> states) throws RemoteExecutionFailedException{
+		Object[] elements = ObjectCodecs.getElements(obj);
+		if(elements == null) return false;
+		for(int i=0; i<elements.length; i++)
+			if(!ObjectPatch.isValue(elements[i]))
+				setObjectInfoRecursive(syncInfo,elements[i],info,ObjectCodecs.getElementName(i),scannedObject,states);
+		return true;
+	}
+	
+	/**
+	 * Get synchronization information of a changed remote object whose state has been saved. An opaque
+	 * object is contained completely. For other objects, only basic type fields that are changed are
+	 * contained, and only reference fields that are changed or refer to objects without saved states are
+	 * added as son nodes.
+	 * @param syncInfo
+	 * 		the tree to which the nodes are added
+	 * @param obj
+	 * 		the object
+	 * @param id
+	 * 		the id of the object
+	 * @param state
+	 * 		the saved state of the object
+	 * @param parent
+	 * 		the index of the parent node, or -1 if the object has no parent object
+	 * @param fieldName
+	 * 		the name of the field which the object belongs to
+	 * @param scannedObject
+	 * 		a set of scanned object
+	 * @param states
+	 * 		saved states of remote objects, mapped from their ids
+	 * @return
+	 * 		the index of the node that contains changes of the object
+	 * @throws RemoteExecutionFailedException
+	 * 		if any of the sub-objects is inserializable
+	 */
+	private int setChangedObjectInfo(ObjectSynchronizationInfo syncInfo, Object obj, int id, ObjectState state, int parent, String fieldName, Set<Object> scannedObject, Map<Integer,ObjectState> states) throws RemoteExecutionFailedException{
+		if(state.arrayDelta != null){
+			Log.i(Tag, state.arrayDelta.getModifiedLength()+" of "+Array.getLength(obj)+" elements of array "+id+" are modified");
+			return syncInfo.addArrayDelta(parent, fieldName, id, state.arrayDelta);
+		}
+		if(state.values == null){
+			int info = syncInfo.addTransplant(parent, fieldName, obj, id);
+			//the transplanted elements are copies, the elements that are not values are linked again
+			setElementsInfo(syncInfo, obj, info, scannedObject, states);
+			return info;
+		}
+		Field[] fields = FieldTable.getFields(obj.getClass());
+		List<Integer> changedFields = new ArrayList<Integer>();
+		List<Object> changedValues = new ArrayList<Object>();
+		List<Integer> changedReferences = new ArrayList<Integer>();
+		for(int i=0; i<fields.length; i++){
+			Object value;
+			try {
+				value = fields[i].get(obj);
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+				continue;
+			} catch (IllegalArgumentException e) {
+				e.printStackTrace();
+				continue;
+			}
+			Object oldValue = state.values[i];
+			if(ObjectPatch.isValue(value)){
+				if(value == null? oldValue != null : !value.equals(oldValue)){
+					changedFields.add(i);
+					changedValues.add(value);
+				}
+				continue;
+			}
+			//an unchanged reference to a remote object with saved state, it is synchronized by itself
+			if(value == oldValue && states.containsKey(getIdFromObject(value))) continue;
+			changedReferences.add(i);
+		}
+		int[] indexes = new int[changedFields.size()];
+		for(int i=0; i<indexes.length; i++)
+			indexes[i] = changedFields.get(i);
+		int info = syncInfo.addDelta(parent, fieldName, id, indexes, changedValues.toArray());
+		for(Integer i : changedReferences){
+			try {
+				setObjectInfoRecursive(syncInfo, fields[i].get(obj), info, fields[i].getName(), scannedObject, states);
+			} catch (IllegalAccessException e) {
+				e.printStackTrace();
+			} catch (IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+		}
+		return info;
+	}
 }
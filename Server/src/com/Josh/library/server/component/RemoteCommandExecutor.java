@@ -1,25 +1,35 @@
 package com.Josh.library.server.component;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.StreamCorruptedException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.Josh.library.core.component.BasicType;
 import com.Josh.library.core.component.CodeHandler;
+import com.Josh.library.core.component.Command;
 import com.Josh.library.core.component.MethodPackage;
+import com.Josh.library.core.component.ObjectFingerprint;
+import com.Josh.library.core.component.ObjectReferenceInfo;
 import com.Josh.library.core.component.ObjectSynchronizationInfo;
+import com.Josh.library.core.component.ParallelWorker;
 import com.Josh.library.core.component.RemoteObjectWrapper;
 import com.Josh.library.core.component.StaticFieldVirtualParentObject;
+import com.Josh.library.core.component.WireObjectInputStream;
+import com.Josh.library.core.component.Command.COMMAND;
+import com.Josh.library.core.exception.CacheMissException;
 import com.Josh.library.core.exception.InvokeMethodFailureException;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
-import com.Josh.library.core.interfaces.TreeScanner;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
@@ -36,12 +46,16 @@ public class RemoteCommandExecutor {
 	private CodeHandler handler;
 	private String APKPath; 
 	private ServerSignalHandler signalHandler;
+	private ServerBlobStore blobStore;
+	private ServerSocketHandler socketHandler;
 	static private final String Tag = "Executor";
 	
 	public RemoteCommandExecutor(Context context, ServerSocketHandler socketHandler){
 		handler = new CodeHandler(context);
 		APKPath = context.getCacheDir().getPath()+"/apk";
+		this.socketHandler = socketHandler;
 		signalHandler = new ServerSignalHandler(socketHandler);		
+		blobStore = new ServerBlobStore(context.getCacheDir().getPath()+"/blob");
 	}
 	
 	
@@ -55,6 +69,8 @@ public class RemoteCommandExecutor {
 	 */
 	public void LoadAPK(String apkName){
 		handler.LoadAPK(APKPath+"/"+apkName);
+		//resident objects are instances of classes from the old class loader
+		ServerEngine.getServerEngine().getObjectInfo().getResidentObjectCache().clear();
 		try {
 			handler.invokeMethod("com.Josh.library.client.component.RemoteExecutionEngine",
 					null, "setEnvironment_Server", null, null);
@@ -124,11 +140,14 @@ public class RemoteCommandExecutor {
 	/**
 	 * Execute an remote method, after execution finished, all objects that are binded to this thread
 	 * will be removed, their synchronization information will be saved in a map, and the 
-	 * return object's synchronization information will be returned.
+	 * return object's synchronization information will be returned. Objects that the client wants 
+	 * to be resident are kept in the resident object cache, and their fingerprints are saved in a map.
 	 * @param Package
 	 * 		the package that contains method information
-	 * @param objSyncMap
-	 * 		a map to save synchronization information of objects that are binded to current thread
+	 * @param objSyncInfo
+	 * 		a tree to save synchronization information of objects that are binded to current thread
+	 * @param residentFingerprints
+	 * 		a map to save fingerprints of resident objects, mapped from their resident keys
 	 * @return
 	 * 		the synchronization information of the return object
 	 * @throws RemoteExecutionFailedException
@@ -136,26 +155,91 @@ public class RemoteCommandExecutor {
 	 * @throws InvocationTargetException
 	 * 		if the method itself throws an exception
 	 */
-	public ObjectSynchronizationInfo executeMethod(MethodPackage Package, Map<Integer,ObjectSynchronizationInfo> objSyncMap) throws RemoteExecutionFailedException, InvocationTargetException{
+	public ObjectSynchronizationInfo executeMethod(MethodPackage Package, ObjectSynchronizationInfo objSyncInfo, Map<Integer,Long> residentFingerprints) throws RemoteExecutionFailedException, InvocationTargetException{
+		Object[] objects = unWrapMethodObjects(Package, -1);
+		return invokeMethod(Package, objects, objSyncInfo, residentFingerprints);
+	}
+	
+	/**
+	 * Unwrap the object and the parameters of a remote method, and save states of remote objects. If
+	 * the package is streamed, see MethodPackage.getHeader, the class of the method is loaded and the
+	 * object is unwrapped while the parameters are still arriving, and each parameter is unwrapped as
+	 * soon as it arrives. If an error occurs, all objects that are binded to this thread are removed.
+	 * @param Package
+	 * 		the package that contains method information
+	 * @param commandId
+	 * 		the id of the EXECUTE_METHOD command, the parameters of a streamed package arrive as
+	 * 		EXECUTE_METHOD_PARAMETER commands with this id
+	 * @return
+	 * 		the unwrapped objects, the first one is the object on which the method is invoked, and
+	 * 		the others are the parameters
+	 * @throws RemoteExecutionFailedException
+	 * 		if the objects cannot be unwrapped
+	 */
+	public Object[] unWrapMethodObjects(MethodPackage Package, int commandId) throws RemoteExecutionFailedException{
 		ServerEngine engine = ServerEngine.getServerEngine();
 		if(!engine.isStarted()){
 			Log.e(Tag, "Error: Server engine is not started!");
+			discardParameters(Package, commandId);
 			throw(new RemoteExecutionFailedException("Server engine is not started!"));
 		}
 		
 		RemoteObjectWrapper objectWrapper = Package.getObjectWrapper();
 		RemoteObjectWrapper[] paramWrappers = Package.getParamWrappers();
-		String clazz = Package.getClassname();
-		String method = Package.getMethodName();
-		String[] paramTypes = Package.getParamTypeName();
-		
-		
 		ObjectInfo info = engine.getObjectInfo();
-		Object obj = info.unWrapObject(objectWrapper);
-			
+		Object[] objects = new Object[paramWrappers.length+1];
+		try{
+			if(Package.isStreamed()){
+				//classes of the method are loaded before the parameters arrive
+				Log.i(Tag, "Preparing streamed method "+getMethodName(Package));
+				unpackObjects(objectWrapper);
+				objects[0] = info.unWrapObject(objectWrapper);
+				for(int i=0; i<paramWrappers.length;i++){
+					receiveParameter(Package, commandId, i);
+					unpackObjects(paramWrappers[i]);
+					objects[i+1] = info.unWrapObject(paramWrappers[i]);
+				}
+			}else{
+				unpackObjects(getWrappers(Package).toArray(new RemoteObjectWrapper[paramWrappers.length+1]));
+				objects[0] = info.unWrapObject(objectWrapper);
+				for(int i=0; i<paramWrappers.length;i++)
+					objects[i+1] = info.unWrapObject(paramWrappers[i]);
+			}
+		}catch(RemoteExecutionFailedException e){
+			discardParameters(Package, commandId);
+			info.removeAllRemoteObjectInCurrentThread();
+			invalidateResidentObjects(Package);
+			throw(e);
+		}
+		info.saveRemoteObjectsStateInCurrentThread(getReadOnlyIds(objectWrapper, paramWrappers));
+		return objects;
+	}
+	
+	/**
+	 * Invoke a remote method whose objects have been unwrapped by unWrapMethodObjects, after execution
+	 * finished, all objects that are binded to this thread will be removed, see executeMethod.
+	 * @param Package
+	 * 		the package that contains method information
+	 * @param objects
+	 * 		the unwrapped objects
+	 * @param objSyncInfo
+	 * 		a tree to save synchronization information of objects that are binded to current thread
+	 * @param residentFingerprints
+	 * 		a map to save fingerprints of resident objects, mapped from their resident keys
+	 * @return
+	 * 		the synchronization information of the return object
+	 * @throws RemoteExecutionFailedException
+	 * 		if there is a problem when executing the method
+	 * @throws InvocationTargetException
+	 * 		if the method itself throws an exception
+	 */
+	public ObjectSynchronizationInfo invokeMethod(MethodPackage Package, Object[] objects, ObjectSynchronizationInfo objSyncInfo, Map<Integer,Long> residentFingerprints) throws RemoteExecutionFailedException, InvocationTargetException{
+		RemoteObjectWrapper objectWrapper = Package.getObjectWrapper();
+		RemoteObjectWrapper[] paramWrappers = Package.getParamWrappers();
+		ObjectInfo info = ServerEngine.getServerEngine().getObjectInfo();
+		Object obj = objects[0];
 		Object[] params = new Object[paramWrappers.length];
-		for(int i=0; i<paramWrappers.length;i++)
-			params[i] = info.unWrapObject(paramWrappers[i]);
+		System.arraycopy(objects, 1, params, 0, params.length);
 		
 		Object result = null;
 		RemoteExecutionFailedException remoteException = null;
@@ -163,12 +247,16 @@ public class RemoteCommandExecutor {
 		ObjectSynchronizationInfo resultSync = null;
 		
 		try {
-			String methodName = Package.toString(handler.getClassLoader());
+			Method target = handler.resolveMethod(Package);
+			String methodName = Package.toString(target);
 			Log.i(Tag, "start executing method "+methodName+" from client!");
-			result = handler.invokeMethod(clazz, obj, method, paramTypes, params);
-			info.getRemoteObjectsSychronizationInfoInCurrentThread(objSyncMap,this.getClassLoader());
-			resultSync = info.getObjectSynchronizationInfo(result);
+			result = CodeHandler.invokeMethod(target, obj, params);
+			info.getRemoteObjectsSychronizationInfoInCurrentThread(objSyncInfo,this.getClassLoader());
+			resultSync = info.getObjectSynchronizationInfoInCurrentThread(result);
 			info.removeAllRemoteObjectInCurrentThread();
+			saveResidentObject(objectWrapper, obj, residentFingerprints);
+			for(int i=0; i<paramWrappers.length;i++)
+				saveResidentObject(paramWrappers[i], params[i], residentFingerprints);
 			Log.i(Tag, "Method "+methodName+" execution finished!");
 		} catch (ClassNotFoundException e) {
 			e.printStackTrace();
@@ -203,19 +291,209 @@ public class RemoteCommandExecutor {
 		}
 			
 		if(remoteException!= null) {
-			Log.e(Tag, "A RemoteExecutionFailedException occured when executing method "+Package.toString(handler.getClassLoader())+", sending it back...");
+			Log.e(Tag, "A RemoteExecutionFailedException occured when executing method "+getMethodName(Package)+", sending it back...");
 			info.removeAllRemoteObjectInCurrentThread();
+			invalidateResidentObjects(Package);
 			throw(remoteException);
 		}
 		if(methodException!= null){
-			Log.e(Tag, "An InvocationTargetException occured when executing method "+Package.toString(handler.getClassLoader())+", sending it back...");
+			Log.e(Tag, "An InvocationTargetException occured when executing method "+getMethodName(Package)+", sending it back...");
 			info.removeAllRemoteObjectInCurrentThread();
+			invalidateResidentObjects(Package);
 			throw(methodException);
 		}
 			
 		return resultSync;
 	}
 	
+	/**
+	 * Get the full name of a method for logs, the method is found from the cache of the handler
+	 * @param Package
+	 * 		the method package
+	 * @return
+	 * 		the full name of the method, or its name if it cannot be found
+	 */
+	private String getMethodName(MethodPackage Package){
+		try {
+			return Package.toString(handler.resolveMethod(Package));
+		} catch (ClassNotFoundException e) {
+		} catch (NoSuchMethodException e) {
+		}
+		return Package.getMethodName();
+	}
+	
+	/**
+	 * Read objects that are serialized in advance by the client, they are read in parallel
+	 * @param wrappers
+	 * 		the wrappers, some of them may be null
+	 * @throws RemoteExecutionFailedException
+	 * 		if any of the objects cannot be read
+	 */
+	private void unpackObjects(RemoteObjectWrapper... wrappers) throws RemoteExecutionFailedException{
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for(final RemoteObjectWrapper wrapper : wrappers){
+			if(wrapper == null || !wrapper.isPacked()) continue;
+			tasks.add(new Callable<Object>(){
+				@Override
+				public Object call() throws IOException, ClassNotFoundException {
+					WireObjectInputStream in = getObjectInputStream(new ByteArrayInputStream(wrapper.getPackedObject()));
+					wrapper.unpack(in);
+					in.close();
+					return null;
+				}
+			});
+		}
+		try {
+			ParallelWorker.invokeAll(tasks);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw(new RemoteExecutionFailedException("Unable to read packed objects: "+e.getMessage()));
+		}
+	}
+	
+	/**
+	 * Get all wrappers of a method package
+	 * @param Package
+	 * 		the method package
+	 * @return
+	 * 		the wrapper of the object on which the method is invoked, followed by wrappers of the parameters
+	 */
+	private List<RemoteObjectWrapper> getWrappers(MethodPackage Package){
+		List<RemoteObjectWrapper> wrappers = new ArrayList<RemoteObjectWrapper>();
+		wrappers.add(Package.getObjectWrapper());
+		for(RemoteObjectWrapper wrapper : Package.getParamWrappers())
+			wrappers.add(wrapper);
+		return wrappers;
+	}
+	
+	/**
+	 * Wait until a parameter of a streamed method package arrives, parameters that arrive before
+	 * it are put to the package too
+	 * @param Package
+	 * 		the streamed method package
+	 * @param commandId
+	 * 		the id of the EXECUTE_METHOD command
+	 * @param index
+	 * 		the index of the parameter
+	 * @throws RemoteExecutionFailedException
+	 * 		if the connection is lost, or a CacheMissException if an arrived parameter has missing blobs
+	 */
+	private void receiveParameter(MethodPackage Package, int commandId, int index) throws RemoteExecutionFailedException{
+		while(Package.getParamWrappers()[index] == null){
+			Command cmd = socketHandler.WaitForCommand(COMMAND.EXECUTE_METHOD_PARAMETER, commandId, 0);
+			Package.setParamWrapper((Integer) cmd.getExtra("index"), (RemoteObjectWrapper) cmd.getExtra("wrapper"));
+			if(cmd.getExtra("missingBlobNum") != null)
+				throw(new CacheMissException(cmd.getExtra("missingBlobNum")+" blobs are not in the blob store"));
+		}
+	}
+	
+	/**
+	 * Receive the parameters of a streamed method package that have not arrived and drop them, so that
+	 * they will not be taken by a later method with the same command id
+	 * @param Package
+	 * 		the method package
+	 * @param commandId
+	 * 		the id of the EXECUTE_METHOD command
+	 */
+	public void discardParameters(MethodPackage Package, int commandId){
+		if(!Package.isStreamed()) return;
+		RemoteObjectWrapper[] paramWrappers = Package.getParamWrappers();
+		int index = 0;
+		while(index < paramWrappers.length){
+			if(paramWrappers[index] != null){
+				index++;
+				continue;
+			}
+			try {
+				receiveParameter(Package, commandId, index);
+			} catch (CacheMissException e) {
+				continue;
+			} catch (RemoteExecutionFailedException e) {
+				Log.e(Tag, "Unable to receive parameters of a failed method: "+e.getMessage());
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Get ids of objects that are never changed by a method, they are objects of read-only wrappers
+	 * which cannot be reached from other wrappers
+	 * @param objectWrapper
+	 * 		the wrapper of the object on which the method is invoked
+	 * @param paramWrappers
+	 * 		wrappers of the parameters
+	 * @return
+	 * 		the ids of read-only objects
+	 */
+	private Set<Integer> getReadOnlyIds(RemoteObjectWrapper objectWrapper, RemoteObjectWrapper[] paramWrappers){
+		Set<Integer> readOnlyIds = new HashSet<Integer>();
+		Set<Integer> writableIds = new HashSet<Integer>();
+		addIds(objectWrapper, readOnlyIds, writableIds);
+		for(RemoteObjectWrapper wrapper : paramWrappers)
+			addIds(wrapper, readOnlyIds, writableIds);
+		readOnlyIds.removeAll(writableIds);
+		return readOnlyIds;
+	}
+	
+	/**
+	 * Add ids of objects in a wrapper to a set
+	 * @param wrapper
+	 * 		the wrapper
+	 * @param readOnlyIds
+	 * 		the set to which ids of a read-only wrapper are added
+	 * @param writableIds
+	 * 		the set to which ids of other wrappers are added
+	 */
+	private void addIds(RemoteObjectWrapper wrapper, Set<Integer> readOnlyIds, Set<Integer> writableIds){
+		if(wrapper == null || wrapper.getInfoTree() == null) return;
+		ObjectReferenceInfo tree = wrapper.getInfoTree();
+		Set<Integer> ids = wrapper.isReadOnly()? readOnlyIds : writableIds;
+		for(int i=0; i<tree.size(); i++)
+			ids.add(tree.getId(i));
+	}
+	
+	/**
+	 * Keep an object in the resident object cache if the client wants it to be resident, and save
+	 * its fingerprint so that the client can check if its copy is the same as the cached one.
+	 * @param wrapper
+	 * 		the wrapper of the object
+	 * @param obj
+	 * 		the object
+	 * @param residentFingerprints
+	 * 		a map to save the fingerprint of the object
+	 */
+	private void saveResidentObject(RemoteObjectWrapper wrapper, Object obj, Map<Integer,Long> residentFingerprints){
+		if(wrapper == null || obj == null) return;
+		int key = wrapper.getResidentKey();
+		if(key<0) return;
+		ResidentObjectCache cache = ServerEngine.getServerEngine().getObjectInfo().getResidentObjectCache();
+		//an immutable object that the client already knows is not checked again
+		if(wrapper.isPinned() && wrapper.isResident()){
+			cache.put(key, wrapper.getResidentVersion(), wrapper.getResidentSize(), obj, true);
+			return;
+		}
+		ObjectFingerprint fingerprint = new ObjectFingerprint(obj);
+		cache.put(key, wrapper.getResidentVersion(), fingerprint.getEstimatedSize(), obj, wrapper.isPinned());
+		if(residentFingerprints != null)
+			residentFingerprints.put(key, fingerprint.getValue());
+	}
+	
+	/**
+	 * Remove all objects of a method package from the resident object cache, it is used when the
+	 * state of these objects is unknown by the client
+	 * @param Package
+	 * 		the method package
+	 */
+	private void invalidateResidentObjects(MethodPackage Package){
+		ResidentObjectCache cache = ServerEngine.getServerEngine().getObjectInfo().getResidentObjectCache();
+		RemoteObjectWrapper objectWrapper = Package.getObjectWrapper();
+		if(objectWrapper != null && objectWrapper.getResidentKey()>=0)
+			cache.invalidate(objectWrapper.getResidentKey());
+		for(RemoteObjectWrapper wrapper : Package.getParamWrappers())
+			if(wrapper != null && wrapper.getResidentKey()>=0)
+				cache.invalidate(wrapper.getResidentKey());
+	}
+	
 	/**
 	 * Get value of an object field
 	 * @param id
@@ -289,7 +567,7 @@ public class RemoteCommandExecutor {
 	
 	/**
 	 * Get the customized object input stream, a customized object input stream can input
-	 * objects whose classes are from other apk files.
+	 * objects whose classes are from other apk files, and resolves large values from the blob store.
 	 * @param input
 	 * 		the input stream
 	 * @return
@@ -297,8 +575,8 @@ public class RemoteCommandExecutor {
 	 * @throws StreamCorruptedException
 	 * @throws IOException
 	 */
-	public ObjectInputStream getObjectInputStream(InputStream input) throws StreamCorruptedException, IOException{
-		return new CustomizedObjectInputStream(input,handler);
+	public WireObjectInputStream getObjectInputStream(InputStream input) throws StreamCorruptedException, IOException{
+		return new CustomizedObjectInputStream(input,handler,blobStore);
 	}
 	
 	/**
@@ -310,25 +588,19 @@ public class RemoteCommandExecutor {
 	 * 		a set of new objects
 	 */
 	public Set<Object> getNewObjectSet(ObjectSynchronizationInfo syncInfo){
-		final Set<Object> objSet = new HashSet<Object>();
+		Set<Object> objSet = new HashSet<Object>();
 		if(syncInfo==null) return objSet;
-		syncInfo.ScanObjectTree(new TreeScanner(){
-			@Override
-			public void onScanning(Object obj) {
-				ObjectSynchronizationInfo info = (ObjectSynchronizationInfo) obj;
-				if(info.isNewObject()){
-					Object object = info.getObject();
-					if(object == null) return;
-					Class<?> type = object.getClass();
-					if(type.isPrimitive()) return;
-					if(type.isEnum()) return;
-					if(BasicType.isBasicType(type)) return;
-					if(type.isAnnotation()) return;
-					objSet.add(object);	
-				}
-			}
-			
-		});
+		for(int i=0; i<syncInfo.size(); i++){
+			if(!syncInfo.isNewObject(i)) continue;
+			Object object = syncInfo.getObject(i);
+			if(object == null) continue;
+			Class<?> type = object.getClass();
+			if(type.isPrimitive()) continue;
+			if(type.isEnum()) continue;
+			if(BasicType.isBasicType(type)) continue;
+			if(type.isAnnotation()) continue;
+			objSet.add(object);	
+		}
 		return objSet;
 	}
 	
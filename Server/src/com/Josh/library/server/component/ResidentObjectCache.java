@@ -0,0 +1,167 @@
+package com.Josh.library.server.component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * ResidentObjectCache keeps objects in the server after the method that uses them returns, so
+ * that later invocations can refer to them by their resident keys instead of transmitting them
+ * again. Each resident object has a version assigned by the client, an object is only returned
+ * if the requested version matches. The cache belongs to one client session, it is bounded by
+ * the amount of objects and by their estimated size, the least recently used objects are evicted
+ * first. Immutable objects are pinned, they are not counted and never evicted.
+ * @author Josh
+ *
+ */
+public class ResidentObjectCache {
+	private static final String Tag = "ResidentObjectCache";
+	private static final int DEFAULT_MAX_ENTRIES = 256;
+	private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+	private final LinkedHashMap<Integer,Entry> entries = new LinkedHashMap<Integer,Entry>(16, 0.75f, true);
+	private final HashMap<Integer,Entry> pinnedEntries = new HashMap<Integer,Entry>();
+	private int maxEntries;
+	private long maxSize;
+	private long totalSize = 0;
+
+	/**
+	 * An entry of the cache
+	 */
+	private static class Entry{
+		Object obj;
+		long version;
+		long size;
+	}
+
+	public ResidentObjectCache(){
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_SIZE);
+	}
+
+	public ResidentObjectCache(int maxEntries, long maxSize){
+		this.maxEntries = maxEntries;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Get a resident object
+	 * @param key
+	 * 		the resident key of the object
+	 * @param version
+	 * 		the expected version of the object
+	 * @return
+	 * 		the object, or null if the cache does not have this version of the object
+	 */
+	public synchronized Object get(int key, long version){
+		Entry entry = entries.get(key);
+		if(entry == null)
+			entry = pinnedEntries.get(key);
+		if(entry == null) return null;
+		if(entry.version != version){
+			Log.i(Tag, "Resident object "+key+" is out of date, expected version "+version+", cached version "+entry.version);
+			return null;
+		}
+		return entry.obj;
+	}
+
+	/**
+	 * Put an object to the cache, an older version of the object will be replaced. The least
+	 * recently used objects are evicted if the cache is full.
+	 * @param key
+	 * 		the resident key of the object
+	 * @param version
+	 * 		the version of the object
+	 * @param size
+	 * 		the estimated size of the object in bytes
+	 * @param obj
+	 * 		the object
+	 */
+	public synchronized void put(int key, long version, long size, Object obj){
+		put(key, version, size, obj, false);
+	}
+
+	/**
+	 * Put an object to the cache, an older version of the object will be replaced
+	 * @param key
+	 * 		the resident key of the object
+	 * @param version
+	 * 		the version of the object
+	 * @param size
+	 * 		the estimated size of the object in bytes
+	 * @param obj
+	 * 		the object
+	 * @param pinned
+	 * 		if the object is immutable, a pinned object is never evicted
+	 */
+	public synchronized void put(int key, long version, long size, Object obj, boolean pinned){
+		if(obj == null) return;
+		if(pinned){
+			invalidate(key);
+			Entry entry = new Entry();
+			entry.obj = obj;
+			entry.version = version;
+			entry.size = size;
+			pinnedEntries.put(key, entry);
+			return;
+		}
+		if(size > maxSize){
+			invalidate(key);
+			return;
+		}
+		pinnedEntries.remove(key);
+		Entry entry = new Entry();
+		entry.obj = obj;
+		entry.version = version;
+		entry.size = size;
+		Entry old = entries.put(key, entry);
+		if(old != null)
+			totalSize -= old.size;
+		totalSize += size;
+		evict();
+	}
+
+	/**
+	 * Remove an object from the cache
+	 * @param key
+	 * 		the resident key of the object
+	 */
+	public synchronized void invalidate(int key){
+		Entry old = entries.remove(key);
+		if(old != null)
+			totalSize -= old.size;
+		pinnedEntries.remove(key);
+	}
+
+	/**
+	 * Remove all objects from the cache
+	 */
+	public synchronized void clear(){
+		entries.clear();
+		pinnedEntries.clear();
+		totalSize = 0;
+	}
+
+	/**
+	 * Get the amount of resident objects
+	 * @return
+	 * 		the amount of resident objects
+	 */
+	public synchronized int size(){
+		return entries.size() + pinnedEntries.size();
+	}
+
+	/**
+	 * Evict least recently used objects until the cache is not full
+	 */
+	private void evict(){
+		Iterator<Map.Entry<Integer,Entry>> it = entries.entrySet().iterator();
+		while((entries.size() > maxEntries || totalSize > maxSize) && it.hasNext()){
+			Map.Entry<Integer,Entry> eldest = it.next();
+			totalSize -= eldest.getValue().size;
+			it.remove();
+			Log.i(Tag, "Resident object "+eldest.getKey()+" is evicted");
+		}
+	}
+}
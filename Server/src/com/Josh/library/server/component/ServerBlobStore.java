@@ -0,0 +1,181 @@
+package com.Josh.library.server.component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.Josh.library.core.component.BlobReference;
+import com.Josh.library.core.interfaces.BlobStore;
+
+import android.util.Log;
+
+/**
+ * ServerBlobStore is the content-addressed store of large values that are sent by the client. Values
+ * are kept in memory until the memory limit is reached, then the least recently used values spill to
+ * files in a directory, and the least recently used files are deleted when the disk limit is reached.
+ * @author Josh
+ *
+ */
+public class ServerBlobStore implements BlobStore {
+	private static final String Tag = "ServerBlobStore";
+	private static final long DEFAULT_MAX_MEMORY = 32L * 1024 * 1024;
+	private static final long DEFAULT_MAX_DISK = 256L * 1024 * 1024;
+	private final LinkedHashMap<String,Entry> memory = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+	private final LinkedHashMap<String,Long> disk = new LinkedHashMap<String,Long>(16, 0.75f, true);
+	private File directory;
+	private long maxMemory;
+	private long maxDisk;
+	private long memorySize = 0;
+	private long diskSize = 0;
+
+	/**
+	 * A value in memory
+	 */
+	private static class Entry{
+		Object value;
+		long size;
+	}
+
+	public ServerBlobStore(String path){
+		this(path, DEFAULT_MAX_MEMORY, DEFAULT_MAX_DISK);
+	}
+
+	public ServerBlobStore(String path, long maxMemory, long maxDisk){
+		this.maxMemory = maxMemory;
+		this.maxDisk = maxDisk;
+		directory = new File(path);
+		if(!directory.exists())
+			directory.mkdirs();
+		//files of the last run are not indexed
+		File[] files = directory.listFiles();
+		if(files != null)
+			for(File file : files)
+				file.delete();
+	}
+
+	@Override
+	public synchronized Object get(String digest){
+		Entry entry = memory.get(digest);
+		if(entry != null) return entry.value;
+		if(disk.get(digest) == null) return null;
+		Object value = readFile(digest);
+		if(value == null){
+			removeFile(digest);
+			return null;
+		}
+		putMemory(digest, value, BlobReference.sizeOf(value));
+		return value;
+	}
+
+	@Override
+	public synchronized void put(String digest, Object value, long size){
+		if(value == null || memory.containsKey(digest)) return;
+		putMemory(digest, value, size);
+	}
+
+	/**
+	 * Remove all values
+	 */
+	public synchronized void clear(){
+		memory.clear();
+		memorySize = 0;
+		for(String digest : disk.keySet())
+			new File(directory, digest).delete();
+		disk.clear();
+		diskSize = 0;
+	}
+
+	/**
+	 * Put a value to memory, and spill least recently used values to disk if memory is full
+	 */
+	private void putMemory(String digest, Object value, long size){
+		Entry entry = new Entry();
+		entry.value = value;
+		entry.size = size;
+		memory.put(digest, entry);
+		memorySize += size;
+		Iterator<Map.Entry<String,Entry>> it = memory.entrySet().iterator();
+		while(memorySize > maxMemory && it.hasNext()){
+			Map.Entry<String,Entry> eldest = it.next();
+			it.remove();
+			memorySize -= eldest.getValue().size;
+			if(disk.get(eldest.getKey()) == null)
+				writeFile(eldest.getKey(), eldest.getValue().value, eldest.getValue().size);
+		}
+	}
+
+	/**
+	 * Write a value to a file, and delete least recently used files if disk is full
+	 */
+	private void writeFile(String digest, Object value, long size){
+		if(size > maxDisk) return;
+		ObjectOutputStream os = null;
+		try {
+			os = new ObjectOutputStream(new FileOutputStream(new File(directory, digest)));
+			os.writeObject(new BlobReference(digest, value));
+		} catch (IOException e) {
+			e.printStackTrace();
+			Log.e(Tag, "Unable to spill blob "+digest+" to disk");
+			new File(directory, digest).delete();
+			return;
+		} finally {
+			if(os != null)
+				try {
+					os.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+		}
+		disk.put(digest, size);
+		diskSize += size;
+		Log.i(Tag, "Blob "+digest+" spilled to disk, "+size+" bytes");
+		Iterator<Map.Entry<String,Long>> it = disk.entrySet().iterator();
+		while(diskSize > maxDisk && it.hasNext()){
+			Map.Entry<String,Long> eldest = it.next();
+			it.remove();
+			diskSize -= eldest.getValue();
+			new File(directory, eldest.getKey()).delete();
+		}
+	}
+
+	/**
+	 * Read a value from a file
+	 * @return
+	 * 		the value, or null if the file cannot be read
+	 */
+	private Object readFile(String digest){
+		ObjectInputStream is = null;
+		try {
+			is = new ObjectInputStream(new FileInputStream(new File(directory, digest)));
+			return ((BlobReference) is.readObject()).getValue();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		} finally {
+			if(is != null)
+				try {
+					is.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+		}
+		return null;
+	}
+
+	/**
+	 * Forget a file and delete it
+	 */
+	private void removeFile(String digest){
+		Long size = disk.remove(digest);
+		if(size != null)
+			diskSize -= size;
+		new File(directory, digest).delete();
+	}
+}
@@ -1,5 +1,7 @@
 package com.Josh.library.server.component;
 
+import com.Josh.library.core.component.RoundTripEstimator;
+
 import android.content.Context;
 import android.util.Log;
 
@@ -13,6 +15,7 @@ public class ServerEngine {
 	private static ServerEngine engine = new ServerEngine();	
 	private boolean isStarted;
 	private ObjectInfo info;
+	private final RoundTripEstimator roundTripEstimator = new RoundTripEstimator();
 	private ServiceThread thread;
 	
 	
@@ -39,6 +42,15 @@ public class ServerEngine {
 		return info;
 	}
 	
+	/**
+	 * Get the estimator of the round trip time to the client, it gives the timeouts of the server
+	 * @return
+	 * 		the round trip estimator
+	 */
+	public RoundTripEstimator getRoundTripEstimator(){
+		return roundTripEstimator;
+	}
+	
 	/**
 	 * Start the server engine
 	 * @param context
@@ -7,6 +7,7 @@ import com.Josh.library.core.component.Command;
 import com.Josh.library.core.component.RemoteObjectWrapper;
 import com.Josh.library.core.component.Command.COMMAND;
 import com.Josh.library.core.component.StaticFieldVirtualParentObject;
+import com.Josh.library.core.component.StubTable;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
 import com.Josh.library.server.core.IdPool;
 
@@ -115,7 +116,9 @@ public class ServerSignalHandler extends Handler{
 					Command retCommand;
 
 					try {
-						retCommand = socketHandler.WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,CommandId,5000);
+						//the size of the value is not known until it arrives
+						retCommand = socketHandler.WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,CommandId,
+								ServerEngine.getServerEngine().getRoundTripEstimator().getTimeout(1, -1));
 					} catch (RemoteExecutionFailedException e) {
 						e.printStackTrace();
 						getFieldIdPool.returnPosition(CommandId);
@@ -162,6 +165,83 @@ public class ServerSignalHandler extends Handler{
 				}
 				
 				
+				//Get a request for objects that were not transmitted with their parent object
+				if(signal.getString("SIGNAL").equals("GET_OBJECT")){
+					Object parent = signal.getSerializable("parent");
+					long threadId = signal.getLong("threadId");
+					
+					//fault in all stubs of the parent object together
+					StubTable.Stub[] stubs = StubTable.getStubs(parent);
+					String[] fieldNames = new String[stubs.length];
+					int[] keys = new int[stubs.length];
+					long bytes = 0;
+					for(int i=0; i<stubs.length; i++){
+						fieldNames[i] = stubs[i].fieldName;
+						keys[i] = stubs[i].key;
+						bytes += stubs[i].size;
+					}
+					
+					int CommandId = getFieldIdPool.getPosition();
+					Command cmd = new Command(COMMAND.OBJECT_REQUEST,CommandId);
+					cmd.putExtra("stubKeys", keys);
+					cmd.putExtra("threadId", threadId);
+					
+					try {
+						Log.i(Tag, "fault in "+keys.length+" objects of "+parent.getClass().getName()+" from client!");
+						socketHandler.transmit(cmd);
+					} catch (IOException e) {
+						e.printStackTrace();
+						getFieldIdPool.returnPosition(CommandId);
+						result.put("hasException", true);
+						result.put("exception", e);
+						queue.put(result);
+						return;
+					}
+					Command retCommand;
+
+					try {
+						retCommand = socketHandler.WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,CommandId,
+								ServerEngine.getServerEngine().getRoundTripEstimator().getTimeout(1, bytes));
+					} catch (RemoteExecutionFailedException e) {
+						e.printStackTrace();
+						getFieldIdPool.returnPosition(CommandId);
+						result.put("hasException", true);
+						result.put("exception", e);
+						queue.put(result);
+						return;
+					}
+
+					getFieldIdPool.returnPosition(CommandId);
+					
+					if((Boolean)retCommand.getExtra("hasException") == true){				
+						Log.e(Tag, "Error: there is a problem when faulting in objects of "+parent.getClass().getName());
+						result.put("hasException", true);
+						result.put("exception", retCommand.getExtra("exception"));
+						queue.put(result);
+						return;
+					}
+					
+					RemoteObjectWrapper[] wrappers = (RemoteObjectWrapper[]) retCommand.getExtra("wrappers");
+					ObjectInfo info = ServerEngine.getServerEngine().getObjectInfo();
+					Object[] values = new Object[wrappers.length];
+					try {
+						for(int i=0; i<wrappers.length; i++)
+							values[i] = info.unWrapObjectInAnotherThread(wrappers[i], threadId);
+					} catch (RemoteExecutionFailedException e) {
+						result.put("hasException", true);
+						result.put("exception",	e);
+						queue.put(result);
+						return;
+					}
+					
+					result.put("fieldNames", fieldNames);
+					result.put("result", values);
+					result.put("hasException", false);
+					queue.put(result);
+					return;
+				}
+				
+				
 				//Get a request for native library path
 				if(signal.getString("SIGNAL").equals("GET_LIBRARY_PATH")){
 					String libName = signal.getString("libName");
@@ -1,8 +1,6 @@
 package com.Josh.library.server.component;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
@@ -18,7 +16,11 @@ import com.Josh.library.core.component.Command;
 import com.Josh.library.core.component.MethodPackage;
 import com.Josh.library.core.component.ObjectSynchronizationInfo;
 import com.Josh.library.core.component.RemoteObjectWrapper;
+import com.Josh.library.core.component.SizeEstimator;
+import com.Josh.library.core.component.WireObjectInputStream;
+import com.Josh.library.core.component.WireObjectOutputStream;
 import com.Josh.library.core.component.Command.COMMAND;
+import com.Josh.library.core.exception.CacheMissException;
 import com.Josh.library.core.exception.RemoteExecutionFailedException;
 
 import android.annotation.SuppressLint;
@@ -40,14 +42,16 @@ public class ServerSocketHandler {
 	private Set<Command> recievedCommands;
 	private ServerSocket serverSocket;
 	private Socket socket;
-	private ObjectInputStream is;
-	private ObjectOutputStream os;
+	private WireObjectInputStream is;
+	private WireObjectOutputStream os;
 	private boolean isRecieveThreadOn = false;
 	private RemoteCommandExecutor remoteCmdExe;
 	private boolean isConnected = false;
 	private TransmitThread transmitThread;
 	private boolean isTransmitServiceOn = false;
 	private Handler waitHandler = new Handler();
+	//times at which thread ids were written, by command ids, the client confirms them at once
+	private final Map<Integer,Long> threadIdTimes = new HashMap<Integer,Long>();
 	static private final String Tag = "ServerSocketHandler";
 	
 	public ServerSocketHandler(Context context){
@@ -80,8 +84,10 @@ public class ServerSocketHandler {
 		serverSocket = new ServerSocket(port);
 		Log.i(Tag, "Server started, waiting for client at port : "+port);	
 		socket = serverSocket.accept();
-		os = new ObjectOutputStream(socket.getOutputStream());
+		os = new WireObjectOutputStream(socket.getOutputStream());
 		is = remoteCmdExe.getObjectInputStream(socket.getInputStream());
+		//the client may use another network
+		ServerEngine.getServerEngine().getRoundTripEstimator().reset();
 		isConnected = true;
 		Log.i(Tag, "Connect success! Client address: "+socket.getInetAddress()+":"+socket.getPort());
 	}
@@ -119,10 +125,15 @@ public class ServerSocketHandler {
 				thread.interrupt();
 			waitingThreads.clear();
 		}
+		synchronized(threadIdTimes){
+			threadIdTimes.clear();
+		}
 		
 		synchronized(this.recievedCommands){
 			recievedCommands.clear();
 		}
+		//resident objects belong to the session of this client
+		ServerEngine.getServerEngine().getObjectInfo().getResidentObjectCache().clear();
 		Log.i(Tag, "Disconnected from client: "+ip+":"+port);
 	}
 	
@@ -204,9 +215,10 @@ public class ServerSocketHandler {
 	 * @param commandId
 	 * 			The command id which is used to filter commands
 	 * @param MaxWaitingTime
-	 * 			Maximum waiting microseconds, if no command recieved when time out,
+	 * 			Maximum waiting milliseconds, if no command recieved when time out,
 	 * 			this method will stop waiting and throws an RemoteExecutionFailedException.
-	 * 			if this paremeter is 0, the maximum waiting time is ignored.
+	 * 			if this paremeter is 0, the maximum waiting time is ignored. It should be given by
+	 * 			RoundTripEstimator.getTimeout, which is backed off when it expires.
 	 * @return recieved command
 	 * @throws RemoteExecutionFailedException when time out or connection losing
 	 */
@@ -268,6 +280,7 @@ public class ServerSocketHandler {
 					synchronized(waitingThreads){
 						waitingThreads.remove(thisThread);
 					}
+					ServerEngine.getServerEngine().getRoundTripEstimator().backOff();
 					throw(new RemoteExecutionFailedException("Waiting for command "+cmd+"("+commandId+") time out!"));
 				}
 				if(!isConnected()){
@@ -292,10 +305,38 @@ public class ServerSocketHandler {
 		 if(is == null)
 				throw(new IOException("InputStream is null!"));
 		 Command cmd = (Command) is.readObject();
+		 measureRoundTrip(cmd, true);
+		 int missingBlobNum = is.takeMissingBlobNum();
+		 if(missingBlobNum > 0)
+			 cmd.putExtra("missingBlobNum", missingBlobNum);
 		 return cmd;
 	};
 	
 	
+	/**
+	 * Measure round trips passively. A thread id is timed from the moment it has been written until the
+	 * client confirms it, the client does it as soon as it reads the thread id.
+	 * @param cmd
+	 * 		the command
+	 * @param isReceived
+	 * 		if the command is received or transmitted
+	 */
+	private void measureRoundTrip(Command cmd, boolean isReceived){
+		if(cmd.getCOMMAND() != COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN) return;
+		long now = System.nanoTime();
+		Long time;
+		synchronized(threadIdTimes){
+			if(!isReceived){
+				threadIdTimes.put(cmd.getCommandId(), now);
+				return;
+			}
+			time = threadIdTimes.remove(cmd.getCommandId());
+		}
+		if(time != null)
+			ServerEngine.getServerEngine().getRoundTripEstimator().addSample(now - time);
+	}
+	
+	
 	/**
 	 * Transfer a command
 	 * @param cmd 
@@ -408,6 +449,7 @@ public class ServerSocketHandler {
 					}
 					os.writeObject(cmd);
 					os.reset();
+					measureRoundTrip(cmd, false);
 				} catch (IOException e) {
 					Log.e(Tag, "An error occured when rensfering data, transfer service quited!");
 					isTransmitServiceOn = false;
@@ -502,6 +544,8 @@ public class ServerSocketHandler {
 			final Command threadIdReply = new Command(COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN, cmd.getCommandId());		
 			final MethodPackage Package = (MethodPackage) cmd.getExtra("MethodPackage");
 			long ClientThreadId = (Long) cmd.getExtra("threadId");
+			if(cmd.getExtra("bandwidth") != null)
+				ServerEngine.getServerEngine().getRoundTripEstimator().setBandwidth((Double) cmd.getExtra("bandwidth"));
 					
 			//set thread id information
 			final long threadId = Thread.currentThread().getId();
@@ -521,18 +565,42 @@ public class ServerSocketHandler {
 						", client thread id: "+threadId);
 			}
 			
+			//objects are unwrapped while the client confirms the thread id, and the parameters of
+			//a streamed package are unwrapped one by one when they arrive
+			Object[] objects = null;
+			RemoteExecutionFailedException unwrapException = null;
 			try {
-				WaitForCommand(COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN,cmd.getCommandId(),5000);
+				if(cmd.getExtra("missingBlobNum") != null){
+					remoteCmdExe.discardParameters(Package, cmd.getCommandId());
+					throw(new CacheMissException(cmd.getExtra("missingBlobNum")+" blobs are not in the blob store"));
+				}
+				objects = remoteCmdExe.unWrapMethodObjects(Package, cmd.getCommandId());
+			} catch (RemoteExecutionFailedException e) {
+				unwrapException = e;
+			}
+			
+			try {
+				WaitForCommand(COMMAND.EXECUTE_METHOD_THREAD_ID_RETURN,cmd.getCommandId(),
+						ServerEngine.getServerEngine().getRoundTripEstimator().getTimeout(1));
 			} catch (RemoteExecutionFailedException e1) {
 				Log.e(Tag, "an error occur when trying to get reply for transmitting thread id" + threadId);
+				if(objects != null)
+					ServerEngine.getServerEngine().getObjectInfo().removeAllRemoteObjectInCurrentThread();
 				throw(e1);
 			}
 			
 			try {
-				Map<Integer,ObjectSynchronizationInfo> remoteObjecSynctMap = new HashMap<Integer,ObjectSynchronizationInfo>();
-				ObjectSynchronizationInfo resultSync = remoteCmdExe.executeMethod(Package,remoteObjecSynctMap);		
+				ObjectSynchronizationInfo remoteObjectSync = new ObjectSynchronizationInfo();
+				HashMap<Integer,Long> residentFingerprints = new HashMap<Integer,Long>();
+				if(unwrapException != null)
+					throw(unwrapException);
+				long executionTime = System.nanoTime();
+				ObjectSynchronizationInfo resultSync = remoteCmdExe.invokeMethod(Package,objects,remoteObjectSync,residentFingerprints);		
+				//the client takes the rest of the time of the call as the time spent in the network
+				resultReply.putExtra("executionTime", System.nanoTime() - executionTime);
 				resultReply.putExtra("resultSync", resultSync);
-				resultReply.putExtra("remoteObjecSynctMap", remoteObjecSynctMap);
+				resultReply.putExtra("remoteObjectSync", remoteObjectSync);
+				resultReply.putExtra("residentFingerprints", residentFingerprints);
 				resultReply.putExtra("hasException", false);
 			} catch (InvocationTargetException e) {
 				resultReply.putExtra("hasException", true);
@@ -573,7 +641,7 @@ public class ServerSocketHandler {
 				reply.putExtra("objInfo", objInfo);
 				reply.putExtra("newObjArray", newObjArray);
 				reply.putExtra("hasException", false);
-				Log.i(Tag, "field got: "+objInfo.getObject()+", send it to the client...");
+				Log.i(Tag, "field got: "+objInfo.getObject(0)+", send it to the client...");
 			} catch (RemoteExecutionFailedException e) {
 				reply.putExtra("hasException", true);
 				reply.putExtra("exceptionType", "RemoteExecutionFailedException");
@@ -597,7 +665,9 @@ public class ServerSocketHandler {
 			Command ret;
 			
 			try {
-				ret = WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,cmd.getCommandId(),5000);
+				//the new objects are transferred to the client before it replies
+				ret = WaitForCommand(COMMAND.OBJECT_REQUEST_RETURN,cmd.getCommandId(),
+						ServerEngine.getServerEngine().getRoundTripEstimator().getTimeout(1, SizeEstimator.estimateSize(newObjArray)));
 			} catch (RemoteExecutionFailedException e) {
 				return;
 			}
@@ -692,6 +762,20 @@ public class ServerSocketHandler {
 			return;
 		}
 		
+		//do when recieve a cache invalidate command
+		if(CMD == COMMAND.CACHE_INVALIDATE){
+			ResidentObjectCache cache = ServerEngine.getServerEngine().getObjectInfo().getResidentObjectCache();
+			if((Boolean) cmd.getExtra("all")){
+				cache.clear();
+				Log.i(Tag, "All resident objects are invalidated by client");
+			}else{
+				int key = (Integer) cmd.getExtra("key");
+				cache.invalidate(key);
+				Log.i(Tag, "Resident object "+key+" is invalidated by client");
+			}
+			return;
+		}
+		
 		//do when recieve a ping command
 		if(CMD == COMMAND.PING){
 			Command reply = new Command(COMMAND.PING_RETURN,cmd.getCommandId());